@@ -0,0 +1,83 @@
+package com.my.octools.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.my.octools.api.entities.Appliance;
+import com.my.octools.api.entities.AppliancePage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning one appliance page into the stale appliances on it: decoding the whole page with the
+ * {@link ObjectMapper} and filtering the list, against the streaming {@link AppliancePageDecoder} with the filter
+ * pushed down. The body is fed in 8 KB chunks, as it would arrive from the network. With the GC profiler the
+ * allocation per page shows the difference best.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AppliancePageDecodeBenchmark {
+    private static final int CHUNK_SIZE = 8192;
+
+    @Param({"100", "1000", "10000"})
+    public int pageSize;
+
+    @Param({"0.05"})
+    public double staleRatio;
+
+    private final ObjectMapper mapper = JsonMapper.builder().findAndAddModules().build();
+    private byte[] body;
+    private ApplianceFilter filter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Instant now = Instant.parse("2025-01-01T12:00:00Z");
+        filter = ApplianceFilter.liveAndSilentSince(now.minus(10, ChronoUnit.MINUTES));
+        int staleEvery = Math.max(1, (int) Math.round(1 / staleRatio));
+        StringBuilder json = new StringBuilder("{\"data\":[");
+        for (int i = 0; i < pageSize; i++) {
+            Instant lastHeard = now.minus(i % staleEvery == 0 ? 60 : 1, ChronoUnit.MINUTES);
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"id\":\"appliance-").append(i)
+                    .append("\",\"sortIndex\":").append(i)
+                    .append(",\"opStatus\":\"").append(i % 10 == 9 ? "OFFLINE" : "LIVE")
+                    .append("\",\"lastHeardFromOn\":\"").append(lastHeard).append("\"}");
+        }
+        json.append("],\"pageInfo\":{\"hasNextPage\":true,\"endCursor\":\"c").append(pageSize)
+                .append("\",\"totalCount\":").append(pageSize * 10).append("}}");
+        body = json.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public FilteredAppliancePage objectMapperThenFilter() throws IOException {
+        return FilteredAppliancePage.of(mapper.readValue(body, AppliancePage.class), filter);
+    }
+
+    @Benchmark
+    public FilteredAppliancePage streamingWithPushdown() throws IOException {
+        AppliancePageDecoder decoder = new AppliancePageDecoder(filter);
+        List<Appliance> matched = new ArrayList<>();
+        for (int from = 0; from < body.length; from += CHUNK_SIZE) {
+            decoder.feed(ByteBuffer.wrap(body, from, Math.min(CHUNK_SIZE, body.length - from)));
+            matched.addAll(decoder.takeMatched());
+        }
+        matched.addAll(decoder.endOfInput());
+        return decoder.toPage(matched);
+    }
+}
@@ -0,0 +1,62 @@
+package com.my.octools.api;
+
+import com.my.octools.storage.ApplianceLogRepository;
+import com.my.octools.storage.LogCursor;
+import com.my.octools.storage.LogFixtures;
+import com.my.octools.storage.LogRollup;
+import com.my.octools.storage.LogVersions;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading one page of {@code getAllLogs} at a shallow and at deep positions, once by
+ * {@code start} offset and once by the cursor of the entry just before that position.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LogServicePagingBenchmark {
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"1000000"})
+    public int rows;
+
+    @Param({"0", "10000", "500000"})
+    public int offset;
+
+    @Param({"skiplist", "columnar"})
+    public String engine;
+
+    private ApplianceLogService service;
+    private String cursor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        ApplianceLogRepository store = LogFixtures.filledStore(engine, rows);
+        service = new ApplianceLogService(store, store::save, new LogRollup(Duration.ofHours(1), 10),
+                new LogVersions());
+        if (offset > 0) {
+            cursor = LogCursor.of(service.getAllLogs(offset - 1, 1).get(0)).encode();
+        }
+    }
+
+    @Benchmark
+    public LogPage getAllLogsByOffset() {
+        return service.getAllLogs(null, offset, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public LogPage getAllLogsByCursor() {
+        return service.getAllLogs(cursor, 0, PAGE_SIZE);
+    }
+}
@@ -0,0 +1,72 @@
+package com.my.octools.storage;
+
+import java.time.Instant;
+
+/**
+ * Log rows shaped like the processor's output, shared by the benchmarks.
+ * <p>
+ * Rows cycle through {@value #APPLIANCES} appliances, one action per row, with unique drain/remediation
+ * messages on success and a handful of repeated error messages on the 10% of rows that failed.
+ */
+public final class LogFixtures {
+    public static final int APPLIANCES = 50_000;
+    public static final Instant START = Instant.parse("2025-01-01T00:00:00Z");
+
+    private static final String[] ACTIONS = {"DRAIN", "REMEDIATE", "PROCESS"};
+    private static final String[] APPLIANCE_IDS = new String[APPLIANCES];
+
+    static {
+        for (int i = 0; i < APPLIANCES; i++) {
+            APPLIANCE_IDS[i] = "appliance-" + i;
+        }
+    }
+
+    private LogFixtures() {
+    }
+
+    /**
+     * @return appliance of row {@code i}
+     */
+    public static String applianceId(long i) {
+        return APPLIANCE_IDS[(int) ((i * 31L) % APPLIANCES)];
+    }
+
+    /**
+     * @return row {@code i}, one millisecond after row {@code i - 1}
+     */
+    public static ApplianceLog row(long i) {
+        boolean success = i % 10 != 0;
+        String action = success ? ACTIONS[(int) (i % 2)] : ACTIONS[2];
+        String message = success
+                ? "DrainResult{drainId='" + Long.toHexString(i * 0x9E3779B97F4A7C15L) + "', estimatedTimeToDrain='5m'}"
+                : "Drain API error: HTTP 50" + (i % 4);
+        return new ApplianceLog(applianceId(i), action, success, message, START.plusMillis(i));
+    }
+
+    /**
+     * Creates a store of the given engine holding rows {@code 0} to {@code rows - 1}.
+     *
+     * @param engine {@code skiplist} or {@code columnar}
+     */
+    public static ApplianceLogRepository filledStore(String engine, int rows) {
+        ApplianceLogRepository store = newStore(engine);
+        for (int i = 0; i < rows; i++) {
+            store.save(row(i));
+        }
+        return store;
+    }
+
+    /**
+     * @param engine {@code skiplist} or {@code columnar}
+     */
+    public static ApplianceLogRepository newStore(String engine) {
+        switch (engine) {
+            case "skiplist":
+                return new InMemoryApplianceLogStore();
+            case "columnar":
+                return new ColumnarApplianceLogStore();
+            default:
+                throw new IllegalArgumentException("Unknown engine " + engine);
+        }
+    }
+}
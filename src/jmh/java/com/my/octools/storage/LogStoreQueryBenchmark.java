@@ -0,0 +1,76 @@
+package com.my.octools.storage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of the finders at 10k, 1M and 10M rows, both the unpaged variants and the first page of
+ * {@value #PAGE_SIZE} entries that the REST API reads.
+ * <p>
+ * {@code findByApplianceId} reads one appliance with about {@code rows / 50k} entries,
+ * {@code findByTimestampAfter} about the newest 1000 rows, and {@code findBySuccessFalse} the 10% of rows that failed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LogStoreQueryBenchmark {
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"10000", "1000000", "10000000"})
+    public int rows;
+
+    @Param({"skiplist", "columnar"})
+    public String engine;
+
+    private ApplianceLogRepository store;
+    private String applianceId;
+    private Instant cutoff;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        store = LogFixtures.filledStore(engine, rows);
+        applianceId = LogFixtures.applianceId(rows / 2);
+        cutoff = LogFixtures.START.plusMillis(Math.max(0, rows - 1000));
+    }
+
+    @Benchmark
+    public List<ApplianceLog> findByApplianceId() {
+        return store.findByApplianceId(applianceId);
+    }
+
+    @Benchmark
+    public List<ApplianceLog> findByApplianceIdPage() {
+        return store.findByApplianceId(applianceId, null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<ApplianceLog> findByTimestampAfter() {
+        return store.findByTimestampAfter(cutoff);
+    }
+
+    @Benchmark
+    public List<ApplianceLog> findByTimestampAfterPage() {
+        return store.findByTimestampAfter(cutoff, null, PAGE_SIZE);
+    }
+
+    @Benchmark
+    public List<ApplianceLog> findBySuccessFalse() {
+        return store.findBySuccessFalse();
+    }
+
+    @Benchmark
+    public List<ApplianceLog> findBySuccessFalsePage() {
+        return store.findBySuccessFalse(null, PAGE_SIZE);
+    }
+}
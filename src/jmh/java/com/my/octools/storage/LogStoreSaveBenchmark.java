@@ -0,0 +1,51 @@
+package com.my.octools.storage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write throughput of the in-memory stores with one writer and with contended writers.
+ * <p>
+ * Every iteration starts from an empty store; rows get increasing timestamps, as they do when the processor
+ * saves them, so inserts land at the head of the newest-first order.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LogStoreSaveBenchmark {
+
+    @Param({"skiplist", "columnar"})
+    public String engine;
+
+    private ApplianceLogRepository store;
+    private final AtomicLong row = new AtomicLong();
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        store = LogFixtures.newStore(engine);
+        row.set(0);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void saveSingleWriter() {
+        store.save(LogFixtures.row(row.getAndIncrement()));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void saveContended() {
+        store.save(LogFixtures.row(row.getAndIncrement()));
+    }
+}
@@ -0,0 +1,183 @@
+package com.my.octools.api;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Latency, outcome, retry and in-flight metrics of the calls to the appliance API.
+ * <p>
+ * Call latency is published as the {@value #CALLS} timer, tagged with the operation and the outcome
+ * ({@code success}, {@code client_error}, {@code server_error}, {@code timeout}, {@code error}, or
+ * {@code cancelled} for a reactive call its subscriber gave up on). It carries
+ * p50/p95/p99 and a percentile histogram, so percentiles can also be aggregated across instances in Prometheus.
+ * <p>
+ * Circuit breakers publish their state as {@value #CIRCUIT_STATE}, one gauge per state that is 1 for the current
+ * one, and hedged fetches are counted as {@value #HEDGES}.
+ */
+class ApiCallMetrics {
+
+    static final String CALLS = "octools.api.calls";
+    static final String RETRIES = "octools.api.retries";
+    static final String IN_FLIGHT = "octools.api.in.flight";
+    static final String CIRCUIT_STATE = "octools.api.circuit.state";
+    static final String CIRCUIT_REJECTED = "octools.api.circuit.rejected";
+    static final String HEDGES = "octools.api.hedges";
+
+    static final String FETCH = ApiClient.FETCH;
+    static final String DRAIN = ApiClient.DRAIN;
+    static final String REMEDIATE = ApiClient.REMEDIATE;
+    static final String DRAIN_BATCH = "drain_batch";
+    static final String REMEDIATE_BATCH = "remediate_batch";
+
+    private final MeterRegistry registry;
+    // Meters are looked up on every call, so they are cached instead of going through the registry each time
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, Counter> retries = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    ApiCallMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * Times the call from now until the returned future completes, also when it is completed by a caller's
+     * timeout.
+     *
+     * @param operation operation tag
+     * @param call      future of the call, returned as is
+     * @return {@code call}
+     */
+    <T> CompletableFuture<T> record(String operation, CompletableFuture<T> call) {
+        AtomicInteger active = inFlight(operation);
+        active.incrementAndGet();
+        Timer.Sample sample = Timer.start(registry);
+        call.whenComplete((result, ex) -> {
+            active.decrementAndGet();
+            sample.stop(timer(operation, outcome(ex)));
+        });
+        return call;
+    }
+
+    /**
+     * Reactive counterpart of {@link #record(String, CompletableFuture)}: times every subscription to the call
+     * until it terminates or is cancelled. A timeout must be applied to {@code call} itself to be told apart from
+     * a cancellation.
+     *
+     * @param operation operation tag
+     * @param call      the call
+     * @return {@code call}, timed
+     */
+    <T> Mono<T> record(String operation, Mono<T> call) {
+        return Mono.defer(() -> {
+            AtomicInteger active = inFlight(operation);
+            active.incrementAndGet();
+            Timer.Sample sample = Timer.start(registry);
+            AtomicBoolean stopped = new AtomicBoolean();
+            Consumer<String> stop = outcome -> {
+                if (stopped.compareAndSet(false, true)) {
+                    active.decrementAndGet();
+                    sample.stop(timer(operation, outcome));
+                }
+            };
+            return call.doOnSuccess(result -> stop.accept(outcome(null)))
+                    .doOnError(ex -> stop.accept(outcome(ex)))
+                    .doOnCancel(() -> stop.accept("cancelled"));
+        });
+    }
+
+    /**
+     * Counts a retry fired by the retry spec.
+     */
+    void retry(String operation) {
+        retries.computeIfAbsent(operation, op -> Counter.builder(RETRIES)
+                .description("Appliance API calls retried after a failure")
+                .tag("operation", op)
+                .register(registry)).increment();
+    }
+
+    /**
+     * Publishes the state and the rejected calls of the circuit breaker.
+     */
+    void circuitBreaker(CircuitBreaker breaker) {
+        for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+            Gauge.builder(CIRCUIT_STATE, breaker, cb -> cb.getState() == state ? 1 : 0)
+                    .description("Whether the circuit breaker of the operation is in the state")
+                    .tag("operation", breaker.getOperation())
+                    .tag("state", state.name().toLowerCase())
+                    .register(registry);
+        }
+        FunctionCounter.builder(CIRCUIT_REJECTED, breaker, CircuitBreaker::getRejectedCalls)
+                .description("Appliance API calls failed fast because the circuit breaker was open")
+                .tag("operation", breaker.getOperation())
+                .register(registry);
+    }
+
+    /**
+     * Publishes how many second attempts the hedger sent and how many of them answered first.
+     */
+    void hedger(String operation, Hedger hedger) {
+        FunctionCounter.builder(HEDGES, hedger, Hedger::getHedgesSent)
+                .description("Hedged second attempts of appliance API calls")
+                .tag("operation", operation)
+                .tag("result", "sent")
+                .register(registry);
+        FunctionCounter.builder(HEDGES, hedger, Hedger::getHedgesWon)
+                .description("Hedged second attempts of appliance API calls")
+                .tag("operation", operation)
+                .tag("result", "won")
+                .register(registry);
+    }
+
+    private Timer timer(String operation, String outcome) {
+        return timers.computeIfAbsent(operation + ':' + outcome, key -> Timer.builder(CALLS)
+                .description("Latency of appliance API calls")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    private AtomicInteger inFlight(String operation) {
+        return inFlight.computeIfAbsent(operation, op -> {
+            AtomicInteger active = new AtomicInteger();
+            Gauge.builder(IN_FLIGHT, active, AtomicInteger::get)
+                    .description("Appliance API calls waiting for a response")
+                    .tag("operation", op)
+                    .register(registry);
+            return active;
+        });
+    }
+
+    static String outcome(Throwable ex) {
+        if (ex == null) {
+            return "success";
+        }
+        Throwable cause = ApiException.rootCause(ex);
+        if (cause instanceof TimeoutException) {
+            return "timeout";
+        }
+        if (cause instanceof ApiException) {
+            int status = ((ApiException) cause).getStatusCode();
+            if (status >= 400 && status < 500) {
+                return "client_error";
+            }
+            if (status >= 500) {
+                return "server_error";
+            }
+        }
+        return "error";
+    }
+}
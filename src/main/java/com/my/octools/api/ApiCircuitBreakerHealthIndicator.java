@@ -0,0 +1,44 @@
+package com.my.octools.api;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reports the circuit breakers of the appliance API as the {@code apiCircuitBreaker} health component.
+ * <p>
+ * The component is always {@code UP}: an open circuit means the appliance API is failing and this service is
+ * shielding it as designed, so it must not take the aggregate health, and with it the readiness of the instance,
+ * down. The details list the operations whose circuit is open, and the state and failure rate per operation.
+ */
+@Component
+public class ApiCircuitBreakerHealthIndicator implements HealthIndicator {
+
+    private final ApiClientImpl client;
+
+    public ApiCircuitBreakerHealthIndicator(ApiClientImpl client) {
+        this.client = client;
+    }
+
+    @Override
+    public Health health() {
+        List<String> open = new ArrayList<>();
+        Health.Builder builder = Health.up();
+        for (CircuitBreaker breaker : client.getCircuitBreakers()) {
+            CircuitBreaker.State state = breaker.getState();
+            if (state == CircuitBreaker.State.OPEN) {
+                open.add(breaker.getOperation());
+            }
+            double failureRate = breaker.getFailureRate();
+            builder.withDetail(breaker.getOperation(), Map.of(
+                    "state", state,
+                    "failureRate", Double.isNaN(failureRate) ? 0 : failureRate,
+                    "rejectedCalls", breaker.getRejectedCalls()));
+        }
+        return builder.withDetail("openCircuits", open).build();
+    }
+}
@@ -1,22 +1,67 @@
 package com.my.octools.api;
 
 import com.my.octools.api.entities.AppliancePage;
+import com.my.octools.api.entities.BatchItemResult;
 import com.my.octools.api.entities.DrainResult;
 import com.my.octools.api.entities.RemediationResult;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Client interface for interacting with remote appliance APIs.
+ * <p>
+ * Next to the {@link CompletableFuture} methods, which retry on their own, the client offers single attempts as
+ * {@link Mono}s for reactive callers, which retry them with {@link #retrySpec(String)} where it suits them.
  */
 public interface ApiClient {
+
+    /** Page size used when the caller does not choose one. */
+    int DEFAULT_PAGE_SIZE = 100;
+
+    /** Operation names, as passed to {@link #retrySpec(String)} and tagged on the call metrics. */
+    String FETCH = "fetch";
+    String DRAIN = "drain";
+    String REMEDIATE = "remediate";
+
+    /**
+     * Fetches a page of {@value #DEFAULT_PAGE_SIZE} appliances starting after a given cursor.
+     *
+     * @param after cursor to fetch after (nullable)
+     * @return CompletableFuture with the appliance page data
+     */
+    default CompletableFuture<AppliancePage> fetchAppliances(String after) {
+        return fetchAppliances(after, DEFAULT_PAGE_SIZE);
+    }
+
     /**
      * Fetches a page of appliances starting after a given cursor.
      *
      * @param after cursor to fetch after (nullable)
+     * @param first maximum number of appliances on the page
      * @return CompletableFuture with the appliance page data
      */
-    CompletableFuture<AppliancePage> fetchAppliances(String after);
+    CompletableFuture<AppliancePage> fetchAppliances(String after, int first);
+
+    /**
+     * Fetches a page of appliances and keeps only the ones that pass the filter.
+     * <p>
+     * The default implementation decodes the whole page and filters it; implementations may push the filter
+     * down into the decoding of the response.
+     *
+     * @param after  cursor to fetch after (nullable)
+     * @param first  maximum number of appliances on the page
+     * @param filter appliances to keep
+     * @return CompletableFuture with the matching appliances and the page's cursor
+     */
+    default CompletableFuture<FilteredAppliancePage> fetchAppliances(String after, int first, ApplianceFilter filter) {
+        return fetchAppliances(after, first).thenApply(page -> FilteredAppliancePage.of(page, filter));
+    }
 
     /**
      * Drains the appliance identified by the given ID.
@@ -33,4 +78,72 @@ public interface ApiClient {
      * @return CompletableFuture with remediation result
      */
     CompletableFuture<RemediationResult> remediate(String id);
+
+    /**
+     * Drains several appliances in one call where the backend supports it.
+     *
+     * @param ids appliance identifiers
+     * @return CompletableFuture with one result per ID, keyed by ID; failures of single appliances are
+     * reported in their result rather than failing the whole future
+     */
+    CompletableFuture<Map<String, BatchItemResult<DrainResult>>> drainAll(List<String> ids);
+
+    /**
+     * Remediates several appliances in one call where the backend supports it.
+     *
+     * @param ids appliance identifiers
+     * @return CompletableFuture with one result per ID, keyed by ID; failures of single appliances are
+     * reported in their result rather than failing the whole future
+     */
+    CompletableFuture<Map<String, BatchItemResult<RemediationResult>>> remediateAll(List<String> ids);
+
+    /**
+     * Fetches a filtered page of appliances in a single attempt, started on every subscription.
+     * <p>
+     * The default implementation wraps {@link #fetchAppliances(String, int, ApplianceFilter)}, which retries on
+     * its own.
+     *
+     * @param after   cursor to fetch after (nullable)
+     * @param first   maximum number of appliances on the page
+     * @param filter  appliances to keep
+     * @param timeout time after which the attempt fails with a {@link TimeoutException}
+     * @return Mono with the matching appliances and the page's cursor
+     */
+    default Mono<FilteredAppliancePage> fetchAppliancesOnce(String after, int first, ApplianceFilter filter,
+                                                            Duration timeout) {
+        return Mono.fromFuture(() -> fetchAppliances(after, first, filter)).timeout(timeout);
+    }
+
+    /**
+     * Drains the appliance in a single attempt, started on every subscription.
+     *
+     * @param id      appliance identifier
+     * @param timeout time after which the attempt fails with a {@link TimeoutException}
+     * @return Mono with drain result
+     */
+    default Mono<DrainResult> drainOnce(String id, Duration timeout) {
+        return Mono.fromFuture(() -> drain(id)).timeout(timeout);
+    }
+
+    /**
+     * Remediates the appliance in a single attempt, started on every subscription.
+     *
+     * @param id      appliance identifier
+     * @param timeout time after which the attempt fails with a {@link TimeoutException}
+     * @return Mono with remediation result
+     */
+    default Mono<RemediationResult> remediateOnce(String id, Duration timeout) {
+        return Mono.fromFuture(() -> remediate(id)).timeout(timeout);
+    }
+
+    /**
+     * Retry policy for the single attempts of an operation. The default never retries, since the default single
+     * attempts already went through the retries of the future methods.
+     *
+     * @param operation {@link #FETCH}, {@link #DRAIN} or {@link #REMEDIATE}
+     * @return Retry specification to pass to {@link Mono#retryWhen(Retry)}
+     */
+    default Retry retrySpec(String operation) {
+        return Retry.max(0);
+    }
 }
@@ -1,107 +1,442 @@
 package com.my.octools.api;
 
 import com.my.octools.api.entities.AppliancePage;
+import com.my.octools.api.entities.BatchItemResult;
+import com.my.octools.api.entities.BatchResponse;
 import com.my.octools.api.entities.DrainResult;
 import com.my.octools.api.entities.RemediationResult;
+import com.my.octools.config.ApiClientProperties;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 import reactor.util.retry.Retry;
+import reactor.util.retry.RetryBackoffSpec;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 
 /**
  * Implementation to communicate with remote appliance APIs asynchronously.
  * <p>
  * Provides methods to fetch appliance data pages, drain appliances, remediate appliances,
  * with retry and error handling logic.
+ * <p>
+ * With batching enabled, single drain/remediate calls are coalesced by a {@link MicroBatcher} into calls to the
+ * batch endpoints. If the backend answers a batch call with 404, 405 or 501, batching is switched off for the
+ * lifetime of the client and every ID is sent through the single-ID endpoints instead.
+ * <p>
+ * Drain and remediate calls go through a {@link CircuitBreaker} per operation, which fails them fast while the
+ * backend keeps timing out or answering 429/5xx. With hedging enabled, a page fetch that is slower than the recent
+ * p95 is sent a second time and the first answer wins, see {@link Hedger}. Filtered page fetches are decoded as
+ * the response streams in, with the filter applied per element, see {@link AppliancePageDecoder}.
+ * <p>
+ * Every call is timed per operation and outcome, and retries and in-flight calls are counted, see
+ * {@link ApiCallMetrics}.
+ * <p>
+ * The single attempts ({@link #fetchAppliancesOnce}, {@link #drainOnce}, {@link #remediateOnce}) are the same
+ * requests without the retries, timed and passed through the circuit breaker per attempt. Their timeout is
+ * applied inside both, so a timed-out attempt is recorded as a timeout and counts as a breaker failure. Hedged
+ * fetches and batched drain/remediate calls still go through the future-based {@link Hedger} and
+ * {@link MicroBatcher}, with the retries of their batch requests.
  */
 @Component
 public class ApiClientImpl implements ApiClient {
     private static final Logger logger = LoggerFactory.getLogger(ApiClient.class);
+
+    private static final Map<String, String> DRAIN_REQUEST = Map.of("reason", "inactivity", "actor", "oct-app");
+    private static final Map<String, String> REMEDIATE_REQUEST = Map.of("reason", "remediated after drain", "actor", "oct-app");
+    private static final ParameterizedTypeReference<BatchResponse<DrainResult>> DRAIN_BATCH_RESPONSE =
+            new ParameterizedTypeReference<>() {
+            };
+    private static final ParameterizedTypeReference<BatchResponse<RemediationResult>> REMEDIATE_BATCH_RESPONSE =
+            new ParameterizedTypeReference<>() {
+            };
+
     private final WebClient webClient;
+    private final ApiClientProperties.Batch batchConfig;
+    private final MicroBatcher<DrainResult> drainBatcher;
+    private final MicroBatcher<RemediationResult> remediateBatcher;
+    private final ApiCallMetrics metrics;
+    private final CircuitBreaker drainBreaker;
+    private final CircuitBreaker remediateBreaker;
+    // Null unless hedging is enabled
+    private final Hedger fetchHedger;
+    // The client scheduler as seen by the timeouts of the single attempts, never disposed here
+    private final Scheduler timeoutTimer;
+    // Set once the backend has shown it has no batch endpoints
+    private volatile boolean batchUnsupported;
 
     /**
      * Constructs an ApiClientImpl with the given {@link WebClient}.
      *
-     * @param webClient the WebClient used for HTTP requests
+     * @param webClient  the WebClient used for HTTP requests
+     * @param properties client configuration, including batching
+     * @param scheduler  fires the micro-batching windows and the hedged fetches
+     * @param registry   receives the call metrics
      */
-    public ApiClientImpl(WebClient webClient) {
+    public ApiClientImpl(WebClient webClient, ApiClientProperties properties,
+                         @Qualifier("apiTimeoutScheduler") ScheduledExecutorService scheduler,
+                         MeterRegistry registry) {
         this.webClient = webClient;
+        this.timeoutTimer = Schedulers.fromExecutorService(scheduler, "apiTimeoutScheduler");
+        this.metrics = new ApiCallMetrics(registry);
+        this.batchConfig = properties.getBatch();
+        this.drainBatcher = new MicroBatcher<>(this::drainBatch, batchConfig.getMaxSize(), batchConfig.getWindow(), scheduler);
+        this.remediateBatcher = new MicroBatcher<>(this::remediateBatch, batchConfig.getMaxSize(), batchConfig.getWindow(), scheduler);
+        this.drainBreaker = new CircuitBreaker(ApiCallMetrics.DRAIN, properties.getCircuitBreaker());
+        this.remediateBreaker = new CircuitBreaker(ApiCallMetrics.REMEDIATE, properties.getCircuitBreaker());
+        metrics.circuitBreaker(drainBreaker);
+        metrics.circuitBreaker(remediateBreaker);
+        if (properties.getHedge().isEnabled()) {
+            this.fetchHedger = new Hedger(properties.getHedge(), scheduler);
+            metrics.hedger(ApiCallMetrics.FETCH, fetchHedger);
+        } else {
+            this.fetchHedger = null;
+        }
+    }
+
+    /**
+     * @return the circuit breakers of the drain and remediate operations
+     */
+    public List<CircuitBreaker> getCircuitBreakers() {
+        return List.of(drainBreaker, remediateBreaker);
+    }
+
+    @Override
+    public CompletableFuture<AppliancePage> fetchAppliances(String after, int first) {
+        return metrics.record(ApiCallMetrics.FETCH,
+                fetchHedger != null ? fetchHedger.call(() -> fetchOnce(after, first)) : fetchOnce(after, first));
     }
 
     @Override
-    public CompletableFuture<AppliancePage> fetchAppliances(String after) {
-        String uri = "/api/1.0/appliances?first=100" + (after != null ? "&after=" + after : "");
-        return webClient.get().uri(uri)
+    public CompletableFuture<FilteredAppliancePage> fetchAppliances(String after, int first, ApplianceFilter filter) {
+        return metrics.record(ApiCallMetrics.FETCH, fetchHedger != null
+                ? fetchHedger.call(() -> fetchFilteredOnce(after, first, filter))
+                : fetchFilteredOnce(after, first, filter));
+    }
+
+    private CompletableFuture<AppliancePage> fetchOnce(String after, int first) {
+        return webClient.get().uri(appliancesUri(after, first))
                 .retrieve()
                 .onStatus(
                         status -> status.is4xxClientError() || status.is5xxServerError(),
-                        response -> response.bodyToMono(String.class).flatMap(body -> {
-                            logger.error("Error during fetch for cursor " + after +
-                                    ": HTTP " + response.statusCode() + " - Body: " + body);
-                            return Mono.error(new RuntimeException("Fetch API error: " + body));
-                        })
+                        response -> fetchError(response, after)
                 )
                 .bodyToMono(AppliancePage.class)
-                .retryWhen(getRetrySpec())
+                .retryWhen(getFetchRetrySpec())
                 .toFuture();
     }
 
+    /**
+     * Streams the page body through a fresh {@link AppliancePageDecoder} per attempt, so only the appliances that
+     * pass the filter are ever materialized.
+     */
+    private CompletableFuture<FilteredAppliancePage> fetchFilteredOnce(String after, int first,
+                                                                      ApplianceFilter filter) {
+        return filteredRequest(after, first, filter)
+                .retryWhen(getFetchRetrySpec())
+                .toFuture();
+    }
+
+    private Mono<FilteredAppliancePage> filteredRequest(String after, int first, ApplianceFilter filter) {
+        return webClient.get().uri(appliancesUri(after, first))
+                .retrieve()
+                .onStatus(
+                        status -> status.is4xxClientError() || status.is5xxServerError(),
+                        response -> fetchError(response, after)
+                )
+                .bodyToFlux(DataBuffer.class)
+                .as(body -> Mono.defer(() -> {
+                    AppliancePageDecoder decoder = new AppliancePageDecoder(filter);
+                    return decoder.decode(body).collectList().map(decoder::toPage);
+                }));
+    }
+
+    private static String appliancesUri(String after, int first) {
+        return "/api/1.0/appliances?first=" + first + (after != null ? "&after=" + after : "");
+    }
+
+    private static Mono<ApiException> fetchError(ClientResponse response, String after) {
+        return response.bodyToMono(String.class).defaultIfEmpty("").flatMap(body -> {
+            logger.error("Error during fetch for cursor " + after +
+                    ": HTTP " + response.statusCode() + " - Body: " + body);
+            return Mono.error(new ApiException(response.statusCode().value(), "Fetch API error: " + body));
+        });
+    }
+
     @Override
     public CompletableFuture<DrainResult> drain(String id) {
+        return metrics.record(ApiCallMetrics.DRAIN,
+                drainBreaker.call(() -> batching() ? drainBatcher.submit(id) : drainOne(id)));
+    }
+
+    @Override
+    public CompletableFuture<RemediationResult> remediate(String id) {
+        return metrics.record(ApiCallMetrics.REMEDIATE,
+                remediateBreaker.call(() -> batching() ? remediateBatcher.submit(id) : remediateOne(id)));
+    }
+
+    @Override
+    public Mono<FilteredAppliancePage> fetchAppliancesOnce(String after, int first, ApplianceFilter filter,
+                                                           Duration timeout) {
+        Mono<FilteredAppliancePage> attempt = fetchHedger != null
+                ? Mono.fromFuture(() -> fetchHedger.call(() -> filteredRequest(after, first, filter).toFuture()))
+                : filteredRequest(after, first, filter);
+        return metrics.record(ApiCallMetrics.FETCH, attempt.timeout(timeout, timeoutTimer));
+    }
+
+    @Override
+    public Mono<DrainResult> drainOnce(String id, Duration timeout) {
+        Mono<DrainResult> attempt = Mono.defer(() -> batching()
+                ? Mono.fromFuture(() -> drainBatcher.submit(id))
+                : drainRequest(id));
+        return metrics.record(ApiCallMetrics.DRAIN, drainBreaker.call(attempt.timeout(timeout, timeoutTimer)));
+    }
+
+    @Override
+    public Mono<RemediationResult> remediateOnce(String id, Duration timeout) {
+        Mono<RemediationResult> attempt = Mono.defer(() -> batching()
+                ? Mono.fromFuture(() -> remediateBatcher.submit(id))
+                : remediateRequest(id));
+        return metrics.record(ApiCallMetrics.REMEDIATE,
+                remediateBreaker.call(attempt.timeout(timeout, timeoutTimer)));
+    }
+
+    /**
+     * The retry policy of the future methods. Timeouts and calls refused by an open circuit breaker are not
+     * retried, as the future methods never see them from inside their retries.
+     */
+    @Override
+    public Retry retrySpec(String operation) {
+        RetryBackoffSpec spec = ApiCallMetrics.FETCH.equals(operation) ? getFetchRetrySpec() : getRetrySpec(operation);
+        return spec.modifyErrorFilter(retried -> retried.and(ex -> !(ex instanceof TimeoutException
+                || ex instanceof CircuitBreakerOpenException)));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, BatchItemResult<DrainResult>>> drainAll(List<String> ids) {
+        return drainBreaker.call(() -> drainBatch(ids));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, BatchItemResult<RemediationResult>>> remediateAll(List<String> ids) {
+        return remediateBreaker.call(() -> remediateBatch(ids));
+    }
+
+    /**
+     * Batch drain without the circuit breaker, which the micro-batched single calls have already passed.
+     */
+    private CompletableFuture<Map<String, BatchItemResult<DrainResult>>> drainBatch(List<String> ids) {
+        return inBatches(ids, chunk -> postBatch("/api/1.0/appliances/drain", "DRAIN", ApiCallMetrics.DRAIN_BATCH,
+                chunk, DRAIN_REQUEST, DRAIN_BATCH_RESPONSE, this::drainOne));
+    }
+
+    private CompletableFuture<Map<String, BatchItemResult<RemediationResult>>> remediateBatch(List<String> ids) {
+        return inBatches(ids, chunk -> postBatch("/api/1.0/appliances/remediate", "REMEDIATE",
+                ApiCallMetrics.REMEDIATE_BATCH, chunk, REMEDIATE_REQUEST, REMEDIATE_BATCH_RESPONSE, this::remediateOne));
+    }
+
+    private CompletableFuture<DrainResult> drainOne(String id) {
+        return drainRequest(id)
+                .retryWhen(getRetrySpec(ApiCallMetrics.DRAIN))
+                .toFuture();
+    }
+
+    private Mono<DrainResult> drainRequest(String id) {
         return webClient.post().uri("/api/1.0/appliances/" + id + "/drain")
-                .bodyValue(Map.of("reason", "inactivity", "actor", "oct-app"))
+                .bodyValue(DRAIN_REQUEST)
                 .retrieve()
                 .onStatus(
                         status -> status.is4xxClientError() || status.is5xxServerError(),
                         response -> response.bodyToMono(String.class).flatMap(body -> {
                             logger.error("Error during DRAIN for appliance " + id +
                                     ": HTTP " + response.statusCode() + " - Body: " + body);
-                            return Mono.error(new RuntimeException("Drain API error: " + body));
+                            return Mono.error(new ApiException(response.statusCode().value(), "Drain API error: " + body));
                         })
                 )
-                .bodyToMono(DrainResult.class)
-                .retryWhen(getRetrySpec())
+                .bodyToMono(DrainResult.class);
+    }
+
+    private CompletableFuture<RemediationResult> remediateOne(String id) {
+        return remediateRequest(id)
+                .retryWhen(getRetrySpec(ApiCallMetrics.REMEDIATE))
                 .toFuture();
     }
 
-    @Override
-    public CompletableFuture<RemediationResult> remediate(String id) {
+    private Mono<RemediationResult> remediateRequest(String id) {
         return webClient.post().uri("/api/1.0/appliances/" + id + "/remediate")
-                .bodyValue(Map.of("reason", "remediated after drain", "actor", "oct-app"))
+                .bodyValue(REMEDIATE_REQUEST)
                 .retrieve()
                 .onStatus(
                         status -> status.is4xxClientError() || status.is5xxServerError(),
                         response -> response.bodyToMono(String.class).flatMap(body -> {
                             logger.error("Error during REMEDIATE for appliance " + id +
                                     ": HTTP " + response.statusCode() + " - Body: " + body);
-                            return Mono.error(new RuntimeException("Remediate API error: " + body));
+                            return Mono.error(new ApiException(response.statusCode().value(), "Remediate API error: " + body));
                         })
                 )
-                .bodyToMono(RemediationResult.class)
-                .retryWhen(getRetrySpec())
-                .toFuture();
+                .bodyToMono(RemediationResult.class);
+    }
+
+    private boolean batching() {
+        return batchConfig.isEnabled() && !batchUnsupported;
+    }
+
+    /**
+     * Splits the IDs into requests of at most the configured batch size and merges their results.
+     */
+    private <T> CompletableFuture<Map<String, BatchItemResult<T>>> inBatches(
+            List<String> ids, Function<List<String>, CompletableFuture<Map<String, BatchItemResult<T>>>> call) {
+        List<CompletableFuture<Map<String, BatchItemResult<T>>>> chunks = new ArrayList<>();
+        for (int from = 0; from < ids.size(); from += batchConfig.getMaxSize()) {
+            chunks.add(call.apply(ids.subList(from, Math.min(ids.size(), from + batchConfig.getMaxSize()))));
+        }
+        return CompletableFuture.allOf(chunks.toArray(new CompletableFuture[0]))
+                .thenApply(done -> {
+                    Map<String, BatchItemResult<T>> merged = new LinkedHashMap<>();
+                    chunks.forEach(chunk -> merged.putAll(chunk.join()));
+                    return merged;
+                });
+    }
+
+    /**
+     * Sends one batch request, or per-ID requests if batching is off or the backend turns out not to support it.
+     */
+    private <T> CompletableFuture<Map<String, BatchItemResult<T>>> postBatch(
+            String uri, String operation, String metricsOperation, List<String> ids, Map<String, String> request,
+            ParameterizedTypeReference<BatchResponse<T>> responseType,
+            Function<String, CompletableFuture<T>> singleCall) {
+        if (!batching()) {
+            return perId(ids, singleCall);
+        }
+        Map<String, Object> body = new HashMap<>(request);
+        body.put("ids", ids);
+        return metrics.record(metricsOperation, webClient.post().uri(uri)
+                .bodyValue(body)
+                .retrieve()
+                .onStatus(
+                        status -> status.is4xxClientError() || status.is5xxServerError(),
+                        response -> response.bodyToMono(String.class).defaultIfEmpty("").flatMap(responseBody -> {
+                            int status = response.statusCode().value();
+                            if (!isBatchUnsupported(status)) {
+                                logger.error("Error during batch " + operation + " of " + ids.size() +
+                                        " appliances: HTTP " + response.statusCode() + " - Body: " + responseBody);
+                            }
+                            return Mono.error(new ApiException(status, operation + " batch API error: " + responseBody));
+                        })
+                )
+                .bodyToMono(responseType)
+                .retryWhen(getRetrySpec(metricsOperation).filter(ex -> !(ex instanceof ApiException
+                        && isBatchUnsupported(((ApiException) ex).getStatusCode()))))
+                .map(response -> byId(ids, response))
+                .toFuture())
+                .exceptionallyCompose(ex -> {
+                    Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                    if (cause instanceof ApiException && isBatchUnsupported(((ApiException) cause).getStatusCode())) {
+                        if (!batchUnsupported) {
+                            batchUnsupported = true;
+                            logger.warn("Backend has no batch endpoints (HTTP {}), falling back to per-appliance calls",
+                                    ((ApiException) cause).getStatusCode());
+                        }
+                        return perId(ids, singleCall);
+                    }
+                    return CompletableFuture.failedFuture(cause);
+                });
+    }
+
+    /**
+     * Calls the single-ID endpoint for every ID and collects the outcomes.
+     */
+    private static <T> CompletableFuture<Map<String, BatchItemResult<T>>> perId(
+            List<String> ids, Function<String, CompletableFuture<T>> singleCall) {
+        Map<String, CompletableFuture<BatchItemResult<T>>> calls = new LinkedHashMap<>();
+        for (String id : ids) {
+            calls.computeIfAbsent(id, key -> singleCall.apply(key).handle((result, ex) -> {
+                if (ex == null) {
+                    return BatchItemResult.success(key, result);
+                }
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                int status = cause instanceof ApiException ? ((ApiException) cause).getStatusCode() : 0;
+                return BatchItemResult.failure(key, status, cause.getMessage());
+            }));
+        }
+        return CompletableFuture.allOf(calls.values().toArray(new CompletableFuture[0]))
+                .thenApply(done -> {
+                    Map<String, BatchItemResult<T>> results = new LinkedHashMap<>();
+                    calls.forEach((id, call) -> results.put(id, call.join()));
+                    return results;
+                });
+    }
+
+    /**
+     * Indexes a batch response by ID, with an error entry for every requested ID the backend left out.
+     */
+    private static <T> Map<String, BatchItemResult<T>> byId(List<String> ids, BatchResponse<T> response) {
+        Map<String, BatchItemResult<T>> results = new LinkedHashMap<>();
+        if (response.getResults() != null) {
+            for (BatchItemResult<T> item : response.getResults()) {
+                results.put(item.getId(), item);
+            }
+        }
+        for (String id : ids) {
+            results.putIfAbsent(id, BatchItemResult.failure(id, 0, "No batch result returned for appliance " + id));
+        }
+        return results;
+    }
+
+    private static boolean isBatchUnsupported(int status) {
+        return status == 404 || status == 405 || status == 501;
+    }
+
+    /**
+     * Retry specification of page fetches. A page size the backend rejects (400, 413, 414) is not retried as is,
+     * the caller decides whether to ask again with a smaller page.
+     */
+    private RetryBackoffSpec getFetchRetrySpec() {
+        return getRetrySpec(ApiCallMetrics.FETCH).filter(ex -> !(ex instanceof ApiException
+                && isPageSizeRejected(((ApiException) ex).getStatusCode())));
+    }
+
+    private static boolean isPageSizeRejected(int status) {
+        return status == 400 || status == 413 || status == 414;
     }
 
     /**
      * Creates a {@link Retry} specification with exponential backoff and jitter.
      * Retries up to 3 times, starting with a delay of 3 seconds,
      * maximum backoff 10 seconds, and jitter of 0.5.
-     * Logs warnings before retry and increments retry exhaustion count if retries are exhausted.
+     * Logs warnings and counts the retry before retrying. Once retries are exhausted the last failure is rethrown
+     * as is, so callers still see the {@link ApiException} and its status.
      *
+     * @param operation operation tag of the retry counter
      * @return configured Retry specification
      */
-    private Retry getRetrySpec() {
+    private RetryBackoffSpec getRetrySpec(String operation) {
         return Retry.backoff(3, Duration.ofSeconds(3))
                 .maxBackoff(Duration.ofSeconds(10))
                 .jitter(0.5)
-                .doBeforeRetry(retrySignal ->
-                        logger.warn("Retrying due to: " + retrySignal.failure().getMessage())
-                );
+                .doBeforeRetry(retrySignal -> {
+                    metrics.retry(operation);
+                    logger.warn("Retrying due to: " + retrySignal.failure().getMessage());
+                })
+                .onRetryExhaustedThrow((spec, retrySignal) -> retrySignal.failure());
     }
 }
@@ -0,0 +1,52 @@
+package com.my.octools.api;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Error response from the remote appliance API, carrying the HTTP status code
+ * so callers can tell overload (429, 5xx) apart from request errors.
+ */
+public class ApiException extends RuntimeException {
+
+    private final int statusCode;
+
+    public ApiException(int statusCode, String message) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return true if the backend rejected the call because it is overloaded or failing
+     */
+    public boolean isOverload() {
+        return statusCode == 429 || statusCode >= 500;
+    }
+
+    /**
+     * @return the error a {@link CompletionException} or {@link ExecutionException} wraps, through any number of
+     * them, or {@code error} itself
+     */
+    public static Throwable rootCause(Throwable error) {
+        Throwable cause = error;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+
+    /**
+     * @return true if the failure, once unwrapped, is a timeout or an {@linkplain #isOverload() overload} answer
+     */
+    public static boolean isOverload(Throwable error) {
+        Throwable cause = rootCause(error);
+        return cause instanceof TimeoutException
+                || cause instanceof ApiException && ((ApiException) cause).isOverload();
+    }
+}
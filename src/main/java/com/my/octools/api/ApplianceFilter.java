@@ -0,0 +1,66 @@
+package com.my.octools.api;
+
+import com.my.octools.api.entities.Appliance;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Selects the live appliances that have not been heard from since a cutoff, or never.
+ * <p>
+ * The cutoff is fixed when the filter is created, so a whole page is judged against the same point in time
+ * without reading the clock per appliance. The filter can be pushed down into the page decoder, see
+ * {@link ApiClient#fetchAppliances(String, ApplianceFilter)}.
+ */
+public final class ApplianceFilter {
+
+    public static final String LIVE = "LIVE";
+
+    private final Instant cutoff;
+
+    private ApplianceFilter(Instant cutoff) {
+        this.cutoff = cutoff;
+    }
+
+    /**
+     * @param cutoff appliances last heard from before this instant pass
+     */
+    public static ApplianceFilter liveAndSilentSince(Instant cutoff) {
+        return new ApplianceFilter(cutoff);
+    }
+
+    public Instant getCutoff() {
+        return cutoff;
+    }
+
+    public boolean matches(Appliance appliance) {
+        return LIVE.equals(appliance.getOpStatus()) && isSilent(appliance.getLastHeardFromOn());
+    }
+
+    /**
+     * @param lastHeardFromOn last contact of a live appliance, null if it never reported
+     * @return true if the appliance has not been heard from since the cutoff
+     */
+    public boolean isSilent(Instant lastHeardFromOn) {
+        return lastHeardFromOn == null || lastHeardFromOn.isBefore(cutoff);
+    }
+
+    /**
+     * @return the appliances that pass, in their original order
+     */
+    public List<Appliance> apply(List<Appliance> appliances) {
+        List<Appliance> matching = new ArrayList<>();
+        for (Appliance appliance : appliances) {
+            if (matches(appliance)) {
+                matching.add(appliance);
+            }
+        }
+        return matching;
+    }
+
+    @Override
+    public String toString() {
+        return "ApplianceFilter{opStatus=" + LIVE + ", silentSince=" + cutoff + "}";
+    }
+}
@@ -1,51 +1,232 @@
 package com.my.octools.api;
 
+import com.my.octools.cluster.ClusterLogFanout;
 import com.my.octools.storage.ApplianceLog;
+import com.my.octools.storage.LogQuery;
+import com.my.octools.storage.LogStats;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import reactor.core.publisher.Flux;
 
 import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.LongSupplier;
 
 /**
  * REST controller for appliance log APIs.
+ * <p>
+ * All endpoints accept an optional opaque {@code cursor}. When present it takes precedence over
+ * {@code start}. Whenever another page may follow, its cursor is returned in the
+ * {@value #NEXT_CURSOR_HEADER} response header, so the response body stays a plain list.
+ * <p>
+ * {@code /api/logs/stream} replaces polling: it replays from a cursor (or the newest {@code count} entries)
+ * and then pushes new entries as server-sent events or NDJSON, depending on the {@code Accept} header.
+ * <p>
+ * In cluster mode the paged queries cover the logs of all members, merged by {@link ClusterLogFanout}; members
+ * that did not answer are listed in the {@value #UNAVAILABLE_NODES_HEADER} header. {@code local=true} restricts a
+ * query to this instance. The live stream always covers this instance only.
+ * <p>
+ * Queries of this instance carry an {@code ETag} derived from the store's write version and are answered with
+ * {@code 304 Not Modified}, before any log is read, when {@code If-None-Match} holds a tag that is still current.
+ * Their serialized bodies are cached per query and version by {@link LogResponseCache}, so polling an unchanged
+ * store reads no logs. Cluster-wide queries, and all
+ * queries of a store shared with other instances, are neither tagged nor cached.
+ * <p>
+ * {@code /api/logs/query} combines optional {@code applianceId}, {@code action}, {@code success} and a time range
+ * {@code [from, to)} of ISO-8601 instants in one query, planned by {@code LogQueryPlanner}.
+ * <p>
+ * {@code /api/logs/stats} answers counts over a window from pre-aggregated per-minute buckets, e.g.
+ * {@code ?window=1h&groupBy=action}; it also covers this instance only.
  */
 @RestController
 @RequestMapping("/api/logs")
 public class ApplianceLogController {
 
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final String UNAVAILABLE_NODES_HEADER = "X-Unavailable-Nodes";
+
     private final ApplianceLogService logService;
+    private final ApplianceLogStreamService streamService;
+    private final LogResponseCache responseCache;
+    private final ClusterLogFanout fanout;
 
-    public ApplianceLogController(ApplianceLogService logService) {
+    public ApplianceLogController(ApplianceLogService logService, ApplianceLogStreamService streamService,
+                                  LogResponseCache responseCache, Optional<ClusterLogFanout> fanout) {
         this.logService = logService;
+        this.streamService = streamService;
+        this.responseCache = responseCache;
+        this.fanout = fanout.orElse(null);
     }
 
     @GetMapping
-    public List<ApplianceLog> getAllLogs(
+    public ResponseEntity<?> getAllLogs(
+            @RequestParam(required = false) String cursor,
             @RequestParam(defaultValue = "0") int start,
-            @RequestParam(defaultValue = "100") int count) {
-        return logService.getAllLogs(start, count);
+            @RequestParam(defaultValue = "100") int count,
+            @RequestParam(defaultValue = "false") boolean local,
+            WebRequest request) {
+        return query(request, local, Arrays.asList("all", cursor, start, count), logService::getVersion, null,
+                cursor, start, count, logService::getAllLogs);
     }
 
     @GetMapping("/appliance/{id}")
-    public List<ApplianceLog> getLogsForAppliance(
+    public ResponseEntity<?> getLogsForAppliance(
             @PathVariable String id,
+            @RequestParam(required = false) String cursor,
             @RequestParam(defaultValue = "0") int start,
-            @RequestParam(defaultValue = "100") int count) {
-        return logService.getLogsByApplianceId(id, start, count);
+            @RequestParam(defaultValue = "100") int count,
+            @RequestParam(defaultValue = "false") boolean local,
+            WebRequest request) {
+        return query(request, local, Arrays.asList("appliance", id, cursor, start, count),
+                () -> logService.getVersion(id), null, cursor, start, count,
+                (after, offset, limit) -> logService.getLogsByApplianceId(id, after, offset, limit));
     }
 
     @GetMapping("/recent")
-    public List<ApplianceLog> getRecentLogs(
+    public ResponseEntity<?> getRecentLogs(
             @RequestParam(defaultValue = "5") int minutes,
+            @RequestParam(required = false) String cursor,
             @RequestParam(defaultValue = "0") int start,
-            @RequestParam(defaultValue = "100") int count) {
-        return logService.getRecentLogs(Duration.ofMinutes(minutes), start, count);
+            @RequestParam(defaultValue = "100") int count,
+            @RequestParam(defaultValue = "false") boolean local,
+            WebRequest request) {
+        Duration window = Duration.ofMinutes(minutes);
+        return query(request, local, Arrays.asList("recent", minutes, cursor, start, count), logService::getVersion,
+                window, cursor, start, count,
+                (after, offset, limit) -> logService.getRecentLogs(window, after, offset, limit));
     }
 
     @GetMapping("/failures")
-    public List<ApplianceLog> getFailedLogs(
+    public ResponseEntity<?> getFailedLogs(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "0") int start,
+            @RequestParam(defaultValue = "100") int count,
+            @RequestParam(defaultValue = "false") boolean local,
+            WebRequest request) {
+        return query(request, local, Arrays.asList("failures", cursor, start, count), logService::getVersion, null,
+                cursor, start, count, logService::getFailedLogs);
+    }
+
+    @GetMapping("/query")
+    public ResponseEntity<?> queryLogs(
+            @RequestParam(required = false) String applianceId,
+            @RequestParam(required = false) String action,
+            @RequestParam(required = false) Boolean success,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+            @RequestParam(required = false) String cursor,
             @RequestParam(defaultValue = "0") int start,
-            @RequestParam(defaultValue = "100") int count) {
-        return logService.getFailedLogs(start, count);
+            @RequestParam(defaultValue = "100") int count,
+            @RequestParam(defaultValue = "false") boolean local,
+            WebRequest request) {
+        LogQuery logQuery = new LogQuery(applianceId, action, success, from, to);
+        LongSupplier version = applianceId != null ? () -> logService.getVersion(applianceId) : logService::getVersion;
+        return query(request, local, Arrays.asList("query", logQuery, cursor, start, count), version, null,
+                cursor, start, count,
+                (after, offset, limit) -> logService.queryLogs(logQuery, after, offset, limit));
+    }
+
+    /**
+     * Succeeded and failed entries of the last {@code window} (e.g. {@code 90s}, {@code 15m}, {@code 1h} or ISO-8601),
+     * split by {@code groupBy}, with distinct appliances and the longest failure streaks.
+     */
+    @GetMapping("/stats")
+    public LogStats getStats(
+            @RequestParam(defaultValue = "1h") String window,
+            @RequestParam(defaultValue = "none") String groupBy) {
+        return logService.getStats(DurationStyle.detectAndParse(window), groupBy);
+    }
+
+    /**
+     * Live tail as server-sent events. Log events carry their cursor as the event id, so a reconnecting
+     * {@code EventSource} resumes after the last entry it received via {@code Last-Event-ID}.
+     */
+    @GetMapping(path = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<LogStreamEvent>> streamLogs(
+            @RequestParam(required = false) String cursor,
+            @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId,
+            @RequestParam(defaultValue = "0") int count) {
+        return streamService.stream(cursor != null ? cursor : lastEventId, count)
+                .map(event -> ServerSentEvent.builder(event)
+                        .event(event.getType())
+                        .id(event.getLog() != null ? event.getCursor() : null)
+                        .build());
+    }
+
+    /**
+     * Live tail as newline-delimited JSON, one {@link LogStreamEvent} per line.
+     */
+    @GetMapping(path = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<LogStreamEvent> streamLogsAsNdjson(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "0") int count) {
+        return streamService.stream(cursor, count);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleBadRequest(IllegalArgumentException ex) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+    }
+
+    /**
+     * Runs the query on every cluster member, or on this instance if {@code local} is set or there is no cluster.
+     * A local page is served from the response cache while the store is at the version the page was read at,
+     * unless the store is shared and its versions miss the writes of other instances. A revalidation whose tag is
+     * still current is answered with 304 before the page is looked up, so it reads nothing even once the page has
+     * left the cache.
+     *
+     * @param key     the query and all of its parameters
+     * @param version store version covering the query, read before the query runs
+     * @param window  time window of the query, if its result also changes with the clock
+     */
+    private ResponseEntity<?> query(WebRequest request, boolean local, List<?> key, LongSupplier version,
+                                    Duration window, String cursor, int start, int count,
+                                    ClusterLogFanout.LocalQuery query) {
+        if (local || fanout == null) {
+            if (!responseCache.isEnabled()) {
+                return toResponse(query.query(cursor, start, count));
+            }
+            long current = version.getAsLong();
+            String etag = responseCache.currentTag(request.getHeader(HttpHeaders.IF_NONE_MATCH), current);
+            if (etag != null && request.checkNotModified(etag)) {
+                // the 304 and its ETag are already on the response
+                return null;
+            }
+            LogResponseCache.CachedPage page = responseCache.get(key, current, window,
+                    () -> query.query(cursor, start, count));
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    .eTag(page.getEtag())
+                    .cacheControl(CacheControl.noCache())
+                    .contentType(MediaType.APPLICATION_JSON);
+            if (page.getNextCursor() != null) {
+                response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+            }
+            return response.body(page.getBody());
+        }
+        return toResponse(fanout.query(ServletUriComponentsBuilder.fromCurrentRequest().build(),
+                cursor, start, count, query));
+    }
+
+    private ResponseEntity<List<ApplianceLog>> toResponse(LogPage page) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNextCursor());
+        }
+        if (!page.getUnavailableNodes().isEmpty()) {
+            response.header(UNAVAILABLE_NODES_HEADER, String.join(",", page.getUnavailableNodes()));
+        }
+        return response.body(page.getLogs());
     }
 }
@@ -1,52 +1,145 @@
 package com.my.octools.api;
 
 import com.my.octools.storage.ApplianceLog;
-import com.my.octools.storage.InMemoryApplianceLogStore;
+import com.my.octools.storage.ApplianceLogRepository;
+import com.my.octools.storage.ApplianceLogWriter;
+import com.my.octools.storage.LogCursor;
+import com.my.octools.storage.LogQuery;
+import com.my.octools.storage.LogQueryPlanner;
+import com.my.octools.storage.LogRollup;
+import com.my.octools.storage.LogStats;
+import com.my.octools.storage.LogVersions;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
 import java.time.Instant;
-import java.util.Comparator;
 import java.util.List;
 
+/**
+ * Query service for appliance logs.
+ * <p>
+ * Every query supports two pagination modes. With a cursor, the store seeks straight to the cursor
+ * position and reads {@code count} entries. Without one, the legacy {@code start}/{@code count} offset
+ * is applied, which reads {@code start + count} entries from the already sorted store.
+ * <p>
+ * Before reading, a query waits for the entries the processor has written but the write-behind stage has not yet
+ * saved, for at most the writer's read delay, so the logs of a call show up as soon as it has returned. With the
+ * jpa store, which is its own writer, the wait is for its buffered entries to be committed.
+ * <p>
+ * {@link #getVersion()} and {@link #getVersion(String)} wait the same way and then return the store's write
+ * version; a query run after reading a version sees every change up to it.
+ */
 @Service
 public class ApplianceLogService {
-    private final InMemoryApplianceLogStore store;
+    private final ApplianceLogRepository store;
+    private final ApplianceLogWriter writer;
+    private final LogRollup rollup;
+    private final LogVersions versions;
+    private final LogQueryPlanner planner;
 
-    public ApplianceLogService(InMemoryApplianceLogStore store) {
+    public ApplianceLogService(ApplianceLogRepository store, ApplianceLogWriter writer, LogRollup rollup,
+                               LogVersions versions) {
         this.store = store;
+        this.writer = writer;
+        this.rollup = rollup;
+        this.versions = versions;
+        this.planner = new LogQueryPlanner(store, rollup);
     }
 
     public List<ApplianceLog> getAllLogs(int start, int count) {
-        return store.findAll().stream()
-                .sorted(Comparator.comparing(ApplianceLog::getTimestamp).reversed())
-                .skip(start)
-                .limit(count)
-                .toList();
+        return getAllLogs(null, start, count).getLogs();
     }
 
     public List<ApplianceLog> getLogsByApplianceId(String id, int start, int count) {
-        return store.findByApplianceId(id).stream()
-                .sorted(Comparator.comparing(ApplianceLog::getTimestamp).reversed())
-                .skip(start)
-                .limit(count)
-                .toList();
+        return getLogsByApplianceId(id, null, start, count).getLogs();
     }
 
     public List<ApplianceLog> getRecentLogs(Duration duration, int start, int count) {
-        Instant cutoff = Instant.now().minus(duration);
-        return store.findByTimestampAfter(cutoff).stream()
-                .sorted(Comparator.comparing(ApplianceLog::getTimestamp).reversed())
-                .skip(start)
-                .limit(count)
-                .toList();
+        return getRecentLogs(duration, null, start, count).getLogs();
     }
 
     public List<ApplianceLog> getFailedLogs(int start, int count) {
-        return store.findBySuccessFalse().stream()
-                .sorted(Comparator.comparing(ApplianceLog::getTimestamp).reversed())
-                .skip(start)
-                .limit(count)
-                .toList();
+        return getFailedLogs(null, start, count).getLogs();
+    }
+
+    public LogPage getAllLogs(String cursor, int start, int count) {
+        return page(cursor, start, count, store::findAll);
+    }
+
+    public LogPage getLogsByApplianceId(String id, String cursor, int start, int count) {
+        return page(cursor, start, count, (after, limit) -> store.findByApplianceId(id, after, limit));
+    }
+
+    public LogPage getRecentLogs(Duration duration, String cursor, int start, int count) {
+        Instant cutoff = Instant.now().minus(duration);
+        return page(cursor, start, count, (after, limit) -> store.findByTimestampAfter(cutoff, after, limit));
+    }
+
+    public LogPage getFailedLogs(String cursor, int start, int count) {
+        return page(cursor, start, count, store::findBySuccessFalse);
+    }
+
+    /**
+     * Finds the entries matching every predicate of the query, reading the access path the planner expects to be
+     * cheapest and filtering the rest while reading.
+     */
+    public LogPage queryLogs(LogQuery query, String cursor, int start, int count) {
+        return page(cursor, start, count, (after, limit) -> planner.find(query, after, limit));
+    }
+
+    /**
+     * @return write version of the whole store
+     */
+    public long getVersion() {
+        writer.awaitVisible();
+        return versions.getVersion();
+    }
+
+    /**
+     * @return write version of the entries of one appliance
+     */
+    public long getVersion(String applianceId) {
+        writer.awaitVisible();
+        return versions.getVersion(applianceId);
+    }
+
+    /**
+     * Counts the entries of the last {@code window} from the rolled-up per-minute buckets, without reading logs.
+     *
+     * @param groupBy {@code none}, {@code action} or {@code minute}
+     * @throws IllegalArgumentException if the window is not positive or groupBy is unknown
+     */
+    public LogStats getStats(Duration window, String groupBy) {
+        LogRollup.GroupBy grouping = LogRollup.GroupBy.parse(groupBy);
+        writer.awaitVisible();
+        return rollup.stats(window, grouping);
+    }
+
+    /**
+     * Reads one page from a cursor-aware finder. The cursor takes precedence over {@code start}.
+     */
+    private LogPage page(String cursor, int start, int count, PagedFinder finder) {
+        if (start < 0 || count < 0) {
+            throw new IllegalArgumentException("start and count must not be negative");
+        }
+        LogCursor after = LogCursor.decode(cursor);
+        writer.awaitVisible();
+        List<ApplianceLog> logs;
+        if (after != null) {
+            logs = finder.find(after, count);
+        } else {
+            List<ApplianceLog> head = finder.find(null, (int) Math.min((long) start + count, Integer.MAX_VALUE));
+            logs = start >= head.size() ? List.of() : head.subList(start, head.size());
+        }
+        // A full page may have a successor, so hand out a cursor to it
+        String nextCursor = count > 0 && logs.size() == count
+                ? LogCursor.of(logs.get(logs.size() - 1)).encode()
+                : null;
+        return new LogPage(logs, nextCursor);
+    }
+
+    @FunctionalInterface
+    private interface PagedFinder {
+        List<ApplianceLog> find(LogCursor after, int limit);
     }
 }
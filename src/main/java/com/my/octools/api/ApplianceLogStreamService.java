@@ -0,0 +1,151 @@
+package com.my.octools.api;
+
+import com.my.octools.config.LogStoreProperties;
+import com.my.octools.storage.ApplianceLog;
+import com.my.octools.storage.ApplianceLogRepository;
+import com.my.octools.storage.LogCursor;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Live tail of the appliance log: replays stored entries, then pushes every newly saved entry.
+ * <p>
+ * Each subscriber has its own bounded buffer. When a slow subscriber's buffer is full, further entries are
+ * dropped for that subscriber only and reported to it as a single {@link LogStreamEvent#LAG} event once it
+ * catches up, so a slow client costs at most one buffer of memory. An idle subscriber holds no thread.
+ */
+@Service
+public class ApplianceLogStreamService {
+
+    private static final int REPLAY_PAGE_SIZE = 256;
+
+    private final ApplianceLogRepository repository;
+    private final int bufferSize;
+    private final int maxReplay;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+    public ApplianceLogStreamService(ApplianceLogRepository repository, LogStoreProperties properties) {
+        this.repository = repository;
+        this.bufferSize = properties.getStream().getBufferSize();
+        this.maxReplay = properties.getStream().getMaxReplay();
+        repository.addListener(this::publish);
+    }
+
+    /**
+     * Streams stored entries oldest first, followed by entries saved from now on.
+     *
+     * @param cursor replay the entries newer than this cursor (nullable)
+     * @param count  without a cursor, the number of newest entries to replay
+     * @return infinite stream of log and lag events
+     * @throws IllegalArgumentException if the cursor is malformed or count is negative
+     */
+    public Flux<LogStreamEvent> stream(String cursor, int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count must not be negative");
+        }
+        LogCursor from = LogCursor.decode(cursor);
+        return Flux.defer(() -> {
+            // subscribe before reading the replay, so nothing saved in between is missed
+            Subscriber subscriber = new Subscriber(bufferSize);
+            subscribers.add(subscriber);
+            List<LogStreamEvent> replay = replay(from, count);
+            Set<Long> replayed = new HashSet<>();
+            replay.stream()
+                    .filter(event -> event.getLog() != null)
+                    .forEach(event -> replayed.add(event.getLog().getSequence()));
+            Flux<LogStreamEvent> live = subscriber.sink.asFlux()
+                    .filter(event -> event.getLog() == null || !replayed.contains(event.getLog().getSequence()));
+            return Flux.concat(Flux.fromIterable(replay), live)
+                    .doFinally(signal -> subscribers.remove(subscriber));
+        });
+    }
+
+    /**
+     * @return number of open streams
+     */
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    private void publish(ApplianceLog log) {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(log);
+        }
+    }
+
+    /**
+     * Collects the entries to replay, oldest first. If more than {@code maxReplay} entries are newer than the
+     * cursor, only the newest are replayed, preceded by a lag event marking the gap.
+     */
+    private List<LogStreamEvent> replay(LogCursor from, int count) {
+        List<ApplianceLog> newestFirst = new ArrayList<>();
+        boolean truncated = false;
+        if (from == null) {
+            if (count > 0) {
+                newestFirst = new ArrayList<>(repository.findAll(null, Math.min(count, maxReplay)));
+            }
+        } else {
+            LogCursor page = null;
+            scan:
+            while (true) {
+                List<ApplianceLog> batch = repository.findAll(page, REPLAY_PAGE_SIZE);
+                for (ApplianceLog log : batch) {
+                    if (!from.isNewer(log)) {
+                        break scan;
+                    }
+                    if (newestFirst.size() == maxReplay) {
+                        truncated = true;
+                        break scan;
+                    }
+                    newestFirst.add(log);
+                }
+                if (batch.size() < REPLAY_PAGE_SIZE) {
+                    break;
+                }
+                page = LogCursor.of(batch.get(batch.size() - 1));
+            }
+        }
+        List<LogStreamEvent> events = new ArrayList<>(newestFirst.size() + 1);
+        if (truncated && !newestFirst.isEmpty()) {
+            events.add(LogStreamEvent.gapBefore(newestFirst.get(newestFirst.size() - 1)));
+        }
+        Collections.reverse(newestFirst);
+        newestFirst.forEach(log -> events.add(LogStreamEvent.log(log)));
+        return events;
+    }
+
+    /**
+     * Per-subscriber bounded buffer between the saving threads and the HTTP response.
+     */
+    private static final class Subscriber {
+        private final Sinks.Many<LogStreamEvent> sink;
+        // Entries dropped since the last delivered event, guarded by this
+        private long dropped;
+
+        private Subscriber(int bufferSize) {
+            this.sink = Sinks.many().unicast().onBackpressureBuffer(new ArrayBlockingQueue<>(bufferSize));
+        }
+
+        private synchronized void offer(ApplianceLog log) {
+            if (dropped > 0) {
+                if (sink.tryEmitNext(LogStreamEvent.dropped(dropped)).isFailure()) {
+                    dropped++;
+                    return;
+                }
+                dropped = 0;
+            }
+            if (sink.tryEmitNext(LogStreamEvent.log(log)).isFailure()) {
+                dropped++;
+            }
+        }
+    }
+}
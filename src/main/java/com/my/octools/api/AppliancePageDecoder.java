@@ -0,0 +1,356 @@
+package com.my.octools.api;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import com.my.octools.api.entities.Appliance;
+import com.my.octools.api.entities.PageInfo;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Decodes an appliance page token by token as its bytes arrive, with an {@link ApplianceFilter} pushed down.
+ * <p>
+ * The {@code data} array is read with Jackson's non-blocking parser. Field values are compared in the parser's
+ * own character buffer and copied into reused buffers, and an {@link Appliance} is only created for an element
+ * that passes the filter; the timestamp is only parsed for live appliances. Allocation per page is therefore
+ * roughly proportional to the number of survivors instead of the page size. Unknown fields and nested values
+ * are skipped. A {@code lastHeardFromOn} that is neither null, an ISO-8601 string nor epoch seconds fails the
+ * page, since reading it as null would make a healthy appliance look silent.
+ * <p>
+ * A decoder holds the state of one page and is not thread-safe; create one per response.
+ */
+class AppliancePageDecoder {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private static final int DEPTH_ROOT = 1;
+    private static final int DEPTH_PAGE_INFO = 2;
+    private static final int DEPTH_ITEM = 3;
+
+    private enum Field {
+        OTHER, PAGE_INFO, DATA, HAS_NEXT_PAGE, END_CURSOR, TOTAL_COUNT, ID, SORT_INDEX, OP_STATUS, LAST_HEARD_FROM_ON
+    }
+
+    private final ApplianceFilter filter;
+    private final JsonParser parser;
+    private final ByteBufferFeeder feeder;
+
+    private int depth;
+    private boolean complete;
+    private Field rootField = Field.OTHER;
+    private Field field = Field.OTHER;
+    private PageInfo pageInfo;
+    private int scanned;
+    private long bytes;
+    private List<Appliance> matched = Collections.emptyList();
+
+    // Fields of the data element being read, reset at its start
+    private final StringBuilder id = new StringBuilder();
+    private boolean hasId;
+    private int sortIndex;
+    private boolean live;
+    private final StringBuilder lastHeard = new StringBuilder();
+    private boolean hasLastHeard;
+    private long lastHeardEpochSecond = Long.MIN_VALUE;
+    private int lastHeardNanos;
+
+    AppliancePageDecoder(ApplianceFilter filter) {
+        this.filter = filter;
+        try {
+            this.parser = JSON.createNonBlockingByteBufferParser();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        this.feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+    }
+
+    /**
+     * Decodes the response body, releasing every buffer once it has been parsed.
+     *
+     * @return the appliances that pass the filter, in page order; {@link #getPageInfo()} and
+     * {@link #getScanned()} are set once the flux completes
+     */
+    Flux<Appliance> decode(Flux<DataBuffer> body) {
+        return body.concatMapIterable(this::feed)
+                .concatWith(Flux.defer(() -> Flux.fromIterable(endOfInput())))
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    /**
+     * @return the page with the appliances collected from {@link #decode(Flux)}
+     */
+    FilteredAppliancePage toPage(List<Appliance> appliances) {
+        return new FilteredAppliancePage(pageInfo, appliances, scanned, bytes);
+    }
+
+    private List<Appliance> feed(DataBuffer buffer) {
+        try (DataBuffer.ByteBufferIterator chunks = buffer.readableByteBuffers()) {
+            while (chunks.hasNext()) {
+                feed(chunks.next());
+            }
+            return takeMatched();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+
+    /**
+     * Parses the next chunk of the body; matching appliances are collected until {@link #takeMatched()}.
+     */
+    void feed(ByteBuffer chunk) throws IOException {
+        bytes += chunk.remaining();
+        feeder.feedInput(chunk);
+        readAvailableTokens();
+    }
+
+    /**
+     * Signals the end of the body.
+     *
+     * @return appliances matched since the last {@link #takeMatched()}
+     * @throws UncheckedIOException if the body was truncated or had no {@code pageInfo}
+     */
+    List<Appliance> endOfInput() {
+        try {
+            feeder.endOfInput();
+            readAvailableTokens();
+            if (!complete) {
+                throw new JsonParseException(parser, "Appliance page ended before the closing brace");
+            }
+            if (pageInfo == null) {
+                throw new JsonParseException(parser, "Appliance page without pageInfo");
+            }
+            return takeMatched();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    List<Appliance> takeMatched() {
+        List<Appliance> result = matched;
+        matched = Collections.emptyList();
+        return result;
+    }
+
+    PageInfo getPageInfo() {
+        return pageInfo;
+    }
+
+    /**
+     * @return number of {@code data} elements read so far
+     */
+    int getScanned() {
+        return scanned;
+    }
+
+    /**
+     * @return number of body bytes fed so far
+     */
+    long getBytes() {
+        return bytes;
+    }
+
+    private void readAvailableTokens() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            onToken(token);
+        }
+    }
+
+    private void onToken(JsonToken token) throws IOException {
+        switch (token) {
+            case FIELD_NAME:
+                onFieldName(parser.currentName());
+                break;
+            case START_OBJECT:
+                checkNotLastHeard(token);
+                depth++;
+                if (depth == DEPTH_PAGE_INFO && rootField == Field.PAGE_INFO) {
+                    pageInfo = new PageInfo();
+                } else if (depth == DEPTH_ITEM && rootField == Field.DATA) {
+                    startItem();
+                }
+                break;
+            case END_OBJECT:
+                if (depth == DEPTH_ITEM && rootField == Field.DATA) {
+                    endItem();
+                }
+                depth--;
+                complete = depth == 0;
+                break;
+            case START_ARRAY:
+                checkNotLastHeard(token);
+                depth++;
+                break;
+            case END_ARRAY:
+                depth--;
+                break;
+            default:
+                onValue(token);
+                break;
+        }
+    }
+
+    private void onFieldName(String name) {
+        if (depth == DEPTH_ROOT) {
+            rootField = "pageInfo".equals(name) ? Field.PAGE_INFO : "data".equals(name) ? Field.DATA : Field.OTHER;
+        } else if (depth == DEPTH_PAGE_INFO && rootField == Field.PAGE_INFO) {
+            field = "hasNextPage".equals(name) ? Field.HAS_NEXT_PAGE
+                    : "endCursor".equals(name) ? Field.END_CURSOR
+                    : "totalCount".equals(name) ? Field.TOTAL_COUNT
+                    : Field.OTHER;
+        } else if (depth == DEPTH_ITEM && rootField == Field.DATA) {
+            field = "id".equals(name) ? Field.ID
+                    : "sortIndex".equals(name) ? Field.SORT_INDEX
+                    : "opStatus".equals(name) ? Field.OP_STATUS
+                    : "lastHeardFromOn".equals(name) ? Field.LAST_HEARD_FROM_ON
+                    : Field.OTHER;
+        }
+    }
+
+    private void onValue(JsonToken token) throws IOException {
+        boolean isNull = token == JsonToken.VALUE_NULL;
+        if (depth == DEPTH_PAGE_INFO && rootField == Field.PAGE_INFO) {
+            switch (field) {
+                case HAS_NEXT_PAGE:
+                    pageInfo.setHasNextPage(token == JsonToken.VALUE_TRUE);
+                    break;
+                case END_CURSOR:
+                    pageInfo.setEndCursor(isNull ? null : parser.getText());
+                    break;
+                case TOTAL_COUNT:
+                    pageInfo.setTotalCount(isNull ? 0 : parser.getIntValue());
+                    break;
+                default:
+                    break;
+            }
+        } else if (depth == DEPTH_ITEM && rootField == Field.DATA) {
+            switch (field) {
+                case ID:
+                    hasId = !isNull;
+                    id.setLength(0);
+                    if (hasId) {
+                        id.append(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                    }
+                    break;
+                case SORT_INDEX:
+                    sortIndex = isNull ? 0 : parser.getIntValue();
+                    break;
+                case OP_STATUS:
+                    live = token == JsonToken.VALUE_STRING && textEquals(ApplianceFilter.LIVE);
+                    break;
+                case LAST_HEARD_FROM_ON:
+                    readLastHeard(token);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Keeps the timestamp as text, or as epoch seconds when the backend sends a number, until it is needed.
+     * A decimal number is read as seconds and nanoseconds, like Jackson's {@code InstantDeserializer} does.
+     *
+     * @throws JsonParseException for any other value than null, a string or a number
+     */
+    private void readLastHeard(JsonToken token) throws IOException {
+        lastHeard.setLength(0);
+        lastHeardEpochSecond = Long.MIN_VALUE;
+        lastHeardNanos = 0;
+        switch (token) {
+            case VALUE_NULL:
+                hasLastHeard = false;
+                break;
+            case VALUE_STRING:
+                hasLastHeard = true;
+                lastHeard.append(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                break;
+            case VALUE_NUMBER_INT:
+                hasLastHeard = true;
+                lastHeardEpochSecond = parser.getLongValue();
+                break;
+            case VALUE_NUMBER_FLOAT:
+                hasLastHeard = true;
+                BigDecimal seconds = parser.getDecimalValue();
+                lastHeardEpochSecond = seconds.longValue();
+                lastHeardNanos = seconds.subtract(BigDecimal.valueOf(lastHeardEpochSecond))
+                        .movePointRight(9).intValue();
+                break;
+            default:
+                throw new JsonParseException(parser, "Unsupported lastHeardFromOn value " + token);
+        }
+    }
+
+    private void checkNotLastHeard(JsonToken token) throws JsonParseException {
+        if (depth == DEPTH_ITEM && rootField == Field.DATA && field == Field.LAST_HEARD_FROM_ON) {
+            throw new JsonParseException(parser, "Unsupported lastHeardFromOn value " + token);
+        }
+    }
+
+    private boolean textEquals(String expected) throws IOException {
+        int length = parser.getTextLength();
+        if (length != expected.length()) {
+            return false;
+        }
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        for (int i = 0; i < length; i++) {
+            if (chars[offset + i] != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void startItem() {
+        id.setLength(0);
+        hasId = false;
+        sortIndex = 0;
+        live = false;
+        lastHeard.setLength(0);
+        hasLastHeard = false;
+        lastHeardEpochSecond = Long.MIN_VALUE;
+        lastHeardNanos = 0;
+        field = Field.OTHER;
+    }
+
+    private void endItem() {
+        scanned++;
+        if (!live) {
+            return;
+        }
+        Instant lastHeardFromOn = null;
+        if (hasLastHeard) {
+            lastHeardFromOn = lastHeardEpochSecond != Long.MIN_VALUE
+                    ? Instant.ofEpochSecond(lastHeardEpochSecond, lastHeardNanos)
+                    : Instant.parse(lastHeard);
+        }
+        if (!filter.isSilent(lastHeardFromOn)) {
+            return;
+        }
+        Appliance appliance = new Appliance();
+        appliance.setId(hasId ? id.toString() : null);
+        appliance.setSortIndex(sortIndex);
+        appliance.setOpStatus(ApplianceFilter.LIVE);
+        appliance.setLastHeardFromOn(lastHeardFromOn);
+        if (matched.isEmpty()) {
+            matched = new ArrayList<>();
+        }
+        matched.add(appliance);
+    }
+}
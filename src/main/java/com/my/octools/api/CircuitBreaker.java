@@ -0,0 +1,254 @@
+package com.my.octools.api;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.my.octools.config.ApiClientProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker of one appliance API operation.
+ * <p>
+ * While {@link State#CLOSED} every call goes through and its outcome is recorded in a window of the last
+ * {@code windowSize} calls. Once the window holds at least {@code minimumCalls} outcomes and the share of
+ * failures reaches {@code failureRateThreshold}, the circuit opens. Only failures that point at an unhealthy
+ * backend count: timeouts, 429, 5xx and connection errors. Other 4xx answers concern the single appliance.
+ * <p>
+ * While {@link State#OPEN} calls fail immediately with a {@link CircuitBreakerOpenException}, so the processor
+ * stops piling retries onto a backend that cannot keep up. After {@code openDuration} the circuit turns
+ * {@link State#HALF_OPEN} and lets {@code halfOpenCalls} trial calls through: the circuit closes with an empty
+ * window when all of them succeed and opens again on the first failure.
+ * <p>
+ * Outcomes are taken from the returned future, so a timeout applied by the caller counts as a failure. A reactive
+ * call only sees a timeout applied inside it; a cancelled one records nothing, except that a cancelled trial call
+ * counts as a failure, so the circuit cannot stay half-open without trials left.
+ */
+public class CircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private enum Permit {
+        DENIED, CALL, TRIAL
+    }
+
+    private final String operation;
+    private final boolean enabled;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final LongSupplier nanoClock;
+    private final AtomicLong rejected = new AtomicLong();
+
+    // All fields below are guarded by this
+    private final boolean[] window;
+    private int windowIndex;
+    private int recorded;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int trialsLeft;
+    private int trialsSucceeded;
+    private long transitions;
+
+    public CircuitBreaker(String operation, ApiClientProperties.CircuitBreaker config) {
+        this(operation, config, System::nanoTime);
+    }
+
+    @VisibleForTesting
+    CircuitBreaker(String operation, ApiClientProperties.CircuitBreaker config, LongSupplier nanoClock) {
+        this.operation = operation;
+        this.enabled = config.isEnabled();
+        this.window = new boolean[Math.max(1, config.getWindowSize())];
+        this.minimumCalls = Math.max(1, Math.min(config.getMinimumCalls(), window.length));
+        this.failureRateThreshold = config.getFailureRateThreshold();
+        this.openNanos = config.getOpenDuration().toNanos();
+        this.halfOpenCalls = Math.max(1, config.getHalfOpenCalls());
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Starts the call unless the circuit is open.
+     *
+     * @param call starts the call
+     * @return the future of the call, returned as is, or a future failed with a
+     * {@link CircuitBreakerOpenException} if the call was not permitted
+     */
+    public <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        Permit permit = acquire();
+        if (permit == Permit.DENIED) {
+            rejected.incrementAndGet();
+            return CompletableFuture.failedFuture(new CircuitBreakerOpenException(operation));
+        }
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException ex) {
+            future = CompletableFuture.failedFuture(ex);
+        }
+        future.whenComplete((result, ex) -> onComplete(permit, isFailure(ex)));
+        return future;
+    }
+
+    /**
+     * Reactive counterpart of {@link #call(Supplier)}: asks for a permit on every subscription.
+     *
+     * @param call the call
+     * @return {@code call}, or a Mono failed with a {@link CircuitBreakerOpenException} if the call was not permitted
+     */
+    public <T> Mono<T> call(Mono<T> call) {
+        if (!enabled) {
+            return call;
+        }
+        return Mono.defer(() -> {
+            Permit permit = acquire();
+            if (permit == Permit.DENIED) {
+                rejected.incrementAndGet();
+                return Mono.error(new CircuitBreakerOpenException(operation));
+            }
+            AtomicBoolean recorded = new AtomicBoolean();
+            return call.doOnSuccess(result -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            onComplete(permit, false);
+                        }
+                    })
+                    .doOnError(ex -> {
+                        if (recorded.compareAndSet(false, true)) {
+                            onComplete(permit, isFailure(ex));
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (recorded.compareAndSet(false, true) && permit == Permit.TRIAL) {
+                            onComplete(permit, true);
+                        }
+                    });
+        });
+    }
+
+    private synchronized Permit acquire() {
+        if (state == State.OPEN) {
+            if (nanoClock.getAsLong() - openedAt < openNanos) {
+                return Permit.DENIED;
+            }
+            transition(State.HALF_OPEN);
+            trialsLeft = halfOpenCalls;
+            trialsSucceeded = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialsLeft == 0) {
+                return Permit.DENIED;
+            }
+            trialsLeft--;
+            return Permit.TRIAL;
+        }
+        return Permit.CALL;
+    }
+
+    private synchronized void onComplete(Permit permit, boolean failure) {
+        if (permit == Permit.TRIAL) {
+            if (state != State.HALF_OPEN) {
+                return;
+            }
+            if (failure) {
+                open();
+            } else if (++trialsSucceeded == halfOpenCalls) {
+                resetWindow();
+                transition(State.CLOSED);
+            }
+            return;
+        }
+        // Calls started before the circuit opened do not count towards the next window
+        if (state != State.CLOSED) {
+            return;
+        }
+        if (recorded == window.length) {
+            failures -= window[windowIndex] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        window[windowIndex] = failure;
+        failures += failure ? 1 : 0;
+        windowIndex = (windowIndex + 1) % window.length;
+        if (recorded >= minimumCalls && failures >= failureRateThreshold * recorded) {
+            logger.warn("{} of the last {} {} calls failed", failures, recorded, operation);
+            open();
+        }
+    }
+
+    private void open() {
+        openedAt = nanoClock.getAsLong();
+        transition(State.OPEN);
+    }
+
+    private void resetWindow() {
+        windowIndex = 0;
+        recorded = 0;
+        failures = 0;
+    }
+
+    private void transition(State next) {
+        if (next == State.OPEN) {
+            logger.warn("Circuit breaker for {} {} -> OPEN, failing calls fast for {} ms",
+                    operation, state, openNanos / 1_000_000);
+        } else {
+            logger.info("Circuit breaker for {} {} -> {}", operation, state, next);
+        }
+        state = next;
+        transitions++;
+    }
+
+    /**
+     * @return true if the failure says the backend is unhealthy rather than the single request being wrong
+     */
+    static boolean isFailure(Throwable ex) {
+        if (ex == null) {
+            return false;
+        }
+        Throwable cause = ApiException.rootCause(ex);
+        return !(cause instanceof ApiException) || ((ApiException) cause).isOverload();
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return the current state; an open circuit whose open duration has passed turns half-open on the next call
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return failure rate over the current window, NaN while it is empty
+     */
+    public synchronized double getFailureRate() {
+        return recorded == 0 ? Double.NaN : (double) failures / recorded;
+    }
+
+    /**
+     * @return number of calls failed fast because the circuit was open
+     */
+    public long getRejectedCalls() {
+        return rejected.get();
+    }
+
+    /**
+     * @return number of state changes since startup
+     */
+    public synchronized long getTransitions() {
+        return transitions;
+    }
+}
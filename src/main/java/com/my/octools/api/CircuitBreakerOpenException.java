@@ -0,0 +1,20 @@
+package com.my.octools.api;
+
+/**
+ * Thrown instead of calling the appliance API while the circuit breaker of the operation is open.
+ * <p>
+ * Not an {@link ApiException}: the backend was never asked, so the call says nothing about its load.
+ */
+public class CircuitBreakerOpenException extends RuntimeException {
+
+    private final String operation;
+
+    public CircuitBreakerOpenException(String operation) {
+        super("Circuit breaker for " + operation + " is open, call not sent");
+        this.operation = operation;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+}
@@ -0,0 +1,58 @@
+package com.my.octools.api;
+
+import com.my.octools.api.entities.Appliance;
+import com.my.octools.api.entities.AppliancePage;
+import com.my.octools.api.entities.PageInfo;
+
+import java.util.List;
+
+/**
+ * A page of appliances reduced to the ones that passed an {@link ApplianceFilter}, with the page's cursor.
+ */
+public class FilteredAppliancePage {
+
+    private final PageInfo pageInfo;
+    private final List<Appliance> appliances;
+    private final int scanned;
+    private final long bytes;
+
+    public FilteredAppliancePage(PageInfo pageInfo, List<Appliance> appliances, int scanned, long bytes) {
+        this.pageInfo = pageInfo;
+        this.appliances = appliances;
+        this.scanned = scanned;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Filters a fully decoded page.
+     */
+    public static FilteredAppliancePage of(AppliancePage page, ApplianceFilter filter) {
+        List<Appliance> data = page.getData() != null ? page.getData() : List.of();
+        return new FilteredAppliancePage(page.getPageInfo(), filter.apply(data), data.size(), 0);
+    }
+
+    public PageInfo getPageInfo() {
+        return pageInfo;
+    }
+
+    /**
+     * @return the appliances that passed the filter, in page order
+     */
+    public List<Appliance> getAppliances() {
+        return appliances;
+    }
+
+    /**
+     * @return number of appliances on the page before filtering
+     */
+    public int getScanned() {
+        return scanned;
+    }
+
+    /**
+     * @return size of the response body, 0 if the page was not decoded from the raw body
+     */
+    public long getBytes() {
+        return bytes;
+    }
+}
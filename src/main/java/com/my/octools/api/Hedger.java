@@ -0,0 +1,138 @@
+package com.my.octools.api;
+
+import com.my.octools.config.ApiClientProperties;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Hedges an idempotent call: when the first attempt has not answered within the hedge delay, a second one is
+ * sent and whichever succeeds first wins. The loser is cancelled.
+ * <p>
+ * The hedge delay is the configured percentile of the latencies of the last {@value #SAMPLES} successful
+ * attempts, bounded by {@code minDelay} and {@code maxDelay}. With a p95 delay only about one call in twenty
+ * is hedged, which cuts the tail latency of a slow backend instance at the cost of a few percent extra load.
+ * The call fails only once every attempt that was sent has failed.
+ */
+class Hedger {
+
+    static final int SAMPLES = 256;
+
+    private final ScheduledExecutorService scheduler;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final long maxDelayNanos;
+    private final int minSamples;
+    private final AtomicLong hedgesSent = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+
+    // Ring of the latest successful attempt latencies, guarded by itself
+    private final long[] latencies = new long[SAMPLES];
+    private int latencyIndex;
+    private int latencyCount;
+
+    Hedger(ApiClientProperties.Hedge config, ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+        this.percentile = config.getPercentile();
+        this.minDelayNanos = config.getMinDelay().toNanos();
+        this.maxDelayNanos = Math.max(minDelayNanos, config.getMaxDelay().toNanos());
+        this.minSamples = Math.max(1, Math.min(config.getMinSamples(), SAMPLES));
+    }
+
+    /**
+     * @param attempt starts one attempt of the call
+     * @return future completed by the first successful attempt, or failed once all attempts failed
+     */
+    <T> CompletableFuture<T> call(Supplier<CompletableFuture<T>> attempt) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        List<CompletableFuture<T>> attempts = new CopyOnWriteArrayList<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        start(attempt, false, result, attempts, pending);
+        ScheduledFuture<?> hedge = scheduler.schedule(() -> {
+            if (!result.isDone()) {
+                pending.incrementAndGet();
+                hedgesSent.incrementAndGet();
+                start(attempt, true, result, attempts, pending);
+            }
+        }, getDelay().toNanos(), TimeUnit.NANOSECONDS);
+        result.whenComplete((value, ex) -> {
+            hedge.cancel(false);
+            attempts.forEach(loser -> loser.cancel(true));
+        });
+        return result;
+    }
+
+    private <T> void start(Supplier<CompletableFuture<T>> attempt, boolean hedged, CompletableFuture<T> result,
+                           List<CompletableFuture<T>> attempts, AtomicInteger pending) {
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = attempt.get();
+        } catch (RuntimeException ex) {
+            future = CompletableFuture.failedFuture(ex);
+        }
+        attempts.add(future);
+        if (result.isDone()) {
+            future.cancel(true);
+            return;
+        }
+        future.whenComplete((value, ex) -> {
+            if (ex == null) {
+                recordLatency(System.nanoTime() - start);
+                if (result.complete(value) && hedged) {
+                    hedgesWon.incrementAndGet();
+                }
+            } else if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(ex);
+            }
+        });
+    }
+
+    private void recordLatency(long nanos) {
+        synchronized (latencies) {
+            latencies[latencyIndex] = nanos;
+            latencyIndex = (latencyIndex + 1) % SAMPLES;
+            latencyCount = Math.min(SAMPLES, latencyCount + 1);
+        }
+    }
+
+    /**
+     * @return how long the first attempt may take before a second one is sent
+     */
+    Duration getDelay() {
+        long[] sorted;
+        synchronized (latencies) {
+            if (latencyCount < minSamples) {
+                return Duration.ofNanos(maxDelayNanos);
+            }
+            sorted = Arrays.copyOf(latencies, latencyCount);
+        }
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile * sorted.length) - 1;
+        long delay = sorted[Math.max(0, Math.min(sorted.length - 1, rank))];
+        return Duration.ofNanos(Math.max(minDelayNanos, Math.min(maxDelayNanos, delay)));
+    }
+
+    /**
+     * @return number of second attempts sent
+     */
+    long getHedgesSent() {
+        return hedgesSent.get();
+    }
+
+    /**
+     * @return number of calls answered by the second attempt
+     */
+    long getHedgesWon() {
+        return hedgesWon.get();
+    }
+}
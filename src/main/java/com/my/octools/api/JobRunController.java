@@ -0,0 +1,43 @@
+package com.my.octools.api;
+
+import com.my.octools.service.JobCoordinator;
+import com.my.octools.service.JobRun;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.Duration;
+
+/**
+ * REST controller exposing the history of appliance job runs.
+ */
+@RestController
+@RequestMapping("/api/runs")
+public class JobRunController {
+
+    private final JobCoordinator coordinator;
+
+    public JobRunController(JobCoordinator coordinator) {
+        this.coordinator = coordinator;
+    }
+
+    @GetMapping
+    public RunHistory getRecentRuns(@RequestParam(defaultValue = "20") int count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("count must not be negative");
+        }
+        Duration period = coordinator.getSchedulePeriod();
+        return new RunHistory(period != null ? period.toMillis() : null, coordinator.getOverlapPolicy(),
+                coordinator.getSkippedTicks(), coordinator.getCoalescedTicks(), coordinator.getRecentRuns(count));
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<JobRun> getRun(@PathVariable long id) {
+        return ResponseEntity.of(coordinator.getRun(id));
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleBadRequest(IllegalArgumentException ex) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(ex.getMessage());
+    }
+}
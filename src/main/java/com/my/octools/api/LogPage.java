@@ -0,0 +1,43 @@
+package com.my.octools.api;
+
+import com.my.octools.storage.ApplianceLog;
+
+import java.util.List;
+
+/**
+ * A page of appliance logs together with the opaque cursor of the following page.
+ */
+public class LogPage {
+
+    private final List<ApplianceLog> logs;
+    private final String nextCursor;
+    private final List<String> unavailableNodes;
+
+    public LogPage(List<ApplianceLog> logs, String nextCursor) {
+        this(logs, nextCursor, List.of());
+    }
+
+    public LogPage(List<ApplianceLog> logs, String nextCursor, List<String> unavailableNodes) {
+        this.logs = logs;
+        this.nextCursor = nextCursor;
+        this.unavailableNodes = unavailableNodes;
+    }
+
+    public List<ApplianceLog> getLogs() {
+        return logs;
+    }
+
+    /**
+     * @return cursor to pass as {@code cursor} to fetch the next page, or null if this is the last page
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * @return node IDs of the cluster members whose logs are missing from a cluster-wide page, empty otherwise
+     */
+    public List<String> getUnavailableNodes() {
+        return unavailableNodes;
+    }
+}
@@ -0,0 +1,238 @@
+package com.my.octools.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.annotations.VisibleForTesting;
+import com.my.octools.config.LogStoreProperties;
+import com.my.octools.storage.ApplianceLog;
+import com.my.octools.storage.LogVersions;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.stereotype.Service;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Serialized log pages keyed by query and store version, so that a repeated poll of an unchanged store costs a
+ * map lookup instead of a query and a serialization.
+ * <p>
+ * A page is reused while the store is at the version it was read at. Pages of a time window such as
+ * {@code /recent} also expire once their oldest entry drops out of the window, the first moment the same query
+ * returns something else without a write. Every page carries an entity tag made of the store's epoch, the version
+ * and, for windowed pages, that expiry, so clients can revalidate with {@code If-None-Match}. The least recently
+ * used pages are dropped beyond {@code max-entries}, and pages larger than {@code max-body-size} are not kept.
+ * <p>
+ * Whether a tag is still current follows from the tag alone, so {@link #currentTag} lets a revalidation be answered
+ * before the query runs, whether or not its page is still cached.
+ * <p>
+ * When the store is shared with other instances the versions miss their writes, so the cache is
+ * {@link #isEnabled() disabled} and queries are neither cached nor tagged.
+ */
+@Service
+public class LogResponseCache implements MeterBinder {
+
+    private final ObjectMapper objectMapper;
+    private final String epoch;
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long maxBodyBytes;
+    private final Map<List<?>, CachedPage> pages;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public LogResponseCache(ObjectMapper objectMapper, LogVersions versions, LogStoreProperties properties) {
+        this.objectMapper = objectMapper;
+        this.epoch = versions.getEpoch();
+        this.enabled = versions.isComplete();
+        this.maxEntries = properties.getResponseCache().getMaxEntries();
+        this.maxBodyBytes = properties.getResponseCache().getMaxBodySize().toBytes();
+        this.pages = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<?>, CachedPage> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached page of the query at this version, or runs and serializes the query.
+     *
+     * @param key     identifies the query and all of its parameters
+     * @param version store version read before the query runs
+     * @param window  for queries of the entries newer than {@code now - window}, otherwise null
+     * @param query   reads the page from the store
+     */
+    public CachedPage get(List<?> key, long version, Duration window, Supplier<LogPage> query) {
+        return get(key, version, window, query, Instant.now());
+    }
+
+    @VisibleForTesting
+    CachedPage get(List<?> key, long version, Duration window, Supplier<LogPage> query, Instant now) {
+        CachedPage cached;
+        synchronized (pages) {
+            cached = pages.get(key);
+        }
+        if (cached != null && cached.version == version && now.isBefore(cached.validUntil)) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        CachedPage page = serialize(query.get(), version, window);
+        if (page.body.length <= maxBodyBytes) {
+            synchronized (pages) {
+                CachedPage current = pages.get(key);
+                // a slower reader of an older version must not replace a newer page
+                if (current == null || current.version <= version) {
+                    pages.put(key, page);
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Finds the tag in an {@code If-None-Match} header that a page read now would still carry: a tag of this
+     * instance at this version and, for a windowed page, before its expiry.
+     *
+     * @param ifNoneMatch the request header, may be null
+     * @param version     store version covering the query
+     * @return the still current tag, or null if the page has to be read
+     */
+    public String currentTag(String ifNoneMatch, long version) {
+        return currentTag(ifNoneMatch, version, Instant.now());
+    }
+
+    @VisibleForTesting
+    String currentTag(String ifNoneMatch, long version, Instant now) {
+        if (ifNoneMatch == null) {
+            return null;
+        }
+        String prefix = versionTag(version);
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(prefix + '"')) {
+                return tag;
+            }
+            if (tag.length() > prefix.length() + 2 && tag.startsWith(prefix + '-') && tag.endsWith("\"")) {
+                try {
+                    long validUntil = Long.parseLong(tag.substring(prefix.length() + 1, tag.length() - 1),
+                            Character.MAX_RADIX);
+                    // the expiry is truncated to milliseconds, so this errs towards reading the page again
+                    if (now.toEpochMilli() < validUntil) {
+                        return tag;
+                    }
+                } catch (NumberFormatException ex) {
+                    // not a tag of this cache
+                }
+            }
+        }
+        return null;
+    }
+
+    private String versionTag(long version) {
+        return "\"" + epoch + '-' + Long.toString(version, Character.MAX_RADIX);
+    }
+
+    private CachedPage serialize(LogPage page, long version, Duration window) {
+        List<ApplianceLog> logs = page.getLogs();
+        Instant validUntil = window == null || logs.isEmpty()
+                ? Instant.MAX
+                : logs.get(logs.size() - 1).getTimestamp().plus(window);
+        StringBuilder etag = new StringBuilder(versionTag(version));
+        if (!validUntil.equals(Instant.MAX)) {
+            etag.append('-').append(Long.toString(validUntil.toEpochMilli(), Character.MAX_RADIX));
+        }
+        etag.append('"');
+        try {
+            byte[] body = objectMapper.writeValueAsBytes(logs);
+            return new CachedPage(body, page.getNextCursor(), etag.toString(), version, validUntil);
+        } catch (JsonProcessingException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * @return false if the store versions do not cover every write, in which case pages must be read from the
+     * store and sent without an entity tag
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return number of cached pages
+     */
+    public int size() {
+        synchronized (pages) {
+            return pages.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("octools.logs.response.cache", hits, AtomicLong::get)
+                .description("Log queries answered from the serialized page cache, or that had to read the store")
+                .tag("result", "hit")
+                .register(registry);
+        FunctionCounter.builder("octools.logs.response.cache", misses, AtomicLong::get)
+                .description("Log queries answered from the serialized page cache, or that had to read the store")
+                .tag("result", "miss")
+                .register(registry);
+    }
+
+    /**
+     * A page serialized as a JSON array, with the headers it is sent with.
+     */
+    public static final class CachedPage {
+        private final byte[] body;
+        private final String nextCursor;
+        private final String etag;
+        private final long version;
+        private final Instant validUntil;
+
+        CachedPage(byte[] body, String nextCursor, String etag, long version, Instant validUntil) {
+            this.body = body;
+            this.nextCursor = nextCursor;
+            this.etag = etag;
+            this.version = version;
+            this.validUntil = validUntil;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * @return cursor of the following page, or null
+         */
+        public String getNextCursor() {
+            return nextCursor;
+        }
+
+        /**
+         * @return strong entity tag, quoted
+         */
+        public String getEtag() {
+            return etag;
+        }
+    }
+}
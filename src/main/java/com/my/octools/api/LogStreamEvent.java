@@ -0,0 +1,59 @@
+package com.my.octools.api;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.my.octools.storage.ApplianceLog;
+import com.my.octools.storage.LogCursor;
+
+/**
+ * One event of the live log stream.
+ * <p>
+ * A {@value #LOG} event carries a saved entry and its cursor. A {@value #LAG} event reports entries this
+ * subscriber did not receive: either {@code dropped} live entries because it fell behind, or, after a
+ * truncated replay, a {@code cursor} from which the missing older entries can be paged with {@code GET /api/logs}.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LogStreamEvent {
+
+    static final String LOG = "log";
+    static final String LAG = "lag";
+
+    private final String type;
+    private final String cursor;
+    private final ApplianceLog log;
+    private final Long dropped;
+
+    private LogStreamEvent(String type, String cursor, ApplianceLog log, Long dropped) {
+        this.type = type;
+        this.cursor = cursor;
+        this.log = log;
+        this.dropped = dropped;
+    }
+
+    static LogStreamEvent log(ApplianceLog log) {
+        return new LogStreamEvent(LOG, LogCursor.of(log).encode(), log, null);
+    }
+
+    static LogStreamEvent dropped(long dropped) {
+        return new LogStreamEvent(LAG, null, null, dropped);
+    }
+
+    static LogStreamEvent gapBefore(ApplianceLog oldestReplayed) {
+        return new LogStreamEvent(LAG, LogCursor.of(oldestReplayed).encode(), null, null);
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getCursor() {
+        return cursor;
+    }
+
+    public ApplianceLog getLog() {
+        return log;
+    }
+
+    public Long getDropped() {
+        return dropped;
+    }
+}
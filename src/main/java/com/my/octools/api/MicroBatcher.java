@@ -0,0 +1,130 @@
+package com.my.octools.api;
+
+import com.my.octools.api.entities.BatchItemResult;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Coalesces single-ID calls into batch calls.
+ * <p>
+ * IDs submitted within {@code window} of the first pending ID are sent together, or earlier once {@code maxSize}
+ * distinct IDs are pending. Each caller gets its own future, completed from its entry in the batch result;
+ * an ID submitted twice in one window is sent once and completes both callers.
+ *
+ * @param <T> per-ID result type
+ */
+public class MicroBatcher<T> {
+
+    private final Function<List<String>, CompletableFuture<Map<String, BatchItemResult<T>>>> batchCall;
+    private final int maxSize;
+    private final Duration window;
+    private final ScheduledExecutorService scheduler;
+
+    private final Object lock = new Object();
+    // Guarded by lock
+    private Map<String, List<CompletableFuture<T>>> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> windowTimer;
+
+    /**
+     * @param batchCall sends one batch and returns a result for every ID in it
+     * @param maxSize   maximum number of distinct IDs per batch
+     * @param window    how long the first pending ID waits for others to join its batch
+     * @param scheduler fires the window timer
+     */
+    public MicroBatcher(Function<List<String>, CompletableFuture<Map<String, BatchItemResult<T>>>> batchCall,
+                        int maxSize, Duration window, ScheduledExecutorService scheduler) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1");
+        }
+        this.batchCall = batchCall;
+        this.maxSize = maxSize;
+        this.window = window;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Adds the ID to the current batch.
+     *
+     * @param id appliance identifier
+     * @return CompletableFuture with this ID's result, failed with {@link ApiException} if the backend reported
+     * an error for it
+     */
+    public CompletableFuture<T> submit(String id) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Map<String, List<CompletableFuture<T>>> full = null;
+        synchronized (lock) {
+            pending.computeIfAbsent(id, key -> new ArrayList<>(1)).add(result);
+            if (pending.size() >= maxSize) {
+                full = takePending();
+            } else if (windowTimer == null) {
+                windowTimer = scheduler.schedule(this::flush, window.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full != null) {
+            send(full);
+        }
+        return result;
+    }
+
+    /**
+     * Sends whatever is pending without waiting for the window to close.
+     */
+    public void flush() {
+        Map<String, List<CompletableFuture<T>>> batch = null;
+        synchronized (lock) {
+            if (!pending.isEmpty()) {
+                batch = takePending();
+            }
+        }
+        if (batch != null) {
+            send(batch);
+        }
+    }
+
+    private Map<String, List<CompletableFuture<T>>> takePending() {
+        Map<String, List<CompletableFuture<T>>> batch = pending;
+        pending = new LinkedHashMap<>();
+        if (windowTimer != null) {
+            windowTimer.cancel(false);
+            windowTimer = null;
+        }
+        return batch;
+    }
+
+    private void send(Map<String, List<CompletableFuture<T>>> batch) {
+        CompletableFuture<Map<String, BatchItemResult<T>>> call;
+        try {
+            call = batchCall.apply(new ArrayList<>(batch.keySet()));
+        } catch (RuntimeException ex) {
+            call = CompletableFuture.failedFuture(ex);
+        }
+        call.whenComplete((results, error) -> batch.forEach((id, callers) -> {
+            for (CompletableFuture<T> caller : callers) {
+                if (error != null) {
+                    caller.completeExceptionally(error);
+                } else {
+                    complete(caller, id, results.get(id));
+                }
+            }
+        }));
+    }
+
+    private void complete(CompletableFuture<T> caller, String id, BatchItemResult<T> item) {
+        if (item == null) {
+            caller.completeExceptionally(new ApiException(0, "No batch result returned for appliance " + id));
+        } else if (item.isSuccess()) {
+            caller.complete(item.getResult());
+        } else {
+            caller.completeExceptionally(new ApiException(item.getStatus(), item.getError()));
+        }
+    }
+}
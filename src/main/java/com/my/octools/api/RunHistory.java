@@ -0,0 +1,60 @@
+package com.my.octools.api;
+
+import com.my.octools.config.OverlapPolicy;
+import com.my.octools.service.JobRun;
+
+import java.util.List;
+
+/**
+ * Recent runs of the appliance job together with the schedule they are measured against.
+ */
+public class RunHistory {
+
+    private final Long schedulePeriodMillis;
+    private final OverlapPolicy overlapPolicy;
+    private final long skippedTicks;
+    private final long coalescedTicks;
+    private final List<JobRun> runs;
+
+    public RunHistory(Long schedulePeriodMillis, OverlapPolicy overlapPolicy, long skippedTicks,
+                      long coalescedTicks, List<JobRun> runs) {
+        this.schedulePeriodMillis = schedulePeriodMillis;
+        this.overlapPolicy = overlapPolicy;
+        this.skippedTicks = skippedTicks;
+        this.coalescedTicks = coalescedTicks;
+        this.runs = runs;
+    }
+
+    /**
+     * @return time between two scheduled runs; a run's {@code durationMillis} approaching it means runs are
+     * about to overlap
+     */
+    public Long getSchedulePeriodMillis() {
+        return schedulePeriodMillis;
+    }
+
+    public OverlapPolicy getOverlapPolicy() {
+        return overlapPolicy;
+    }
+
+    /**
+     * @return number of scheduled ticks dropped because the previous run was still in progress
+     */
+    public long getSkippedTicks() {
+        return skippedTicks;
+    }
+
+    /**
+     * @return number of scheduled ticks merged into an already queued run
+     */
+    public long getCoalescedTicks() {
+        return coalescedTicks;
+    }
+
+    /**
+     * @return recent runs, newest first, including the one in progress
+     */
+    public List<JobRun> getRuns() {
+        return runs;
+    }
+}
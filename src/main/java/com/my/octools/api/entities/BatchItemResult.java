@@ -0,0 +1,33 @@
+package com.my.octools.api.entities;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of one appliance in a batch drain/remediate call: either a result, or an error message
+ * with the HTTP status the backend reported for that appliance (0 if the call failed without a response).
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchItemResult<T> {
+    private String id;
+    private int status;
+    private T result;
+    private String error;
+
+    public static <T> BatchItemResult<T> success(String id, T result) {
+        return new BatchItemResult<>(id, 200, result, null);
+    }
+
+    public static <T> BatchItemResult<T> failure(String id, int status, String error) {
+        return new BatchItemResult<>(id, status, null, error);
+    }
+
+    @JsonIgnore
+    public boolean isSuccess() {
+        return error == null;
+    }
+}
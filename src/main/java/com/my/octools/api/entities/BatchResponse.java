@@ -0,0 +1,10 @@
+package com.my.octools.api.entities;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchResponse<T> {
+    private List<BatchItemResult<T>> results;
+}
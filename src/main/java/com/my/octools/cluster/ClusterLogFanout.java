@@ -0,0 +1,178 @@
+package com.my.octools.cluster;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.my.octools.api.LogPage;
+import com.my.octools.storage.ApplianceLog;
+import com.my.octools.storage.LogCursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.util.UriComponents;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Runs a log query on every member of the cluster and merges the results into one page.
+ * <p>
+ * Each instance only stores the logs of the appliances it processed, so a query is sent to the other members
+ * with {@code local=true} while it runs on the local store. All stores return entries in
+ * {@link ApplianceLog#NEWEST_FIRST} order and cursors are positions in that order, so the partial results are
+ * merged like sorted runs. With a cursor every member reads {@code count} entries after it; with an offset every
+ * member reads its first {@code start + count} entries and the merge skips {@code start}.
+ * <p>
+ * A member that fails or does not answer within the query timeout is left out, and its node ID is reported in
+ * {@link LogPage#getUnavailableNodes()} instead of failing the whole query.
+ */
+public class ClusterLogFanout {
+    private static final Logger logger = LoggerFactory.getLogger(ClusterLogFanout.class);
+
+    /** Query parameter that keeps a query on the instance that receives it. */
+    public static final String LOCAL_PARAM = "local";
+
+    private final ClusterMembership membership;
+    private final WebClient webClient;
+    private final Duration timeout;
+
+    public ClusterLogFanout(ClusterMembership membership, WebClient webClient, Duration timeout) {
+        this.membership = membership;
+        this.webClient = webClient;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Reads a page from all members.
+     *
+     * @param request the incoming request, forwarded to the other members with its path and query parameters
+     * @param cursor  cursor of the last entry of the previous page (nullable), takes precedence over start
+     * @param start   entries to skip when there is no cursor
+     * @param count   page size
+     * @param local   runs the query on this instance's store
+     */
+    public LogPage query(UriComponents request, String cursor, int start, int count, LocalQuery local) {
+        if (start < 0 || count < 0) {
+            throw new IllegalArgumentException("start and count must not be negative");
+        }
+        boolean seek = LogCursor.decode(cursor) != null;
+        int perMember = seek ? count : (int) Math.min((long) start + count, Integer.MAX_VALUE);
+
+        Map<ClusterMember, CompletableFuture<List<ApplianceLog>>> remote = new LinkedHashMap<>();
+        for (ClusterMember member : membership.getMembers()) {
+            if (!member.equals(membership.getSelf())) {
+                remote.put(member, fetch(member, request, seek ? cursor : null, perMember));
+            }
+        }
+        List<List<ApplianceLog>> results = new ArrayList<>();
+        results.add(local.query(seek ? cursor : null, 0, perMember).getLogs());
+        List<String> unavailable = new ArrayList<>();
+        remote.forEach((member, result) -> {
+            try {
+                results.add(result.join());
+            } catch (CompletionException ex) {
+                Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                logger.warn("Log query {} on cluster member {} failed: {}", request.getPath(), member,
+                        cause.toString());
+                unavailable.add(member.getNodeId());
+            }
+        });
+
+        List<ApplianceLog> logs = merge(results, seek ? 0 : start, count);
+        String nextCursor = count > 0 && logs.size() == count
+                ? LogCursor.of(logs.get(logs.size() - 1)).encode()
+                : null;
+        return new LogPage(logs, nextCursor, unavailable);
+    }
+
+    private CompletableFuture<List<ApplianceLog>> fetch(ClusterMember member, UriComponents request, String cursor,
+                                                        int count) {
+        URI uri = UriComponentsBuilder.fromUriString(member.getUrl())
+                .path(request.getPath())
+                .query(request.getQuery())
+                .replaceQueryParam("cursor", cursor != null ? List.of(cursor) : List.of())
+                .replaceQueryParam("start", 0)
+                .replaceQueryParam("count", count)
+                .replaceQueryParam(LOCAL_PARAM, true)
+                // the path and query come encoded from the incoming request, the replaced values are URL-safe
+                .build(true)
+                .toUri();
+        return webClient.get().uri(uri)
+                .retrieve()
+                .bodyToFlux(ApplianceLog.class)
+                .collectList()
+                .timeout(timeout)
+                .toFuture();
+    }
+
+    /**
+     * Merges lists sorted in {@link ApplianceLog#NEWEST_FIRST} order. An entry at the same position as the one
+     * before it is dropped: members sharing a database store (the {@code jpa} engine) all return the same rows.
+     *
+     * @param sorted sorted lists, one per member
+     * @param skip   leading entries of the merged order to drop
+     * @param limit  maximum number of entries to return
+     * @return entries {@code skip} to {@code skip + limit} of the merged order
+     */
+    @VisibleForTesting
+    static List<ApplianceLog> merge(List<List<ApplianceLog>> sorted, int skip, int limit) {
+        PriorityQueue<Run> heads = new PriorityQueue<>((a, b) -> ApplianceLog.NEWEST_FIRST.compare(a.head(), b.head()));
+        for (List<ApplianceLog> logs : sorted) {
+            if (!logs.isEmpty()) {
+                heads.add(new Run(logs));
+            }
+        }
+        List<ApplianceLog> merged = new ArrayList<>(Math.min(limit, 1024));
+        int skipped = 0;
+        ApplianceLog previous = null;
+        while (merged.size() < limit && !heads.isEmpty()) {
+            Run run = heads.poll();
+            ApplianceLog log = run.head();
+            boolean duplicate = previous != null && ApplianceLog.NEWEST_FIRST.compare(previous, log) == 0;
+            if (!duplicate && skipped < skip) {
+                skipped++;
+            } else if (!duplicate) {
+                merged.add(log);
+            }
+            previous = log;
+            if (run.advance()) {
+                heads.add(run);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Position in one member's sorted result.
+     */
+    private static final class Run {
+        private final List<ApplianceLog> logs;
+        private int index;
+
+        private Run(List<ApplianceLog> logs) {
+            this.logs = logs;
+        }
+
+        private ApplianceLog head() {
+            return logs.get(index);
+        }
+
+        private boolean advance() {
+            return ++index < logs.size();
+        }
+    }
+
+    /**
+     * A paged log query on the local store, see {@link com.my.octools.api.ApplianceLogService}.
+     */
+    @FunctionalInterface
+    public interface LocalQuery {
+        LogPage query(String cursor, int start, int count);
+    }
+}
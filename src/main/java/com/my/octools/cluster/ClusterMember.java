@@ -0,0 +1,50 @@
+package com.my.octools.cluster;
+
+import java.util.Objects;
+
+/**
+ * An instance of the service in the cluster: its node ID and the base URL it serves its API at.
+ */
+public final class ClusterMember {
+
+    private final String nodeId;
+    private final String url;
+
+    public ClusterMember(String nodeId, String url) {
+        this.nodeId = Objects.requireNonNull(nodeId, "nodeId");
+        this.url = Objects.requireNonNull(url, "url");
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @return base URL of the instance, e.g. {@code http://host-1:8080}
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ClusterMember)) {
+            return false;
+        }
+        ClusterMember other = (ClusterMember) o;
+        return nodeId.equals(other.nodeId) && url.equals(other.url);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(nodeId, url);
+    }
+
+    @Override
+    public String toString() {
+        return nodeId + "@" + url;
+    }
+}
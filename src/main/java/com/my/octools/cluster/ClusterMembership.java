@@ -0,0 +1,233 @@
+package com.my.octools.cluster;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.my.octools.config.ClusterProperties;
+import com.my.octools.service.ApplianceOwnership;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Membership of this instance in the cluster and the shard of the fleet it owns.
+ * <p>
+ * Every {@code heartbeatInterval} the instance renews its lease in the shared {@link MemberStore} and reads the
+ * members with a live lease. When that set changes, a new {@link ShardRing} is built and the appliances are
+ * rebalanced: a member that left or whose lease expired gives its appliances to the others right away, and a
+ * joining member takes over its part of the others' appliances.
+ * <p>
+ * Two rules keep two instances from processing the same appliance while their views of the membership differ:
+ * <ul>
+ *     <li>An instance that cannot renew its lease owns nothing once the lease has expired, which is exactly when
+ *     the others stop counting it as a member.</li>
+ *     <li>An appliance taken over from a member that is still live is only owned after one heartbeat interval,
+ *     by when the previous owner has seen the new membership and let go of it.</li>
+ * </ul>
+ */
+public class ClusterMembership implements ApplianceOwnership, MeterBinder {
+    private static final Logger logger = LoggerFactory.getLogger(ClusterMembership.class);
+
+    // Members whose lease expired this many lease durations ago are deleted from the store
+    private static final int EXPIRED_LEASES_KEPT = 10;
+
+    private final MemberStore store;
+    private final ClusterMember self;
+    private final Duration heartbeatInterval;
+    private final Duration leaseDuration;
+    private final int virtualNodes;
+    private final Clock clock;
+    private final AtomicLong rebalances = new AtomicLong();
+    private final AtomicLong heartbeatFailures = new AtomicLong();
+
+    private volatile Assignment assignment = Assignment.NONE;
+    private volatile Instant leaseExpiresAt = Instant.MIN;
+    private volatile boolean left;
+
+    public ClusterMembership(MemberStore store, ClusterMember self, ClusterProperties config) {
+        this(store, self, config, Clock.systemUTC());
+    }
+
+    @VisibleForTesting
+    ClusterMembership(MemberStore store, ClusterMember self, ClusterProperties config, Clock clock) {
+        if (config.getLeaseDuration().compareTo(config.getHeartbeatInterval()) <= 0) {
+            throw new IllegalArgumentException("The lease duration must be longer than the heartbeat interval");
+        }
+        this.store = store;
+        this.self = self;
+        this.heartbeatInterval = config.getHeartbeatInterval();
+        this.leaseDuration = config.getLeaseDuration();
+        this.virtualNodes = config.getVirtualNodes();
+        this.clock = clock;
+    }
+
+    /**
+     * Registers this instance. Fails if the member store cannot be reached, so a misconfigured instance does not
+     * start without a shard.
+     */
+    @PostConstruct
+    public void join() {
+        refresh();
+        logger.info("Joined the cluster as {}", self);
+    }
+
+    /**
+     * Removes this instance, so the others take over its appliances without waiting for its lease to expire.
+     */
+    @PreDestroy
+    public synchronized void leave() {
+        left = true;
+        leaseExpiresAt = Instant.MIN;
+        assignment = Assignment.NONE;
+        try {
+            store.remove(self.getNodeId());
+            logger.info("Left the cluster as {}", self);
+        } catch (RuntimeException ex) {
+            logger.warn("Could not remove {} from the cluster, it drops out when its lease expires: {}",
+                    self, ex.getMessage());
+        }
+    }
+
+    /**
+     * Renews the lease and rebalances if the membership changed.
+     */
+    @Scheduled(fixedDelayString = "${octools.cluster.heartbeat-interval:5s}")
+    public void heartbeat() {
+        if (left) {
+            return;
+        }
+        try {
+            refresh();
+        } catch (RuntimeException ex) {
+            heartbeatFailures.incrementAndGet();
+            if (isLeaseValid()) {
+                logger.warn("Cluster heartbeat failed, lease valid until {}: {}", leaseExpiresAt, ex.getMessage());
+            } else {
+                logger.error("Cluster heartbeat failed and the lease has expired, owning no appliances until the "
+                        + "member store is reachable again: {}", ex.getMessage());
+            }
+        }
+    }
+
+    private synchronized void refresh() {
+        Instant now = clock.instant();
+        // After an expired lease the others have dropped this instance, so it joins again like a new one
+        Assignment current = now.isBefore(leaseExpiresAt) ? assignment : Assignment.NONE;
+        Instant expires = now.plus(leaseDuration);
+        store.renew(self, expires);
+        leaseExpiresAt = expires;
+        store.removeExpired(now.minus(leaseDuration.multipliedBy(EXPIRED_LEASES_KEPT)));
+        Set<ClusterMember> live = new HashSet<>(store.findLive(now));
+        live.add(self);
+        if (live.equals(current.members)) {
+            return;
+        }
+        ShardRing ring = ShardRing.of(live, virtualNodes);
+        // On joining, the appliances are still owned by the ring of the other members
+        ShardRing previous = current == Assignment.NONE
+                ? ShardRing.of(live.stream().filter(m -> !m.equals(self)).collect(Collectors.toList()), virtualNodes)
+                : current.ring;
+        assignment = new Assignment(ring, previous, now.plus(heartbeatInterval));
+        rebalances.incrementAndGet();
+        logger.info("Cluster membership changed from {} to {}, {} now owns {}% of the appliances",
+                previous.getMembers(), ring.getMembers(), self.getNodeId(), Math.round(ring.share(self) * 100));
+    }
+
+    @Override
+    public boolean owns(String applianceId) {
+        Instant now = clock.instant();
+        if (!now.isBefore(leaseExpiresAt)) {
+            return false;
+        }
+        Assignment current = assignment;
+        if (!self.equals(current.ring.owner(applianceId))) {
+            return false;
+        }
+        if (now.isBefore(current.handoffUntil)) {
+            ClusterMember previous = current.previous.owner(applianceId);
+            return previous == null || previous.equals(self) || !current.members.contains(previous);
+        }
+        return true;
+    }
+
+    /**
+     * @return this instance
+     */
+    public ClusterMember getSelf() {
+        return self;
+    }
+
+    /**
+     * @return live members including this instance, ordered by node ID; empty while the lease has expired
+     */
+    public List<ClusterMember> getMembers() {
+        return isLeaseValid() ? assignment.ring.getMembers() : List.of();
+    }
+
+    /**
+     * @return ring of the current membership
+     */
+    public ShardRing getRing() {
+        return assignment.ring;
+    }
+
+    public long getRebalances() {
+        return rebalances.get();
+    }
+
+    public long getHeartbeatFailures() {
+        return heartbeatFailures.get();
+    }
+
+    private boolean isLeaseValid() {
+        return clock.instant().isBefore(leaseExpiresAt);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("octools.cluster.members", this, m -> m.getMembers().size())
+                .description("Live members of the cluster as seen by this instance")
+                .register(registry);
+        Gauge.builder("octools.cluster.share", this, m -> m.isLeaseValid() ? m.getRing().share(m.self) : 0)
+                .description("Fraction of the appliances this instance owns")
+                .register(registry);
+        FunctionCounter.builder("octools.cluster.rebalances", this, ClusterMembership::getRebalances)
+                .description("Membership changes that moved appliances between instances")
+                .register(registry);
+        FunctionCounter.builder("octools.cluster.heartbeat.failures", this, ClusterMembership::getHeartbeatFailures)
+                .description("Lease renewals that failed")
+                .register(registry);
+    }
+
+    /**
+     * The ring in force, the one it replaced and until when appliances taken over from a live member wait.
+     */
+    private static final class Assignment {
+        static final Assignment NONE = new Assignment(ShardRing.EMPTY, ShardRing.EMPTY, Instant.MIN);
+
+        private final ShardRing ring;
+        private final ShardRing previous;
+        private final Instant handoffUntil;
+        private final Set<ClusterMember> members;
+
+        private Assignment(ShardRing ring, ShardRing previous, Instant handoffUntil) {
+            this.ring = ring;
+            this.previous = previous;
+            this.handoffUntil = handoffUntil;
+            this.members = Set.copyOf(ring.getMembers());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.my.octools.cluster;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * {@link MemberStore} in a database table shared by the instances, e.g. an H2 server or a file database opened
+ * with {@code AUTO_SERVER=TRUE}.
+ * <p>
+ * Leases are stored as epoch milliseconds written by the instances' own clocks, so the clocks of the instances
+ * must agree to well within the lease duration.
+ */
+public class JdbcMemberStore implements MemberStore {
+
+    static final String TABLE = "octools_cluster_member";
+
+    private static final List<String> IN_MEMORY_PREFIXES = List.of(
+            "jdbc:h2:mem:", "jdbc:hsqldb:mem:", "jdbc:derby:memory:", "jdbc:sqlite::memory:");
+
+    private final JdbcTemplate jdbc;
+
+    public JdbcMemberStore(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+        jdbc.execute("CREATE TABLE IF NOT EXISTS " + TABLE + " ("
+                + "node_id VARCHAR(255) PRIMARY KEY, "
+                + "url VARCHAR(1024) NOT NULL, "
+                + "lease_expires_at BIGINT NOT NULL)");
+    }
+
+    /**
+     * @return whether the database behind the JDBC URL lives inside this process, so no other instance can see it
+     */
+    public static boolean isInMemory(String url) {
+        String lower = url.toLowerCase(Locale.ROOT);
+        return IN_MEMORY_PREFIXES.stream().anyMatch(lower::startsWith);
+    }
+
+    @Override
+    public void renew(ClusterMember member, Instant leaseExpiresAt) {
+        int updated = jdbc.update("UPDATE " + TABLE + " SET url = ?, lease_expires_at = ? WHERE node_id = ?",
+                member.getUrl(), leaseExpiresAt.toEpochMilli(), member.getNodeId());
+        if (updated == 0) {
+            jdbc.update("INSERT INTO " + TABLE + " (node_id, url, lease_expires_at) VALUES (?, ?, ?)",
+                    member.getNodeId(), member.getUrl(), leaseExpiresAt.toEpochMilli());
+        }
+    }
+
+    @Override
+    public List<ClusterMember> findLive(Instant now) {
+        return jdbc.query("SELECT node_id, url FROM " + TABLE + " WHERE lease_expires_at > ? ORDER BY node_id",
+                (rs, row) -> new ClusterMember(rs.getString("node_id"), rs.getString("url")),
+                now.toEpochMilli());
+    }
+
+    @Override
+    public void remove(String nodeId) {
+        jdbc.update("DELETE FROM " + TABLE + " WHERE node_id = ?", nodeId);
+    }
+
+    @Override
+    public int removeExpired(Instant before) {
+        return jdbc.update("DELETE FROM " + TABLE + " WHERE lease_expires_at < ?", before.toEpochMilli());
+    }
+}
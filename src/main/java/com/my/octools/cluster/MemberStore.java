@@ -0,0 +1,41 @@
+package com.my.octools.cluster;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Shared table of cluster members and their leases.
+ * <p>
+ * Every instance renews its own lease on each heartbeat and reads the members whose lease has not expired.
+ * Implementations must be shared by all instances of the cluster.
+ */
+public interface MemberStore {
+
+    /**
+     * Registers the member or extends its lease.
+     *
+     * @param member         the renewing member
+     * @param leaseExpiresAt time until which the member counts as live
+     */
+    void renew(ClusterMember member, Instant leaseExpiresAt);
+
+    /**
+     * @param now current time
+     * @return members whose lease expires after {@code now}
+     */
+    List<ClusterMember> findLive(Instant now);
+
+    /**
+     * Removes the member, so the others rebalance without waiting for its lease to expire.
+     *
+     * @param nodeId node ID of the leaving member
+     */
+    void remove(String nodeId);
+
+    /**
+     * Deletes members whose lease expired before the given time.
+     *
+     * @return number of deleted members
+     */
+    int removeExpired(Instant before);
+}
@@ -0,0 +1,128 @@
+package com.my.octools.cluster;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Consistent-hash ring assigning appliances to cluster members.
+ * <p>
+ * Every member is placed on a 64-bit ring at {@code virtualNodes} points derived from its node ID, and an
+ * appliance belongs to the member at the first point at or after the hash of its ID. Every instance builds the
+ * same ring from the same member list, so they agree on the owners without talking to each other. When a member
+ * joins or leaves, only the appliances on the arcs next to its points change owner, about {@code 1/members} of
+ * the fleet, instead of nearly all of them as with {@code hash % members}.
+ * <p>
+ * Rings are immutable; a membership change builds a new one.
+ */
+public final class ShardRing {
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    /** A ring without members, owning nothing. */
+    public static final ShardRing EMPTY = new ShardRing(List.of(), new long[0], new ClusterMember[0]);
+
+    private final List<ClusterMember> members;
+    // Sorted ring positions and the member at each of them
+    private final long[] points;
+    private final ClusterMember[] owners;
+
+    private ShardRing(List<ClusterMember> members, long[] points, ClusterMember[] owners) {
+        this.members = members;
+        this.points = points;
+        this.owners = owners;
+    }
+
+    /**
+     * Builds the ring of the given members.
+     *
+     * @param members      members of the cluster, in any order
+     * @param virtualNodes points per member, at least 1
+     */
+    public static ShardRing of(Collection<ClusterMember> members, int virtualNodes) {
+        if (members.isEmpty()) {
+            return EMPTY;
+        }
+        int perMember = Math.max(1, virtualNodes);
+        List<ClusterMember> sorted = new ArrayList<>(members);
+        sorted.sort(Comparator.comparing(ClusterMember::getNodeId));
+        long[][] entries = new long[sorted.size() * perMember][];
+        int n = 0;
+        for (int m = 0; m < sorted.size(); m++) {
+            for (int v = 0; v < perMember; v++) {
+                entries[n++] = new long[]{hash(sorted.get(m).getNodeId() + "#" + v), m};
+            }
+        }
+        // Ties between points are broken by node ID, so every instance builds the same ring
+        Arrays.sort(entries, Comparator.<long[]>comparingLong(e -> e[0]).thenComparingLong(e -> e[1]));
+        long[] points = new long[n];
+        ClusterMember[] owners = new ClusterMember[n];
+        for (int i = 0; i < n; i++) {
+            points[i] = entries[i][0];
+            owners[i] = sorted.get((int) entries[i][1]);
+        }
+        return new ShardRing(List.copyOf(sorted), points, owners);
+    }
+
+    /**
+     * @return the member the appliance belongs to, null if the ring is empty
+     */
+    public ClusterMember owner(String applianceId) {
+        if (points.length == 0) {
+            return null;
+        }
+        int index = Arrays.binarySearch(points, hash(applianceId));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+
+    /**
+     * @return fraction of the hash space, and so of the fleet, that belongs to the member
+     */
+    public double share(ClusterMember member) {
+        if (members.size() == 1) {
+            return members.get(0).equals(member) ? 1.0 : 0.0;
+        }
+        double owned = 0;
+        for (int i = 0; i < points.length; i++) {
+            if (owners[i].equals(member)) {
+                // The arc ending at point i, wrapping around from the last point for the first one
+                long arc = points[i] - points[i == 0 ? points.length - 1 : i - 1];
+                owned += unsigned(arc);
+            }
+        }
+        return owned / Math.pow(2, 64);
+    }
+
+    /**
+     * @return members of the ring, ordered by node ID
+     */
+    public List<ClusterMember> getMembers() {
+        return members;
+    }
+
+    public boolean isEmpty() {
+        return members.isEmpty();
+    }
+
+    private static long hash(String key) {
+        return HASH.hashString(key, StandardCharsets.UTF_8).asLong();
+    }
+
+    private static double unsigned(long value) {
+        return value >= 0 ? value : (value >>> 1) * 2.0 + (value & 1);
+    }
+
+    @Override
+    public String toString() {
+        return "ShardRing" + members;
+    }
+}
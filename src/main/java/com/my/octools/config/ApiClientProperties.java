@@ -0,0 +1,85 @@
+package com.my.octools.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Configuration for the appliance API client, bound from {@code octools.api.*}.
+ */
+@Data
+@ConfigurationProperties(prefix = "octools.api")
+public class ApiClientProperties {
+
+    private Batch batch = new Batch();
+
+    private Hedge hedge = new Hedge();
+
+    private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    /**
+     * Coalescing of single drain/remediate calls into batch calls.
+     */
+    @Data
+    public static class Batch {
+
+        /**
+         * Use the batch endpoints. Off by default: their wire format is assumed rather than documented by the backend,
+         * and the client only falls back to per-ID calls when they answer 404, 405 or 501.
+         */
+        private boolean enabled = false;
+
+        /** Maximum number of appliance IDs per batch request. */
+        private int maxSize = 50;
+
+        /** How long a single call waits for others to join its batch. */
+        private Duration window = Duration.ofMillis(20);
+    }
+
+    /**
+     * Hedging of the idempotent page fetch: a second request is sent when the first one is slower than usual.
+     */
+    @Data
+    public static class Hedge {
+
+        /** Send a second fetch when the first has not answered within the hedge delay. */
+        private boolean enabled = false;
+
+        /** Latency percentile of recent fetches used as the hedge delay. */
+        private double percentile = 0.95;
+
+        /** Lower bound of the hedge delay. */
+        private Duration minDelay = Duration.ofMillis(50);
+
+        /** Upper bound of the hedge delay, also used until {@code minSamples} fetches have completed. */
+        private Duration maxDelay = Duration.ofSeconds(2);
+
+        /** Completed fetches needed before the delay is derived from their latencies. */
+        private int minSamples = 20;
+    }
+
+    /**
+     * Per-operation circuit breaker around drain and remediate calls.
+     */
+    @Data
+    public static class CircuitBreaker {
+
+        private boolean enabled = true;
+
+        /** Number of most recent calls the failure rate is computed over. */
+        private int windowSize = 50;
+
+        /** Calls needed in the window before the failure rate can open the circuit. */
+        private int minimumCalls = 20;
+
+        /** Share of failed calls (timeouts, 429, 5xx, connection errors) that opens the circuit. */
+        private double failureRateThreshold = 0.5;
+
+        /** How long an open circuit fails calls fast before letting trial calls through. */
+        private Duration openDuration = Duration.ofSeconds(30);
+
+        /** Trial calls let through when half-open; all must succeed to close the circuit. */
+        private int halfOpenCalls = 5;
+    }
+}
@@ -1,15 +1,27 @@
 package com.my.octools.config;
 
+import com.my.octools.service.AdaptiveConcurrencyLimiter;
+import com.my.octools.service.ApplianceOwnership;
+import com.my.octools.service.ApplianceStateTable;
+import com.my.octools.service.PageSizeController;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.web.reactive.function.client.WebClient;
 
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 
 @Configuration
 @EnableScheduling
+@EnableConfigurationProperties({ProcessorProperties.class, ApiClientProperties.class})
 public class BeanConfig {
 
     /**
@@ -24,10 +36,77 @@ public class BeanConfig {
     }
 
     /**
-     * Primary executor for general async tasks (100 threads)
+     * Primary executor for per-appliance async tasks, platform threads or virtual threads depending on
+     * octools.processor.execution-mode. Pool size, active threads and queue depth are published as executor.*
+     * metrics tagged name=apiTaskExecutor (platform mode only, virtual threads have no pool or queue)
      */
     @Bean(name = "apiTaskExecutor", destroyMethod = "shutdown")
-    public ScheduledExecutorService apiTaskExecutor() {
-        return Executors.newScheduledThreadPool(100);
+    public ExecutorService apiTaskExecutor(ProcessorProperties properties, MeterRegistry registry) {
+        ExecutorService executor = properties.getExecutionMode().newExecutor(properties.getPlatformThreads());
+        new ExecutorServiceMetrics(executor, "apiTaskExecutor", Tags.empty()).bindTo(registry);
+        return executor;
+    }
+
+    /**
+     * Scheduler of the @Scheduled jobs (appliance job, log retention sweeps, cluster heartbeats). Declared so Spring
+     * does not pick the apiTimeoutScheduler for them, where a slow sweep or a hung heartbeat would delay API timeouts
+     */
+    @Bean(name = "taskScheduler")
+    public ThreadPoolTaskScheduler taskScheduler(ProcessorProperties properties) {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(properties.getJob().getSchedulerThreads());
+        scheduler.setThreadNamePrefix("scheduled-job-");
+        scheduler.setDaemon(true);
+        return scheduler;
+    }
+
+    /**
+     * Small dedicated scheduler for API call timers: call timeouts, micro-batching windows and hedged fetches.
+     * Never runs @Scheduled jobs, see taskScheduler
+     */
+    @Bean(name = "apiTimeoutScheduler", destroyMethod = "shutdown")
+    public ScheduledExecutorService apiTimeoutScheduler(ProcessorProperties properties) {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(properties.getTimeoutSchedulerThreads(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "api-timeout");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        // timeouts are cancelled when the call completes first, don't keep them queued until their deadline
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    /**
+     * Adaptive in-flight limit shared by drain and remediate calls
+     */
+    @Bean
+    public AdaptiveConcurrencyLimiter applianceApiLimiter(ProcessorProperties properties) {
+        return new AdaptiveConcurrencyLimiter(properties.getLimiter());
+    }
+
+    /**
+     * Page size of the appliance listing, adapted to the backend's latency and limits across runs
+     */
+    @Bean
+    public PageSizeController pageSizeController(ProcessorProperties properties) {
+        return new PageSizeController(properties.getPaging());
+    }
+
+    /**
+     * Per-appliance processing states, so runs skip appliances in flight or cooling down
+     */
+    @Bean
+    public ApplianceStateTable applianceStateTable(ProcessorProperties properties) {
+        return new ApplianceStateTable(properties.getState());
+    }
+
+    /**
+     * Outside cluster mode this instance processes the whole fleet
+     */
+    @Bean
+    @ConditionalOnProperty(name = "octools.cluster.enabled", havingValue = "false", matchIfMissing = true)
+    public ApplianceOwnership applianceOwnership() {
+        return ApplianceOwnership.ALL;
     }
 }
\ No newline at end of file
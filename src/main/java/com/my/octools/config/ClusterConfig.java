@@ -0,0 +1,75 @@
+package com.my.octools.config;
+
+import com.my.octools.cluster.ClusterLogFanout;
+import com.my.octools.cluster.ClusterMember;
+import com.my.octools.cluster.ClusterMembership;
+import com.my.octools.cluster.JdbcMemberStore;
+import com.my.octools.cluster.MemberStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.UUID;
+
+/**
+ * Cluster mode, enabled with {@code octools.cluster.enabled=true}: the instances sharing the membership table
+ * split the fleet between them and answer log queries for the whole cluster.
+ */
+@Configuration
+@ConditionalOnProperty(name = "octools.cluster.enabled", havingValue = "true")
+@EnableConfigurationProperties(ClusterProperties.class)
+public class ClusterConfig {
+
+    /**
+     * Membership table in the application's datasource, which must be shared by the instances. An in-memory
+     * database fails startup, since every instance would see only itself and process the whole fleet.
+     */
+    @Bean
+    public JdbcMemberStore memberStore(JdbcTemplate jdbc) {
+        String url = jdbc.execute((ConnectionCallback<String>) connection -> connection.getMetaData().getURL());
+        if (url == null || JdbcMemberStore.isInMemory(url)) {
+            throw new IllegalStateException("Cluster mode needs a datasource shared by the instances, but "
+                    + "spring.datasource.url is " + url + "; use a database server or e.g. "
+                    + "jdbc:h2:file:./data/cluster;AUTO_SERVER=TRUE");
+        }
+        return new JdbcMemberStore(jdbc);
+    }
+
+    /**
+     * This instance's lease and shard of the fleet, used by the processor as its {@code ApplianceOwnership}
+     */
+    @Bean
+    public ClusterMembership clusterMembership(MemberStore store, ClusterProperties properties,
+                                               @Value("${server.port:8080}") int port) {
+        return new ClusterMembership(store, self(properties, port), properties);
+    }
+
+    /**
+     * Fans log queries out to the other members
+     */
+    @Bean
+    public ClusterLogFanout clusterLogFanout(ClusterMembership membership, WebClient.Builder webClientBuilder,
+                                             ClusterProperties properties) {
+        return new ClusterLogFanout(membership, webClientBuilder.build(), properties.getQueryTimeout());
+    }
+
+    private static ClusterMember self(ClusterProperties properties, int port) {
+        String nodeId = properties.getNodeId() != null ? properties.getNodeId() : UUID.randomUUID().toString();
+        String url = properties.getUrl();
+        if (url == null) {
+            try {
+                url = "http://" + InetAddress.getLocalHost().getHostName() + ":" + port;
+            } catch (UnknownHostException ex) {
+                throw new IllegalStateException("Cannot determine the host name, set octools.cluster.url", ex);
+            }
+        }
+        return new ClusterMember(nodeId, url);
+    }
+}
@@ -0,0 +1,35 @@
+package com.my.octools.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Configuration of cluster mode, bound from {@code octools.cluster.*}.
+ */
+@Data
+@ConfigurationProperties(prefix = "octools.cluster")
+public class ClusterProperties {
+
+    /** Shards the fleet across the instances sharing the membership table; off runs a single instance. */
+    private boolean enabled = false;
+
+    /** Identity of this instance in the cluster, a random ID when not set. */
+    private String nodeId;
+
+    /** Base URL the other instances reach this one at, {@code http://<hostname>:<server.port>} when not set. */
+    private String url;
+
+    /** How often the lease is renewed and the membership re-read. */
+    private Duration heartbeatInterval = Duration.ofSeconds(5);
+
+    /** How long an instance stays a member without renewing its lease. */
+    private Duration leaseDuration = Duration.ofSeconds(15);
+
+    /** Points per instance on the hash ring; more points spread the fleet more evenly. */
+    private int virtualNodes = 128;
+
+    /** How long a cluster-wide log query waits for the other instances. */
+    private Duration queryTimeout = Duration.ofSeconds(5);
+}
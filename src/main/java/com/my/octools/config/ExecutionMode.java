@@ -0,0 +1,55 @@
+package com.my.octools.config;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * How per-appliance work is executed, selected with {@code octools.processor.execution-mode}.
+ */
+public enum ExecutionMode {
+
+    /** A fixed pool of platform threads. */
+    PLATFORM,
+
+    /** One virtual thread per task. Requires a Java 21 or newer runtime. */
+    VIRTUAL;
+
+    /**
+     * Creates the executor for this mode.
+     *
+     * @param platformThreads pool size in {@link #PLATFORM} mode, ignored otherwise
+     * @return a new executor that the caller must shut down
+     */
+    public ExecutorService newExecutor(int platformThreads) {
+        if (this == PLATFORM) {
+            return Executors.newFixedThreadPool(platformThreads);
+        }
+        Method factory = virtualThreadFactoryMethod();
+        if (factory == null) {
+            throw new IllegalStateException("Execution mode VIRTUAL requires Java 21 or newer, running on "
+                    + Runtime.version());
+        }
+        try {
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException("Could not create a virtual thread executor", ex);
+        }
+    }
+
+    /**
+     * @return true if this mode can run on the current JVM
+     */
+    public boolean isSupported() {
+        return this == PLATFORM || virtualThreadFactoryMethod() != null;
+    }
+
+    // Looked up reflectively so the code still compiles against the Java 17 toolchain
+    private static Method virtualThreadFactoryMethod() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+}
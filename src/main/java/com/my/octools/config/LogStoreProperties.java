@@ -0,0 +1,125 @@
+package com.my.octools.config;
+
+import com.my.octools.storage.OverflowPolicy;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Configuration for the appliance log store, bound from {@code octools.logs.*}.
+ */
+@Data
+@ConfigurationProperties(prefix = "octools.logs")
+public class LogStoreProperties {
+
+    /** Storage engine: {@code skiplist}, {@code columnar}, {@code segment} or {@code jpa}. */
+    private String engine = "skiplist";
+
+    private Retention retention = new Retention();
+
+    private Segment segment = new Segment();
+
+    private Jpa jpa = new Jpa();
+
+    private WriteBehind writeBehind = new WriteBehind();
+
+    private Stats stats = new Stats();
+
+    private ResponseCache responseCache = new ResponseCache();
+
+    private Stream stream = new Stream();
+
+    /**
+     * Retention limits. Zero values mean unbounded.
+     */
+    @Data
+    public static class Retention {
+        /** Maximum number of log rows kept in the store. */
+        private long maxRows = 1_000_000;
+        /** Maximum age of a log row. */
+        private Duration maxAge = Duration.ofDays(7);
+        /** Maximum number of log rows kept per appliance. */
+        private int maxPerAppliance = 0;
+        /** How often the background sweeper evicts expired rows. */
+        private Duration sweepInterval = Duration.ofSeconds(30);
+    }
+
+    /**
+     * Settings of the durable segment log engine.
+     */
+    @Data
+    public static class Segment {
+        /** Directory holding the segment files. */
+        private Path directory = Path.of("data", "logs");
+        /** Size of each segment file. */
+        private DataSize segmentSize = DataSize.ofMegabytes(64);
+        /** How often appended records are forced to disk (group commit). */
+        private Duration flushInterval = Duration.ofMillis(50);
+    }
+
+    /**
+     * Settings of the relational (JPA) log engine. The datasource is configured with {@code spring.datasource.*}.
+     */
+    @Data
+    public static class Jpa {
+        /** Maximum number of entries inserted per transaction. */
+        private int batchSize = 500;
+        /** Entries waiting for the writer before saves block. */
+        private int bufferSize = 10_000;
+    }
+
+    /**
+     * Settings of the write-behind stage between the processor and the store.
+     */
+    @Data
+    public static class WriteBehind {
+        /** Whether processor writes go through the write-behind ring buffer instead of straight to the store. */
+        private boolean enabled = true;
+        /** Entries the ring buffer holds, rounded up to a power of two. */
+        private int capacity = 8192;
+        /** Entries the consumer saves per batch. */
+        private int batchSize = 256;
+        /** What happens to a write while the buffer is full: block, drop-oldest or spill. */
+        private OverflowPolicy overflow = OverflowPolicy.BLOCK;
+        /** File that overflowing entries are spilled to with the spill policy. */
+        private Path spillFile = Path.of("data", "write-behind.spill");
+        /** Longest a log query waits for pending writes, so it sees entries written before it. */
+        private Duration maxReadDelay = Duration.ofMillis(100);
+    }
+
+    /**
+     * Settings of the rolled-up log statistics ({@code /api/logs/stats}).
+     */
+    @Data
+    public static class Stats {
+        /** Longest window statistics are kept for, one bucket of about 2 KB per minute. */
+        private Duration retention = Duration.ofHours(24);
+        /** Number of longest failure streaks reported. */
+        private int topStreaks = 10;
+    }
+
+    /**
+     * Settings of the cache of serialized log query responses, keyed by query and store version.
+     */
+    @Data
+    public static class ResponseCache {
+        /** Pages kept, least recently used dropped first; 0 disables the cache but keeps the entity tags. */
+        private int maxEntries = 256;
+        /** Larger responses are not cached. */
+        private DataSize maxBodySize = DataSize.ofKilobytes(512);
+    }
+
+    /**
+     * Settings of the live log stream.
+     */
+    @Data
+    public static class Stream {
+        /** Events buffered per subscriber before further events are dropped and reported as lag. */
+        private int bufferSize = 256;
+        /** Maximum number of stored entries replayed to a new subscriber. */
+        private int maxReplay = 1000;
+    }
+}
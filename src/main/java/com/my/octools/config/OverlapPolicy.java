@@ -0,0 +1,14 @@
+package com.my.octools.config;
+
+/**
+ * What happens to a scheduled tick that fires while the previous run is still in progress,
+ * selected with {@code octools.processor.job.overlap-policy}.
+ */
+public enum OverlapPolicy {
+
+    /** The tick is dropped; the next run starts at the next tick after the current run finished. */
+    SKIP,
+
+    /** Missed ticks are remembered and start one run as soon as the current run finishes. */
+    COALESCE
+}
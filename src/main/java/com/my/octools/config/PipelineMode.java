@@ -0,0 +1,14 @@
+package com.my.octools.config;
+
+/**
+ * How a run walks the appliance pages and starts the per-appliance work,
+ * selected with {@code octools.processor.pipeline}.
+ */
+public enum PipelineMode {
+
+    /** A fetcher thread hands filtered pages to a processing thread through a bounded queue. */
+    QUEUE,
+
+    /** One backpressured Reactor stream from the page cursor to the remediations, without pipeline threads. */
+    REACTIVE
+}
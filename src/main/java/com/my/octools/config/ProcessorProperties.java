@@ -0,0 +1,129 @@
+package com.my.octools.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * Configuration for the appliance processing pipeline, bound from {@code octools.processor.*}.
+ */
+@Data
+@ConfigurationProperties(prefix = "octools.processor")
+public class ProcessorProperties {
+
+    /** Number of fetched pages that may wait for the processing stage before the fetcher pauses. */
+    private int prefetchPages = 4;
+
+    /** Maximum number of appliances being drained/remediated at the same time. */
+    private int maxInFlightAppliances = 500;
+
+    /** Walks the pages with a fetcher thread and a queue, or as one reactive stream; both honour the bounds above. */
+    private PipelineMode pipeline = PipelineMode.QUEUE;
+
+    /** Runs per-appliance work on a fixed platform thread pool or on virtual threads. */
+    private ExecutionMode executionMode = ExecutionMode.PLATFORM;
+
+    /** Size of the worker pool in {@link ExecutionMode#PLATFORM} mode. */
+    private int platformThreads = 100;
+
+    /** Threads of the scheduler that fires API call timeouts. */
+    private int timeoutSchedulerThreads = 2;
+
+    private Limiter limiter = new Limiter();
+
+    private State state = new State();
+
+    private Job job = new Job();
+
+    private Paging paging = new Paging();
+
+    /**
+     * Adaptive in-flight limit for drain/remediate calls against the appliance API.
+     */
+    @Data
+    public static class Limiter {
+
+        /** Limit used until the first latency samples arrive. */
+        private int initialLimit = 20;
+
+        private int minLimit = 1;
+
+        private int maxLimit = 200;
+
+        /** Calls allowed to wait for a free slot; further calls are rejected. */
+        private int maxQueue = 10_000;
+
+        /** Factor applied to the limit on a timeout, 429 or 5xx. */
+        private double backoffRatio = 0.9;
+
+        /** Latency, as a multiple of the best observed latency, up to which the limit keeps growing. */
+        private double latencyTolerance = 2.0;
+    }
+
+    /**
+     * Time limits of the per-appliance processing states.
+     */
+    @Data
+    public static class State {
+
+        /** How long an appliance may stay draining or remediating before it is considered stuck and retried. */
+        private Duration inFlightTtl = Duration.ofMinutes(10);
+
+        /** How long a remediated appliance is skipped, giving it time to report in. */
+        private Duration cooldown = Duration.ofMinutes(15);
+
+        /** How long an appliance whose processing failed is skipped; zero retries it on the next run. */
+        private Duration failureCooldown = Duration.ZERO;
+    }
+
+    /**
+     * Scheduling of the appliance job.
+     */
+    @Data
+    public static class Job {
+
+        /** Cron expression of the scheduled runs. */
+        private String cron = "0 */5 * * * *";
+
+        /** Handling of ticks that fire while a run is still in progress. */
+        private OverlapPolicy overlapPolicy = OverlapPolicy.SKIP;
+
+        /** Number of finished runs kept for {@code /api/runs}. */
+        private int historySize = 100;
+
+        /** Threads running the scheduled jobs: this job, log retention sweeps and cluster heartbeats. */
+        private int schedulerThreads = 3;
+    }
+
+    /**
+     * Adaptive size ({@code first=}) of the appliance pages requested while walking the fleet.
+     */
+    @Data
+    public static class Paging {
+
+        /** Page size of the first request after startup; later runs start from the size the last run ended with. */
+        private int initialSize = 100;
+
+        private int minSize = 10;
+
+        /** Largest page ever requested. */
+        private int maxSize = 1000;
+
+        /** Page latency the size is steered towards; faster pages grow the size, slower ones shrink it. */
+        private Duration targetLatency = Duration.ofSeconds(2);
+
+        /** Response size the size is kept under. */
+        private DataSize maxPayload = DataSize.ofMegabytes(4);
+
+        /** Largest factor by which the size grows from one page to the next. */
+        private double maxGrowth = 2.0;
+
+        /** Fetches of the same cursor with a smaller page after an overload or a rejected page size. */
+        private int maxRetries = 2;
+
+        /** Time after which a learned page size limit of the backend is forgotten and probed again. */
+        private Duration ceilingTtl = Duration.ofHours(1);
+    }
+}
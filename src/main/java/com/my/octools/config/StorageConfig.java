@@ -0,0 +1,138 @@
+package com.my.octools.config;
+
+import com.my.octools.storage.ApplianceLogEntityRepository;
+import com.my.octools.storage.ApplianceLogRepository;
+import com.my.octools.storage.ApplianceLogWriter;
+import com.my.octools.storage.ColumnarApplianceLogStore;
+import com.my.octools.storage.EvictingLogStore;
+import com.my.octools.storage.InMemoryApplianceLogStore;
+import com.my.octools.storage.JpaApplianceLogStore;
+import com.my.octools.storage.LogRetentionPolicy;
+import com.my.octools.storage.LogRetentionSweeper;
+import com.my.octools.storage.LogRollup;
+import com.my.octools.storage.LogStoreMetrics;
+import com.my.octools.storage.LogVersions;
+import com.my.octools.storage.SegmentLogStore;
+import com.my.octools.storage.WriteBehindLogWriter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Selects the log storage engine with {@code octools.logs.engine}: skiplist (default), columnar, segment or jpa.
+ */
+@Configuration
+@EnableConfigurationProperties(LogStoreProperties.class)
+public class StorageConfig {
+    private static final String WRITE_BEHIND_ENABLED = "${octools.logs.write-behind.enabled:true}";
+    // The jpa store buffers its own writes and is the log writer itself
+    private static final String STORE_UNBUFFERED = "'${octools.logs.engine:skiplist}' != 'jpa'";
+
+    /**
+     * In-memory skip-list log store with the configured retention limits
+     */
+    @Bean
+    @ConditionalOnProperty(name = "octools.logs.engine", havingValue = "skiplist", matchIfMissing = true)
+    public InMemoryApplianceLogStore applianceLogStore(LogStoreProperties properties) {
+        return new InMemoryApplianceLogStore(retentionPolicy(properties));
+    }
+
+    /**
+     * Compact columnar log store with the configured retention limits
+     */
+    @Bean
+    @ConditionalOnProperty(name = "octools.logs.engine", havingValue = "columnar")
+    public ColumnarApplianceLogStore columnarApplianceLogStore(LogStoreProperties properties) {
+        return new ColumnarApplianceLogStore(retentionPolicy(properties));
+    }
+
+    /**
+     * Durable segment log store, replayed from disk on startup
+     */
+    @Bean
+    @ConditionalOnProperty(name = "octools.logs.engine", havingValue = "segment")
+    public SegmentLogStore segmentLogStore(LogStoreProperties properties) {
+        LogStoreProperties.Segment segment = properties.getSegment();
+        return new SegmentLogStore(segment.getDirectory(), Math.toIntExact(segment.getSegmentSize().toBytes()),
+                segment.getFlushInterval(), retentionPolicy(properties));
+    }
+
+    /**
+     * Relational log store on the configured datasource, written behind in batches. It buffers its own writes, so
+     * it is also the processor's log writer and no {@link WriteBehindLogWriter} is put in front of it
+     */
+    @Bean
+    @ConditionalOnProperty(name = "octools.logs.engine", havingValue = "jpa")
+    public JpaApplianceLogStore jpaApplianceLogStore(LogStoreProperties properties,
+                                                     ApplianceLogEntityRepository repository) {
+        LogStoreProperties.Jpa jpa = properties.getJpa();
+        return new JpaApplianceLogStore(repository, retentionPolicy(properties), jpa.getBatchSize(),
+                jpa.getBufferSize());
+    }
+
+    /**
+     * Ring buffer and consumer thread taking log saves off the processor's threads, flushed on shutdown
+     */
+    @Bean
+    @ConditionalOnExpression(WRITE_BEHIND_ENABLED + " and " + STORE_UNBUFFERED)
+    public WriteBehindLogWriter writeBehindLogWriter(ApplianceLogRepository store, LogStoreProperties properties) {
+        LogStoreProperties.WriteBehind writeBehind = properties.getWriteBehind();
+        return new WriteBehindLogWriter(store, writeBehind.getCapacity(), writeBehind.getBatchSize(),
+                writeBehind.getOverflow(), writeBehind.getSpillFile(), writeBehind.getMaxReadDelay());
+    }
+
+    /**
+     * Saves processor logs on the calling thread when the write-behind stage is disabled
+     */
+    @Bean
+    @ConditionalOnExpression("!" + WRITE_BEHIND_ENABLED + " and " + STORE_UNBUFFERED)
+    public ApplianceLogWriter applianceLogWriter(ApplianceLogRepository store) {
+        return store::save;
+    }
+
+    /**
+     * Per-minute log statistics, backfilled from the store and then updated on every save
+     */
+    @Bean
+    public LogRollup logRollup(ApplianceLogRepository store, LogStoreProperties properties) {
+        LogStoreProperties.Stats stats = properties.getStats();
+        LogRollup rollup = new LogRollup(stats.getRetention(), stats.getTopStreaks());
+        rollup.backfill(store);
+        store.addListener(rollup);
+        return rollup;
+    }
+
+    /**
+     * Write versions of the log store, bumped on every save and eviction pass. Incomplete for a store shared with
+     * other instances, whose writes this instance never sees
+     */
+    @Bean
+    public LogVersions logVersions(ApplianceLogRepository store) {
+        LogVersions versions = new LogVersions(!store.isShared());
+        store.addListener(versions);
+        return versions;
+    }
+
+    /**
+     * Background sweeper enforcing the row and age limits of the log store
+     */
+    @Bean
+    public LogRetentionSweeper logRetentionSweeper(EvictingLogStore store, LogVersions versions) {
+        return new LogRetentionSweeper(store, versions);
+    }
+
+    /**
+     * Publishes store size and eviction counts to actuator metrics
+     */
+    @Bean
+    public LogStoreMetrics logStoreMetrics(EvictingLogStore store) {
+        return new LogStoreMetrics(store);
+    }
+
+    private static LogRetentionPolicy retentionPolicy(LogStoreProperties properties) {
+        LogStoreProperties.Retention retention = properties.getRetention();
+        return new LogRetentionPolicy(retention.getMaxRows(), retention.getMaxAge(), retention.getMaxPerAppliance());
+    }
+}
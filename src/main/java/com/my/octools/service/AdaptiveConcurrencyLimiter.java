@@ -0,0 +1,336 @@
+package com.my.octools.service;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.my.octools.api.ApiException;
+import com.my.octools.config.ProcessorProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Caps the number of calls in flight against the appliance API and adapts the cap to what the backend sustains.
+ * <p>
+ * The limit follows AIMD (additive increase, multiplicative decrease):
+ * <ul>
+ *     <li>A timeout, 429 or 5xx multiplies the limit by {@code backoffRatio}. This happens at most once per
+ *     smoothed round trip, so a wave of failures caused by one overload counts as a single signal.</li>
+ *     <li>A success whose latency stays within {@code latencyTolerance} times the best observed latency grows
+ *     the limit by {@code 1/limit}, i.e. by one per full window of calls. Growth only happens while at least half
+ *     the limit is in use, so an idle period does not inflate it.</li>
+ *     <li>Other failures, such as a 404, say nothing about load and leave the limit unchanged.</li>
+ * </ul>
+ * Calls beyond the limit wait in a FIFO queue and start as slots free up. Once {@code maxQueue} calls are waiting,
+ * new calls fail fast with a {@link RejectedExecutionException}.
+ * <p>
+ * Queued calls are started on the thread that completed the call before them. A call that completes while it is
+ * being started (an open circuit breaker, a cached error) would start the next one from inside its own
+ * completion, so starts are run by a loop on each thread instead of recursively.
+ * <p>
+ * Reactive callers take a permit with {@link #acquire(Supplier)}, which holds the slot from subscribing to the
+ * call until it terminates or is cancelled. A cancelled call frees its slot without counting as a success or an
+ * overload.
+ */
+public class AdaptiveConcurrencyLimiter implements MeterBinder {
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final double backoffRatio;
+    private final double latencyTolerance;
+    private final LongSupplier nanoClock;
+
+    private final Object lock = new Object();
+    // All fields below are guarded by lock
+    private double limit;
+    private int inFlight;
+    private final ArrayDeque<Runnable> waiting = new ArrayDeque<>();
+    private long baselineNanos;
+    private long smoothedNanos;
+    private long lastDecreaseNanos;
+
+    private final AtomicLong rejections = new AtomicLong();
+
+    // Starts handed to a thread that is already running starts further up its stack
+    private static final ThreadLocal<ArrayDeque<Runnable>> PENDING_STARTS = new ThreadLocal<>();
+
+    // States of a reactive call, see acquire
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int DONE = 2;
+    // Frees the slot of a cancelled call without a success or overload signal
+    private static final Throwable CANCELLED = new CancellationException("Cancelled by the subscriber");
+
+    public AdaptiveConcurrencyLimiter(ProcessorProperties.Limiter config) {
+        this(config, System::nanoTime);
+    }
+
+    @VisibleForTesting
+    AdaptiveConcurrencyLimiter(ProcessorProperties.Limiter config, LongSupplier nanoClock) {
+        if (config.getMinLimit() < 1 || config.getMaxLimit() < config.getMinLimit()) {
+            throw new IllegalArgumentException("Limiter bounds must satisfy 1 <= minLimit <= maxLimit");
+        }
+        this.minLimit = config.getMinLimit();
+        this.maxLimit = config.getMaxLimit();
+        this.maxQueue = config.getMaxQueue();
+        this.backoffRatio = config.getBackoffRatio();
+        this.latencyTolerance = config.getLatencyTolerance();
+        this.nanoClock = nanoClock;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, config.getInitialLimit()));
+        this.lastDecreaseNanos = nanoClock.getAsLong();
+    }
+
+    /**
+     * Runs the call once a slot is free.
+     *
+     * @param call starts the remote call; invoked at most once
+     * @return CompletableFuture with the call's outcome, or failed with {@link RejectedExecutionException}
+     * if the queue is full
+     */
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (!admit(() -> start(call, result))) {
+            result.completeExceptionally(queueFull());
+        }
+        return result;
+    }
+
+    /**
+     * Subscribes to the call once a slot is free, on every subscription to the returned Mono.
+     *
+     * @param call creates the remote call; invoked at most once per subscription
+     * @return Mono with the call's outcome, or failed with {@link RejectedExecutionException} if the queue is full
+     */
+    public <T> Mono<T> acquire(Supplier<Mono<T>> call) {
+        return Mono.create(sink -> {
+            // QUEUED until the slot is taken, RUNNING while subscribed to the call, DONE once the slot is freed
+            AtomicInteger state = new AtomicInteger(QUEUED);
+            AtomicReference<Disposable> subscription = new AtomicReference<>();
+            sink.onCancel(() -> {
+                if (state.compareAndSet(RUNNING, DONE)) {
+                    Disposable running = subscription.get();
+                    if (running != null) {
+                        running.dispose();
+                    }
+                    onComplete(0, CANCELLED);
+                } else {
+                    // a queued call frees its slot when it is started
+                    state.compareAndSet(QUEUED, DONE);
+                }
+            });
+            if (!admit(() -> start(call, sink, state, subscription))) {
+                sink.error(queueFull());
+            }
+        });
+    }
+
+    /**
+     * Takes a slot and runs the start now, or queues it.
+     *
+     * @return false if the queue is full
+     */
+    private boolean admit(Runnable start) {
+        boolean runNow = false;
+        synchronized (lock) {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                runNow = true;
+            } else if (waiting.size() < maxQueue) {
+                waiting.add(start);
+            } else {
+                rejections.incrementAndGet();
+                return false;
+            }
+        }
+        if (runNow) {
+            start.run();
+        }
+        return true;
+    }
+
+    private static RejectedExecutionException queueFull() {
+        return new RejectedExecutionException("Appliance API limiter queue is full");
+    }
+
+    private <T> void start(Supplier<CompletableFuture<T>> call, CompletableFuture<T> result) {
+        long startNanos = nanoClock.getAsLong();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException ex) {
+            future = CompletableFuture.failedFuture(ex);
+        }
+        future.whenComplete((value, error) -> {
+            onComplete(startNanos, error);
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+
+    private <T> void start(Supplier<Mono<T>> call, MonoSink<T> sink, AtomicInteger state,
+                           AtomicReference<Disposable> subscription) {
+        if (!state.compareAndSet(QUEUED, RUNNING)) {
+            onComplete(0, CANCELLED);
+            return;
+        }
+        long startNanos = nanoClock.getAsLong();
+        Mono<T> mono;
+        try {
+            mono = call.get();
+        } catch (RuntimeException ex) {
+            mono = Mono.error(ex);
+        }
+        Disposable running = mono.subscribe(
+                value -> {
+                    if (state.compareAndSet(RUNNING, DONE)) {
+                        onComplete(startNanos, null);
+                        sink.success(value);
+                    }
+                },
+                error -> {
+                    if (state.compareAndSet(RUNNING, DONE)) {
+                        onComplete(startNanos, error);
+                        sink.error(error);
+                    }
+                },
+                () -> {
+                    if (state.compareAndSet(RUNNING, DONE)) {
+                        onComplete(startNanos, null);
+                        sink.success();
+                    }
+                });
+        subscription.set(running);
+        if (state.get() == DONE) {
+            // cancelled while subscribing, or already completed, where disposing does nothing
+            running.dispose();
+        }
+    }
+
+    private void onComplete(long startNanos, Throwable error) {
+        long now = nanoClock.getAsLong();
+        List<Runnable> toStart = new ArrayList<>();
+        synchronized (lock) {
+            boolean saturated = inFlight >= limit / 2;
+            inFlight--;
+            if (ApiException.isOverload(error)) {
+                decrease(now);
+            } else if (error == null) {
+                onSuccess(now - startNanos, saturated);
+            }
+            while (inFlight < (int) limit && !waiting.isEmpty()) {
+                toStart.add(waiting.poll());
+                inFlight++;
+            }
+        }
+        runStarts(toStart);
+    }
+
+    /**
+     * Runs the starts, or leaves them to the loop of an outer call on this thread, so synchronously completing
+     * calls do not nest one stack frame per queued call.
+     */
+    private static void runStarts(List<Runnable> starts) {
+        if (starts.isEmpty()) {
+            return;
+        }
+        ArrayDeque<Runnable> pending = PENDING_STARTS.get();
+        if (pending != null) {
+            pending.addAll(starts);
+            return;
+        }
+        pending = new ArrayDeque<>(starts);
+        PENDING_STARTS.set(pending);
+        try {
+            Runnable start;
+            while ((start = pending.poll()) != null) {
+                start.run();
+            }
+        } finally {
+            PENDING_STARTS.remove();
+        }
+    }
+
+    private void decrease(long now) {
+        if (now - lastDecreaseNanos < smoothedNanos) {
+            return;
+        }
+        double previous = limit;
+        limit = Math.max(minLimit, limit * backoffRatio);
+        lastDecreaseNanos = now;
+        if ((int) limit != (int) previous) {
+            logger.warn("Appliance API overloaded, concurrency limit lowered from {} to {}", (int) previous, (int) limit);
+        }
+    }
+
+    private void onSuccess(long latencyNanos, boolean saturated) {
+        if (baselineNanos == 0 || latencyNanos < baselineNanos) {
+            baselineNanos = Math.max(1, latencyNanos);
+        } else {
+            // drift slowly towards current latency so a permanently slower backend resets the baseline
+            baselineNanos += (latencyNanos - baselineNanos) >> 8;
+        }
+        smoothedNanos = smoothedNanos == 0 ? latencyNanos : smoothedNanos + ((latencyNanos - smoothedNanos) >> 3);
+        if (saturated && latencyNanos <= baselineNanos * latencyTolerance) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    public int getLimit() {
+        synchronized (lock) {
+            return (int) limit;
+        }
+    }
+
+    public int getInFlight() {
+        synchronized (lock) {
+            return inFlight;
+        }
+    }
+
+    public int getQueueDepth() {
+        synchronized (lock) {
+            return waiting.size();
+        }
+    }
+
+    public long getRejections() {
+        return rejections.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("octools.limiter.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current adaptive limit on concurrent appliance API calls")
+                .register(registry);
+        Gauge.builder("octools.limiter.in.flight", this, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("Appliance API calls currently in flight")
+                .register(registry);
+        Gauge.builder("octools.limiter.queue", this, AdaptiveConcurrencyLimiter::getQueueDepth)
+                .description("Appliance API calls waiting for a free slot")
+                .register(registry);
+        FunctionCounter.builder("octools.limiter.rejections", this, AdaptiveConcurrencyLimiter::getRejections)
+                .description("Appliance API calls rejected because the wait queue was full")
+                .register(registry);
+    }
+}
@@ -0,0 +1,19 @@
+package com.my.octools.service;
+
+/**
+ * Decides which stale appliances this instance drains and remediates.
+ * <p>
+ * A single instance owns the whole fleet. In cluster mode the fleet is sharded across the instances, and every
+ * instance still walks all pages but only processes the appliances of its own shard.
+ */
+@FunctionalInterface
+public interface ApplianceOwnership {
+
+    /** Owns every appliance, the single instance setup. */
+    ApplianceOwnership ALL = applianceId -> true;
+
+    /**
+     * @return true if this instance is responsible for the appliance right now
+     */
+    boolean owns(String applianceId);
+}
@@ -2,23 +2,47 @@ package com.my.octools.service;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.my.octools.api.ApiClient;
+import com.my.octools.api.ApplianceFilter;
+import com.my.octools.api.FilteredAppliancePage;
 import com.my.octools.api.entities.Appliance;
 import com.my.octools.api.entities.DrainResult;
+import com.my.octools.api.entities.RemediationResult;
+import com.my.octools.config.PipelineMode;
+import com.my.octools.config.ProcessorProperties;
 import com.my.octools.storage.ApplianceLog;
-import com.my.octools.storage.ApplianceLogRepository;
-import jakarta.annotation.PostConstruct;
+import com.my.octools.storage.ApplianceLogWriter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 /**
  * Service to process appliances by fetching, filtering, draining, remediating, and logging results.
@@ -28,121 +52,503 @@ public class ApplianceProcessor {
     private static final Logger logger = LoggerFactory.getLogger(ApplianceProcessor.class);
 
     private static final int API_CALL_TIMEOUT_SECONDS = 20;
+    private static final Duration API_CALL_TIMEOUT = Duration.ofSeconds(API_CALL_TIMEOUT_SECONDS);
     private static final int STALE_MINUTES_THRESHOLD = 10;
 
+    // Marks the end of the page stream in the handoff queue, compared by identity
+    private static final List<Appliance> END_OF_PAGES = Collections.unmodifiableList(new ArrayList<>());
+
     private final ApiClient client;
-    private final ApplianceLogRepository logStore;
-    private final ScheduledExecutorService executor;
+    private final ApplianceLogWriter logWriter;
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timeoutScheduler;
+    // The worker executor as seen by the reactive pipeline's publishOn, never disposed here
+    private final Scheduler workers;
+    private final ProcessorProperties properties;
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final ApplianceStateTable stateTable;
+    private final PageSizeController pageSize;
+    private final ApplianceOwnership ownership;
+    private final Counter filterPassed;
+    private final Counter filterRejected;
+    private final Counter fetchTimeouts;
+    private final Counter drainTimeouts;
+    private final Counter remediateTimeouts;
+    private final AtomicInteger appliancesInFlight = new AtomicInteger();
+    // Runs the blocking fetcher and processing loops, kept off the shared API executor
+    private final ExecutorService pipelineExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "appliance-pipeline");
+        thread.setDaemon(true);
+        return thread;
+    });
 
-    public ApplianceProcessor(ApiClient client, ApplianceLogRepository logStore, ScheduledExecutorService executor) {
+    public ApplianceProcessor(ApiClient client, ApplianceLogWriter logWriter,
+                              @Qualifier("apiTaskExecutor") ExecutorService executor,
+                              @Qualifier("apiTimeoutScheduler") ScheduledExecutorService timeoutScheduler,
+                              ProcessorProperties properties, AdaptiveConcurrencyLimiter limiter,
+                              ApplianceStateTable stateTable, PageSizeController pageSize,
+                              ApplianceOwnership ownership, MeterRegistry registry) {
         this.client = client;
-        this.logStore = logStore;
+        this.logWriter = logWriter;
         this.executor = executor;
+        this.timeoutScheduler = timeoutScheduler;
+        this.workers = Schedulers.fromExecutorService(executor, "apiTaskExecutor");
+        this.properties = properties;
+        this.limiter = limiter;
+        this.stateTable = stateTable;
+        this.pageSize = pageSize;
+        this.ownership = ownership;
+        this.filterPassed = filterCounter(registry, "pass");
+        this.filterRejected = filterCounter(registry, "reject");
+        this.fetchTimeouts = timeoutCounter(registry, "fetch");
+        this.drainTimeouts = timeoutCounter(registry, "drain");
+        this.remediateTimeouts = timeoutCounter(registry, "remediate");
+        Gauge.builder("octools.processor.in.flight", appliancesInFlight, AtomicInteger::get)
+                .description("Appliances being drained or remediated")
+                .register(registry);
+    }
+
+    private static Counter filterCounter(MeterRegistry registry, String result) {
+        return Counter.builder("octools.processor.filter")
+                .description("Fetched appliances that passed or were rejected by the stale filter")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private static Counter timeoutCounter(MeterRegistry registry, String operation) {
+        return Counter.builder("octools.api.timeouts")
+                .description("Appliance API calls abandoned after the call timeout")
+                .tag("operation", operation)
+                .register(registry);
     }
 
     /**
-     * Initializes the processor by running the job once immediately after construction.
+     * Stops the pipeline threads on shutdown.
      */
-    @PostConstruct
-    public void init() {
-        logger.info("Running job immediately at startup...");
-        runJob();
+    @PreDestroy
+    public void shutdown() {
+        pipelineExecutor.shutdownNow();
     }
 
     /**
-     * Scheduled job to fetch, process, and log appliance data every 5 minutes.
+     * Walks all appliance pages and processes the stale ones.
+     * <p>
+     * Page discovery and processing run as two decoupled stages. The fetcher requests page N+1 as soon
+     * as page N arrives and hands each filtered page to the processing stage through a queue bounded by
+     * {@code prefetchPages}. The processing stage starts drains as appliances arrive, with at most
+     * {@code maxInFlightAppliances} in flight. A slow drain therefore no longer holds up the walk over
+     * the rest of the fleet, and the fetcher only pauses when the processing stage falls that far behind.
+     * <p>
+     * With {@code octools.processor.pipeline=reactive} the same walk runs as one Reactor stream instead, see
+     * {@link #reactivePipeline(JobRun)}.
+     * <p>
+     * Runs are started by the {@link JobCoordinator}, which keeps them from overlapping.
+     *
+     * @param run receives the statistics of this run
+     * @return CompletableFuture that completes when every page has been fetched and processed
      */
-    @Scheduled(cron = "0 */5 * * * *")
-    public void runJob() {
-        logger.info("Starting scheduled job...");
-        fetchAndProcessAllAppliances()
-                .exceptionally(ex -> {
-                    logger.error("Scheduled job failed: {}", ex.getMessage(), ex);
-                    return null;
-                });
+    CompletableFuture<Void> fetchAndProcessAllAppliances(JobRun run) {
+        stateTable.evictExpired();
+        pageSize.startRun();
+        if (properties.getPipeline() == PipelineMode.REACTIVE) {
+            return reactivePipeline(run).toFuture();
+        }
+        BlockingQueue<List<Appliance>> handoff = new ArrayBlockingQueue<>(Math.max(1, properties.getPrefetchPages()));
+        CompletableFuture<Void> fetched = CompletableFuture.runAsync(() -> fetchAllPages(handoff, run), pipelineExecutor);
+        CompletableFuture<Void> processed = CompletableFuture
+                .supplyAsync(() -> processAllPages(handoff, run), pipelineExecutor)
+                .thenCompose(allProcessed -> allProcessed);
+        return CompletableFuture.allOf(fetched, processed);
     }
 
-    @VisibleForTesting
-    CompletableFuture<Void> fetchAndProcessAllAppliances() {
-        return fetchAndProcessPage(null);
-    }
-
-    private CompletableFuture<Void> fetchAndProcessPage(String cursor) {
-        return client.fetchAppliances(cursor)
-                .orTimeout(API_CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)
-                .thenCompose(page -> {
-                    List<Appliance> pageData = page.getData();
-
-                    return drainAndRemediateAppliances(pageData)
-                            .thenCompose(v -> {
-                                if (page.getPageInfo().isHasNextPage()) {
-                                    return fetchAndProcessPage(page.getPageInfo().getEndCursor());
-                                } else {
-                                    return CompletableFuture.completedFuture(null);
-                                }
-                            });
-                })
-                .exceptionally(ex -> {
-                    logger.error("Error fetching appliances after cursor {}: {}", cursor, ex.getMessage(), ex);
-                    return null; // return a completed future with void
-                });
+    /**
+     * Fetcher stage: walks the page cursor, prefetching the next page while the current one is handed off.
+     * Every page is requested with the size chosen by the {@link PageSizeController}; a page that fails because
+     * of its size or an overload is fetched again with a smaller size, up to {@code maxRetries} times.
+     * Always ends the stream with {@link #END_OF_PAGES}, also when a fetch fails.
+     */
+    private void fetchAllPages(BlockingQueue<List<Appliance>> handoff, JobRun run) {
+        String cursor = null;
+        int retries = 0;
+        try {
+            PageFetch next = fetchPage(null, run);
+            while (next != null) {
+                FilteredAppliancePage page;
+                try {
+                    page = next.result.join();
+                } catch (CompletionException ex) {
+                    if (retries < properties.getPaging().getMaxRetries() && pageSize.onError(next.first, ex)) {
+                        retries++;
+                        logger.warn("Fetching {} appliances after cursor {} failed, retrying with {}",
+                                next.first, cursor, pageSize.getPageSize());
+                        next = fetchPage(cursor, run);
+                        continue;
+                    }
+                    throw ex;
+                }
+                retries = 0;
+                if (page.getPageInfo().isHasNextPage()) {
+                    cursor = page.getPageInfo().getEndCursor();
+                    next = fetchPage(cursor, run);
+                } else {
+                    next = null;
+                }
+                List<Appliance> filteredAppliancesToDrain = pageFetched(page, run);
+                if (!filteredAppliancesToDrain.isEmpty()) {
+                    handoff.put(filteredAppliancesToDrain);
+                }
+            }
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+            logger.error("Error fetching appliances after cursor {}: {}", cursor, cause.getMessage(), cause);
+            run.aborted("Fetch after cursor " + cursor + " failed: " + cause.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            logger.warn("Appliance page fetcher interrupted after cursor {}", cursor);
+            run.aborted("Fetch interrupted after cursor " + cursor);
+        } finally {
+            endOfPages(handoff);
+        }
     }
 
     /**
-     * Filters appliances to drain/remediate and processes them asynchronously.
-     *
-     * @param appliances list of appliances to filter and process
-     * @return CompletableFuture that completes when all processing is finished
+     * Counts a fetched page and returns its appliances that passed the stale filter.
      */
-    private CompletableFuture<Void> drainAndRemediateAppliances(List<Appliance> appliances) {
-        List<Appliance> filteredAppliancesToDrain = getFilteredAppliances(appliances);
+    private List<Appliance> pageFetched(FilteredAppliancePage page, JobRun run) {
+        List<Appliance> filteredAppliancesToDrain = page.getAppliances();
+        filterPassed.increment(filteredAppliancesToDrain.size());
+        filterRejected.increment(page.getScanned() - filteredAppliancesToDrain.size());
+        run.pageFetched(page.getScanned(), filteredAppliancesToDrain.size());
         if (filteredAppliancesToDrain.isEmpty()) {
             logger.info("No appliances matched the filter criteria. Skipping processing.");
         }
-        List<CompletableFuture<Void>> processedFilteredAppliances = filteredAppliancesToDrain.stream()
-                .map(appliance -> drainAndRemediateSingleAppliance(appliance.getId()))
-                .toList();
+        return filteredAppliancesToDrain;
+    }
 
-        return CompletableFuture.allOf(processedFilteredAppliances.toArray(new CompletableFuture[0]));
+    /**
+     * Fetches a page with the stale filter pushed down to the client, so appliances that are not stale are
+     * dropped while the page is decoded. The page's latency and size are reported to the
+     * {@link PageSizeController} before the returned future completes.
+     */
+    private PageFetch fetchPage(String cursor, JobRun run) {
+        int first = pageSize.getPageSize();
+        run.pageSizeChosen(first);
+        long start = System.nanoTime();
+        CompletableFuture<FilteredAppliancePage> result = withTimeout(
+                client.fetchAppliances(cursor, first, staleFilter(Instant.now())), fetchTimeouts)
+                .whenComplete((page, ex) -> {
+                    if (ex == null) {
+                        pageSize.onPage(first, page.getScanned(), page.getPageInfo().isHasNextPage(),
+                                System.nanoTime() - start, page.getBytes());
+                    }
+                });
+        return new PageFetch(first, result);
+    }
+
+    /**
+     * A page request in flight and the size it was made with.
+     */
+    private static final class PageFetch {
+        private final int first;
+        private final CompletableFuture<FilteredAppliancePage> result;
+
+        private PageFetch(int first, CompletableFuture<FilteredAppliancePage> result) {
+            this.first = first;
+            this.result = result;
+        }
+    }
+
+    private void endOfPages(BlockingQueue<List<Appliance>> handoff) {
+        boolean interrupted = Thread.interrupted();
+        while (true) {
+            try {
+                handoff.put(END_OF_PAGES);
+                break;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Processing stage: starts drain/remediate for every handed-off appliance, bounded by
+     * {@code maxInFlightAppliances}. Appliances of another cluster member's shard, and appliances that are
+     * still being processed or cooling down after a recent remediation, are skipped. Ownership is checked
+     * right before an appliance is started, so a rebalance during the run takes effect immediately.
+     * <p>
+     * Only the number of unfinished appliances is kept, not their futures, so a walk over the whole fleet holds
+     * no more than {@code maxInFlightAppliances} of them at a time.
+     *
+     * @return CompletableFuture that completes when all started appliances are processed
+     */
+    private CompletableFuture<Void> processAllPages(BlockingQueue<List<Appliance>> handoff, JobRun run) {
+        Semaphore inFlight = new Semaphore(Math.max(1, properties.getMaxInFlightAppliances()));
+        CompletableFuture<Void> allProcessed = new CompletableFuture<>();
+        // one for the stage itself, so the count cannot reach zero before the last page has been handed off
+        AtomicInteger unfinished = new AtomicInteger(1);
+        Runnable finished = () -> {
+            if (unfinished.decrementAndGet() == 0) {
+                allProcessed.complete(null);
+            }
+        };
+        int started = 0;
+        int skipped = 0;
+        int notOwned = 0;
+        try {
+            List<Appliance> appliances;
+            while ((appliances = handoff.take()) != END_OF_PAGES) {
+                for (Appliance appliance : appliances) {
+                    if (!ownership.owns(appliance.getId())) {
+                        notOwned++;
+                        continue;
+                    }
+                    if (!stateTable.tryStart(appliance.getId())) {
+                        skipped++;
+                        continue;
+                    }
+                    inFlight.acquire();
+                    appliancesInFlight.incrementAndGet();
+                    unfinished.incrementAndGet();
+                    started++;
+                    drainAndRemediateSingleAppliance(appliance.getId(), run)
+                            .whenComplete((v, ex) -> {
+                                appliancesInFlight.decrementAndGet();
+                                inFlight.release();
+                                finished.run();
+                            });
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            logger.warn("Appliance processing stage interrupted, {} appliances started", started);
+        }
+        run.appliancesSkipped(skipped);
+        run.appliancesNotOwned(notOwned);
+        if (skipped > 0) {
+            logger.info("Skipped {} stale appliances that are in flight or cooling down", skipped);
+        }
+        finished.run();
+        return allProcessed;
     }
 
     /**
      * Processes a single appliance by draining and remediating it asynchronously.
+     * Both calls go through the adaptive limiter, which holds them back while the backend is overloaded.
      *
      * @param applianceId appliance identifier
+     * @param run         counts the appliance as processed or failed
      * @return CompletableFuture that completes when processing finishes
      */
     @VisibleForTesting
-    CompletableFuture<Void> drainAndRemediateSingleAppliance(String applianceId) {
-        return client.drain(applianceId)
-                .orTimeout(API_CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+    CompletableFuture<Void> drainAndRemediateSingleAppliance(String applianceId, JobRun run) {
+        return limiter.submit(() -> withTimeout(client.drain(applianceId), drainTimeouts))
                 .thenComposeAsync(drainResult -> handleDrainSuccess(applianceId, drainResult), executor)
+                .thenRun(() -> processed(applianceId, run))
                 .exceptionally(ex -> {
-                    logger.error("Error processing appliance {}: {}", applianceId, ex.getMessage(), ex);
-                    logStore.save(new ApplianceLog(applianceId, "PROCESS", false, ex.getMessage(), Instant.now()));
+                    failed(applianceId, run, ex);
                     return null;
                 });
     }
 
     private CompletableFuture<Void> handleDrainSuccess(String applianceId, DrainResult drainResult) {
+        drained(applianceId, drainResult);
+        return limiter.submit(() -> withTimeout(client.remediate(applianceId), remediateTimeouts))
+                .thenAcceptAsync(remediateResult -> remediated(applianceId, remediateResult), executor);
+    }
+
+    private void drained(String applianceId, DrainResult drainResult) {
+        if (drainResult == null) {
+            throw noResult(ApiClient.DRAIN, applianceId);
+        }
         logger.info("Appliance " + applianceId + " has been drained with result: " + drainResult);
-        logStore.save(new ApplianceLog(applianceId, "DRAIN", true,
+        logWriter.write(new ApplianceLog(applianceId, "DRAIN", true,
                 drainResult.toString(), Instant.now()));
-        return client.remediate(applianceId)
-                .orTimeout(API_CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS)
-                .thenAcceptAsync(remediateResult -> {
-                    logger.info("Appliance " + applianceId + " has been remediated with result: " + remediateResult);
-                    logStore.save(new ApplianceLog(applianceId, "REMEDIATE", true,
-                            remediateResult.toString(), Instant.now()));
-                }, executor);
+        stateTable.remediating(applianceId);
+    }
+
+    private void remediated(String applianceId, RemediationResult remediateResult) {
+        if (remediateResult == null) {
+            throw noResult(ApiClient.REMEDIATE, applianceId);
+        }
+        logger.info("Appliance " + applianceId + " has been remediated with result: " + remediateResult);
+        logWriter.write(new ApplianceLog(applianceId, "REMEDIATE", true,
+                remediateResult.toString(), Instant.now()));
+    }
+
+    /**
+     * A call that succeeded without a result leaves the appliance in an unknown state, so both pipelines fail it:
+     * the future methods see the result as null, the reactive ones as an empty Mono.
+     */
+    private static IllegalStateException noResult(String operation, String applianceId) {
+        return new IllegalStateException("The " + operation + " call for appliance " + applianceId
+                + " returned no result");
+    }
+
+    private void processed(String applianceId, JobRun run) {
+        stateTable.completed(applianceId);
+        run.applianceProcessed();
+    }
+
+    private void failed(String applianceId, JobRun run, Throwable ex) {
+        stateTable.failed(applianceId);
+        run.applianceFailed();
+        logger.error("Error processing appliance {}: {}", applianceId, ex.getMessage(), ex);
+        logWriter.write(new ApplianceLog(applianceId, "PROCESS", false, ex.getMessage(), Instant.now()));
+    }
+
+    /**
+     * Reactive pipeline: walks the pages and processes the stale appliances as one backpressured stream.
+     * <p>
+     * The pages are a {@link Mono#expand expansion} of the first page, each page expanding into the fetch of the
+     * next one, so a long walk is a loop inside the operator rather than a chain of futures. At most
+     * {@code prefetchPages} pages are fetched ahead of the appliances being started, and {@code flatMap} keeps
+     * at most {@code maxInFlightAppliances} appliances in flight. Demand flows back up the stream, so a slow
+     * drain pauses the walk just as the bounded queue does, without the two pipeline threads. Ownership and the
+     * state table are checked when an appliance is requested, i.e. right before it is started.
+     * <p>
+     * The calls are the client's single attempts, so retries, call timeouts and page size retries are all
+     * operators here, and the limiter hands out permits as Monos; no call goes through a future. The calls
+     * complete on the HTTP event loop, so the log writes after each of them are moved to the worker executor with
+     * {@code publishOn}.
+     *
+     * @return Mono that completes when every page has been fetched and processed
+     */
+    private Mono<Void> reactivePipeline(JobRun run) {
+        AtomicInteger skipped = new AtomicInteger();
+        AtomicInteger notOwned = new AtomicInteger();
+        return fetchPageReactive(null, run)
+                .expand(page -> page.getPageInfo().isHasNextPage()
+                        ? fetchPageReactive(page.getPageInfo().getEndCursor(), run)
+                        : Mono.empty())
+                .concatMapIterable(page -> pageFetched(page, run), Math.max(1, properties.getPrefetchPages()))
+                .filter(appliance -> {
+                    if (!ownership.owns(appliance.getId())) {
+                        notOwned.incrementAndGet();
+                        return false;
+                    }
+                    if (!stateTable.tryStart(appliance.getId())) {
+                        skipped.incrementAndGet();
+                        return false;
+                    }
+                    return true;
+                })
+                .flatMap(appliance -> processAppliance(appliance.getId(), run),
+                        Math.max(1, properties.getMaxInFlightAppliances()))
+                .then()
+                .doOnTerminate(() -> {
+                    run.appliancesSkipped(skipped.get());
+                    run.appliancesNotOwned(notOwned.get());
+                    if (skipped.get() > 0) {
+                        logger.info("Skipped {} stale appliances that are in flight or cooling down", skipped.get());
+                    }
+                });
+    }
+
+    /**
+     * Reactive counterpart of {@link #fetchPage}: fetches a page once subscribed and, if it failed because of its
+     * size or an overload, fetches it again with the smaller size chosen by the {@link PageSizeController}, up to
+     * {@code maxRetries} times. A page that still fails aborts the run and ends the page stream; appliances already
+     * started are still processed.
+     */
+    private Mono<FilteredAppliancePage> fetchPageReactive(String cursor, JobRun run) {
+        AtomicInteger first = new AtomicInteger();
+        return Mono.defer(() -> {
+                    int size = pageSize.getPageSize();
+                    first.set(size);
+                    run.pageSizeChosen(size);
+                    long start = System.nanoTime();
+                    return attempts(() -> client.fetchAppliancesOnce(cursor, size, staleFilter(Instant.now()),
+                                    API_CALL_TIMEOUT), ApiClient.FETCH, fetchTimeouts)
+                            .doOnNext(page -> pageSize.onPage(size, page.getScanned(),
+                                    page.getPageInfo().isHasNextPage(), System.nanoTime() - start, page.getBytes()));
+                })
+                .retryWhen(Retry.max(properties.getPaging().getMaxRetries())
+                        .filter(ex -> pageSize.onError(first.get(), ex))
+                        .doBeforeRetry(signal -> logger.warn("Fetching {} appliances after cursor {} failed, "
+                                + "retrying with {}", first.get(), cursor, pageSize.getPageSize()))
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+                .onErrorResume(ex -> {
+                    logger.error("Error fetching appliances after cursor {}: {}", cursor, ex.getMessage(), ex);
+                    run.aborted("Fetch after cursor " + cursor + " failed: " + ex.getMessage());
+                    return Mono.empty();
+                });
     }
 
+    /**
+     * Reactive counterpart of {@link #drainAndRemediateSingleAppliance}. A failure is recorded and swallowed, so
+     * one appliance never ends the stream. A call that completes empty fails the appliance, like a null result does
+     * there.
+     */
+    private Mono<Void> processAppliance(String applianceId, JobRun run) {
+        return limited(() -> client.drainOnce(applianceId, API_CALL_TIMEOUT), ApiClient.DRAIN, drainTimeouts)
+                .switchIfEmpty(Mono.error(() -> noResult(ApiClient.DRAIN, applianceId)))
+                .publishOn(workers)
+                .flatMap(drainResult -> {
+                    drained(applianceId, drainResult);
+                    return limited(() -> client.remediateOnce(applianceId, API_CALL_TIMEOUT), ApiClient.REMEDIATE,
+                            remediateTimeouts);
+                })
+                .switchIfEmpty(Mono.error(() -> noResult(ApiClient.REMEDIATE, applianceId)))
+                .publishOn(workers)
+                .doOnNext(remediateResult -> remediated(applianceId, remediateResult))
+                .then(Mono.<Void>fromRunnable(() -> processed(applianceId, run)))
+                .onErrorResume(ex -> {
+                    failed(applianceId, run, ex);
+                    return Mono.empty();
+                })
+                .doOnSubscribe(subscription -> appliancesInFlight.incrementAndGet())
+                .doFinally(signal -> appliancesInFlight.decrementAndGet());
+    }
+
+    /**
+     * Runs the attempts of a call under one permit of the adaptive limiter, like the future methods run their
+     * retries. The timeouts sit inside the limiter, so a call that times out counts as an overload signal.
+     */
+    private <T> Mono<T> limited(Supplier<Mono<T>> attempt, String operation, Counter timeouts) {
+        return limiter.acquire(() -> attempts(attempt, operation, timeouts));
+    }
+
+    /**
+     * Subscribes to a new attempt of the call until one succeeds or the client's retry policy for the operation
+     * gives up. Timed-out attempts are not retried.
+     *
+     * @param timeouts counts the calls that timed out
+     */
+    private <T> Mono<T> attempts(Supplier<Mono<T>> attempt, String operation, Counter timeouts) {
+        return Mono.defer(attempt)
+                .doOnError(TimeoutException.class, ex -> timeouts.increment())
+                .retryWhen(client.retrySpec(operation));
+    }
+
+    /**
+     * Fails the future with a {@link TimeoutException} if it has not completed within the API call timeout.
+     * The timeout fires on the dedicated timeout scheduler, so it does not depend on the worker executor.
+     *
+     * @param timeouts counts the calls that timed out
+     */
+    private <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, Counter timeouts) {
+        if (future.isDone()) {
+            return future;
+        }
+        ScheduledFuture<?> timeout = timeoutScheduler.schedule(() -> {
+            if (future.completeExceptionally(
+                    new TimeoutException("API call timed out after " + API_CALL_TIMEOUT_SECONDS + "s"))) {
+                timeouts.increment();
+            }
+        }, API_CALL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        future.whenComplete((result, ex) -> timeout.cancel(false));
+        return future;
+    }
+
+    /**
+     * Live appliances not heard from for more than {@value #STALE_MINUTES_THRESHOLD} minutes are stale.
+     * The cutoff is computed once per page rather than per appliance.
+     */
     @VisibleForTesting
-    List<Appliance> getFilteredAppliances(List<Appliance> appliances) {
-        return appliances.stream()
-                .filter(ap -> "LIVE".equals(ap.getOpStatus()) &&
-                        (ap.getLastHeardFromOn() == null ||
-                                Duration.between(ap.getLastHeardFromOn(), Instant.now()).toMinutes() > STALE_MINUTES_THRESHOLD))
-                .collect(Collectors.toList());
-    }
-}
\ No newline at end of file
+    static ApplianceFilter staleFilter(Instant now) {
+        return ApplianceFilter.liveAndSilentSince(now.minus(STALE_MINUTES_THRESHOLD, ChronoUnit.MINUTES));
+    }
+}
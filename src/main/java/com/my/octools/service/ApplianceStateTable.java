@@ -0,0 +1,188 @@
+package com.my.octools.service;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.my.octools.config.ProcessorProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Tracks where each appliance is in its drain/remediate cycle, so a run skips appliances that are
+ * still being processed or were processed recently.
+ * <p>
+ * Appliances move IDLE -> DRAINING -> REMEDIATING -> COOLDOWN -> IDLE. Every state except IDLE has a deadline,
+ * after which the appliance counts as IDLE again: in-flight states expire after {@code inFlightTtl} so a lost
+ * call cannot block an appliance forever, and COOLDOWN expires after {@code cooldown} (or {@code failureCooldown}
+ * when processing failed). IDLE appliances are not stored, so the table only holds appliances seen recently.
+ * <p>
+ * Each appliance skipped by {@link #tryStart(String)} is counted per state it was in.
+ */
+public class ApplianceStateTable implements MeterBinder {
+
+    /**
+     * Processing state of an appliance.
+     */
+    public enum State {
+        IDLE, DRAINING, REMEDIATING, COOLDOWN
+    }
+
+    private final long inFlightTtlNanos;
+    private final long cooldownNanos;
+    private final long failureCooldownNanos;
+    private final LongSupplier nanoClock;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<State, AtomicLong> suppressed = new EnumMap<>(State.class);
+
+    public ApplianceStateTable(ProcessorProperties.State config) {
+        this(config, System::nanoTime);
+    }
+
+    @VisibleForTesting
+    ApplianceStateTable(ProcessorProperties.State config, LongSupplier nanoClock) {
+        this.inFlightTtlNanos = config.getInFlightTtl().toNanos();
+        this.cooldownNanos = config.getCooldown().toNanos();
+        this.failureCooldownNanos = config.getFailureCooldown().toNanos();
+        this.nanoClock = nanoClock;
+        for (State state : State.values()) {
+            suppressed.put(state, new AtomicLong());
+        }
+    }
+
+    /**
+     * Moves the appliance to DRAINING if it is IDLE.
+     *
+     * @param applianceId appliance identifier
+     * @return true if the caller should process the appliance, false if it is skipped
+     */
+    public boolean tryStart(String applianceId) {
+        long now = nanoClock.getAsLong();
+        Entry started = new Entry(State.DRAINING, now + inFlightTtlNanos);
+        Entry current = entries.compute(applianceId,
+                (id, existing) -> existing == null || existing.isExpired(now) ? started : existing);
+        if (current != started) {
+            suppressed.get(current.state).incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records that the drain succeeded and remediation has started.
+     */
+    public void remediating(String applianceId) {
+        entries.put(applianceId, new Entry(State.REMEDIATING, nanoClock.getAsLong() + inFlightTtlNanos));
+    }
+
+    /**
+     * Records that the appliance was remediated and starts its cooldown.
+     */
+    public void completed(String applianceId) {
+        cooldown(applianceId, cooldownNanos);
+    }
+
+    /**
+     * Records that draining or remediating failed; the appliance is retried after the failure cooldown.
+     */
+    public void failed(String applianceId) {
+        cooldown(applianceId, failureCooldownNanos);
+    }
+
+    private void cooldown(String applianceId, long durationNanos) {
+        if (durationNanos <= 0) {
+            entries.remove(applianceId);
+        } else {
+            entries.put(applianceId, new Entry(State.COOLDOWN, nanoClock.getAsLong() + durationNanos));
+        }
+    }
+
+    /**
+     * @return the current state of the appliance, IDLE if it has none or its state expired
+     */
+    public State getState(String applianceId) {
+        Entry entry = entries.get(applianceId);
+        return entry == null || entry.isExpired(nanoClock.getAsLong()) ? State.IDLE : entry.state;
+    }
+
+    /**
+     * Drops expired entries, returning those appliances to IDLE.
+     *
+     * @return number of entries removed
+     */
+    public int evictExpired() {
+        long now = nanoClock.getAsLong();
+        int evicted = 0;
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            // only remove the expired entry itself, not one a concurrent tryStart just put in its place
+            if (entry.getValue().isExpired(now) && entries.remove(entry.getKey(), entry.getValue())) {
+                evicted++;
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * @return number of appliances currently in the given state; IDLE appliances are not tracked and report 0
+     */
+    public long count(State state) {
+        long now = nanoClock.getAsLong();
+        return entries.values().stream()
+                .filter(entry -> entry.state == state && !entry.isExpired(now))
+                .count();
+    }
+
+    /**
+     * @return number of times an appliance was skipped because it was in the given state
+     */
+    public long getSuppressedCount(State state) {
+        return suppressed.get(state).get();
+    }
+
+    /**
+     * @return total number of skipped appliances over all states
+     */
+    public long getSuppressedCount() {
+        return suppressed.values().stream().mapToLong(AtomicLong::get).sum();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (State state : State.values()) {
+            if (state == State.IDLE) {
+                continue;
+            }
+            String tag = state.name().toLowerCase(Locale.ROOT);
+            Gauge.builder("octools.appliances.state", this, table -> table.count(state))
+                    .description("Appliances currently in the given processing state")
+                    .tag("state", tag)
+                    .register(registry);
+            FunctionCounter.builder("octools.appliances.suppressed", this, table -> table.getSuppressedCount(state))
+                    .description("Stale appliances skipped because they were in the given processing state")
+                    .tag("state", tag)
+                    .register(registry);
+        }
+    }
+
+    private static final class Entry {
+        private final State state;
+        private final long deadlineNanos;
+
+        private Entry(State state, long deadlineNanos) {
+            this.state = state;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        private boolean isExpired(long now) {
+            return now - deadlineNanos >= 0;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.my.octools.service;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.my.octools.config.OverlapPolicy;
+import com.my.octools.config.ProcessorProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Starts the appliance job at startup and on its schedule, and keeps runs from overlapping.
+ * <p>
+ * A run's {@link CompletableFuture} outlives the scheduler thread that started it, so a tick alone cannot
+ * tell whether the previous walk over the fleet has finished. The coordinator allows one run at a time: a tick
+ * that fires while a run is in progress is dropped ({@link OverlapPolicy#SKIP}) or, with
+ * {@link OverlapPolicy#COALESCE}, starts a single extra run once the current one finishes, however many ticks
+ * were missed.
+ * <p>
+ * Every run gets an increasing ID and its statistics are kept for the last {@code historySize} runs.
+ * A warning is logged when a run takes more than {@value #CYCLE_TIME_WARNING_PERCENT}% of the schedule period.
+ */
+@Service
+public class JobCoordinator implements MeterBinder {
+    private static final Logger logger = LoggerFactory.getLogger(JobCoordinator.class);
+
+    static final String TRIGGER_STARTUP = "startup";
+    static final String TRIGGER_SCHEDULE = "schedule";
+    static final String TRIGGER_COALESCED = "coalesced";
+
+    private static final int CYCLE_TIME_WARNING_PERCENT = 80;
+
+    private final ApplianceProcessor processor;
+    private final OverlapPolicy overlapPolicy;
+    private final int historySize;
+    private final Duration schedulePeriod;
+    private final Clock clock;
+
+    // All fields below are guarded by this
+    private final Deque<JobRun> history = new ArrayDeque<>();
+    private JobRun current;
+    private boolean tickPending;
+    private long nextRunId = 1;
+    private long skippedTicks;
+    private long coalescedTicks;
+
+    public JobCoordinator(ApplianceProcessor processor, ProcessorProperties properties) {
+        this(processor, properties.getJob(), Clock.systemDefaultZone());
+    }
+
+    @VisibleForTesting
+    JobCoordinator(ApplianceProcessor processor, ProcessorProperties.Job config, Clock clock) {
+        this.processor = processor;
+        this.overlapPolicy = config.getOverlapPolicy();
+        this.historySize = Math.max(1, config.getHistorySize());
+        this.schedulePeriod = schedulePeriod(config.getCron(), ZonedDateTime.now(clock));
+        this.clock = clock;
+    }
+
+    /**
+     * Runs the job once immediately after startup.
+     */
+    @PostConstruct
+    public void init() {
+        logger.info("Running job immediately at startup...");
+        trigger(TRIGGER_STARTUP);
+    }
+
+    /**
+     * Scheduled job to fetch, process, and log appliance data, every 5 minutes by default.
+     */
+    @Scheduled(cron = "${octools.processor.job.cron:0 */5 * * * *}")
+    public void runJob() {
+        trigger(TRIGGER_SCHEDULE);
+    }
+
+    /**
+     * Starts a run unless one is in progress.
+     *
+     * @param trigger what started the run, recorded with it
+     * @return the started run, empty if the previous run is still in progress
+     */
+    public synchronized Optional<JobRun> trigger(String trigger) {
+        if (current != null) {
+            if (overlapPolicy == OverlapPolicy.COALESCE) {
+                if (tickPending) {
+                    coalescedTicks++;
+                }
+                tickPending = true;
+                logger.warn("Run {} still in progress after {} ms, {} run queued to start when it finishes",
+                        current.getId(), current.getDurationMillis(), trigger);
+            } else {
+                skippedTicks++;
+                logger.warn("Run {} still in progress after {} ms, skipping {} run",
+                        current.getId(), current.getDurationMillis(), trigger);
+            }
+            return Optional.empty();
+        }
+        return Optional.of(start(trigger));
+    }
+
+    private JobRun start(String trigger) {
+        JobRun run = new JobRun(nextRunId++, trigger, clock.instant());
+        current = run;
+        history.addFirst(run);
+        while (history.size() > historySize) {
+            history.removeLast();
+        }
+        logger.info("Starting run {} ({})...", run.getId(), trigger);
+        CompletableFuture<Void> processed;
+        try {
+            processed = processor.fetchAndProcessAllAppliances(run);
+        } catch (RuntimeException ex) {
+            processed = CompletableFuture.failedFuture(ex);
+        }
+        processed.whenComplete((v, ex) -> finish(run, ex));
+        return run;
+    }
+
+    private synchronized void finish(JobRun run, Throwable ex) {
+        if (ex != null) {
+            Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+            logger.error("Run {} failed: {}", run.getId(), cause.getMessage(), cause);
+            run.aborted(cause.getMessage());
+        }
+        run.finish(clock.instant());
+        current = null;
+        logger.info("Finished {}", run);
+        if (schedulePeriod != null
+                && run.getDurationMillis() * 100 > schedulePeriod.toMillis() * CYCLE_TIME_WARNING_PERCENT) {
+            logger.warn("Run {} took {} ms, close to or above the schedule period of {} ms",
+                    run.getId(), run.getDurationMillis(), schedulePeriod.toMillis());
+        }
+        if (tickPending) {
+            tickPending = false;
+            start(TRIGGER_COALESCED);
+        }
+    }
+
+    /**
+     * @return the run in progress, empty if the job is idle
+     */
+    public synchronized Optional<JobRun> getCurrentRun() {
+        return Optional.ofNullable(current);
+    }
+
+    /**
+     * @param count maximum number of runs to return
+     * @return the most recent runs, newest first, including the one in progress
+     */
+    public synchronized List<JobRun> getRecentRuns(int count) {
+        List<JobRun> runs = new ArrayList<>(Math.min(count, history.size()));
+        for (JobRun run : history) {
+            if (runs.size() == count) {
+                break;
+            }
+            runs.add(run);
+        }
+        return runs;
+    }
+
+    /**
+     * @return the run with the given ID, empty if it is unknown or no longer kept
+     */
+    public synchronized Optional<JobRun> getRun(long id) {
+        return history.stream().filter(run -> run.getId() == id).findFirst();
+    }
+
+    /**
+     * @return time between two scheduled ticks, null if the cron expression has no further ticks
+     */
+    public Duration getSchedulePeriod() {
+        return schedulePeriod;
+    }
+
+    public OverlapPolicy getOverlapPolicy() {
+        return overlapPolicy;
+    }
+
+    /**
+     * @return number of ticks dropped because a run was in progress
+     */
+    public synchronized long getSkippedTicks() {
+        return skippedTicks;
+    }
+
+    /**
+     * @return number of ticks merged into an already queued run
+     */
+    public synchronized long getCoalescedTicks() {
+        return coalescedTicks;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("octools.job.running", this, coordinator -> coordinator.getCurrentRun().isPresent() ? 1 : 0)
+                .description("Whether an appliance job run is in progress")
+                .register(registry);
+        Gauge.builder("octools.job.last.duration", this, JobCoordinator::lastFinishedDurationSeconds)
+                .description("Duration of the last finished appliance job run")
+                .baseUnit("seconds")
+                .register(registry);
+        FunctionCounter.builder("octools.job.ticks.skipped", this, JobCoordinator::getSkippedTicks)
+                .description("Scheduled ticks dropped because the previous run was still in progress")
+                .register(registry);
+        FunctionCounter.builder("octools.job.ticks.coalesced", this, JobCoordinator::getCoalescedTicks)
+                .description("Scheduled ticks merged into an already queued run")
+                .register(registry);
+    }
+
+    private synchronized double lastFinishedDurationSeconds() {
+        return history.stream()
+                .filter(run -> run != current)
+                .findFirst()
+                .map(run -> run.getDurationMillis() / 1000.0)
+                .orElse(Double.NaN);
+    }
+
+    /**
+     * Derives the schedule period from the first two ticks after {@code from}.
+     */
+    @VisibleForTesting
+    static Duration schedulePeriod(String cron, ZonedDateTime from) {
+        CronExpression expression = CronExpression.parse(cron);
+        ZonedDateTime next = expression.next(from);
+        ZonedDateTime after = next != null ? expression.next(next) : null;
+        return after != null ? Duration.between(next, after) : null;
+    }
+}
@@ -0,0 +1,243 @@
+package com.my.octools.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One run of the appliance job and its statistics.
+ * <p>
+ * Counters are updated by the pipeline threads while the run is in progress, so a running run can be
+ * read at any time and shows its progress so far.
+ */
+public class JobRun {
+
+    /**
+     * Lifecycle of a run.
+     */
+    public enum Status {
+        RUNNING,
+        /** Every page was walked; individual appliances may still have failed, see {@link #getFailures()}. */
+        SUCCEEDED,
+        /** The walk over the pages was aborted, see {@link #getError()}. */
+        FAILED
+    }
+
+    private final long id;
+    private final String trigger;
+    private final Instant startedAt;
+    private volatile Instant finishedAt;
+    private volatile Status status = Status.RUNNING;
+    private volatile String error;
+
+    private final AtomicInteger pagesFetched = new AtomicInteger();
+    private final AtomicInteger appliancesFetched = new AtomicInteger();
+    private final AtomicInteger appliancesFiltered = new AtomicInteger();
+    private final AtomicInteger appliancesSkipped = new AtomicInteger();
+    private final AtomicInteger appliancesNotOwned = new AtomicInteger();
+    private final AtomicInteger appliancesProcessed = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private volatile int initialPageSize;
+    private volatile int pageSize;
+    private volatile int minPageSize;
+    private volatile int maxPageSize;
+
+    /**
+     * @param id        run identifier, increasing with every run
+     * @param trigger   what started the run, e.g. {@code startup} or {@code schedule}
+     * @param startedAt start time of the run
+     */
+    public JobRun(long id, String trigger, Instant startedAt) {
+        this.id = id;
+        this.trigger = trigger;
+        this.startedAt = startedAt;
+    }
+
+    /**
+     * Records a fetched page.
+     *
+     * @param appliances number of appliances on the page
+     * @param filtered   number of them that matched the stale filter
+     */
+    void pageFetched(int appliances, int filtered) {
+        pagesFetched.incrementAndGet();
+        appliancesFetched.addAndGet(appliances);
+        appliancesFiltered.addAndGet(filtered);
+    }
+
+    /**
+     * Records the page size a page is requested with. The page fetches of a run never overlap, so there is one
+     * caller at a time.
+     */
+    void pageSizeChosen(int size) {
+        if (initialPageSize == 0) {
+            initialPageSize = size;
+            minPageSize = size;
+            maxPageSize = size;
+        }
+        pageSize = size;
+        minPageSize = Math.min(minPageSize, size);
+        maxPageSize = Math.max(maxPageSize, size);
+    }
+
+    /**
+     * Records stale appliances that were not processed because they are in flight or cooling down.
+     */
+    void appliancesSkipped(int count) {
+        appliancesSkipped.addAndGet(count);
+    }
+
+    /**
+     * Records stale appliances that were left to the other cluster members.
+     */
+    void appliancesNotOwned(int count) {
+        appliancesNotOwned.addAndGet(count);
+    }
+
+    /**
+     * Records an appliance that was drained and remediated.
+     */
+    void applianceProcessed() {
+        appliancesProcessed.incrementAndGet();
+    }
+
+    /**
+     * Records an appliance whose drain or remediation failed.
+     */
+    void applianceFailed() {
+        failures.incrementAndGet();
+    }
+
+    /**
+     * Records the error that aborted the walk over the pages; the run finishes as {@link Status#FAILED}.
+     */
+    void aborted(String error) {
+        this.error = error;
+    }
+
+    /**
+     * Ends the run.
+     *
+     * @param finishedAt end time of the run
+     */
+    void finish(Instant finishedAt) {
+        this.finishedAt = finishedAt;
+        this.status = error == null ? Status.SUCCEEDED : Status.FAILED;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getTrigger() {
+        return trigger;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    /**
+     * @return end time, null while the run is in progress
+     */
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @return duration of the run in milliseconds, up to now while it is in progress
+     */
+    public long getDurationMillis() {
+        Instant end = finishedAt != null ? finishedAt : Instant.now();
+        return Duration.between(startedAt, end).toMillis();
+    }
+
+    public int getPagesFetched() {
+        return pagesFetched.get();
+    }
+
+    public int getAppliancesFetched() {
+        return appliancesFetched.get();
+    }
+
+    /**
+     * @return number of fetched appliances that are live and stale
+     */
+    public int getAppliancesFiltered() {
+        return appliancesFiltered.get();
+    }
+
+    /**
+     * @return number of stale appliances skipped because they were in flight or cooling down
+     */
+    public int getAppliancesSkipped() {
+        return appliancesSkipped.get();
+    }
+
+    /**
+     * @return number of stale appliances that belong to another cluster member's shard
+     */
+    public int getAppliancesNotOwned() {
+        return appliancesNotOwned.get();
+    }
+
+    public int getAppliancesProcessed() {
+        return appliancesProcessed.get();
+    }
+
+    /**
+     * @return number of appliances whose drain or remediation failed
+     */
+    public int getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * @return page size the run started with, 0 until the first page is requested
+     */
+    public int getInitialPageSize() {
+        return initialPageSize;
+    }
+
+    /**
+     * @return page size of the latest page request; where the size settled once the run has finished
+     */
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getMinPageSize() {
+        return minPageSize;
+    }
+
+    public int getMaxPageSize() {
+        return maxPageSize;
+    }
+
+    @Override
+    public String toString() {
+        return "JobRun{" +
+                "id=" + id +
+                ", trigger='" + trigger + '\'' +
+                ", status=" + status +
+                ", durationMillis=" + getDurationMillis() +
+                ", pagesFetched=" + getPagesFetched() +
+                ", pageSize=" + getInitialPageSize() + "->" + getPageSize() +
+                ", appliancesFetched=" + getAppliancesFetched() +
+                ", appliancesFiltered=" + getAppliancesFiltered() +
+                ", appliancesSkipped=" + getAppliancesSkipped() +
+                ", appliancesNotOwned=" + getAppliancesNotOwned() +
+                ", appliancesProcessed=" + getAppliancesProcessed() +
+                ", failures=" + getFailures() +
+                (error != null ? ", error='" + error + '\'' : "") +
+                '}';
+    }
+}
@@ -0,0 +1,192 @@
+package com.my.octools.service;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.my.octools.api.ApiException;
+import com.my.octools.config.ProcessorProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Chooses the size ({@code first=}) of the appliance pages, so walking the fleet takes as few sequential round
+ * trips as the backend sustains.
+ * <p>
+ * Every fetched page is a sample. The size is scaled by how far the page's latency is from {@code targetLatency}
+ * and its payload from {@code maxPayload}, whichever is closer to its limit, by at most {@code maxGrowth} up and
+ * by at most half down per page. Ratios between 0.8 and 1.25 leave the size alone, so it settles instead of
+ * oscillating. The last page of a walk is shorter than requested and is not used.
+ * <p>
+ * Backend limits are learned as a ceiling below {@code maxSize}: a page that comes back shorter than requested
+ * while more pages follow shows the backend caps {@code first}, and a 413 or 414 answer shows it rejects the
+ * size. A 400 can mean anything, so it only halves the size for the next attempt; it becomes the ceiling once a
+ * smaller page of the same run succeeds. A timeout, 429 or 5xx halves the size. After either error the processor
+ * fetches the same cursor again with the new size.
+ * <p>
+ * The size carries over from one run to the next, so a run starts where the previous one ended. The ceiling is
+ * forgotten {@code ceilingTtl} after it was last lowered, so a backend that raised its limit, or a one-off answer
+ * mistaken for one, does not cap every later run.
+ */
+public class PageSizeController implements MeterBinder {
+    private static final Logger logger = LoggerFactory.getLogger(PageSizeController.class);
+
+    private static final double HOLD_BELOW = 1.25;
+    private static final double HOLD_ABOVE = 0.8;
+    private static final double MAX_SHRINK = 0.5;
+
+    private final int minSize;
+    private final int maxSize;
+    private final long targetLatencyNanos;
+    private final long maxPayloadBytes;
+    private final double maxGrowth;
+    private final long ceilingTtlNanos;
+    private final LongSupplier nanoClock;
+
+    // All fields below are guarded by this
+    private int size;
+    private int ceiling;
+    private long ceilingLoweredAt;
+    // Size last answered with a 400 in this run, 0 if none
+    private int rejectedWith400;
+
+    public PageSizeController(ProcessorProperties.Paging config) {
+        this(config, System::nanoTime);
+    }
+
+    @VisibleForTesting
+    PageSizeController(ProcessorProperties.Paging config, LongSupplier nanoClock) {
+        if (config.getMinSize() < 1 || config.getMaxSize() < config.getMinSize()) {
+            throw new IllegalArgumentException("Page size bounds must satisfy 1 <= minSize <= maxSize");
+        }
+        this.minSize = config.getMinSize();
+        this.maxSize = config.getMaxSize();
+        this.targetLatencyNanos = config.getTargetLatency().toNanos();
+        this.maxPayloadBytes = config.getMaxPayload().toBytes();
+        this.maxGrowth = Math.max(1.0, config.getMaxGrowth());
+        this.ceilingTtlNanos = config.getCeilingTtl().toNanos();
+        this.nanoClock = nanoClock;
+        this.ceiling = maxSize;
+        this.size = Math.max(minSize, Math.min(maxSize, config.getInitialSize()));
+    }
+
+    /**
+     * @return the size to request the next page with
+     */
+    public synchronized int getPageSize() {
+        return size;
+    }
+
+    /**
+     * @return the largest size the backend has been seen to accept, {@code maxSize} until it rejects or caps one
+     */
+    public synchronized int getCeiling() {
+        return ceiling;
+    }
+
+    /**
+     * Called before the first page of a run. Forgets a ceiling older than {@code ceilingTtl}, so the size may grow
+     * past it again, and a 400 of an earlier run.
+     */
+    synchronized void startRun() {
+        rejectedWith400 = 0;
+        if (ceiling < maxSize && nanoClock.getAsLong() - ceilingLoweredAt >= ceilingTtlNanos) {
+            logger.info("Page size ceiling of {} expired, allowing up to {} again", ceiling, maxSize);
+            ceiling = maxSize;
+        }
+    }
+
+    /**
+     * Adapts the size to a fetched page.
+     *
+     * @param requested    size the page was requested with
+     * @param returned     number of appliances on the page
+     * @param hasNextPage  whether more pages follow
+     * @param latencyNanos time from request to response
+     * @param bytes        size of the response body, 0 if unknown
+     */
+    synchronized void onPage(int requested, int returned, boolean hasNextPage, long latencyNanos, long bytes) {
+        if (rejectedWith400 > requested) {
+            lowerCeiling(requested, "the backend rejected " + rejectedWith400 + " with HTTP 400 and accepted "
+                    + requested);
+        }
+        rejectedWith400 = 0;
+        if (!hasNextPage) {
+            return;
+        }
+        if (returned > 0 && returned < requested) {
+            lowerCeiling(returned, "the backend returned " + returned + " of " + requested + " appliances");
+        }
+        double ratio = latencyNanos > 0 ? (double) targetLatencyNanos / latencyNanos : maxGrowth;
+        if (bytes > 0) {
+            ratio = Math.min(ratio, (double) maxPayloadBytes / bytes);
+        }
+        if (ratio > HOLD_ABOVE && ratio < HOLD_BELOW) {
+            return;
+        }
+        int base = Math.min(requested, returned > 0 ? returned : requested);
+        resize((int) Math.round(base * Math.max(MAX_SHRINK, Math.min(maxGrowth, ratio))));
+    }
+
+    /**
+     * Adapts the size to a failed fetch.
+     *
+     * @param requested size the page was requested with
+     * @return true if the size was lowered because of the failure, so the page is worth fetching again
+     */
+    synchronized boolean onError(int requested, Throwable error) {
+        Throwable cause = ApiException.rootCause(error);
+        if (requested <= minSize) {
+            return false;
+        }
+        int smaller = Math.max(minSize, requested / 2);
+        int status = cause instanceof ApiException ? ((ApiException) cause).getStatusCode() : 0;
+        if (status == 413 || status == 414) {
+            lowerCeiling(smaller, "the backend rejected " + requested + " with HTTP " + status);
+            return true;
+        }
+        if (status == 400) {
+            logger.info("Page of {} appliances was rejected with HTTP 400, trying {}", requested, smaller);
+            rejectedWith400 = requested;
+            resize(smaller);
+            return true;
+        }
+        if (ApiException.isOverload(cause)) {
+            logger.warn("Page of {} appliances failed with {}, lowering page size to {}",
+                    requested, cause.getClass().getSimpleName(), smaller);
+            resize(smaller);
+            return true;
+        }
+        return false;
+    }
+
+    private void lowerCeiling(int limit, String reason) {
+        int lowered = Math.max(minSize, limit);
+        if (lowered < ceiling) {
+            logger.info("Page size capped at {} because {}", lowered, reason);
+            ceiling = lowered;
+            ceilingLoweredAt = nanoClock.getAsLong();
+            size = Math.min(size, ceiling);
+        }
+    }
+
+    private void resize(int proposed) {
+        int next = Math.max(minSize, Math.min(ceiling, proposed));
+        if (next != size) {
+            logger.debug("Page size {} -> {}", size, next);
+            size = next;
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("octools.processor.page.size", this, PageSizeController::getPageSize)
+                .description("Number of appliances requested per page")
+                .register(registry);
+        Gauge.builder("octools.processor.page.ceiling", this, PageSizeController::getCeiling)
+                .description("Largest page size the appliance API has been seen to accept")
+                .register(registry);
+    }
+}
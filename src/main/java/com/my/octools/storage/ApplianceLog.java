@@ -1,17 +1,34 @@
 package com.my.octools.storage;
 
 import java.time.Instant;
+import java.util.Comparator;
 
 /**
  * Entity representing an appliance log entry.
  */
 public class ApplianceLog {
 
+    /**
+     * Ordering used by the log stores and cursors: timestamp descending (newest first),
+     * then appliance ID, then sequence descending as the final tie-breaker.
+     */
+    public static final Comparator<ApplianceLog> NEWEST_FIRST =
+            Comparator.comparing(ApplianceLog::getTimestamp).reversed()
+                    .thenComparing(ApplianceLog::getApplianceId)
+                    .thenComparing(Comparator.comparingLong(ApplianceLog::getSequence).reversed());
+
     private String applianceId;
     private String action;      // e.g., DRAIN or REMEDIATE
     private boolean success;
     private String message;
     private Instant timestamp;
+    private long sequence;      // assigned by the store on save
+
+    /**
+     * Creates an empty entry, used when logs are read back from JSON.
+     */
+    public ApplianceLog() {
+    }
 
     public ApplianceLog(String applianceId, String action, boolean success, String message, Instant timestamp) {
         this.applianceId = applianceId;
@@ -60,4 +77,12 @@ public class ApplianceLog {
     public void setTimestamp(Instant timestamp) {
         this.timestamp = timestamp;
     }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
 }
@@ -0,0 +1,136 @@
+package com.my.octools.storage;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+
+import java.time.Instant;
+
+/**
+ * Row of the {@code appliance_log} table written by the {@link JpaApplianceLogStore}.
+ * <p>
+ * The timestamp is stored as epoch nanoseconds, so rows keep the full precision of {@link Instant} and cursors
+ * handed out for a row match it exactly. The ID comes from a database sequence and is the row's
+ * {@link ApplianceLog#getSequence() sequence}; it is allocated in blocks, so inserts can be batched, and stays
+ * unique when several instances share the database.
+ */
+@Entity
+@Table(name = "appliance_log", indexes = {
+        @Index(name = "idx_appliance_log_appliance_ts", columnList = "appliance_id, timestamp_nanos"),
+        @Index(name = "idx_appliance_log_success_ts", columnList = "success, timestamp_nanos"),
+        @Index(name = "idx_appliance_log_ts", columnList = "timestamp_nanos")
+})
+public class ApplianceLogEntity {
+
+    /** Messages longer than this are truncated. */
+    static final int MAX_MESSAGE_LENGTH = 4000;
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    /** Earliest and latest timestamps a row can hold, about 1677-09-21 and 2262-04-11. */
+    static final Instant MIN_TIMESTAMP = toInstant(Long.MIN_VALUE);
+    static final Instant MAX_TIMESTAMP = toInstant(Long.MAX_VALUE);
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "appliance_log_seq")
+    @SequenceGenerator(name = "appliance_log_seq", sequenceName = "appliance_log_seq", allocationSize = 500)
+    private Long id;
+
+    @Column(name = "appliance_id", nullable = false)
+    private String applianceId;
+
+    @Column(name = "action", length = 32)
+    private String action;
+
+    @Column(name = "success", nullable = false)
+    private boolean success;
+
+    @Column(name = "message", length = MAX_MESSAGE_LENGTH)
+    private String message;
+
+    @Column(name = "timestamp_nanos", nullable = false)
+    private long timestampNanos;
+
+    protected ApplianceLogEntity() {
+    }
+
+    /**
+     * @return a new row with the values of the log entry
+     */
+    static ApplianceLogEntity of(ApplianceLog log) {
+        ApplianceLogEntity entity = new ApplianceLogEntity();
+        entity.applianceId = log.getApplianceId();
+        entity.action = log.getAction();
+        entity.success = log.isSuccess();
+        String message = log.getMessage();
+        entity.message = message != null && message.length() > MAX_MESSAGE_LENGTH
+                ? message.substring(0, MAX_MESSAGE_LENGTH)
+                : message;
+        entity.timestampNanos = toEpochNanos(log.getTimestamp());
+        return entity;
+    }
+
+    /**
+     * @return the log entry of this row, with the row ID as its sequence
+     */
+    ApplianceLog toLog() {
+        ApplianceLog log = new ApplianceLog(applianceId, action, success, message, toInstant(timestampNanos));
+        log.setSequence(id);
+        return log;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the instant lies outside {@link #MIN_TIMESTAMP} to {@link #MAX_TIMESTAMP}
+     */
+    static long toEpochNanos(Instant instant) {
+        if (instant.isBefore(MIN_TIMESTAMP) || instant.isAfter(MAX_TIMESTAMP)) {
+            throw new IllegalArgumentException("Timestamp " + instant + " is outside the range the log store can hold, "
+                    + MIN_TIMESTAMP + " to " + MAX_TIMESTAMP);
+        }
+        // the sum is in range, so it comes out exact even where the product alone wraps near MIN_TIMESTAMP
+        return instant.getEpochSecond() * NANOS_PER_SECOND + instant.getNano();
+    }
+
+    /**
+     * @return the epoch nanoseconds of the instant, or of the nearest timestamp a row can hold, for query bounds
+     */
+    static long toEpochNanosClamped(Instant instant) {
+        if (instant.isBefore(MIN_TIMESTAMP)) {
+            return Long.MIN_VALUE;
+        }
+        return instant.isAfter(MAX_TIMESTAMP) ? Long.MAX_VALUE : toEpochNanos(instant);
+    }
+
+    static Instant toInstant(long epochNanos) {
+        return Instant.ofEpochSecond(Math.floorDiv(epochNanos, NANOS_PER_SECOND),
+                Math.floorMod(epochNanos, NANOS_PER_SECOND));
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getApplianceId() {
+        return applianceId;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+}
@@ -0,0 +1,63 @@
+package com.my.octools.storage;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Spring Data repository of the {@code appliance_log} table, used by the {@link JpaApplianceLogStore}.
+ * <p>
+ * The page queries seek strictly past a keyset position (timestamp, appliance ID, ID) in
+ * {@link ApplianceLog#NEWEST_FIRST} order and read at most {@code limit} rows, so the database walks the index
+ * from the position instead of skipping over an offset. The first page passes a position before every row.
+ */
+public interface ApplianceLogEntityRepository extends JpaRepository<ApplianceLogEntity, Long> {
+
+    // The leading range condition lets the database seek the timestamp index before the tie-breakers apply
+    String AFTER = "l.timestampNanos <= :ts AND (l.timestampNanos < :ts"
+            + " OR (l.timestampNanos = :ts AND (l.applianceId > :id OR (l.applianceId = :id AND l.id < :seq))))";
+    String NEWEST_FIRST = " ORDER BY l.timestampNanos DESC, l.applianceId ASC, l.id DESC";
+    String OLDEST_FIRST = " ORDER BY l.timestampNanos ASC, l.applianceId DESC, l.id ASC";
+
+    @Query("SELECT l FROM ApplianceLogEntity l WHERE " + AFTER + NEWEST_FIRST)
+    List<ApplianceLogEntity> findPage(@Param("ts") long timestampNanos, @Param("id") String applianceId,
+                                      @Param("seq") long sequence, Limit limit);
+
+    @Query("SELECT l FROM ApplianceLogEntity l WHERE l.applianceId = :applianceId AND " + AFTER + NEWEST_FIRST)
+    List<ApplianceLogEntity> findPageByApplianceId(@Param("applianceId") String applianceIdFilter,
+                                                   @Param("ts") long timestampNanos, @Param("id") String applianceId,
+                                                   @Param("seq") long sequence, Limit limit);
+
+    @Query("SELECT l FROM ApplianceLogEntity l WHERE l.timestampNanos > :cutoff AND " + AFTER + NEWEST_FIRST)
+    List<ApplianceLogEntity> findPageNewerThan(@Param("cutoff") long cutoffNanos,
+                                               @Param("ts") long timestampNanos, @Param("id") String applianceId,
+                                               @Param("seq") long sequence, Limit limit);
+
+    @Query("SELECT l FROM ApplianceLogEntity l WHERE l.success = false AND " + AFTER + NEWEST_FIRST)
+    List<ApplianceLogEntity> findFailedPage(@Param("ts") long timestampNanos, @Param("id") String applianceId,
+                                            @Param("seq") long sequence, Limit limit);
+
+    long countByApplianceId(String applianceId);
+
+    @Query("SELECT l.id FROM ApplianceLogEntity l" + OLDEST_FIRST)
+    List<Long> findOldestIds(Limit limit);
+
+    @Query("SELECT l.id FROM ApplianceLogEntity l WHERE l.applianceId = :applianceId" + OLDEST_FIRST)
+    List<Long> findOldestIdsByApplianceId(@Param("applianceId") String applianceId, Limit limit);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ApplianceLogEntity l WHERE l.timestampNanos < :cutoff")
+    int deleteOlderThan(@Param("cutoff") long cutoffNanos);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ApplianceLogEntity l WHERE l.id IN :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
+}
@@ -0,0 +1,14 @@
+package com.my.octools.storage;
+
+/**
+ * Receives every entry saved to an {@link ApplianceLogRepository}.
+ * <p>
+ * Listeners are called on the saving thread, or the writer thread of a write-behind store such as the
+ * {@link JpaApplianceLogStore}, once the entry is visible to the finders and its sequence
+ * is assigned. They must return quickly and must not throw.
+ */
+@FunctionalInterface
+public interface ApplianceLogListener {
+
+    void onSaved(ApplianceLog log);
+}
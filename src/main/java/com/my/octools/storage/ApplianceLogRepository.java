@@ -5,6 +5,10 @@ import java.util.List;
 
 /**
  * Repository interface for managing ApplianceLog entries.
+ * <p>
+ * Paged finders return entries in {@link ApplianceLog#NEWEST_FIRST} order, starting strictly after
+ * the given {@link LogCursor} (or from the newest entry when the cursor is null), and read at most
+ * {@code limit} entries.
  */
 public interface ApplianceLogRepository {
 
@@ -44,4 +48,68 @@ public interface ApplianceLogRepository {
      * @return list of failed ApplianceLog entries
      */
     List<ApplianceLog> findBySuccessFalse();
+
+    /**
+     * Retrieves a page of all ApplianceLog entries.
+     *
+     * @param after cursor of the last entry of the previous page (nullable)
+     * @param limit maximum number of entries to return
+     * @return page of ApplianceLog entries
+     */
+    List<ApplianceLog> findAll(LogCursor after, int limit);
+
+    /**
+     * Finds a page of logs by appliance ID.
+     *
+     * @param applianceId the ID of the appliance
+     * @param after       cursor of the last entry of the previous page (nullable)
+     * @param limit       maximum number of entries to return
+     * @return page of ApplianceLog entries for the given appliance ID
+     */
+    List<ApplianceLog> findByApplianceId(String applianceId, LogCursor after, int limit);
+
+    /**
+     * Finds a page of logs with timestamp after the specified instant.
+     *
+     * @param cutoff the cutoff Instant timestamp
+     * @param after  cursor of the last entry of the previous page (nullable)
+     * @param limit  maximum number of entries to return
+     * @return page of ApplianceLog entries after the given timestamp
+     */
+    List<ApplianceLog> findByTimestampAfter(Instant cutoff, LogCursor after, int limit);
+
+    /**
+     * Finds a page of logs with a timestamp in {@code [from, to)}, so both bounds are applied by the store.
+     *
+     * @param from  inclusive lower bound of the timestamps
+     * @param to    exclusive upper bound of the timestamps
+     * @param after cursor of the last entry of the previous page (nullable)
+     * @param limit maximum number of entries to return
+     * @return page of ApplianceLog entries in the range, empty if {@code from} is not before {@code to}
+     */
+    List<ApplianceLog> findByTimestampBetween(Instant from, Instant to, LogCursor after, int limit);
+
+    /**
+     * Finds a page of logs where success is false.
+     *
+     * @param after cursor of the last entry of the previous page (nullable)
+     * @param limit maximum number of entries to return
+     * @return page of failed ApplianceLog entries
+     */
+    List<ApplianceLog> findBySuccessFalse(LogCursor after, int limit);
+
+    /**
+     * Registers a listener that is notified of every entry saved from now on.
+     *
+     * @param listener the listener to add
+     */
+    void addListener(ApplianceLogListener listener);
+
+    /**
+     * @return true if other processes may write to the store too, so the listeners of this instance do not see
+     * every change; the default is false
+     */
+    default boolean isShared() {
+        return false;
+    }
 }
@@ -0,0 +1,22 @@
+package com.my.octools.storage;
+
+/**
+ * Where the processor records the outcome of its calls, either straight into the {@link ApplianceLogRepository}
+ * or through the {@link WriteBehindLogWriter}. A store that buffers its own writes, like the
+ * {@link JpaApplianceLogStore}, is its own writer.
+ */
+@FunctionalInterface
+public interface ApplianceLogWriter {
+
+    void write(ApplianceLog log);
+
+    /**
+     * Waits until the entries written before the call are visible to the repository's finders, for at most the
+     * writer's read delay. Readers call it so they see their own writes.
+     *
+     * @return false if some of the entries were still pending when the wait ended
+     */
+    default boolean awaitVisible() {
+        return true;
+    }
+}
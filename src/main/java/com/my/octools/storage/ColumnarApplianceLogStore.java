@@ -0,0 +1,636 @@
+package com.my.octools.storage;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Compact log store that keeps rows in primitive columns instead of one object graph per row.
+ * <p>
+ * Rows are appended to fixed-size chunks. Appliance IDs and actions are dictionary-encoded into
+ * int/byte columns, timestamps are epoch-nanos longs, success is a bitset, and messages live in a
+ * paged byte arena with short repeated messages interned. {@link ApplianceLog} objects are only
+ * built for the rows a query returns.
+ * <p>
+ * Rows are kept in append order. Concurrent writers may append slightly out of timestamp order,
+ * so the store records the largest observed disorder and uses it to bound every newest-first scan:
+ * once a row is older than the current result window by more than that bound, no earlier row can
+ * qualify. Chunks carry min/max timestamps so deep cursors skip whole chunks.
+ * <p>
+ * Retention is chunk-granular: whole chunks are dropped once they are older than the maximum age
+ * or no longer needed to keep the maximum row count, so the store may exceed {@code maxRows} by
+ * less than one chunk. The per-appliance cap is not supported, since rows are never deleted individually.
+ */
+public class ColumnarApplianceLogStore implements ApplianceLogRepository, EvictingLogStore {
+    private static final Logger logger = LoggerFactory.getLogger(ColumnarApplianceLogStore.class);
+
+    private static final int DEFAULT_CHUNK_SHIFT = 16;
+    private static final int MAX_ACTIONS = 256;
+
+    private final int chunkShift;
+    private final int chunkSize;
+    private final int chunkMask;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final LogRetentionPolicy retentionPolicy;
+    private final Map<EvictionReason, AtomicLong> evictions = new EnumMap<>(EvictionReason.class);
+    private final List<ApplianceLogListener> listeners = new CopyOnWriteArrayList<>();
+
+    private final StringDictionary applianceIds = new StringDictionary();
+    private final StringDictionary actions = new StringDictionary();
+    private final MessageArena messages = new MessageArena();
+
+    private final List<Chunk> chunks = new ArrayList<>();
+    // Number of rows dropped from the front by retention; absolute row number = baseRow + local row
+    private long baseRow;
+    private int rowCount;
+
+    // Indexes hold local row numbers in append order
+    private final List<IntList> rowsByAppliance = new ArrayList<>();
+    private final IntList failureRows = new IntList();
+
+    private long maxEpochNanos = Long.MIN_VALUE;
+    private long maxDisorderNanos;
+
+    /**
+     * Creates a store that never evicts.
+     */
+    public ColumnarApplianceLogStore() {
+        this(LogRetentionPolicy.unbounded());
+    }
+
+    /**
+     * Creates a store that evicts whole chunks according to the given policy.
+     *
+     * @param retentionPolicy limits on row count and age
+     */
+    public ColumnarApplianceLogStore(LogRetentionPolicy retentionPolicy) {
+        this(retentionPolicy, DEFAULT_CHUNK_SHIFT);
+    }
+
+    @VisibleForTesting
+    ColumnarApplianceLogStore(LogRetentionPolicy retentionPolicy, int chunkShift) {
+        this.retentionPolicy = retentionPolicy;
+        this.chunkShift = chunkShift;
+        this.chunkSize = 1 << chunkShift;
+        this.chunkMask = chunkSize - 1;
+        for (EvictionReason reason : EvictionReason.values()) {
+            evictions.put(reason, new AtomicLong());
+        }
+        if (retentionPolicy.getMaxPerAppliance() > 0) {
+            logger.warn("Per-appliance retention cap is not supported by the columnar store and will be ignored");
+        }
+    }
+
+    /**
+     * Appends a row. The row's sequence is its absolute row number, starting at 1.
+     */
+    @Override
+    public void save(ApplianceLog log) {
+        long epochNanos = toEpochNanos(log.getTimestamp());
+        lock.writeLock().lock();
+        try {
+            // checked before anything is written, so a rejected action leaves no dictionary entry or chunk behind
+            if (actions.lookup(log.getAction()) < 0 && actions.size() >= MAX_ACTIONS) {
+                throw new IllegalStateException("Columnar store supports at most " + MAX_ACTIONS + " distinct actions");
+            }
+            int row = rowCount;
+            int chunkIndex = row >>> chunkShift;
+            if (chunkIndex == chunks.size()) {
+                chunks.add(new Chunk(chunkSize));
+            }
+            Chunk chunk = chunks.get(chunkIndex);
+            int offset = row & chunkMask;
+
+            int actionCode = actions.encode(log.getAction());
+            int applianceCode = applianceIds.encode(log.getApplianceId());
+            chunk.appliance[offset] = applianceCode;
+            chunk.action[offset] = (byte) actionCode;
+            chunk.epochNanos[offset] = epochNanos;
+            chunk.messageRef[offset] = messages.append(log.getMessage());
+            if (log.isSuccess()) {
+                chunk.success[offset >>> 6] |= 1L << offset;
+            }
+            chunk.minEpochNanos = Math.min(chunk.minEpochNanos, epochNanos);
+            chunk.maxEpochNanos = Math.max(chunk.maxEpochNanos, epochNanos);
+
+            if (applianceCode == rowsByAppliance.size()) {
+                rowsByAppliance.add(new IntList());
+            }
+            rowsByAppliance.get(applianceCode).add(row);
+            if (!log.isSuccess()) {
+                failureRows.add(row);
+            }
+
+            if (epochNanos < maxEpochNanos) {
+                maxDisorderNanos = Math.max(maxDisorderNanos, maxEpochNanos - epochNanos);
+            } else {
+                maxEpochNanos = epochNanos;
+            }
+            rowCount = row + 1;
+            log.setSequence(baseRow + row + 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        for (ApplianceLogListener listener : listeners) {
+            listener.onSaved(log);
+        }
+    }
+
+    @Override
+    public void addListener(ApplianceLogListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public List<ApplianceLog> findAll() {
+        return findAll(null, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<ApplianceLog> findByApplianceId(String applianceId) {
+        return findByApplianceId(applianceId, null, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<ApplianceLog> findByTimestampAfter(Instant after) {
+        return findByTimestampAfter(after, null, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<ApplianceLog> findBySuccessFalse() {
+        return findBySuccessFalse(null, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<ApplianceLog> findAll(LogCursor after, int limit) {
+        return scanAll(after, null, limit);
+    }
+
+    @Override
+    public List<ApplianceLog> findByApplianceId(String applianceId, LogCursor after, int limit) {
+        lock.readLock().lock();
+        try {
+            int code = applianceIds.lookup(applianceId);
+            if (code < 0) {
+                return new ArrayList<>();
+            }
+            return scanIndex(rowsByAppliance.get(code), after, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<ApplianceLog> findByTimestampAfter(Instant cutoff, LogCursor after, int limit) {
+        return scanAll(after, cutoff, limit);
+    }
+
+    @Override
+    public List<ApplianceLog> findByTimestampBetween(Instant from, Instant to, LogCursor after, int limit) {
+        if (!from.isBefore(to)) {
+            return new ArrayList<>();
+        }
+        // the upper bound becomes the scan's starting position, the lower bound its cutoff
+        return scanAll(LogCursor.later(after, LogCursor.before(to)), from.minusNanos(1), limit);
+    }
+
+    @Override
+    public List<ApplianceLog> findBySuccessFalse(LogCursor after, int limit) {
+        lock.readLock().lock();
+        try {
+            return scanIndex(failureRows, after, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return rowCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long getEvictedCount(EvictionReason reason) {
+        return evictions.get(reason).get();
+    }
+
+    /**
+     * Drops the oldest full chunks that are past the maximum age or beyond the maximum row count.
+     */
+    @Override
+    public int evictExpired() {
+        return evictExpired(Instant.now());
+    }
+
+    @VisibleForTesting
+    int evictExpired(Instant now) {
+        long ageCutoff = retentionPolicy.getMaxAge() == null
+                ? Long.MIN_VALUE
+                : toEpochNanos(now.minus(retentionPolicy.getMaxAge()));
+        long maxRows = retentionPolicy.getMaxRows();
+        lock.writeLock().lock();
+        try {
+            int dropChunks = 0;
+            // never drop the chunk currently being appended to
+            while (dropChunks < chunks.size() - 1) {
+                Chunk oldest = chunks.get(dropChunks);
+                long remainingAfterDrop = rowCount - (long) (dropChunks + 1) * chunkSize;
+                if (oldest.maxEpochNanos < ageCutoff) {
+                    evictions.get(EvictionReason.AGE).addAndGet(chunkSize);
+                } else if (maxRows > 0 && remainingAfterDrop >= maxRows) {
+                    evictions.get(EvictionReason.MAX_ROWS).addAndGet(chunkSize);
+                } else {
+                    break;
+                }
+                dropChunks++;
+            }
+            if (dropChunks == 0) {
+                return 0;
+            }
+            int droppedRows = dropChunks * chunkSize;
+            chunks.subList(0, dropChunks).clear();
+            rowCount -= droppedRows;
+            baseRow += droppedRows;
+            for (IntList rows : rowsByAppliance) {
+                rows.dropBelowAndShift(droppedRows);
+            }
+            failureRows.dropBelowAndShift(droppedRows);
+            messages.releaseBefore(firstLiveMessageRef());
+            return droppedRows;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Newest-first scan over every row, skipping chunks that lie entirely before the cursor.
+     */
+    private List<ApplianceLog> scanAll(LogCursor after, Instant cutoff, int limit) {
+        lock.readLock().lock();
+        try {
+            TopRows top = new TopRows(after, cutoff, limit);
+            for (int c = chunks.size() - 1; c >= 0; c--) {
+                Chunk chunk = chunks.get(c);
+                if (top.skipsChunk(chunk)) {
+                    continue;
+                }
+                int last = Math.min(rowCount - 1 - (c << chunkShift), chunkMask);
+                for (int offset = last; offset >= 0; offset--) {
+                    if (!top.offer((c << chunkShift) + offset)) {
+                        return top.toLogs();
+                    }
+                }
+            }
+            return top.toLogs();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Newest-first scan over an index list. Caller must hold the read lock.
+     */
+    private List<ApplianceLog> scanIndex(IntList rows, LogCursor after, int limit) {
+        TopRows top = new TopRows(after, null, limit);
+        for (int i = rows.size - 1; i >= 0; i--) {
+            if (!top.offer(rows.values[i])) {
+                break;
+            }
+        }
+        return top.toLogs();
+    }
+
+    private long firstLiveMessageRef() {
+        for (int row = 0; row < rowCount; row++) {
+            long ref = messageRef(row);
+            if (MessageArena.isPaged(ref)) {
+                return ref;
+            }
+        }
+        return MessageArena.NULL_REF;
+    }
+
+    private long epochNanos(int row) {
+        return chunks.get(row >>> chunkShift).epochNanos[row & chunkMask];
+    }
+
+    private int applianceCode(int row) {
+        return chunks.get(row >>> chunkShift).appliance[row & chunkMask];
+    }
+
+    private long messageRef(int row) {
+        return chunks.get(row >>> chunkShift).messageRef[row & chunkMask];
+    }
+
+    private boolean success(int row) {
+        int offset = row & chunkMask;
+        return (chunks.get(row >>> chunkShift).success[offset >>> 6] & (1L << offset)) != 0;
+    }
+
+    /**
+     * Compares two rows in {@link ApplianceLog#NEWEST_FIRST} order without materializing them.
+     */
+    private int compareRows(int a, int b) {
+        int c = Long.compare(epochNanos(b), epochNanos(a));
+        if (c != 0) {
+            return c;
+        }
+        c = applianceIds.decode(applianceCode(a)).compareTo(applianceIds.decode(applianceCode(b)));
+        return c != 0 ? c : Integer.compare(b, a);
+    }
+
+    /**
+     * @return positive if the row sorts after the cursor in {@link ApplianceLog#NEWEST_FIRST} order
+     */
+    private int compareToCursor(int row, long cursorNanos, LogCursor cursor) {
+        int c = Long.compare(cursorNanos, epochNanos(row));
+        if (c != 0) {
+            return c;
+        }
+        c = applianceIds.decode(applianceCode(row)).compareTo(cursor.getApplianceId());
+        return c != 0 ? c : Long.compare(cursor.getSequence(), baseRow + row + 1);
+    }
+
+    private ApplianceLog materialize(int row) {
+        long nanos = epochNanos(row);
+        ApplianceLog log = new ApplianceLog(
+                applianceIds.decode(applianceCode(row)),
+                actions.decode(chunks.get(row >>> chunkShift).action[row & chunkMask] & 0xFF),
+                success(row),
+                messages.read(messageRef(row)),
+                Instant.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L), Math.floorMod(nanos, 1_000_000_000L)));
+        log.setSequence(baseRow + row + 1);
+        return log;
+    }
+
+    private static long toEpochNanos(Instant instant) {
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000_000L), instant.getNano());
+    }
+
+    /**
+     * Bounded top-k selection of rows in newest-first order, honoring cursor and cutoff.
+     */
+    private final class TopRows {
+        private final LogCursor after;
+        private final long afterNanos;
+        private final long cutoffNanos;
+        private final int limit;
+        // head is the worst row currently kept
+        private final PriorityQueue<Integer> best;
+
+        TopRows(LogCursor after, Instant cutoff, int limit) {
+            this.after = after;
+            this.afterNanos = after == null ? Long.MAX_VALUE : toEpochNanos(after.getTimestamp());
+            this.cutoffNanos = cutoff == null ? Long.MIN_VALUE : toEpochNanos(cutoff);
+            this.limit = Math.max(0, limit);
+            this.best = new PriorityQueue<>(Math.min(this.limit, 1024) + 1, (a, b) -> compareRows(b, a));
+        }
+
+        boolean skipsChunk(Chunk chunk) {
+            // every row in the chunk is newer than the cursor, so all of them were on earlier pages
+            return after != null && chunk.minEpochNanos > afterNanos;
+        }
+
+        /**
+         * @return false once no row appended before this one can enter the result
+         */
+        boolean offer(int row) {
+            if (limit == 0) {
+                return false;
+            }
+            long nanos = epochNanos(row);
+            if (best.size() == limit && nanos + maxDisorderNanos < epochNanos(best.peek())) {
+                return false;
+            }
+            if (nanos <= cutoffNanos) {
+                return nanos + maxDisorderNanos > cutoffNanos;
+            }
+            if (after != null && compareToCursor(row, afterNanos, after) <= 0) {
+                return true;
+            }
+            best.add(row);
+            if (best.size() > limit) {
+                best.poll();
+            }
+            return true;
+        }
+
+        List<ApplianceLog> toLogs() {
+            Integer[] rows = best.toArray(new Integer[0]);
+            Arrays.sort(rows, ColumnarApplianceLogStore.this::compareRows);
+            List<ApplianceLog> logs = new ArrayList<>(rows.length);
+            for (int row : rows) {
+                logs.add(materialize(row));
+            }
+            return logs;
+        }
+    }
+
+    /**
+     * One block of rows stored column by column.
+     */
+    private static final class Chunk {
+        private final int[] appliance;
+        private final byte[] action;
+        private final long[] epochNanos;
+        private final long[] messageRef;
+        private final long[] success;
+        private long minEpochNanos = Long.MAX_VALUE;
+        private long maxEpochNanos = Long.MIN_VALUE;
+
+        Chunk(int size) {
+            appliance = new int[size];
+            action = new byte[size];
+            epochNanos = new long[size];
+            messageRef = new long[size];
+            success = new long[(size + 63) >>> 6];
+        }
+    }
+
+    /**
+     * Bidirectional string to code mapping. Codes are dense and never reused.
+     */
+    private static final class StringDictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int encode(String value) {
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        int lookup(String value) {
+            Integer code = codes.get(value);
+            return code == null ? -1 : code;
+        }
+
+        String decode(int code) {
+            return values.get(code);
+        }
+
+        int size() {
+            return values.size();
+        }
+    }
+
+    /**
+     * Growable primitive int list.
+     */
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        /**
+         * Removes values below the threshold (they are a prefix, since rows are appended in order)
+         * and shifts the rest down by it.
+         */
+        void dropBelowAndShift(int threshold) {
+            int from = 0;
+            while (from < size && values[from] < threshold) {
+                from++;
+            }
+            for (int i = from; i < size; i++) {
+                values[i - from] = values[i] - threshold;
+            }
+            size -= from;
+            if (values.length > 16 && size < values.length / 4) {
+                values = Arrays.copyOf(values, Math.max(4, size * 2));
+            }
+        }
+    }
+
+    /**
+     * Append-only UTF-8 message store made of fixed-size pages, with a small intern table for short
+     * messages that repeat (error texts, for instance).
+     * <p>
+     * A reference packs (page &lt;&lt; 32 | offset). Each entry is a varint length followed by the bytes.
+     * Interned entries live in their own pages, flagged by {@link #INTERNED}, and are never released.
+     */
+    private static final class MessageArena {
+        static final long NULL_REF = -1L;
+        private static final long INTERNED = 1L << 62;
+        private static final int PAGE_SIZE = 1 << 20;
+        private static final int MAX_INTERNED_LENGTH = 256;
+        private static final int MAX_INTERNED_ENTRIES = 16_384;
+        private static final int SEEN_SLOTS = 1 << 16;
+
+        private final List<byte[]> pages = new ArrayList<>();
+        private final List<byte[]> internPages = new ArrayList<>();
+        private int pageOffset = PAGE_SIZE;
+        private int internPageOffset = PAGE_SIZE;
+        // Direct-mapped cache of recently seen message hashes; a message is interned on its second sighting
+        private final long[] seen = new long[SEEN_SLOTS];
+        private final Map<String, Long> interned = new HashMap<>();
+
+        static boolean isPaged(long ref) {
+            return ref != NULL_REF && (ref & INTERNED) == 0;
+        }
+
+        long append(String message) {
+            if (message == null) {
+                return NULL_REF;
+            }
+            Long internedRef = interned.get(message);
+            if (internedRef != null) {
+                return internedRef;
+            }
+            byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length <= MAX_INTERNED_LENGTH && interned.size() < MAX_INTERNED_ENTRIES) {
+                long hash = message.hashCode() * 0x9E3779B97F4A7C15L | 1L;
+                int slot = (int) (hash >>> 48) & (SEEN_SLOTS - 1);
+                if (seen[slot] == hash) {
+                    long ref = write(internPages, true, bytes) | INTERNED;
+                    interned.put(message, ref);
+                    return ref;
+                }
+                seen[slot] = hash;
+            }
+            return write(pages, false, bytes);
+        }
+
+        String read(long ref) {
+            if (ref == NULL_REF) {
+                return null;
+            }
+            List<byte[]> source = (ref & INTERNED) != 0 ? internPages : pages;
+            byte[] page = source.get((int) ((ref & ~INTERNED) >>> 32));
+            int pos = (int) ref;
+            int length = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = page[pos++];
+                length |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return new String(page, pos, length, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Releases pages that only hold messages of evicted rows.
+         */
+        void releaseBefore(long firstLiveRef) {
+            int firstLivePage = firstLiveRef == NULL_REF ? pages.size() - 1 : (int) (firstLiveRef >>> 32);
+            for (int i = 0; i < firstLivePage; i++) {
+                pages.set(i, null);
+            }
+        }
+
+        private long write(List<byte[]> target, boolean intern, byte[] bytes) {
+            int needed = bytes.length + 5;
+            int offset = intern ? internPageOffset : pageOffset;
+            if (target.isEmpty() || offset + needed > target.get(target.size() - 1).length) {
+                target.add(new byte[Math.max(PAGE_SIZE, needed)]);
+                offset = 0;
+            }
+            byte[] page = target.get(target.size() - 1);
+            int pos = offset;
+            int length = bytes.length;
+            while ((length & ~0x7F) != 0) {
+                page[pos++] = (byte) ((length & 0x7F) | 0x80);
+                length >>>= 7;
+            }
+            page[pos++] = (byte) length;
+            System.arraycopy(bytes, 0, page, pos, bytes.length);
+            pos += bytes.length;
+            if (intern) {
+                internPageOffset = pos;
+            } else {
+                pageOffset = pos;
+            }
+            return ((long) (target.size() - 1) << 32) | offset;
+        }
+    }
+}
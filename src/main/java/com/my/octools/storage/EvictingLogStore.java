@@ -0,0 +1,25 @@
+package com.my.octools.storage;
+
+/**
+ * A log store that enforces a {@link LogRetentionPolicy} and reports its size and evictions.
+ */
+public interface EvictingLogStore {
+
+    /**
+     * @return current number of stored log entries
+     */
+    long size();
+
+    /**
+     * @param reason eviction reason
+     * @return number of entries evicted for the given reason since startup
+     */
+    long getEvictedCount(EvictionReason reason);
+
+    /**
+     * Evicts entries that exceed the row or age limits of the retention policy.
+     *
+     * @return number of evicted entries
+     */
+    int evictExpired();
+}
@@ -0,0 +1,10 @@
+package com.my.octools.storage;
+
+/**
+ * Why a log entry was evicted from a store.
+ */
+public enum EvictionReason {
+    AGE,
+    MAX_ROWS,
+    APPLIANCE_CAP
+}
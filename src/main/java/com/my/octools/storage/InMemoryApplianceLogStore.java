@@ -1,28 +1,74 @@
 package com.my.octools.storage;
 
-import org.springframework.stereotype.Component;
+import com.google.common.annotations.VisibleForTesting;
 
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.stream.Collectors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * In-memory thread-safe store for appliance logs using ConcurrentSkipListSet
  * sorted by timestamp descending.
+ * <p>
+ * Besides the primary set, the store maintains two secondary indexes that share its ordering:
+ * a per-appliance set and a failures-only set. Both are updated in {@link #save(ApplianceLog)},
+ * so lookups by appliance ID or by failure cost O(log n + k) instead of a full scan.
+ * <p>
+ * Paged finders seek to the cursor position with {@code tailSet} views and only read
+ * the requested number of entries.
+ * <p>
+ * Retention is governed by a {@link LogRetentionPolicy}. The per-appliance cap is enforced on save,
+ * while the row and age limits are enforced by {@link #evictExpired()}, which a background sweeper
+ * calls periodically. Since the sets are ordered newest first, eviction always works from the tail.
+ * An appliance whose last entry is evicted is dropped from the per-appliance index.
  */
-@Component
-public class InMemoryApplianceLogStore implements ApplianceLogRepository {
+public class InMemoryApplianceLogStore implements ApplianceLogRepository, EvictingLogStore {
 
-    // Comparator sorts by timestamp descending (newest first)
-    private final ConcurrentSkipListSet<ApplianceLog> logs = new ConcurrentSkipListSet<>(
-            Comparator.comparing(ApplianceLog::getTimestamp).reversed()
-                    // Tie-breaker: in case timestamps equal, compare by ID or hashcode to keep consistent order
-                    .thenComparing(ApplianceLog::getApplianceId)
-                    .thenComparingInt(Object::hashCode)
-    );
+    // Sorted by timestamp descending (newest first), ties broken by appliance ID and sequence
+    private static final Comparator<ApplianceLog> NEWEST_FIRST = ApplianceLog.NEWEST_FIRST;
+
+    private final ConcurrentSkipListSet<ApplianceLog> logs = new ConcurrentSkipListSet<>(NEWEST_FIRST);
+    private final AtomicLong sequence = new AtomicLong();
+    // ConcurrentSkipListSet.size() is a full traversal, so sizes are tracked separately
+    private final AtomicLong size = new AtomicLong();
+
+    // Secondary indexes, kept in the same order as the primary set
+    private final ConcurrentMap<String, ApplianceIndex> logsByAppliance = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<ApplianceLog> failures = new ConcurrentSkipListSet<>(NEWEST_FIRST);
+
+    private final LogRetentionPolicy retentionPolicy;
+    private final Map<EvictionReason, AtomicLong> evictions = new EnumMap<>(EvictionReason.class);
+    private final List<ApplianceLogListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Creates a store that never evicts.
+     */
+    public InMemoryApplianceLogStore() {
+        this(LogRetentionPolicy.unbounded());
+    }
+
+    /**
+     * Creates a store that evicts according to the given policy.
+     *
+     * @param retentionPolicy limits on row count, age and rows per appliance
+     */
+    public InMemoryApplianceLogStore(LogRetentionPolicy retentionPolicy) {
+        this.retentionPolicy = retentionPolicy;
+        for (EvictionReason reason : EvictionReason.values()) {
+            evictions.put(reason, new AtomicLong());
+        }
+    }
 
     /**
      * Retrieves all logs, sorted by timestamp descending.
@@ -34,20 +80,43 @@ public class InMemoryApplianceLogStore implements ApplianceLogRepository {
 
     /**
      * Saves a new log entry, automatically placed in correct order.
+     * <p>
+     * Secondary indexes are written before the primary set, so an entry that is visible
+     * through {@link #findAll()} is always visible through the index lookups as well.
+     * Listeners are notified last.
      */
     @Override
     public void save(ApplianceLog log) {
-        logs.add(log);
+        log.setSequence(sequence.incrementAndGet());
+        // added under the map's lock on the key, so an index emptied concurrently is not dropped with this entry in it
+        logsByAppliance.compute(log.getApplianceId(), (id, index) -> {
+            ApplianceIndex target = index != null ? index : new ApplianceIndex();
+            if (target.logs.add(log)) {
+                target.size.incrementAndGet();
+            }
+            return target;
+        });
+        if (!log.isSuccess()) {
+            failures.add(log);
+        }
+        if (logs.add(log)) {
+            size.incrementAndGet();
+        }
+        if (retentionPolicy.getMaxPerAppliance() > 0) {
+            trimAppliance(log.getApplianceId());
+        }
+        for (ApplianceLogListener listener : listeners) {
+            listener.onSaved(log);
+        }
     }
 
     /**
-     * Finds logs by appliance ID.
+     * Finds logs by appliance ID using the per-appliance index.
      */
     @Override
     public List<ApplianceLog> findByApplianceId(String applianceId) {
-        return logs.stream()
-                .filter(log -> log.getApplianceId().equals(applianceId))
-                .collect(Collectors.toList());
+        ApplianceIndex index = logsByAppliance.get(applianceId);
+        return index == null ? new ArrayList<>() : new ArrayList<>(index.logs);
     }
 
     /**
@@ -55,18 +124,200 @@ public class InMemoryApplianceLogStore implements ApplianceLogRepository {
      */
     @Override
     public List<ApplianceLog> findByTimestampAfter(Instant after) {
-        return logs.stream()
-                .filter(log -> log.getTimestamp().isAfter(after))
-                .collect(Collectors.toList());
+        return new ArrayList<>(newerThan(after));
     }
 
     /**
-     * Finds all logs with success == false.
+     * Finds all logs with success == false using the failures index.
      */
     @Override
     public List<ApplianceLog> findBySuccessFalse() {
-        return logs.stream()
-                .filter(log -> !log.isSuccess())
-                .collect(Collectors.toList());
+        return new ArrayList<>(failures);
+    }
+
+    @Override
+    public List<ApplianceLog> findAll(LogCursor after, int limit) {
+        return page(logs, after, limit);
+    }
+
+    @Override
+    public List<ApplianceLog> findByApplianceId(String applianceId, LogCursor after, int limit) {
+        ApplianceIndex index = logsByAppliance.get(applianceId);
+        return index == null ? new ArrayList<>() : page(index.logs, after, limit);
+    }
+
+    @Override
+    public List<ApplianceLog> findByTimestampAfter(Instant cutoff, LogCursor after, int limit) {
+        if (after != null && !after.getTimestamp().isAfter(cutoff)) {
+            // the cursor already lies past the cutoff, nothing newer than the cutoff is left
+            return new ArrayList<>();
+        }
+        return page(newerThan(cutoff), after, limit);
+    }
+
+    /**
+     * Reads a sub-set view bounded by both ends of the range, starting at the cursor or the upper bound,
+     * whichever lies further along.
+     */
+    @Override
+    public List<ApplianceLog> findByTimestampBetween(Instant from, Instant to, LogCursor after, int limit) {
+        ApplianceLog start = LogCursor.later(after, LogCursor.before(to)).toProbe();
+        ApplianceLog end = newerThanProbe(from.minusNanos(1));
+        if (NEWEST_FIRST.compare(start, end) >= 0) {
+            return new ArrayList<>();
+        }
+        return page(logs.subSet(start, false, end, false), null, limit);
+    }
+
+    @Override
+    public List<ApplianceLog> findBySuccessFalse(LogCursor after, int limit) {
+        return page(failures, after, limit);
+    }
+
+    @Override
+    public void addListener(ApplianceLogListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public long size() {
+        return size.get();
+    }
+
+    /**
+     * @return number of appliances with entries in the per-appliance index
+     */
+    @VisibleForTesting
+    int getIndexedApplianceCount() {
+        return logsByAppliance.size();
+    }
+
+    @Override
+    public long getEvictedCount(EvictionReason reason) {
+        return evictions.get(reason).get();
+    }
+
+    /**
+     * Evicts entries older than the maximum age, then the oldest entries beyond the maximum row count.
+     */
+    @Override
+    public int evictExpired() {
+        return evictExpired(Instant.now());
+    }
+
+    @VisibleForTesting
+    int evictExpired(Instant now) {
+        int evicted = 0;
+        if (retentionPolicy.getMaxAge() != null) {
+            Instant cutoff = now.minus(retentionPolicy.getMaxAge());
+            Iterator<ApplianceLog> oldestFirst = logs.descendingIterator();
+            while (oldestFirst.hasNext()) {
+                ApplianceLog oldest = oldestFirst.next();
+                if (!oldest.getTimestamp().isBefore(cutoff)) {
+                    break;
+                }
+                if (logs.remove(oldest)) {
+                    size.decrementAndGet();
+                    unindex(oldest, true);
+                    evicted++;
+                }
+            }
+            evictions.get(EvictionReason.AGE).addAndGet(evicted);
+        }
+        if (retentionPolicy.getMaxRows() > 0) {
+            int overflow = 0;
+            while (size.get() > retentionPolicy.getMaxRows()) {
+                ApplianceLog oldest = logs.pollLast();
+                if (oldest == null) {
+                    break;
+                }
+                size.decrementAndGet();
+                unindex(oldest, true);
+                overflow++;
+            }
+            evictions.get(EvictionReason.MAX_ROWS).addAndGet(overflow);
+            evicted += overflow;
+        }
+        return evicted;
+    }
+
+    /**
+     * Drops the oldest entries of one appliance until it is back under the per-appliance cap.
+     */
+    private void trimAppliance(String applianceId) {
+        logsByAppliance.computeIfPresent(applianceId, (id, index) -> {
+            while (index.size.get() > retentionPolicy.getMaxPerAppliance()) {
+                ApplianceLog oldest = index.logs.pollLast();
+                if (oldest == null) {
+                    break;
+                }
+                index.size.decrementAndGet();
+                if (logs.remove(oldest)) {
+                    size.decrementAndGet();
+                    evictions.get(EvictionReason.APPLIANCE_CAP).incrementAndGet();
+                }
+                unindex(oldest, false);
+            }
+            return nullIfEmpty(index);
+        });
+    }
+
+    /**
+     * Removes an entry that left the primary set from the secondary indexes.
+     */
+    private void unindex(ApplianceLog log, boolean includingApplianceIndex) {
+        if (includingApplianceIndex) {
+            logsByAppliance.computeIfPresent(log.getApplianceId(), (id, index) -> {
+                if (index.logs.remove(log)) {
+                    index.size.decrementAndGet();
+                }
+                return nullIfEmpty(index);
+            });
+        }
+        if (!log.isSuccess()) {
+            failures.remove(log);
+        }
+    }
+
+    /**
+     * Returns a view of the entries strictly newer than the cutoff.
+     * The probe sorts before every entry stamped exactly at the cutoff, so the head set excludes them.
+     */
+    private NavigableSet<ApplianceLog> newerThan(Instant cutoff) {
+        return logs.headSet(newerThanProbe(cutoff), false);
+    }
+
+    private static ApplianceLog newerThanProbe(Instant cutoff) {
+        ApplianceLog probe = new ApplianceLog("", null, false, null, cutoff);
+        probe.setSequence(Long.MAX_VALUE);
+        return probe;
+    }
+
+    /**
+     * Reads up to {@code limit} entries from the view, starting strictly after the cursor.
+     */
+    private static List<ApplianceLog> page(NavigableSet<ApplianceLog> view, LogCursor after, int limit) {
+        NavigableSet<ApplianceLog> tail = after == null ? view : view.tailSet(after.toProbe(), false);
+        List<ApplianceLog> page = new ArrayList<>(Math.max(0, Math.min(limit, 1024)));
+        Iterator<ApplianceLog> it = tail.iterator();
+        while (page.size() < limit && it.hasNext()) {
+            page.add(it.next());
+        }
+        return page;
+    }
+
+    /**
+     * @return the index, or null to remove it from the map once its last entry is gone
+     */
+    private static ApplianceIndex nullIfEmpty(ApplianceIndex index) {
+        return index.size.get() == 0 ? null : index;
+    }
+
+    /**
+     * Per-appliance index entry with its own size counter for the per-appliance cap.
+     */
+    private static final class ApplianceIndex {
+        private final ConcurrentSkipListSet<ApplianceLog> logs = new ConcurrentSkipListSet<>(NEWEST_FIRST);
+        private final AtomicInteger size = new AtomicInteger();
     }
 }
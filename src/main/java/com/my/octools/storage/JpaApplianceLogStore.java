@@ -0,0 +1,415 @@
+package com.my.octools.storage;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.Limit;
+
+import java.io.Closeable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Relational log store: appliance logs in the {@code appliance_log} table through JPA, H2 by default.
+ * <p>
+ * {@link #save(ApplianceLog)} only puts the entry into a bounded write-behind buffer and returns. A single writer
+ * thread takes everything that has accumulated, up to {@code batchSize} entries, and inserts it in one
+ * transaction as JDBC batches ({@code hibernate.jdbc.batch_size}), so the processor's saves are amortized into
+ * multi-row transactions. Under light load every entry is written on its own right away; the batches grow with
+ * the load. When the buffer is full, {@code save} waits for the writer. An entry becomes visible to the finders,
+ * gets its sequence and is passed to the listeners, on the writer thread, once its transaction has committed;
+ * {@link #flush()} waits for that.
+ * <p>
+ * Since the store already takes saves off the caller's thread, it is also the processor's {@link ApplianceLogWriter}
+ * instead of the {@link WriteBehindLogWriter}, and {@link #awaitVisible()} flushes it.
+ * <p>
+ * Pagination is pushed down into SQL: every finder is a keyset query on the (appliance ID, timestamp),
+ * (success, timestamp) or (timestamp) index that seeks past the cursor and reads {@code limit} rows.
+ * <p>
+ * The per-appliance cap is enforced after each batch, the row and age limits by {@link #evictExpired()}.
+ * <p>
+ * The database may be shared by the members of a cluster, so the store reports itself as {@link #isShared() shared}.
+ */
+public class JpaApplianceLogStore implements ApplianceLogRepository, ApplianceLogWriter, EvictingLogStore, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(JpaApplianceLogStore.class);
+
+    // Keyset position before every row, used for the first page
+    private static final LogCursor FIRST =
+            new LogCursor(ApplianceLogEntity.toInstant(Long.MAX_VALUE), "", Long.MAX_VALUE);
+    private static final long RETRY_DELAY_MILLIS = 1000;
+    private static final int DELETE_CHUNK = 1000;
+
+    private final ApplianceLogEntityRepository repository;
+    private final LogRetentionPolicy retentionPolicy;
+    private final int batchSize;
+    private final BlockingQueue<ApplianceLog> buffer;
+    private final Thread writer;
+    private final List<ApplianceLogListener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<EvictionReason, AtomicLong> evictions = new EnumMap<>(EvictionReason.class);
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong batchesWritten = new AtomicLong();
+    private final AtomicLong enqueued = new AtomicLong();
+
+    // Entries written or given up on, guarded by this
+    private long written;
+    private volatile boolean closed;
+
+    /**
+     * Starts the writer thread.
+     *
+     * @param repository      the table's repository
+     * @param retentionPolicy limits on row count, age and rows per appliance
+     * @param batchSize       maximum entries per insert transaction
+     * @param bufferSize      entries that may wait for the writer before {@code save} blocks
+     */
+    public JpaApplianceLogStore(ApplianceLogEntityRepository repository, LogRetentionPolicy retentionPolicy,
+                                int batchSize, int bufferSize) {
+        if (batchSize < 1 || bufferSize < 1) {
+            throw new IllegalArgumentException("Batch and buffer size must be positive");
+        }
+        this.repository = repository;
+        this.retentionPolicy = retentionPolicy;
+        this.batchSize = batchSize;
+        this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        for (EvictionReason reason : EvictionReason.values()) {
+            evictions.put(reason, new AtomicLong());
+        }
+        size.set(repository.count());
+        this.writer = new Thread(this::writeLoop, "jpa-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues the entry for the writer, waiting while the write-behind buffer is full.
+     *
+     * @throws IllegalArgumentException if the timestamp is outside the range a row can hold, see
+     *                                  {@link ApplianceLogEntity#MIN_TIMESTAMP}
+     * @throws IllegalStateException    if the store is closed or the thread is interrupted while waiting
+     */
+    @Override
+    public void save(ApplianceLog log) {
+        if (closed) {
+            throw new IllegalStateException("Log store is closed");
+        }
+        // rejected here, as the writer thread could only drop a timestamp no row can hold
+        ApplianceLogEntity.toEpochNanos(log.getTimestamp());
+        try {
+            buffer.put(log);
+            enqueued.incrementAndGet();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the log write buffer", ex);
+        }
+    }
+
+    /**
+     * Same as {@link #save(ApplianceLog)}, which already hands the entry to the writer thread.
+     */
+    @Override
+    public void write(ApplianceLog log) {
+        save(log);
+    }
+
+    /**
+     * Waits until every entry saved before the call has been written, see {@link #flush()}.
+     *
+     * @return false if the writer thread stopped with some of them unwritten
+     */
+    @Override
+    public boolean awaitVisible() {
+        return awaitWritten();
+    }
+
+    /**
+     * Waits until every entry saved before the call has been written.
+     */
+    public void flush() {
+        awaitWritten();
+    }
+
+    private boolean awaitWritten() {
+        long target = enqueued.get();
+        boolean interrupted = false;
+        boolean done;
+        synchronized (this) {
+            while (written < target && writer.isAlive()) {
+                try {
+                    wait(RETRY_DELAY_MILLIS);
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            done = written >= target;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return done;
+    }
+
+    /**
+     * Writes the buffered entries and stops the writer.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        flush();
+        writer.interrupt();
+    }
+
+    private void writeLoop() {
+        List<ApplianceLog> batch = new ArrayList<>(batchSize);
+        while (!closed || !buffer.isEmpty()) {
+            try {
+                ApplianceLog first = buffer.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                buffer.drainTo(batch, batchSize - 1);
+                write(batch);
+                batch.clear();
+            } catch (InterruptedException ex) {
+                if (closed && buffer.isEmpty()) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts the batch in one transaction, retrying until it succeeds or the store is closed.
+     */
+    private void write(List<ApplianceLog> batch) throws InterruptedException {
+        List<ApplianceLogEntity> entities = batch.stream().map(ApplianceLogEntity::of).collect(Collectors.toList());
+        while (true) {
+            try {
+                repository.saveAll(entities);
+                break;
+            } catch (RuntimeException ex) {
+                if (closed) {
+                    logger.error("Dropping {} appliance logs, writing them failed during shutdown: {}",
+                            batch.size(), ex.getMessage(), ex);
+                    completed(batch.size());
+                    return;
+                }
+                logger.error("Writing {} appliance logs failed, retrying in {}ms: {}",
+                        batch.size(), RETRY_DELAY_MILLIS, ex.getMessage());
+                // unsaved entities may have been given IDs by the failed attempt
+                entities = batch.stream().map(ApplianceLogEntity::of).collect(Collectors.toList());
+                Thread.sleep(RETRY_DELAY_MILLIS);
+            }
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).setSequence(entities.get(i).getId());
+        }
+        size.addAndGet(batch.size());
+        batchesWritten.incrementAndGet();
+        if (retentionPolicy.getMaxPerAppliance() > 0) {
+            try {
+                trimAppliances(batch);
+            } catch (RuntimeException ex) {
+                // the next batch or sweep trims again
+                logger.error("Enforcing the per-appliance log cap failed: {}", ex.getMessage(), ex);
+            }
+        }
+        for (ApplianceLog log : batch) {
+            for (ApplianceLogListener listener : listeners) {
+                listener.onSaved(log);
+            }
+        }
+        completed(batch.size());
+    }
+
+    private synchronized void completed(int count) {
+        written += count;
+        notifyAll();
+    }
+
+    /**
+     * Deletes the oldest rows of the batch's appliances beyond the per-appliance cap.
+     */
+    private void trimAppliances(List<ApplianceLog> batch) {
+        Set<String> applianceIds = new LinkedHashSet<>();
+        for (ApplianceLog log : batch) {
+            applianceIds.add(log.getApplianceId());
+        }
+        for (String applianceId : applianceIds) {
+            long overflow = repository.countByApplianceId(applianceId) - retentionPolicy.getMaxPerAppliance();
+            if (overflow > 0) {
+                int deleted = delete(repository.findOldestIdsByApplianceId(applianceId, limit(overflow)));
+                size.addAndGet(-deleted);
+                evictions.get(EvictionReason.APPLIANCE_CAP).addAndGet(deleted);
+            }
+        }
+    }
+
+    @Override
+    public void addListener(ApplianceLogListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return true, other cluster members may write to the same table
+     */
+    @Override
+    public boolean isShared() {
+        return true;
+    }
+
+    @Override
+    public List<ApplianceLog> findAll() {
+        return findAll(null, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<ApplianceLog> findByApplianceId(String applianceId) {
+        return findByApplianceId(applianceId, null, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<ApplianceLog> findByTimestampAfter(Instant after) {
+        return findByTimestampAfter(after, null, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<ApplianceLog> findBySuccessFalse() {
+        return findBySuccessFalse(null, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<ApplianceLog> findAll(LogCursor after, int limit) {
+        return page(after, limit, (position, max) -> repository.findPage(
+                nanos(position), position.getApplianceId(), position.getSequence(), max));
+    }
+
+    @Override
+    public List<ApplianceLog> findByApplianceId(String applianceId, LogCursor after, int limit) {
+        return page(after, limit, (position, max) -> repository.findPageByApplianceId(applianceId,
+                nanos(position), position.getApplianceId(), position.getSequence(), max));
+    }
+
+    @Override
+    public List<ApplianceLog> findByTimestampAfter(Instant cutoff, LogCursor after, int limit) {
+        if (after != null && !after.getTimestamp().isAfter(cutoff)) {
+            // the cursor already lies past the cutoff, nothing newer than the cutoff is left
+            return new ArrayList<>();
+        }
+        long cutoffNanos = ApplianceLogEntity.toEpochNanosClamped(cutoff);
+        return page(after, limit, (position, max) -> repository.findPageNewerThan(cutoffNanos,
+                nanos(position), position.getApplianceId(), position.getSequence(), max));
+    }
+
+    @Override
+    public List<ApplianceLog> findByTimestampBetween(Instant from, Instant to, LogCursor after, int limit) {
+        if (!from.isBefore(to)) {
+            return new ArrayList<>();
+        }
+        // seeking from the upper bound and cutting off before the lower one keeps both on the timestamp index
+        long fromNanos = ApplianceLogEntity.toEpochNanosClamped(from);
+        long cutoffNanos = fromNanos == Long.MIN_VALUE ? fromNanos : fromNanos - 1;
+        return page(LogCursor.later(after, LogCursor.before(to)), limit, (position, max) ->
+                repository.findPageNewerThan(cutoffNanos,
+                        nanos(position), position.getApplianceId(), position.getSequence(), max));
+    }
+
+    @Override
+    public List<ApplianceLog> findBySuccessFalse(LogCursor after, int limit) {
+        return page(after, limit, (position, max) -> repository.findFailedPage(
+                nanos(position), position.getApplianceId(), position.getSequence(), max));
+    }
+
+    @Override
+    public long size() {
+        return size.get();
+    }
+
+    @Override
+    public long getEvictedCount(EvictionReason reason) {
+        return evictions.get(reason).get();
+    }
+
+    /**
+     * @return number of insert transactions committed since startup
+     */
+    public long getBatchesWritten() {
+        return batchesWritten.get();
+    }
+
+    /**
+     * Deletes rows older than the maximum age, then the oldest rows beyond the maximum row count.
+     */
+    @Override
+    public int evictExpired() {
+        return evictExpired(Instant.now());
+    }
+
+    @VisibleForTesting
+    int evictExpired(Instant now) {
+        int evicted = 0;
+        if (retentionPolicy.getMaxAge() != null) {
+            Instant cutoff = now.minus(retentionPolicy.getMaxAge());
+            int aged = repository.deleteOlderThan(ApplianceLogEntity.toEpochNanosClamped(cutoff));
+            evictions.get(EvictionReason.AGE).addAndGet(aged);
+            evicted += aged;
+        }
+        // the table may also have been written by other instances, so the size is recounted on every sweep
+        long rows = repository.count();
+        if (retentionPolicy.getMaxRows() > 0 && rows > retentionPolicy.getMaxRows()) {
+            int overflow = delete(repository.findOldestIds(limit(rows - retentionPolicy.getMaxRows())));
+            evictions.get(EvictionReason.MAX_ROWS).addAndGet(overflow);
+            evicted += overflow;
+            rows -= overflow;
+        }
+        size.set(rows);
+        return evicted;
+    }
+
+    private int delete(List<Long> ids) {
+        int deleted = 0;
+        for (int from = 0; from < ids.size(); from += DELETE_CHUNK) {
+            deleted += repository.deleteByIds(ids.subList(from, Math.min(ids.size(), from + DELETE_CHUNK)));
+        }
+        return deleted;
+    }
+
+    private static Limit limit(long max) {
+        return Limit.of((int) Math.min(max, Integer.MAX_VALUE));
+    }
+
+    private static long nanos(LogCursor position) {
+        return ApplianceLogEntity.toEpochNanosClamped(position.getTimestamp());
+    }
+
+    /**
+     * Runs a page query from the cursor, or from before the newest row when there is none.
+     */
+    private static List<ApplianceLog> page(LogCursor after, int limit, PageQuery query) {
+        if (limit <= 0) {
+            return new ArrayList<>();
+        }
+        List<ApplianceLogEntity> rows = query.find(after != null ? after : FIRST, limit(limit));
+        List<ApplianceLog> page = new ArrayList<>(rows.size());
+        for (ApplianceLogEntity row : rows) {
+            page.add(row.toLog());
+        }
+        return page;
+    }
+
+    @FunctionalInterface
+    private interface PageQuery {
+        List<ApplianceLogEntity> find(LogCursor position, Limit limit);
+    }
+}
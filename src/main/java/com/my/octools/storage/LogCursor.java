@@ -0,0 +1,130 @@
+package com.my.octools.storage;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+
+/**
+ * Opaque keyset-pagination cursor identifying a position in the {@link ApplianceLog#NEWEST_FIRST} order.
+ * <p>
+ * A cursor encodes (timestamp, applianceId, sequence) of the last entry returned, so the next page
+ * can seek straight to that position instead of skipping over the preceding entries.
+ */
+public final class LogCursor {
+
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    private final Instant timestamp;
+    private final String applianceId;
+    private final long sequence;
+
+    public LogCursor(Instant timestamp, String applianceId, long sequence) {
+        this.timestamp = timestamp;
+        this.applianceId = applianceId;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Creates a cursor positioned at the given log entry.
+     *
+     * @param log the last entry of a page
+     * @return cursor pointing at that entry
+     */
+    public static LogCursor of(ApplianceLog log) {
+        return new LogCursor(log.getTimestamp(), log.getApplianceId(), log.getSequence());
+    }
+
+    /**
+     * Creates a cursor positioned before every entry stamped earlier than {@code to}, so a page read after it only
+     * holds entries older than {@code to}. This pushes an exclusive upper time bound into any paged finder.
+     *
+     * @param to exclusive upper bound of the timestamps to read
+     * @return cursor sitting just after every entry stamped at or after {@code to}
+     */
+    public static LogCursor before(Instant to) {
+        // no entry sorts before this position among those stamped one nanosecond earlier
+        return new LogCursor(to.minusNanos(1), "", Long.MAX_VALUE);
+    }
+
+    /**
+     * @return the cursor further along in {@link ApplianceLog#NEWEST_FIRST} order, or the other one if either is null
+     */
+    public static LogCursor later(LogCursor a, LogCursor b) {
+        if (a == null || b == null) {
+            return a == null ? b : a;
+        }
+        return ApplianceLog.NEWEST_FIRST.compare(a.toProbe(), b.toProbe()) >= 0 ? a : b;
+    }
+
+    /**
+     * Decodes a cursor previously produced by {@link #encode()}.
+     *
+     * @param value encoded cursor, may be null or blank
+     * @return decoded cursor, or null if the value is null or blank
+     * @throws IllegalArgumentException if the value is not a valid cursor
+     */
+    public static LogCursor decode(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            String raw = new String(DECODER.decode(value), StandardCharsets.UTF_8);
+            // applianceId goes last since it is the only part that may contain the separator
+            String[] parts = raw.split(":", 4);
+            if (parts.length != 4) {
+                throw new IllegalArgumentException("Invalid cursor: " + value);
+            }
+            Instant timestamp = Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+            return new LogCursor(timestamp, parts[3], Long.parseLong(parts[2]));
+        } catch (IllegalArgumentException | java.time.DateTimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + value, e);
+        }
+    }
+
+    /**
+     * Encodes this cursor into an opaque URL-safe string.
+     */
+    public String encode() {
+        String raw = timestamp.getEpochSecond() + ":" + timestamp.getNano() + ":" + sequence + ":" + applianceId;
+        return ENCODER.encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Builds a probe entry sitting exactly at this cursor's position, for use with
+     * sorted-set views such as {@code tailSet(probe, false)}.
+     */
+    ApplianceLog toProbe() {
+        ApplianceLog probe = new ApplianceLog(applianceId, null, false, null, timestamp);
+        probe.setSequence(sequence);
+        return probe;
+    }
+
+    /**
+     * @return true if the entry sorts before this cursor in {@link ApplianceLog#NEWEST_FIRST} order, i.e. it is newer
+     */
+    public boolean isNewer(ApplianceLog log) {
+        return ApplianceLog.NEWEST_FIRST.compare(log, toProbe()) < 0;
+    }
+
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public String getApplianceId() {
+        return applianceId;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public String toString() {
+        return "LogCursor{" +
+                "timestamp=" + timestamp +
+                ", applianceId='" + applianceId + '\'' +
+                ", sequence=" + sequence +
+                '}';
+    }
+}
@@ -0,0 +1,120 @@
+package com.my.octools.storage;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * Conjunction of optional predicates on log entries, planned and run by {@link LogQueryPlanner}.
+ * A null predicate matches every entry.
+ * <p>
+ * The time bounds are clamped to {@link #EARLIEST} and {@link #LATEST}, whole seconds within the epoch nanoseconds
+ * a long holds, so every engine can convert them, and the nanosecond before them, however far out a caller asks.
+ */
+public final class LogQuery {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    /** Earliest bound of a query, 1677-09-21T00:12:45Z. */
+    public static final Instant EARLIEST = Instant.ofEpochSecond(Long.MIN_VALUE / NANOS_PER_SECOND + 1);
+    /** Latest bound of a query, 2262-04-11T23:47:16Z. */
+    public static final Instant LATEST = Instant.ofEpochSecond(Long.MAX_VALUE / NANOS_PER_SECOND);
+
+    private final String applianceId;
+    private final String action;
+    private final Boolean success;
+    private final Instant from;
+    private final Instant to;
+
+    /**
+     * @param applianceId only entries of this appliance
+     * @param action      only entries of this action
+     * @param success     only succeeded or only failed entries
+     * @param from        only entries stamped at or after this instant
+     * @param to          only entries stamped before this instant
+     * @throws IllegalArgumentException if {@code from} is not before {@code to}, or both lie on the same side
+     *                                  outside {@link #EARLIEST} to {@link #LATEST}
+     */
+    public LogQuery(String applianceId, String action, Boolean success, Instant from, Instant to) {
+        if (from != null && to != null && !from.isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+        this.applianceId = applianceId;
+        this.action = action;
+        this.success = success;
+        this.from = clamp(from);
+        this.to = clamp(to);
+        if (this.from != null && this.to != null && !this.from.isBefore(this.to)) {
+            throw new IllegalArgumentException("from and to must overlap " + EARLIEST + " to " + LATEST);
+        }
+    }
+
+    private static Instant clamp(Instant bound) {
+        if (bound == null) {
+            return null;
+        }
+        if (bound.isBefore(EARLIEST)) {
+            return EARLIEST;
+        }
+        return bound.isAfter(LATEST) ? LATEST : bound;
+    }
+
+    /**
+     * @return true if the entry satisfies every predicate
+     */
+    public boolean matches(ApplianceLog log) {
+        return (applianceId == null || applianceId.equals(log.getApplianceId()))
+                && (action == null || action.equals(log.getAction()))
+                && (success == null || success == log.isSuccess())
+                && (from == null || !log.getTimestamp().isBefore(from))
+                && (to == null || log.getTimestamp().isBefore(to));
+    }
+
+    public String getApplianceId() {
+        return applianceId;
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public Boolean getSuccess() {
+        return success;
+    }
+
+    public Instant getFrom() {
+        return from;
+    }
+
+    public Instant getTo() {
+        return to;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LogQuery)) {
+            return false;
+        }
+        LogQuery other = (LogQuery) o;
+        return Objects.equals(applianceId, other.applianceId) && Objects.equals(action, other.action)
+                && Objects.equals(success, other.success) && Objects.equals(from, other.from)
+                && Objects.equals(to, other.to);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(applianceId, action, success, from, to);
+    }
+
+    @Override
+    public String toString() {
+        return "LogQuery{" +
+                "applianceId='" + applianceId + '\'' +
+                ", action='" + action + '\'' +
+                ", success=" + success +
+                ", from=" + from +
+                ", to=" + to +
+                '}';
+    }
+}
@@ -0,0 +1,172 @@
+package com.my.octools.storage;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a {@link LogQuery} against a store by reading one access path and filtering the rest while streaming.
+ * <p>
+ * Every access path reads in {@link ApplianceLog#NEWEST_FIRST} order, so the time range is pushed into all of
+ * them: the scan starts from a cursor just below {@code to} and ends at the first entry older than {@code from}.
+ * The remaining predicates are checked entry by entry, and reading stops as soon as {@code limit} entries match.
+ * <p>
+ * The planner picks the path expected to read the fewest entries:
+ * <ul>
+ *     <li>{@link AccessPath#APPLIANCE}, the per-appliance index, when an appliance is given;</li>
+ *     <li>{@link AccessPath#FAILURES}, the failure index, when only failed entries are wanted;</li>
+ *     <li>{@link AccessPath#TIME_RANGE}, the store's range query, when only the time is bounded;</li>
+ *     <li>{@link AccessPath#FULL_SCAN} otherwise.</li>
+ * </ul>
+ * When the range lies within the {@link LogRollup}'s per-minute buckets, the entries each path would read are
+ * estimated from them (the appliance path as the range's entries shared by its distinct appliances) and the
+ * cheapest path wins; otherwise the paths are preferred in the order above.
+ */
+public class LogQueryPlanner {
+    private static final Logger logger = LoggerFactory.getLogger(LogQueryPlanner.class);
+
+    private static final int MIN_BATCH = 64;
+    private static final int MAX_BATCH = 1024;
+
+    /**
+     * How the entries of a query are read from the store.
+     */
+    public enum AccessPath {
+        APPLIANCE, FAILURES, TIME_RANGE, FULL_SCAN
+    }
+
+    private final ApplianceLogRepository store;
+    private final LogRollup rollup;
+
+    /**
+     * @param store  the store to read
+     * @param rollup statistics of the store used for estimates, may be null
+     */
+    public LogQueryPlanner(ApplianceLogRepository store, LogRollup rollup) {
+        this.store = store;
+        this.rollup = rollup;
+    }
+
+    /**
+     * Reads up to {@code limit} matching entries, newest first, starting strictly after the cursor.
+     *
+     * @param after cursor of the last entry of the previous page (nullable)
+     */
+    public List<ApplianceLog> find(LogQuery query, LogCursor after, int limit) {
+        List<ApplianceLog> result = new ArrayList<>(Math.max(0, Math.min(limit, MAX_BATCH)));
+        if (limit <= 0) {
+            return result;
+        }
+        Plan plan = plan(query, Instant.now());
+        logger.debug("Running {} with {}", query, plan);
+        LogCursor position = query.getTo() == null ? after : LogCursor.later(after, LogCursor.before(query.getTo()));
+        int batch = Math.min(MAX_BATCH, Math.max(MIN_BATCH, limit));
+        while (true) {
+            List<ApplianceLog> page = read(plan.getPath(), query, position, batch);
+            for (ApplianceLog log : page) {
+                if (query.getFrom() != null && log.getTimestamp().isBefore(query.getFrom())) {
+                    return result;
+                }
+                if (query.matches(log)) {
+                    result.add(log);
+                    if (result.size() == limit) {
+                        return result;
+                    }
+                }
+            }
+            if (page.size() < batch) {
+                return result;
+            }
+            position = LogCursor.of(page.get(page.size() - 1));
+        }
+    }
+
+    /**
+     * Chooses the access path of a query.
+     */
+    @VisibleForTesting
+    Plan plan(LogQuery query, Instant now) {
+        boolean byAppliance = query.getApplianceId() != null;
+        boolean byFailure = Boolean.FALSE.equals(query.getSuccess());
+        if (rollup != null && query.getFrom() != null && rollup.covers(query.getFrom(), now)) {
+            // an open range ends with the current minute, the newest one the rollup has counted
+            Instant to = query.getTo() != null
+                    ? query.getTo()
+                    : (now.isAfter(query.getFrom()) ? now : query.getFrom()).plusSeconds(60);
+            LogStats stats = rollup.stats(query.getFrom(), to);
+            long rows = stats.getTotal().getTotal();
+            Plan best = new Plan(AccessPath.TIME_RANGE, rows);
+            if (byFailure && stats.getTotal().getFailed() <= best.getEstimatedRows()) {
+                best = new Plan(AccessPath.FAILURES, stats.getTotal().getFailed());
+            }
+            if (byAppliance) {
+                long perAppliance = stats.getDistinctAppliances() == 0
+                        ? 0
+                        : (rows + stats.getDistinctAppliances() - 1) / stats.getDistinctAppliances();
+                if (perAppliance <= best.getEstimatedRows()) {
+                    best = new Plan(AccessPath.APPLIANCE, perAppliance);
+                }
+            }
+            return best;
+        }
+        if (byAppliance) {
+            return new Plan(AccessPath.APPLIANCE, -1);
+        }
+        if (byFailure) {
+            return new Plan(AccessPath.FAILURES, -1);
+        }
+        if (query.getFrom() != null || query.getTo() != null) {
+            return new Plan(AccessPath.TIME_RANGE, -1);
+        }
+        return new Plan(AccessPath.FULL_SCAN, -1);
+    }
+
+    private List<ApplianceLog> read(AccessPath path, LogQuery query, LogCursor position, int limit) {
+        switch (path) {
+            case APPLIANCE:
+                return store.findByApplianceId(query.getApplianceId(), position, limit);
+            case FAILURES:
+                return store.findBySuccessFalse(position, limit);
+            case TIME_RANGE:
+                if (query.getFrom() == null) {
+                    return store.findAll(position, limit);
+                }
+                if (query.getTo() == null) {
+                    return store.findByTimestampAfter(query.getFrom().minusNanos(1), position, limit);
+                }
+                return store.findByTimestampBetween(query.getFrom(), query.getTo(), position, limit);
+            default:
+                return store.findAll(position, limit);
+        }
+    }
+
+    /**
+     * The chosen access path and the number of entries it is expected to read, or -1 if unknown.
+     */
+    static final class Plan {
+        private final AccessPath path;
+        private final long estimatedRows;
+
+        Plan(AccessPath path, long estimatedRows) {
+            this.path = path;
+            this.estimatedRows = estimatedRows;
+        }
+
+        AccessPath getPath() {
+            return path;
+        }
+
+        long getEstimatedRows() {
+            return estimatedRows;
+        }
+
+        @Override
+        public String toString() {
+            return path + (estimatedRows < 0 ? "" : " (~" + estimatedRows + " rows)");
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.my.octools.storage;
+
+import java.time.Duration;
+
+/**
+ * Retention limits for a log store. A limit of zero (or a null age) means unbounded.
+ */
+public final class LogRetentionPolicy {
+
+    private static final LogRetentionPolicy UNBOUNDED = new LogRetentionPolicy(0, null, 0);
+
+    private final long maxRows;
+    private final Duration maxAge;
+    private final int maxPerAppliance;
+
+    /**
+     * @param maxRows         maximum number of entries kept overall, 0 for unbounded
+     * @param maxAge          maximum age of an entry, null for unbounded
+     * @param maxPerAppliance maximum number of entries kept per appliance, 0 for unbounded
+     */
+    public LogRetentionPolicy(long maxRows, Duration maxAge, int maxPerAppliance) {
+        if (maxRows < 0 || maxPerAppliance < 0 || (maxAge != null && maxAge.isNegative())) {
+            throw new IllegalArgumentException("Retention limits must not be negative");
+        }
+        this.maxRows = maxRows;
+        this.maxAge = maxAge == null || maxAge.isZero() ? null : maxAge;
+        this.maxPerAppliance = maxPerAppliance;
+    }
+
+    public static LogRetentionPolicy unbounded() {
+        return UNBOUNDED;
+    }
+
+    public long getMaxRows() {
+        return maxRows;
+    }
+
+    public Duration getMaxAge() {
+        return maxAge;
+    }
+
+    public int getMaxPerAppliance() {
+        return maxPerAppliance;
+    }
+}
@@ -0,0 +1,33 @@
+package com.my.octools.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * Periodically evicts log entries that exceed the store's row or age limits, and bumps the store's write version
+ * after a pass that evicted anything.
+ */
+public class LogRetentionSweeper {
+    private static final Logger logger = LoggerFactory.getLogger(LogRetentionSweeper.class);
+
+    private final EvictingLogStore store;
+    private final LogVersions versions;
+
+    public LogRetentionSweeper(EvictingLogStore store, LogVersions versions) {
+        this.store = store;
+        this.versions = versions;
+    }
+
+    /**
+     * Runs one eviction pass.
+     */
+    @Scheduled(fixedDelayString = "${octools.logs.retention.sweep-interval:30s}")
+    public void sweep() {
+        int evicted = store.evictExpired();
+        if (evicted > 0) {
+            versions.onEvicted();
+            logger.info("Evicted {} expired appliance logs, {} remaining", evicted, store.size());
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.my.octools.storage;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Log statistics kept up to date as entries are saved, so a query costs the same however many entries there are.
+ * <p>
+ * Entries are counted into a fixed ring of per-minute buckets, indexed by the minute of their timestamp modulo the
+ * number of buckets. A bucket holds the succeeded and failed counts per action and a {@link DistinctCounter} of
+ * the appliances it saw; it is reset when its slot comes round to a newer minute, so the ring covers the last
+ * {@code buckets} minutes. {@link #stats} adds up the buckets of the requested window, so it is O(buckets).
+ * <p>
+ * Failure streaks are tracked per appliance while it is failing: every failure extends the appliance's streak
+ * and a success ends it. Streaks follow the order entries are saved in. A streak whose last failure is older than
+ * the retention is dropped, so an appliance that stopped reporting, or was removed, while failing does not stay in
+ * the map; the streaks are swept at most once per minute, when a newer minute is saved or queried.
+ * <p>
+ * Registered as an {@link ApplianceLogListener}; updates are serialized on the rollup's monitor, which saving
+ * threads hold only for a few map operations.
+ */
+public class LogRollup implements ApplianceLogListener {
+
+    private static final long SECONDS_PER_MINUTE = 60;
+    private static final String UNKNOWN_ACTION = "UNKNOWN";
+    private static final int BACKFILL_PAGE_SIZE = 1000;
+
+    /**
+     * How {@link #stats} splits the counts.
+     */
+    public enum GroupBy {
+        NONE, ACTION, MINUTE;
+
+        /**
+         * @throws IllegalArgumentException if the value is not one of {@code none}, {@code action} or
+         *                                  {@code minute}
+         */
+        public static GroupBy parse(String value) {
+            if (value == null || value.isBlank()) {
+                return NONE;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("groupBy must be one of none, action, minute: " + value, ex);
+            }
+        }
+    }
+
+    private final Bucket[] buckets;
+    private final int topStreaks;
+    private final Map<String, Streak> streaks = new HashMap<>();
+    // Newest minute the streaks were swept for
+    private long sweptMinute = Long.MIN_VALUE;
+
+    /**
+     * @param retention  how far back statistics reach, rounded up to whole minutes
+     * @param topStreaks number of longest failure streaks reported
+     */
+    public LogRollup(Duration retention, int topStreaks) {
+        long minutes = Math.max(1, (retention.getSeconds() + SECONDS_PER_MINUTE - 1) / SECONDS_PER_MINUTE);
+        if (minutes > 60 * 24 * 31) {
+            throw new IllegalArgumentException("Statistics retention must not exceed 31 days");
+        }
+        this.buckets = new Bucket[(int) minutes];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new Bucket();
+        }
+        this.topStreaks = topStreaks;
+    }
+
+    @Override
+    public synchronized void onSaved(ApplianceLog log) {
+        count(log);
+        String applianceId = log.getApplianceId();
+        if (log.isSuccess()) {
+            streaks.remove(applianceId);
+        } else {
+            Streak streak = streaks.computeIfAbsent(applianceId, id -> new Streak(log.getTimestamp()));
+            streak.failures++;
+            if (log.getTimestamp().isAfter(streak.last)) {
+                streak.last = log.getTimestamp();
+            }
+        }
+        expireStreaks(minuteOf(log.getTimestamp()));
+    }
+
+    /**
+     * Counts the stored entries within the retention, for stores that keep entries across restarts. Must run
+     * before the rollup is registered as a listener, or entries saved meanwhile are counted twice.
+     */
+    public void backfill(ApplianceLogRepository store) {
+        backfill(store, Instant.now());
+    }
+
+    @VisibleForTesting
+    synchronized void backfill(ApplianceLogRepository store, Instant now) {
+        Instant cutoff = Instant.ofEpochSecond(
+                (minuteOf(now) - buckets.length + 1) * SECONDS_PER_MINUTE).minusNanos(1);
+        // the store returns newest first, so a streak is complete once an appliance's newest success is reached
+        Set<String> streakEnded = new HashSet<>();
+        LogCursor cursor = null;
+        List<ApplianceLog> page;
+        do {
+            page = store.findByTimestampAfter(cutoff, cursor, BACKFILL_PAGE_SIZE);
+            for (ApplianceLog log : page) {
+                count(log);
+                String applianceId = log.getApplianceId();
+                if (log.isSuccess()) {
+                    streakEnded.add(applianceId);
+                } else if (!streakEnded.contains(applianceId)) {
+                    Streak streak = streaks.computeIfAbsent(applianceId, id -> new Streak(log.getTimestamp()));
+                    streak.failures++;
+                    streak.since = log.getTimestamp();
+                }
+            }
+            cursor = page.isEmpty() ? null : LogCursor.of(page.get(page.size() - 1));
+        } while (page.size() == BACKFILL_PAGE_SIZE);
+        expireStreaks(minuteOf(now));
+    }
+
+    /**
+     * Drops the streaks whose last failure is in a minute the ring no longer covers as of {@code minute}.
+     */
+    private void expireStreaks(long minute) {
+        if (minute <= sweptMinute) {
+            return;
+        }
+        sweptMinute = minute;
+        long oldest = minute - buckets.length + 1;
+        streaks.values().removeIf(streak -> minuteOf(streak.last) < oldest);
+    }
+
+    private void count(ApplianceLog log) {
+        long minute = minuteOf(log.getTimestamp());
+        Bucket bucket = buckets[(int) Math.floorMod(minute, (long) buckets.length)];
+        if (minute > bucket.minute) {
+            bucket.reset(minute);
+        } else if (minute < bucket.minute) {
+            // older than the oldest minute the ring still covers
+            return;
+        }
+        String action = log.getAction() != null ? log.getAction() : UNKNOWN_ACTION;
+        bucket.counts.computeIfAbsent(action, a -> new LogStats.Counts()).add(log.isSuccess(), 1);
+        bucket.appliances.add(log.getApplianceId());
+    }
+
+    /**
+     * Adds up the buckets of the window ending now.
+     *
+     * @param window  how far back to count, rounded up to whole minutes and capped at the retention
+     * @param groupBy how to split the counts
+     */
+    public LogStats stats(Duration window, GroupBy groupBy) {
+        return stats(window, groupBy, Instant.now());
+    }
+
+    @VisibleForTesting
+    synchronized LogStats stats(Duration window, GroupBy groupBy, Instant now) {
+        if (window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("window must be positive");
+        }
+        long last = minuteOf(now);
+        long minutes = Math.min(buckets.length, (window.getSeconds() + SECONDS_PER_MINUTE - 1) / SECONDS_PER_MINUTE);
+        long first = last - Math.max(1, minutes) + 1;
+        expireStreaks(last);
+        return aggregate(first, last, groupBy, true);
+    }
+
+    /**
+     * Counts the entries of the whole minutes overlapping {@code [from, to)}, without failure streaks. Minutes the
+     * ring no longer covers count as empty, see {@link #covers}.
+     */
+    public synchronized LogStats stats(Instant from, Instant to) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("from must be before to");
+        }
+        return aggregate(minuteOf(from), minuteOf(to.minusNanos(1)), GroupBy.NONE, false);
+    }
+
+    /**
+     * @return true if the ring still holds the minute of {@code from}, so counts from then on are complete
+     */
+    public boolean covers(Instant from, Instant now) {
+        return minuteOf(from) > minuteOf(now) - buckets.length;
+    }
+
+    private LogStats aggregate(long first, long last, GroupBy groupBy, boolean withStreaks) {
+        LogStats.Counts total = new LogStats.Counts();
+        Map<String, LogStats.Counts> groups = new TreeMap<>();
+        DistinctCounter appliances = new DistinctCounter();
+        for (Bucket bucket : buckets) {
+            if (bucket.minute < first || bucket.minute > last) {
+                continue;
+            }
+            for (Map.Entry<String, LogStats.Counts> entry : bucket.counts.entrySet()) {
+                total.add(entry.getValue());
+                if (groupBy == GroupBy.ACTION) {
+                    groups.computeIfAbsent(entry.getKey(), a -> new LogStats.Counts()).add(entry.getValue());
+                } else if (groupBy == GroupBy.MINUTE) {
+                    groups.computeIfAbsent(Instant.ofEpochSecond(bucket.minute * SECONDS_PER_MINUTE).toString(),
+                            m -> new LogStats.Counts()).add(entry.getValue());
+                }
+            }
+            appliances.merge(bucket.appliances);
+        }
+        return new LogStats(Instant.ofEpochSecond(first * SECONDS_PER_MINUTE),
+                Instant.ofEpochSecond((last + 1) * SECONDS_PER_MINUTE), total, groups, appliances.estimate(),
+                streaks.size(), withStreaks ? longestStreaks() : List.of());
+    }
+
+    private List<LogStats.FailureStreak> longestStreaks() {
+        Comparator<Map.Entry<String, Streak>> byLength = Comparator.comparingInt(entry -> entry.getValue().failures);
+        PriorityQueue<Map.Entry<String, Streak>> longest = new PriorityQueue<>(byLength);
+        for (Map.Entry<String, Streak> entry : streaks.entrySet()) {
+            longest.add(entry);
+            if (longest.size() > topStreaks) {
+                longest.poll();
+            }
+        }
+        return longest.stream()
+                .sorted(byLength.reversed().thenComparing(Map.Entry::getKey))
+                .map(entry -> new LogStats.FailureStreak(entry.getKey(), entry.getValue().failures,
+                        entry.getValue().since))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @return number of per-minute buckets, the longest window in minutes
+     */
+    public int getBucketCount() {
+        return buckets.length;
+    }
+
+    private static long minuteOf(Instant timestamp) {
+        return Math.floorDiv(timestamp.getEpochSecond(), SECONDS_PER_MINUTE);
+    }
+
+    private static final class Bucket {
+        private long minute = Long.MIN_VALUE;
+        private final Map<String, LogStats.Counts> counts = new HashMap<>();
+        private final DistinctCounter appliances = new DistinctCounter();
+
+        private void reset(long minute) {
+            this.minute = minute;
+            counts.clear();
+            appliances.clear();
+        }
+    }
+
+    private static final class Streak {
+        private int failures;
+        private Instant since;
+        private Instant last;
+
+        private Streak(Instant since) {
+            this.since = since;
+            this.last = since;
+        }
+    }
+}
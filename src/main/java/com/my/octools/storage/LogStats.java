@@ -0,0 +1,139 @@
+package com.my.octools.storage;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Log statistics over a time window, answered by {@link LogRollup}.
+ */
+public class LogStats {
+
+    private final Instant from;
+    private final Instant to;
+    private final Counts total;
+    private final Map<String, Counts> groups;
+    private final long distinctAppliances;
+    private final long appliancesFailing;
+    private final List<FailureStreak> longestFailureStreaks;
+
+    public LogStats(Instant from, Instant to, Counts total, Map<String, Counts> groups, long distinctAppliances,
+                    long appliancesFailing, List<FailureStreak> longestFailureStreaks) {
+        this.from = from;
+        this.to = to;
+        this.total = total;
+        this.groups = groups;
+        this.distinctAppliances = distinctAppliances;
+        this.appliancesFailing = appliancesFailing;
+        this.longestFailureStreaks = longestFailureStreaks;
+    }
+
+    /**
+     * @return start of the first minute in the window
+     */
+    public Instant getFrom() {
+        return from;
+    }
+
+    /**
+     * @return end of the window, the end of the current minute
+     */
+    public Instant getTo() {
+        return to;
+    }
+
+    public Counts getTotal() {
+        return total;
+    }
+
+    /**
+     * @return counts per group key (an action, or the start of a minute), empty without grouping
+     */
+    public Map<String, Counts> getGroups() {
+        return groups;
+    }
+
+    /**
+     * @return estimated number of appliances with an entry in the window, within about 2%
+     */
+    public long getDistinctAppliances() {
+        return distinctAppliances;
+    }
+
+    /**
+     * @return appliances whose latest entry is a failure, regardless of the window
+     */
+    public long getAppliancesFailing() {
+        return appliancesFailing;
+    }
+
+    /**
+     * @return the appliances with the most consecutive failures since their last success, longest first
+     */
+    public List<FailureStreak> getLongestFailureStreaks() {
+        return longestFailureStreaks;
+    }
+
+    /**
+     * Succeeded and failed entries.
+     */
+    public static class Counts {
+        private long succeeded;
+        private long failed;
+
+        void add(boolean success, long count) {
+            if (success) {
+                succeeded += count;
+            } else {
+                failed += count;
+            }
+        }
+
+        void add(Counts other) {
+            succeeded += other.succeeded;
+            failed += other.failed;
+        }
+
+        public long getSucceeded() {
+            return succeeded;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getTotal() {
+            return succeeded + failed;
+        }
+    }
+
+    /**
+     * Failures of an appliance since its last success.
+     */
+    public static class FailureStreak {
+        private final String applianceId;
+        private final int failures;
+        private final Instant since;
+
+        public FailureStreak(String applianceId, int failures, Instant since) {
+            this.applianceId = applianceId;
+            this.failures = failures;
+            this.since = since;
+        }
+
+        public String getApplianceId() {
+            return applianceId;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        /**
+         * @return time of the first failure of the streak
+         */
+        public Instant getSince() {
+            return since;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.my.octools.storage;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.Locale;
+
+/**
+ * Binds a log store's size and eviction counters to Micrometer,
+ * exposed through {@code /actuator/metrics}.
+ */
+public class LogStoreMetrics implements MeterBinder {
+
+    private final EvictingLogStore store;
+
+    public LogStoreMetrics(EvictingLogStore store) {
+        this.store = store;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("octools.logs.size", store, EvictingLogStore::size)
+                .description("Number of appliance log rows currently held in the store")
+                .register(registry);
+        for (EvictionReason reason : EvictionReason.values()) {
+            FunctionCounter.builder("octools.logs.evicted", store, s -> s.getEvictedCount(reason))
+                    .description("Number of appliance log rows evicted by the retention policy")
+                    .tag("reason", reason.name().toLowerCase(Locale.ROOT))
+                    .register(registry);
+        }
+    }
+}
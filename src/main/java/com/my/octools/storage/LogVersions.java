@@ -0,0 +1,94 @@
+package com.my.octools.storage;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write versions of a log store: a global version that every save and eviction pass increments, and per appliance
+ * the global version of the last save of one of its entries.
+ * <p>
+ * Versions are bumped after the change is visible to the finders, so a reader that reads a version first and then
+ * queries the store sees at least every change up to that version. Two reads of a query at the same version
+ * therefore return the same entries, as long as the query does not depend on the clock.
+ * <p>
+ * Evictions are not attributed to appliances, so an eviction pass also moves every appliance's version past it.
+ * That makes the per-appliance versions of the appliances not saved since redundant, and they are dropped, so the
+ * map only holds appliances written since the last eviction pass. The per-appliance trimming done while saving
+ * only removes entries of the saved appliance and needs no extra bump.
+ * Versions start from zero with every store instance; {@link #getEpoch()} tells instances apart.
+ * <p>
+ * Versions only see the writes of this instance. For a store shared with other processes they are not
+ * {@link #isComplete() complete}, and must not be used to decide that nothing has changed.
+ */
+public class LogVersions implements ApplianceLogListener {
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong evictedVersion = new AtomicLong();
+    private final ConcurrentMap<String, Long> applianceVersions = new ConcurrentHashMap<>();
+    private final boolean complete;
+
+    public LogVersions() {
+        this(true);
+    }
+
+    /**
+     * @param complete false if the store is also written by other processes, see {@link #isComplete()}
+     */
+    public LogVersions(boolean complete) {
+        this.complete = complete;
+    }
+
+    @Override
+    public void onSaved(ApplianceLog log) {
+        long saved = version.incrementAndGet();
+        applianceVersions.merge(log.getApplianceId(), saved, Math::max);
+    }
+
+    /**
+     * Records that entries were evicted from the store.
+     */
+    public void onEvicted() {
+        long evicted = version.incrementAndGet();
+        evictedVersion.accumulateAndGet(evicted, Math::max);
+        // a concurrent save past the pass keeps its entry, one from before it is still covered by evictedVersion
+        applianceVersions.values().removeIf(saved -> saved <= evicted);
+    }
+
+    /**
+     * @return version of the whole store
+     */
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * @return version of the entries of one appliance, at most the global version
+     */
+    public long getVersion(String applianceId) {
+        return Math.max(applianceVersions.getOrDefault(applianceId, 0L), evictedVersion.get());
+    }
+
+    @VisibleForTesting
+    int getTrackedApplianceCount() {
+        return applianceVersions.size();
+    }
+
+    /**
+     * @return true if every write to the store passes through this instance, so an unchanged version means an
+     * unchanged store
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * @return identifies this instance, since versions of different instances are not comparable
+     */
+    public String getEpoch() {
+        return epoch;
+    }
+}
@@ -0,0 +1,13 @@
+package com.my.octools.storage;
+
+/**
+ * What the {@link WriteBehindLogWriter} does with an entry written while its buffer is full.
+ */
+public enum OverflowPolicy {
+    /** The writing thread waits until the buffer has room. */
+    BLOCK,
+    /** The oldest buffered entry is discarded to make room. */
+    DROP_OLDEST,
+    /** The entry is appended to a spill file on disk and applied once the buffer has drained. */
+    SPILL
+}
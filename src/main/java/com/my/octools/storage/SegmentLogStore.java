@@ -0,0 +1,642 @@
+package com.my.octools.storage;
+
+import com.google.common.annotations.VisibleForTesting;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Durable log store: an append-only segment log on disk in front of an in-memory index store.
+ * <p>
+ * Every saved entry is written as a length-prefixed, CRC32-checked record into the active segment,
+ * a pre-sized file written through a {@link MappedByteBuffer}. Segments roll once full. Writes only
+ * copy into the mapping; a background flusher forces dirty pages every flush interval (group commit),
+ * so {@link #save(ApplianceLog)} never waits for a disk sync.
+ * <p>
+ * Each segment keeps a sparse index of (max timestamp before, file position) pairs, persisted next to
+ * the segment when it is sealed. On startup the store skips segments and segment prefixes that the
+ * retention policy would evict anyway, replays the rest into the in-memory index store, and truncates
+ * a torn tail left by a crash at the first record whose length or checksum does not verify.
+ * <p>
+ * Queries are answered by the in-memory index store. Retention applies to both: the index store
+ * evicts rows as usual and whole sealed segments are deleted once they fall outside the policy.
+ */
+public class SegmentLogStore implements ApplianceLogRepository, EvictingLogStore, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(SegmentLogStore.class);
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final int INDEX_MAGIC = 0x4F435831;
+    // length + crc32
+    static final int HEADER_BYTES = 8;
+    private static final int INDEX_INTERVAL_BYTES = 64 * 1024;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final LogRetentionPolicy retentionPolicy;
+    private final InMemoryApplianceLogStore index;
+    private final ScheduledExecutorService flusher;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    // Oldest first, guarded by writeLock
+    private final Deque<Segment> sealed = new ArrayDeque<>();
+    private volatile Segment active;
+    private volatile boolean dirty;
+
+    /**
+     * Opens (or creates) a segment log in the given directory and replays it.
+     *
+     * @param directory       directory holding the segment files
+     * @param segmentSize     size of each segment file in bytes
+     * @param flushInterval   how often written records are forced to disk
+     * @param retentionPolicy retention limits applied to the index store and to sealed segments
+     * @throws UncheckedIOException if the directory or a segment cannot be read
+     */
+    public SegmentLogStore(Path directory, int segmentSize, Duration flushInterval, LogRetentionPolicy retentionPolicy) {
+        if (segmentSize < 4 * HEADER_BYTES) {
+            throw new IllegalArgumentException("Segment size too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.retentionPolicy = retentionPolicy;
+        this.index = new InMemoryApplianceLogStore(retentionPolicy);
+        try {
+            recover();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open segment log in " + directory, e);
+        }
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "segment-log-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = Math.max(1, flushInterval.toMillis());
+        flusher.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Appends the entry to the active segment and indexes it in memory.
+     * The record becomes durable with the next group commit.
+     */
+    @Override
+    public void save(ApplianceLog log) {
+        byte[] record = encode(log);
+        if (record.length > segmentSize) {
+            throw new IllegalArgumentException("Log entry of " + record.length + " bytes exceeds the segment size");
+        }
+        writeLock.lock();
+        try {
+            if (active.position + record.length > segmentSize) {
+                roll();
+            }
+            active.append(record, toEpochNanos(log.getTimestamp()));
+            dirty = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to segment log", e);
+        } finally {
+            writeLock.unlock();
+        }
+        index.save(log);
+    }
+
+    /**
+     * Listeners are notified once an entry has been appended and indexed in memory.
+     */
+    @Override
+    public void addListener(ApplianceLogListener listener) {
+        index.addListener(listener);
+    }
+
+    @Override
+    public List<ApplianceLog> findAll() {
+        return index.findAll();
+    }
+
+    @Override
+    public List<ApplianceLog> findByApplianceId(String applianceId) {
+        return index.findByApplianceId(applianceId);
+    }
+
+    @Override
+    public List<ApplianceLog> findByTimestampAfter(Instant after) {
+        return index.findByTimestampAfter(after);
+    }
+
+    @Override
+    public List<ApplianceLog> findBySuccessFalse() {
+        return index.findBySuccessFalse();
+    }
+
+    @Override
+    public List<ApplianceLog> findAll(LogCursor after, int limit) {
+        return index.findAll(after, limit);
+    }
+
+    @Override
+    public List<ApplianceLog> findByApplianceId(String applianceId, LogCursor after, int limit) {
+        return index.findByApplianceId(applianceId, after, limit);
+    }
+
+    @Override
+    public List<ApplianceLog> findByTimestampAfter(Instant cutoff, LogCursor after, int limit) {
+        return index.findByTimestampAfter(cutoff, after, limit);
+    }
+
+    @Override
+    public List<ApplianceLog> findByTimestampBetween(Instant from, Instant to, LogCursor after, int limit) {
+        return index.findByTimestampBetween(from, to, after, limit);
+    }
+
+    @Override
+    public List<ApplianceLog> findBySuccessFalse(LogCursor after, int limit) {
+        return index.findBySuccessFalse(after, limit);
+    }
+
+    @Override
+    public long size() {
+        return index.size();
+    }
+
+    @Override
+    public long getEvictedCount(EvictionReason reason) {
+        return index.getEvictedCount(reason);
+    }
+
+    /**
+     * Evicts expired rows from the index store and deletes sealed segments outside the retention policy.
+     */
+    @Override
+    public int evictExpired() {
+        int evicted = index.evictExpired();
+        deleteExpiredSegments(Instant.now());
+        return evicted;
+    }
+
+    /**
+     * Forces all written records to disk.
+     */
+    public void flush() {
+        if (!dirty) {
+            return;
+        }
+        // cleared before forcing, so records written during the force mark the log dirty again
+        dirty = false;
+        Segment segment = active;
+        MappedByteBuffer buffer = segment.buffer;
+        if (buffer != null) {
+            buffer.force();
+        }
+        if (active != segment) {
+            // rolled meanwhile: the sealed segment was forced by the roll, the new one may still be dirty
+            dirty = true;
+        }
+    }
+
+    /**
+     * Stops the flusher and forces the remaining records to disk.
+     */
+    @Override
+    public void close() {
+        flusher.shutdown();
+        writeLock.lock();
+        try {
+            flush();
+            active.channel.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close segment {}: {}", active.path, e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @VisibleForTesting
+    int segmentCount() {
+        writeLock.lock();
+        try {
+            return sealed.size() + 1;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.error("Group commit of segment log failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Seals the active segment and opens the next one. Caller holds the write lock.
+     */
+    private void roll() throws IOException {
+        Segment previous = active;
+        previous.buffer.force();
+        previous.channel.close();
+        previous.buffer = null;
+        previous.channel = null;
+        previous.seal();
+        sealed.addLast(previous);
+        active = Segment.create(directory, previous.id + 1, segmentSize);
+    }
+
+    @VisibleForTesting
+    void deleteExpiredSegments(Instant now) {
+        long ageCutoff = retentionPolicy.getMaxAge() == null
+                ? Long.MIN_VALUE
+                : toEpochNanos(now.minus(retentionPolicy.getMaxAge()));
+        writeLock.lock();
+        try {
+            long totalRecords = active.recordCount;
+            for (Segment segment : sealed) {
+                totalRecords += segment.recordCount;
+            }
+            while (!sealed.isEmpty()) {
+                Segment oldest = sealed.peekFirst();
+                boolean expired = oldest.maxEpochNanos < ageCutoff;
+                boolean surplus = retentionPolicy.getMaxRows() > 0
+                        && totalRecords - oldest.recordCount >= retentionPolicy.getMaxRows();
+                if (!expired && !surplus) {
+                    break;
+                }
+                sealed.removeFirst();
+                totalRecords -= oldest.recordCount;
+                oldest.delete();
+                logger.info("Deleted segment {} with {} records", oldest.path.getFileName(), oldest.recordCount);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to delete expired segments: {}", e.getMessage());
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Loads segment metadata, replays the segments the retention policy keeps, and opens the active segment.
+     */
+    private void recover() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing
+                    .filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                            && p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+        if (files.isEmpty()) {
+            active = Segment.create(directory, 0, segmentSize);
+            return;
+        }
+
+        List<Segment> segments = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            boolean last = i == files.size() - 1;
+            Segment segment = last ? null : Segment.loadSealed(files.get(i));
+            segments.add(segment != null ? segment : Segment.scan(files.get(i), !last));
+        }
+
+        long ageCutoff = retentionPolicy.getMaxAge() == null
+                ? Long.MIN_VALUE
+                : toEpochNanos(Instant.now().minus(retentionPolicy.getMaxAge()));
+        // Walk back from the newest segment until the row limit is covered; older segments are not replayed
+        int firstReplayed = segments.size() - 1;
+        long covered = segments.get(firstReplayed).recordCount;
+        while (firstReplayed > 0
+                && (retentionPolicy.getMaxRows() <= 0 || covered < retentionPolicy.getMaxRows())
+                && segments.get(firstReplayed - 1).maxEpochNanos >= ageCutoff) {
+            firstReplayed--;
+            covered += segments.get(firstReplayed).recordCount;
+        }
+
+        int replayed = 0;
+        for (int i = firstReplayed; i < segments.size(); i++) {
+            replayed += replay(segments.get(i), ageCutoff);
+        }
+        for (int i = 0; i < segments.size() - 1; i++) {
+            sealed.addLast(segments.get(i));
+        }
+        active = Segment.openActive(segments.get(segments.size() - 1), segmentSize);
+        logger.info("Recovered {} log records from {} segments in {}", replayed, segments.size(), directory);
+    }
+
+    /**
+     * Replays a segment into the index store, starting at the first sparse index entry that may hold
+     * a record newer than the cutoff.
+     */
+    private int replay(Segment segment, long ageCutoff) throws IOException {
+        int replayed = 0;
+        try (FileChannel channel = FileChannel.open(segment.path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int position = segment.sparseIndex.seek(ageCutoff);
+            while (position < segment.position) {
+                ApplianceLog log = decode(buffer, position);
+                if (log == null) {
+                    logger.warn("Stopped replaying segment {} at corrupt record {}", segment.path.getFileName(), position);
+                    break;
+                }
+                position += HEADER_BYTES + buffer.getInt(position);
+                if (toEpochNanos(log.getTimestamp()) >= ageCutoff) {
+                    index.save(log);
+                    replayed++;
+                }
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Serializes an entry as [payload length][crc32][payload].
+     */
+    @VisibleForTesting
+    static byte[] encode(ApplianceLog log) {
+        byte[] applianceId = utf8(log.getApplianceId());
+        byte[] action = utf8(log.getAction());
+        byte[] message = utf8(log.getMessage());
+        int payloadLength = 8 + 4 + 1 + 12 + length(applianceId) + length(action) + length(message);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + payloadLength);
+        buffer.position(HEADER_BYTES);
+        buffer.putLong(log.getTimestamp().getEpochSecond());
+        buffer.putInt(log.getTimestamp().getNano());
+        buffer.put((byte) (log.isSuccess() ? 1 : 0));
+        putString(buffer, applianceId);
+        putString(buffer, action);
+        putString(buffer, message);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_BYTES, payloadLength);
+        buffer.putInt(0, payloadLength);
+        buffer.putInt(4, (int) crc.getValue());
+        return buffer.array();
+    }
+
+    /**
+     * Reads the record at the given position.
+     *
+     * @return decoded entry, or null if there is no complete, checksummed record at that position
+     */
+    @VisibleForTesting
+    static ApplianceLog decode(ByteBuffer buffer, int position) {
+        if (position + HEADER_BYTES > buffer.limit()) {
+            return null;
+        }
+        int payloadLength = buffer.getInt(position);
+        if (payloadLength <= 0 || payloadLength > buffer.limit() - position - HEADER_BYTES) {
+            return null;
+        }
+        ByteBuffer payload = buffer.slice(position + HEADER_BYTES, payloadLength);
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+            return null;
+        }
+        try {
+            Instant timestamp = Instant.ofEpochSecond(payload.getLong(), payload.getInt());
+            boolean success = payload.get() == 1;
+            String applianceId = getString(payload);
+            String action = getString(payload);
+            String message = getString(payload);
+            return new ApplianceLog(applianceId, action, success, message, timestamp);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int length(byte[] value) {
+        return value == null ? 0 : value.length;
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(value.length);
+            buffer.put(value);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long toEpochNanos(Instant instant) {
+        return Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000_000L), instant.getNano());
+    }
+
+    /**
+     * One segment file and its metadata. Only the active segment keeps a channel and mapping open.
+     */
+    private static final class Segment {
+        private final long id;
+        private final Path path;
+        private final SparseIndex sparseIndex;
+        private FileChannel channel;
+        private volatile MappedByteBuffer buffer;
+        private int position;
+        private int recordCount;
+        private long maxEpochNanos = Long.MIN_VALUE;
+        private int nextIndexPosition;
+
+        private Segment(long id, Path path, SparseIndex sparseIndex) {
+            this.id = id;
+            this.path = path;
+            this.sparseIndex = sparseIndex;
+        }
+
+        static Segment create(Path directory, long id, int segmentSize) throws IOException {
+            Path path = directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+            Segment segment = new Segment(id, path, new SparseIndex());
+            segment.map(segmentSize);
+            return segment;
+        }
+
+        /**
+         * Reopens the newest segment for appending. A torn tail is zeroed so stale bytes past the
+         * recovered end can never be mistaken for records later.
+         */
+        static Segment openActive(Segment segment, int segmentSize) throws IOException {
+            segment.map(Math.max(segmentSize, (int) Files.size(segment.path)));
+            int end = segment.buffer.capacity();
+            if (segment.position + HEADER_BYTES <= end && segment.buffer.getInt(segment.position) != 0) {
+                logger.warn("Truncating torn tail of segment {} at position {}", segment.path.getFileName(), segment.position);
+                for (int i = segment.position; i < end; i++) {
+                    segment.buffer.put(i, (byte) 0);
+                }
+                segment.buffer.force();
+            }
+            return segment;
+        }
+
+        /**
+         * Rebuilds metadata by reading records until the first missing or corrupt one.
+         */
+        static Segment scan(Path path, boolean writeIndex) throws IOException {
+            Segment segment = new Segment(idOf(path), path, new SparseIndex());
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                ApplianceLog log;
+                while ((log = decode(buffer, segment.position)) != null) {
+                    segment.track(segment.position, HEADER_BYTES + buffer.getInt(segment.position),
+                            toEpochNanos(log.getTimestamp()));
+                }
+            }
+            if (writeIndex) {
+                segment.seal();
+            }
+            return segment;
+        }
+
+        /**
+         * Loads a sealed segment's metadata from its index file.
+         *
+         * @return the segment, or null if the index file is missing or unreadable
+         */
+        static Segment loadSealed(Path path) {
+            Path indexPath = indexPath(path);
+            if (!Files.exists(indexPath)) {
+                return null;
+            }
+            try {
+                ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(indexPath));
+                if (in.getInt() != INDEX_MAGIC) {
+                    return null;
+                }
+                int position = in.getInt();
+                int recordCount = in.getInt();
+                long maxEpochNanos = in.getLong();
+                int entries = in.getInt();
+                SparseIndex sparseIndex = new SparseIndex();
+                for (int i = 0; i < entries; i++) {
+                    sparseIndex.add(in.getLong(), in.getInt());
+                }
+                Segment segment = new Segment(idOf(path), path, sparseIndex);
+                segment.position = position;
+                segment.recordCount = recordCount;
+                segment.maxEpochNanos = maxEpochNanos;
+                return segment;
+            } catch (IOException | RuntimeException e) {
+                logger.warn("Ignoring unreadable index {}: {}", indexPath.getFileName(), e.getMessage());
+                return null;
+            }
+        }
+
+        void append(byte[] record, long epochNanos) {
+            buffer.put(position, record);
+            track(position, record.length, epochNanos);
+        }
+
+        /**
+         * Writes the sparse index and summary next to the segment.
+         */
+        void seal() throws IOException {
+            ByteBuffer out = ByteBuffer.allocate(24 + sparseIndex.size * 12);
+            out.putInt(INDEX_MAGIC).putInt(position).putInt(recordCount).putLong(maxEpochNanos).putInt(sparseIndex.size);
+            for (int i = 0; i < sparseIndex.size; i++) {
+                out.putLong(sparseIndex.maxNanosBefore[i]).putInt(sparseIndex.positions[i]);
+            }
+            Files.write(indexPath(path), out.array());
+        }
+
+        void delete() throws IOException {
+            Files.deleteIfExists(indexPath(path));
+            Files.deleteIfExists(path);
+        }
+
+        private void map(int size) throws IOException {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        private void track(int recordPosition, int recordLength, long epochNanos) {
+            if (recordPosition >= nextIndexPosition) {
+                sparseIndex.add(maxEpochNanos, recordPosition);
+                nextIndexPosition = recordPosition + INDEX_INTERVAL_BYTES;
+            }
+            position = recordPosition + recordLength;
+            recordCount++;
+            maxEpochNanos = Math.max(maxEpochNanos, epochNanos);
+        }
+
+        private static Path indexPath(Path segmentPath) {
+            String name = segmentPath.getFileName().toString();
+            return segmentPath.resolveSibling(name.substring(0, name.length() - SEGMENT_SUFFIX.length()) + INDEX_SUFFIX);
+        }
+
+        private static long idOf(Path path) {
+            String name = path.getFileName().toString();
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        }
+    }
+
+    /**
+     * Sparse (max timestamp of all earlier records, position) pairs, ascending in both fields.
+     */
+    private static final class SparseIndex {
+        private long[] maxNanosBefore = new long[16];
+        private int[] positions = new int[16];
+        private int size;
+
+        void add(long maxBefore, int position) {
+            if (size == positions.length) {
+                maxNanosBefore = Arrays.copyOf(maxNanosBefore, size * 2);
+                positions = Arrays.copyOf(positions, size * 2);
+            }
+            maxNanosBefore[size] = maxBefore;
+            positions[size] = position;
+            size++;
+        }
+
+        /**
+         * @return the furthest position before which every record is older than the cutoff
+         */
+        int seek(long cutoffNanos) {
+            int low = 0;
+            int high = size - 1;
+            int found = 0;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (maxNanosBefore[mid] < cutoffNanos) {
+                    found = positions[mid];
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return found;
+        }
+    }
+}
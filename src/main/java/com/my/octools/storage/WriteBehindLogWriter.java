@@ -0,0 +1,472 @@
+package com.my.octools.storage;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Write-behind stage between the processor and the {@link ApplianceLogRepository}, so the cost of a save is not
+ * paid on the threads driving the appliance API calls.
+ * <p>
+ * {@link #write(ApplianceLog)} puts the entry into a lock-free {@link BoundedRingBuffer} and wakes the consumer if
+ * it is idle. A single consumer thread drains up to {@code batchSize} entries at a time and saves them into the
+ * repository. When the ring is full, the {@link OverflowPolicy} decides: the writer waits, the oldest entry is
+ * dropped, or the entry is spilled to a file that the consumer replays once the ring has drained. A spill file
+ * left behind by a crash is read on startup and its entries count as written, so reads wait for their replay.
+ * <p>
+ * Reads see their own writes within a bounded delay: {@link #awaitVisible()} waits until everything written before
+ * it has been applied, for at most {@code maxReadDelay}. {@link #close()} applies every buffered entry; entries
+ * written after that are saved on the writing thread.
+ */
+public class WriteBehindLogWriter implements ApplianceLogWriter, MeterBinder, Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindLogWriter.class);
+
+    // The consumer also wakes up on its own, in case a wake-up raced with it going idle
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long BLOCKED_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final ApplianceLogRepository store;
+    private final BoundedRingBuffer<Pending> ring;
+    private final int batchSize;
+    private final OverflowPolicy overflowPolicy;
+    private final Path spillFile;
+    private final long maxReadDelayNanos;
+    private final Thread consumer;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+    private final AtomicInteger waitingReaders = new AtomicInteger();
+    private volatile long lastApplyDelayNanos;
+    private volatile boolean consumerIdle;
+    private volatile boolean spillPending;
+    private volatile boolean closed;
+
+    // Guards the spill file
+    private final Object spillLock = new Object();
+    private FileChannel spillChannel;
+
+    /**
+     * Starts the consumer thread.
+     *
+     * @param store          repository the entries are saved into
+     * @param capacity       entries the ring buffer holds, rounded up to a power of two
+     * @param batchSize      entries the consumer takes from the ring at a time
+     * @param overflowPolicy what to do with an entry written while the ring is full
+     * @param spillFile      file for {@link OverflowPolicy#SPILL}, also checked for leftovers on startup
+     * @param maxReadDelay   longest {@link #awaitVisible()} waits for pending entries
+     */
+    public WriteBehindLogWriter(ApplianceLogRepository store, int capacity, int batchSize,
+                                OverflowPolicy overflowPolicy, Path spillFile, Duration maxReadDelay) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.store = store;
+        this.ring = new BoundedRingBuffer<>(capacity);
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+        this.spillFile = spillFile;
+        this.maxReadDelayNanos = maxReadDelay.toNanos();
+        List<ApplianceLog> leftovers = List.of();
+        if (hasLeftovers(spillFile)) {
+            synchronized (spillLock) {
+                leftovers = readSpill();
+            }
+            written.addAndGet(leftovers.size());
+            logger.info("Replaying {} log entries left in spill file {}", leftovers.size(), spillFile);
+        }
+        List<ApplianceLog> replay = leftovers;
+        this.consumer = new Thread(() -> {
+            saveReplayed(replay);
+            consume();
+        }, "log-write-behind");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    @Override
+    public void write(ApplianceLog log) {
+        if (closed) {
+            save(log);
+            return;
+        }
+        written.incrementAndGet();
+        Pending pending = new Pending(log, System.nanoTime());
+        if (!ring.offer(pending)) {
+            overflow(pending);
+        }
+        if (closed) {
+            // close() may have drained the ring before the offer, so nobody else would apply the entry
+            applyRest();
+        } else if (consumerIdle) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private void overflow(Pending pending) {
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                while (!ring.offer(pending)) {
+                    if (ring.poll() != null) {
+                        dropped.incrementAndGet();
+                    }
+                }
+                break;
+            case SPILL:
+                spill(pending.log);
+                break;
+            default:
+                blocked.incrementAndGet();
+                while (!ring.offer(pending)) {
+                    if (closed) {
+                        // the consumer may already be gone, so the entry is saved here
+                        written.decrementAndGet();
+                        save(pending.log);
+                        return;
+                    }
+                    LockSupport.unpark(consumer);
+                    LockSupport.parkNanos(BLOCKED_PARK_NANOS);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Waits until the entries written before the call have been saved into the repository or dropped.
+     *
+     * @return false if the wait ended after {@code maxReadDelay} with entries still pending
+     */
+    @Override
+    public boolean awaitVisible() {
+        long target = written.get();
+        if (completed() >= target) {
+            return true;
+        }
+        long deadline = System.nanoTime() + maxReadDelayNanos;
+        waitingReaders.incrementAndGet();
+        try {
+            synchronized (this) {
+                while (completed() < target) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            }
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            waitingReaders.decrementAndGet();
+        }
+    }
+
+    /**
+     * Applies the buffered and spilled entries and stops the consumer.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        // entries that slipped in while the consumer was finishing
+        applyRest();
+        synchronized (spillLock) {
+            closeSpillChannel();
+        }
+        logger.info("Log write-behind stopped: {} entries applied, {} dropped, {} spilled",
+                applied.get(), dropped.get(), spilled.get());
+    }
+
+    private void consume() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (true) {
+            if (ring.drainTo(batch, batchSize) > 0) {
+                apply(batch);
+                batch.clear();
+            } else if (spillPending) {
+                replaySpill();
+            } else if (closed) {
+                return;
+            } else {
+                consumerIdle = true;
+                // re-checked after announcing idleness, so a write that missed the flag is still seen
+                if (ring.isEmpty() && !spillPending && !closed) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                consumerIdle = false;
+            }
+        }
+    }
+
+    /**
+     * Applies what is left in the ring and the spill file once the consumer is stopping or gone, on the calling
+     * thread. Writers racing with {@link #close()} call this after their offer, so no entry is left behind.
+     */
+    private void applyRest() {
+        List<Pending> rest = new ArrayList<>();
+        ring.drainTo(rest, Integer.MAX_VALUE);
+        apply(rest);
+        if (spillPending) {
+            replaySpill();
+        }
+    }
+
+    private void apply(List<Pending> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        for (Pending pending : batch) {
+            save(pending.log);
+        }
+        lastApplyDelayNanos = System.nanoTime() - batch.get(batch.size() - 1).writtenNanos;
+        applied.addAndGet(batch.size());
+        wakeReaders();
+    }
+
+    private void save(ApplianceLog log) {
+        try {
+            store.save(log);
+        } catch (RuntimeException ex) {
+            failed.incrementAndGet();
+            logger.error("Dropping appliance log of {}, saving it failed: {}",
+                    log.getApplianceId(), ex.getMessage(), ex);
+        }
+    }
+
+    private void wakeReaders() {
+        if (waitingReaders.get() > 0) {
+            synchronized (this) {
+                notifyAll();
+            }
+        }
+    }
+
+    private long completed() {
+        return applied.get() + dropped.get();
+    }
+
+    /**
+     * Appends the entry to the spill file, or saves it right away if the file cannot be written.
+     */
+    private void spill(ApplianceLog log) {
+        synchronized (spillLock) {
+            try {
+                FileChannel channel = spillChannel();
+                ByteBuffer record = ByteBuffer.wrap(SegmentLogStore.encode(log));
+                while (record.hasRemaining()) {
+                    channel.write(record, channel.size());
+                }
+                spilled.incrementAndGet();
+                spillPending = true;
+                return;
+            } catch (IOException ex) {
+                logger.error("Spilling an appliance log to {} failed, saving it directly: {}",
+                        spillFile, ex.getMessage());
+            }
+        }
+        written.decrementAndGet();
+        save(log);
+    }
+
+    /**
+     * Reads and empties the spill file, then saves its entries.
+     */
+    private void replaySpill() {
+        List<ApplianceLog> logs;
+        synchronized (spillLock) {
+            spillPending = false;
+            logs = readSpill();
+        }
+        saveReplayed(logs);
+    }
+
+    private void saveReplayed(List<ApplianceLog> logs) {
+        if (logs.isEmpty()) {
+            return;
+        }
+        for (ApplianceLog log : logs) {
+            save(log);
+        }
+        applied.addAndGet(logs.size());
+        wakeReaders();
+    }
+
+    private static boolean hasLeftovers(Path spillFile) {
+        try {
+            return spillFile != null && Files.size(spillFile) > 0;
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads and empties the spill file; the caller holds {@code spillLock}.
+     *
+     * @return the entries read, empty if the file could not be read
+     */
+    private List<ApplianceLog> readSpill() {
+        List<ApplianceLog> logs = new ArrayList<>();
+        try {
+            FileChannel channel = spillChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(channel.size()));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            int position = 0;
+            ApplianceLog log;
+            while ((log = SegmentLogStore.decode(buffer, position)) != null) {
+                logs.add(log);
+                position += SegmentLogStore.HEADER_BYTES + buffer.getInt(position);
+            }
+            if (position < buffer.limit()) {
+                logger.warn("Stopped replaying spill file {} at corrupt record {}", spillFile, position);
+            }
+            channel.truncate(0);
+        } catch (IOException ex) {
+            logger.error("Replaying spill file {} failed: {}", spillFile, ex.getMessage(), ex);
+        }
+        return logs;
+    }
+
+    private FileChannel spillChannel() throws IOException {
+        if (spillChannel == null) {
+            if (spillFile == null) {
+                throw new IOException("No spill file configured");
+            }
+            if (spillFile.getParent() != null) {
+                Files.createDirectories(spillFile.getParent());
+            }
+            spillChannel = FileChannel.open(spillFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        }
+        return spillChannel;
+    }
+
+    private void closeSpillChannel() {
+        if (spillChannel != null) {
+            try {
+                spillChannel.close();
+            } catch (IOException ex) {
+                logger.warn("Closing spill file {} failed: {}", spillFile, ex.getMessage());
+            }
+            spillChannel = null;
+        }
+    }
+
+    /**
+     * @return entries written but not yet saved into the repository or dropped
+     */
+    public long getPending() {
+        return Math.max(0, written.get() - completed());
+    }
+
+    /**
+     * @return time from write to save of the most recently applied entry, zero once nothing is pending
+     */
+    public Duration getLag() {
+        return getPending() == 0 ? Duration.ZERO : Duration.ofNanos(lastApplyDelayNanos);
+    }
+
+    /**
+     * @return entries discarded by {@link OverflowPolicy#DROP_OLDEST}
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return entries the repository failed to save
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getSpilled() {
+        return spilled.get();
+    }
+
+    /**
+     * @return writes that had to wait for room under {@link OverflowPolicy#BLOCK}
+     */
+    public long getBlocked() {
+        return blocked.get();
+    }
+
+    @VisibleForTesting
+    int capacity() {
+        return ring.capacity();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("octools.logs.write.behind.pending", this, WriteBehindLogWriter::getPending)
+                .description("Appliance log entries written but not yet saved into the store")
+                .register(registry);
+        Gauge.builder("octools.logs.write.behind.lag", this, writer -> writer.getLag().toNanos() / 1e9)
+                .description("Seconds between writing and saving the most recently saved appliance log entry")
+                .baseUnit("seconds")
+                .register(registry);
+        FunctionCounter.builder("octools.logs.write.behind.dropped", this, WriteBehindLogWriter::getDropped)
+                .description("Appliance log entries dropped by the write-behind buffer")
+                .tag("reason", "overflow")
+                .register(registry);
+        FunctionCounter.builder("octools.logs.write.behind.dropped", this, WriteBehindLogWriter::getFailed)
+                .description("Appliance log entries dropped by the write-behind buffer")
+                .tag("reason", "error")
+                .register(registry);
+        FunctionCounter.builder("octools.logs.write.behind.spilled", this, WriteBehindLogWriter::getSpilled)
+                .description("Appliance log entries spilled to disk while the write-behind buffer was full")
+                .register(registry);
+        FunctionCounter.builder("octools.logs.write.behind.blocked", this, WriteBehindLogWriter::getBlocked)
+                .description("Appliance log writes that waited for room in the write-behind buffer")
+                .register(registry);
+    }
+
+    /**
+     * Entry in the ring, with the time it was written for the lag metric.
+     */
+    private static final class Pending {
+        private final ApplianceLog log;
+        private final long writtenNanos;
+
+        private Pending(ApplianceLog log, long writtenNanos) {
+            this.log = log;
+            this.writtenNanos = writtenNanos;
+        }
+    }
+}
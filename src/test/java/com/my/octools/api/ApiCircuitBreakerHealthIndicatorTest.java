@@ -0,0 +1,41 @@
+package com.my.octools.api;
+
+import com.my.octools.config.ApiClientProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ApiCircuitBreakerHealthIndicatorTest {
+
+    @Test
+    void testOpenCircuitIsReportedInTheDetailsWhileStayingUp() {
+        ApiClientProperties.CircuitBreaker config = new ApiClientProperties.CircuitBreaker();
+        config.setWindowSize(10);
+        config.setMinimumCalls(4);
+        config.setFailureRateThreshold(0.5);
+        config.setOpenDuration(Duration.ofSeconds(30));
+        CircuitBreaker drain = new CircuitBreaker("drain", config, () -> 0L);
+        CircuitBreaker remediate = new CircuitBreaker("remediate", config, () -> 0L);
+        for (int i = 0; i < 4; i++) {
+            drain.call(() -> CompletableFuture.failedFuture(new ApiException(503, "unavailable")));
+        }
+        assertEquals(CircuitBreaker.State.OPEN, drain.getState());
+        ApiClientImpl client = mock(ApiClientImpl.class);
+        when(client.getCircuitBreakers()).thenReturn(List.of(drain, remediate));
+
+        Health health = new ApiCircuitBreakerHealthIndicator(client).health();
+
+        assertEquals(Status.UP, health.getStatus());
+        assertEquals(List.of("drain"), health.getDetails().get("openCircuits"));
+        assertEquals(CircuitBreaker.State.OPEN, ((Map<?, ?>) health.getDetails().get("drain")).get("state"));
+        assertEquals(CircuitBreaker.State.CLOSED, ((Map<?, ?>) health.getDetails().get("remediate")).get("state"));
+    }
+}
@@ -0,0 +1,201 @@
+package com.my.octools.api;
+
+import com.my.octools.api.entities.BatchItemResult;
+import com.my.octools.api.entities.DrainResult;
+import com.my.octools.config.ApiClientProperties;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the client against a local stub of the appliance API.
+ */
+class ApiClientImplTest {
+    private static final String BATCH_DRAIN = "/api/1.0/appliances/drain";
+
+    private HttpServer server;
+    private ScheduledExecutorService scheduler;
+    private SimpleMeterRegistry registry;
+    private final List<String> requests = new CopyOnWriteArrayList<>();
+    private volatile boolean batchSupported = true;
+
+    @BeforeEach
+    void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        registry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+        scheduler.shutdownNow();
+    }
+
+    private ApiClientImpl client(Duration window) {
+        ApiClientProperties properties = new ApiClientProperties();
+        properties.getBatch().setEnabled(true);
+        properties.getBatch().setWindow(window);
+        WebClient webClient = WebClient.builder()
+                .baseUrl("http://127.0.0.1:" + server.getAddress().getPort())
+                .build();
+        return new ApiClientImpl(webClient, properties, scheduler, registry);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+        requests.add(exchange.getRequestMethod() + " " + path);
+        if (path.equals(BATCH_DRAIN)) {
+            if (!batchSupported) {
+                respond(exchange, 404, "{\"error\":\"Not Found\"}");
+                return;
+            }
+            StringBuilder results = new StringBuilder();
+            for (String id : List.of("a1", "a2", "a3")) {
+                if (!body.contains("\"" + id + "\"")) {
+                    continue;
+                }
+                results.append(results.length() == 0 ? "" : ",");
+                if (id.equals("a2")) {
+                    results.append("{\"id\":\"a2\",\"status\":409,\"error\":\"already draining\"}");
+                } else {
+                    results.append("{\"id\":\"").append(id).append("\",\"status\":200,\"result\":")
+                            .append("{\"drainId\":\"drain-").append(id).append("\",\"estimatedTimeToDrain\":\"5m\"}}");
+                }
+            }
+            respond(exchange, 200, "{\"results\":[" + results + "]}");
+        } else if (path.equals("/api/1.0/appliances")) {
+            if ("first=10&after=slow".equals(exchange.getRequestURI().getQuery())) {
+                sleep(500);
+            }
+            respond(exchange, 200, "{\"pageInfo\":{\"hasNextPage\":true,\"endCursor\":\"c2\",\"totalCount\":3},"
+                    + "\"data\":[{\"id\":\"a1\",\"opStatus\":\"LIVE\",\"lastHeardFromOn\":\"2020-01-01T00:00:00Z\"},"
+                    + "{\"id\":\"a2\",\"opStatus\":\"LIVE\",\"lastHeardFromOn\":\"2999-01-01T00:00:00Z\"},"
+                    + "{\"id\":\"a3\",\"opStatus\":\"OFFLINE\",\"lastHeardFromOn\":null}]}");
+        } else if (path.endsWith("/drain")) {
+            String id = path.split("/")[4];
+            respond(exchange, 200, "{\"drainId\":\"drain-" + id + "\",\"estimatedTimeToDrain\":\"5m\"}");
+        } else {
+            respond(exchange, 404, "{}");
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    @Test
+    void testDrainAllReturnsPerIdResultsFromOneRequest() {
+        Map<String, BatchItemResult<DrainResult>> results = client(Duration.ofMillis(20))
+                .drainAll(List.of("a1", "a2")).join();
+
+        assertEquals(List.of("POST " + BATCH_DRAIN), requests);
+        assertTrue(results.get("a1").isSuccess());
+        assertEquals("drain-a1", results.get("a1").getResult().getDrainId());
+        assertFalse(results.get("a2").isSuccess());
+        assertEquals(409, results.get("a2").getStatus());
+        assertEquals(1, registry.get(ApiCallMetrics.CALLS)
+                .tags("operation", ApiCallMetrics.DRAIN_BATCH, "outcome", "success").timer().count());
+        assertEquals(1, registry.get(ApiCallMetrics.CIRCUIT_STATE)
+                .tags("operation", ApiCallMetrics.DRAIN, "state", "closed").gauge().value());
+    }
+
+    @Test
+    void testFilteredFetchDecodesOnlyMatchingAppliances() {
+        FilteredAppliancePage page = client(Duration.ofMillis(20))
+                .fetchAppliances(null, ApplianceFilter.liveAndSilentSince(Instant.now())).join();
+
+        assertEquals(1, page.getAppliances().size());
+        assertEquals("a1", page.getAppliances().get(0).getId());
+        assertEquals(3, page.getScanned());
+        assertEquals("c2", page.getPageInfo().getEndCursor());
+        assertEquals(1, registry.get(ApiCallMetrics.CALLS)
+                .tags("operation", ApiCallMetrics.FETCH, "outcome", "success").timer().count());
+    }
+
+    @Test
+    void testTimedOutAttemptIsRecordedAsTimeoutAndNotRetried() {
+        ApiClientImpl client = client(Duration.ofMillis(20));
+        ApplianceFilter filter = ApplianceFilter.liveAndSilentSince(Instant.now());
+        Mono<FilteredAppliancePage> attempt = client.fetchAppliancesOnce("slow", 10, filter, Duration.ofMillis(50))
+                .retryWhen(client.retrySpec(ApiClient.FETCH));
+
+        CompletionException ex = assertThrows(CompletionException.class, () -> attempt.toFuture().join());
+        assertInstanceOf(TimeoutException.class, ex.getCause());
+        assertEquals(1, requests.size());
+        assertEquals(1, registry.get(ApiCallMetrics.CALLS)
+                .tags("operation", ApiCallMetrics.FETCH, "outcome", "timeout").timer().count());
+    }
+
+    @Test
+    void testSingleDrainsWithinWindowAreCoalesced() {
+        ApiClientImpl client = client(Duration.ofMillis(200));
+
+        CompletableFuture<DrainResult> first = client.drain("a1");
+        CompletableFuture<DrainResult> second = client.drain("a3");
+
+        assertEquals("drain-a1", first.join().getDrainId());
+        assertEquals("drain-a3", second.join().getDrainId());
+        assertEquals(List.of("POST " + BATCH_DRAIN), requests);
+    }
+
+    @Test
+    void testFallsBackToPerIdCallsWhenBatchingUnsupported() {
+        batchSupported = false;
+        ApiClientImpl client = client(Duration.ofMillis(20));
+
+        Map<String, BatchItemResult<DrainResult>> results = client.drainAll(List.of("a1", "a2")).join();
+
+        assertTrue(results.get("a1").isSuccess());
+        assertTrue(results.get("a2").isSuccess());
+        assertEquals(3, requests.size());
+        assertEquals("POST " + BATCH_DRAIN, requests.get(0));
+
+        // batching stays off once the backend has rejected it
+        requests.clear();
+        assertEquals("drain-a3", client.drain("a3").join().getDrainId());
+        assertEquals(List.of("POST /api/1.0/appliances/a3/drain"), requests);
+        assertEquals(1, registry.get(ApiCallMetrics.CALLS)
+                .tags("operation", ApiCallMetrics.DRAIN_BATCH, "outcome", "client_error").timer().count());
+        assertEquals(1, registry.get(ApiCallMetrics.CALLS)
+                .tags("operation", ApiCallMetrics.DRAIN, "outcome", "success").timer().count());
+    }
+}
@@ -0,0 +1,116 @@
+package com.my.octools.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.my.octools.config.LogStoreProperties;
+import com.my.octools.storage.ApplianceLog;
+import com.my.octools.storage.InMemoryApplianceLogStore;
+import com.my.octools.storage.LogRollup;
+import com.my.octools.storage.LogVersions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class ApplianceLogControllerTest {
+    private static final Instant NOW = Instant.parse("2025-01-01T00:00:00Z");
+
+    private InMemoryApplianceLogStore store;
+    private LogStoreProperties properties;
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setup() {
+        store = spy(new InMemoryApplianceLogStore());
+        LogVersions versions = new LogVersions();
+        store.addListener(versions);
+        properties = new LogStoreProperties();
+        // every request misses the page cache, so only the tag check can keep a request off the store
+        properties.getResponseCache().setMaxEntries(0);
+        ApplianceLogService logService = new ApplianceLogService(store, store::save,
+                new LogRollup(Duration.ofHours(1), 5), versions);
+        LogResponseCache responseCache = new LogResponseCache(new ObjectMapper().findAndRegisterModules(),
+                versions, properties);
+        ApplianceLogController controller = new ApplianceLogController(logService,
+                new ApplianceLogStreamService(store, properties), responseCache, Optional.empty());
+        mvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    private void save(int i) {
+        store.save(new ApplianceLog("appliance" + (i % 2), "DRAIN", true, "msg" + i, NOW.plusSeconds(i)));
+    }
+
+    @Test
+    void testFullPageCarriesTheCursorOfTheNextOne() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            save(i);
+        }
+        String cursor = mvc.perform(get("/api/logs").param("count", "3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].message").value("msg4"))
+                .andExpect(header().exists(ApplianceLogController.NEXT_CURSOR_HEADER))
+                .andReturn().getResponse().getHeader(ApplianceLogController.NEXT_CURSOR_HEADER);
+
+        mvc.perform(get("/api/logs").param("count", "3").param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(jsonPath("$[0].message").value("msg1"))
+                .andExpect(header().doesNotExist(ApplianceLogController.NEXT_CURSOR_HEADER));
+        // legacy offsets still page without a cursor
+        mvc.perform(get("/api/logs").param("start", "3").param("count", "3"))
+                .andExpect(jsonPath("$[0].message").value("msg1"));
+    }
+
+    @Test
+    void testMalformedCursorIsABadRequest() throws Exception {
+        save(0);
+
+        mvc.perform(get("/api/logs/failures").param("cursor", "not a cursor!"))
+                .andExpect(status().isBadRequest())
+                .andExpect(content().string("Invalid cursor: not a cursor!"));
+    }
+
+    @Test
+    void testMatchingIfNoneMatchIsAnsweredWithoutReadingTheStore() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            save(i);
+        }
+        String etag = mvc.perform(get("/api/logs"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.ETAG))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        clearInvocations(store);
+
+        mvc.perform(get("/api/logs").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string(HttpHeaders.ETAG, etag));
+
+        verify(store, never()).findAll(any(), anyInt());
+    }
+
+    @Test
+    void testStaleIfNoneMatchReadsTheStoreAgain() throws Exception {
+        save(0);
+        String etag = mvc.perform(get("/api/logs/appliance/appliance0"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        save(2);
+        clearInvocations(store);
+
+        String fresh = mvc.perform(get("/api/logs/appliance/appliance0").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        assertNotEquals(etag, fresh);
+        verify(store).findByApplianceId(eq("appliance0"), any(), anyInt());
+    }
+}
@@ -0,0 +1,100 @@
+package com.my.octools.api;
+
+import com.my.octools.storage.ApplianceLog;
+import com.my.octools.storage.InMemoryApplianceLogStore;
+import com.my.octools.storage.LogCursor;
+import com.my.octools.storage.LogRollup;
+import com.my.octools.storage.LogVersions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ApplianceLogServiceTest {
+    private static final Instant NOW = Instant.parse("2025-01-01T00:00:00Z");
+
+    private InMemoryApplianceLogStore store;
+    private ApplianceLogService service;
+
+    @BeforeEach
+    void setup() {
+        store = new InMemoryApplianceLogStore();
+        LogVersions versions = new LogVersions();
+        store.addListener(versions);
+        service = new ApplianceLogService(store, store::save, new LogRollup(Duration.ofHours(1), 5), versions);
+        for (int i = 0; i < 10; i++) {
+            // pairs of entries share a timestamp, so the order also depends on appliance and sequence
+            store.save(new ApplianceLog("appliance" + (i % 3), "DRAIN", i % 4 != 0, "msg" + i,
+                    NOW.plusSeconds(i / 2)));
+        }
+    }
+
+    private static List<String> messages(List<ApplianceLog> logs) {
+        return logs.stream().map(ApplianceLog::getMessage).collect(Collectors.toList());
+    }
+
+    @Test
+    void testCursorSurvivesEncodeAndDecode() {
+        ApplianceLog log = new ApplianceLog("rack:7", "DRAIN", true, "ok", NOW.plusNanos(123_456_789));
+        log.setSequence(42);
+
+        LogCursor cursor = LogCursor.decode(LogCursor.of(log).encode());
+
+        assertEquals(NOW.plusNanos(123_456_789), cursor.getTimestamp());
+        assertEquals("rack:7", cursor.getApplianceId());
+        assertEquals(42, cursor.getSequence());
+        assertNull(LogCursor.decode(null));
+        assertNull(LogCursor.decode(" "));
+    }
+
+    @Test
+    void testCursorPagesMatchStartAndCountPages() {
+        List<ApplianceLog> byStart = new ArrayList<>();
+        for (int start = 0; start < 10; start += 3) {
+            byStart.addAll(service.getAllLogs(start, 3));
+        }
+        List<ApplianceLog> byCursor = new ArrayList<>();
+        String cursor = null;
+        do {
+            LogPage page = service.getAllLogs(cursor, 0, 3);
+            byCursor.addAll(page.getLogs());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+
+        assertEquals(messages(store.findAll()), messages(byStart));
+        assertEquals(messages(byStart), messages(byCursor));
+    }
+
+    @Test
+    void testCursorTakesPrecedenceOverStart() {
+        LogPage first = service.getFailedLogs(null, 0, 2);
+        LogPage second = service.getFailedLogs(first.getNextCursor(), 5, 2);
+
+        assertEquals(List.of("msg8", "msg4"), messages(first.getLogs()));
+        assertEquals(List.of("msg0"), messages(second.getLogs()));
+        // a short page is the last one
+        assertNull(second.getNextCursor());
+        assertEquals(List.of("msg4", "msg0"), messages(service.getFailedLogs(1, 5)));
+    }
+
+    @Test
+    void testRejectsMalformedCursorsAndNegativePaging() {
+        String notFourParts = Base64.getUrlEncoder().encodeToString("1:2".getBytes(StandardCharsets.UTF_8));
+        String notANumber = Base64.getUrlEncoder().encodeToString("a:0:1:appliance1".getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(IllegalArgumentException.class, () -> service.getAllLogs("not a cursor!", 0, 10));
+        assertThrows(IllegalArgumentException.class, () -> service.getAllLogs(notFourParts, 0, 10));
+        assertThrows(IllegalArgumentException.class,
+                () -> service.getLogsByApplianceId("appliance1", notANumber, 0, 10));
+        assertThrows(IllegalArgumentException.class, () -> service.getAllLogs(null, -1, 10));
+        assertThrows(IllegalArgumentException.class, () -> service.getAllLogs(null, 0, -1));
+    }
+}
@@ -0,0 +1,144 @@
+package com.my.octools.api;
+
+import com.my.octools.config.LogStoreProperties;
+import com.my.octools.storage.ApplianceLog;
+import com.my.octools.storage.InMemoryApplianceLogStore;
+import com.my.octools.storage.LogCursor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+import reactor.core.publisher.BaseSubscriber;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ApplianceLogStreamServiceTest {
+    private static final Instant NOW = Instant.parse("2025-01-01T00:00:00Z");
+
+    private InMemoryApplianceLogStore store;
+    private LogStoreProperties properties;
+
+    @BeforeEach
+    void setup() {
+        store = new InMemoryApplianceLogStore();
+        properties = new LogStoreProperties();
+    }
+
+    private ApplianceLog save(int i) {
+        ApplianceLog log = new ApplianceLog("appliance" + i, "DRAIN", true, "ok", NOW.plusSeconds(i));
+        store.save(log);
+        return log;
+    }
+
+    private static List<String> applianceIds(List<LogStreamEvent> events) {
+        return events.stream()
+                .map(event -> event.getLog() == null ? event.getType() : event.getLog().getApplianceId())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void testReplaysNewestEntriesOldestFirstThenPushesNewOnes() {
+        ApplianceLogStreamService service = new ApplianceLogStreamService(store, properties);
+        for (int i = 0; i < 5; i++) {
+            save(i);
+        }
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        service.stream(null, 2).subscribe(subscriber);
+
+        save(5);
+
+        assertEquals(List.of("appliance3", "appliance4", "appliance5"), applianceIds(subscriber.events));
+        assertEquals(1, service.getSubscriberCount());
+        subscriber.dispose();
+        assertEquals(0, service.getSubscriberCount());
+    }
+
+    @Test
+    void testReplaysEverythingNewerThanCursor() {
+        ApplianceLogStreamService service = new ApplianceLogStreamService(store, properties);
+        ApplianceLog seen = null;
+        for (int i = 0; i < 5; i++) {
+            ApplianceLog log = save(i);
+            if (i == 1) {
+                seen = log;
+            }
+        }
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        service.stream(LogCursor.of(seen).encode(), 0).subscribe(subscriber);
+
+        assertEquals(List.of("appliance2", "appliance3", "appliance4"), applianceIds(subscriber.events));
+        assertEquals(LogCursor.of(store.findAll(null, 1).get(0)).encode(), subscriber.events.get(2).getCursor());
+    }
+
+    @Test
+    void testTruncatedReplayStartsWithGapMarker() {
+        properties.getStream().setMaxReplay(2);
+        ApplianceLogStreamService service = new ApplianceLogStreamService(store, properties);
+        ApplianceLog first = save(0);
+        for (int i = 1; i < 6; i++) {
+            save(i);
+        }
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        service.stream(LogCursor.of(first).encode(), 0).subscribe(subscriber);
+
+        assertEquals(List.of("lag", "appliance4", "appliance5"), applianceIds(subscriber.events));
+        // paging back from the gap cursor yields the entries that were not replayed
+        LogCursor gap = LogCursor.decode(subscriber.events.get(0).getCursor());
+        assertEquals("appliance3", store.findAll(gap, 10).get(0).getApplianceId());
+    }
+
+    @Test
+    void testSlowSubscriberDropsBeyondBufferAndIsToldHowMany() {
+        properties.getStream().setBufferSize(4);
+        ApplianceLogStreamService service = new ApplianceLogStreamService(store, properties);
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        service.stream(null, 0).subscribe(subscriber);
+
+        for (int i = 0; i < 10; i++) {
+            save(i);
+        }
+        subscriber.request(Long.MAX_VALUE);
+        save(10);
+
+        List<LogStreamEvent> events = subscriber.events;
+        assertEquals(List.of("appliance0", "appliance1", "appliance2", "appliance3", "lag", "appliance10"),
+                applianceIds(events));
+        assertEquals(6L, events.get(4).getDropped());
+    }
+
+    @Test
+    void testRejectsMalformedCursor() {
+        ApplianceLogStreamService service = new ApplianceLogStreamService(store, properties);
+        assertThrows(IllegalArgumentException.class, () -> service.stream("not a cursor", 0));
+        assertThrows(IllegalArgumentException.class, () -> service.stream(null, -1));
+        assertEquals(0, service.getSubscriberCount());
+    }
+
+    /**
+     * Records events, requesting only as many as configured up front.
+     */
+    private static final class RecordingSubscriber extends BaseSubscriber<LogStreamEvent> {
+        private final List<LogStreamEvent> events = new CopyOnWriteArrayList<>();
+        private final long initialRequest;
+
+        private RecordingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            if (initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+        }
+
+        @Override
+        protected void hookOnNext(LogStreamEvent event) {
+            events.add(event);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.my.octools.api;
+
+import com.my.octools.api.entities.Appliance;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AppliancePageDecoderTest {
+    private static final ApplianceFilter FILTER =
+            ApplianceFilter.liveAndSilentSince(Instant.parse("2025-01-01T11:50:00Z"));
+
+    private static final String PAGE = "{\"data\":["
+            + "{\"id\":\"a1\",\"sortIndex\":1,\"opStatus\":\"LIVE\",\"lastHeardFromOn\":null},"
+            + "{\"lastHeardFromOn\":\"2025-01-01T11:00:00Z\",\"tags\":[\"id\",{\"id\":\"x\"}],\"opStatus\":\"LIVE\",\"id\":\"a2\",\"sortIndex\":2},"
+            + "{\"id\":\"a3\",\"sortIndex\":3,\"opStatus\":\"LIVE\",\"lastHeardFromOn\":\"2025-01-01T11:55:00Z\"},"
+            + "{\"id\":\"a4\",\"sortIndex\":4,\"opStatus\":\"OFFLINE\",\"lastHeardFromOn\":null},"
+            + "{\"id\":\"a5\",\"sortIndex\":5,\"opStatus\":\"LIVE\",\"meta\":{\"opStatus\":\"OFFLINE\"},\"lastHeardFromOn\":1735725600}"
+            + "],\"pageInfo\":{\"hasNextPage\":true,\"endCursor\":\"c5\",\"totalCount\":42},\"extra\":{\"data\":[]}}";
+
+    private static List<Appliance> decode(AppliancePageDecoder decoder, String json, int chunkSize) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        List<Appliance> matched = new ArrayList<>();
+        for (int from = 0; from < bytes.length; from += chunkSize) {
+            decoder.feed(ByteBuffer.wrap(bytes, from, Math.min(chunkSize, bytes.length - from)));
+            matched.addAll(decoder.takeMatched());
+        }
+        matched.addAll(decoder.endOfInput());
+        return matched;
+    }
+
+    private static List<String> ids(List<Appliance> appliances) {
+        return appliances.stream().map(Appliance::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    void testKeepsOnlyLiveSilentAppliances() throws IOException {
+        AppliancePageDecoder decoder = new AppliancePageDecoder(FILTER);
+        List<Appliance> matched = decode(decoder, PAGE, Integer.MAX_VALUE);
+
+        assertEquals(List.of("a1", "a2", "a5"), ids(matched));
+        assertEquals(5, decoder.getScanned());
+        assertEquals(2, matched.get(1).getSortIndex());
+        assertEquals(Instant.parse("2025-01-01T11:00:00Z"), matched.get(1).getLastHeardFromOn());
+        assertEquals(Instant.ofEpochSecond(1735725600), matched.get(2).getLastHeardFromOn());
+        assertTrue(decoder.getPageInfo().isHasNextPage());
+        assertEquals("c5", decoder.getPageInfo().getEndCursor());
+        assertEquals(42, decoder.getPageInfo().getTotalCount());
+    }
+
+    @Test
+    void testSameResultForAnyChunkBoundary() throws IOException {
+        int length = PAGE.getBytes(StandardCharsets.UTF_8).length;
+        for (int chunkSize = 1; chunkSize <= length; chunkSize += chunkSize < 16 ? 1 : 7) {
+            AppliancePageDecoder decoder = new AppliancePageDecoder(FILTER);
+            assertEquals(List.of("a1", "a2", "a5"), ids(decode(decoder, PAGE, chunkSize)), "chunk size " + chunkSize);
+            assertEquals("c5", decoder.getPageInfo().getEndCursor());
+        }
+    }
+
+    @Test
+    void testMatchesInMemoryFilter() throws IOException {
+        AppliancePageDecoder decoder = new AppliancePageDecoder(FILTER);
+        List<Appliance> streamed = decode(decoder, PAGE, 13);
+        for (Appliance appliance : streamed) {
+            assertTrue(FILTER.matches(appliance), appliance.getId());
+        }
+    }
+
+    @Test
+    void testReadsDecimalEpochSeconds() throws IOException {
+        String page = "{\"data\":["
+                + "{\"id\":\"a1\",\"opStatus\":\"LIVE\",\"lastHeardFromOn\":1735725600.123},"
+                + "{\"id\":\"a2\",\"opStatus\":\"LIVE\",\"lastHeardFromOn\":1735732500.5}"
+                + "],\"pageInfo\":{\"hasNextPage\":false}}";
+        AppliancePageDecoder decoder = new AppliancePageDecoder(FILTER);
+        List<Appliance> matched = decode(decoder, page, 7);
+
+        // a1 reported in at 10:00:00.123 and is silent, a2 reported in at 11:55:00.5
+        assertEquals(List.of("a1"), ids(matched));
+        assertEquals(Instant.ofEpochSecond(1735725600, 123_000_000), matched.get(0).getLastHeardFromOn());
+        assertEquals(2, decoder.getScanned());
+    }
+
+    @Test
+    void testRejectsUnsupportedLastHeardValue() {
+        for (String value : List.of("true", "{\"epoch\":1}", "[1735725600]")) {
+            String page = "{\"data\":[{\"id\":\"a1\",\"opStatus\":\"LIVE\",\"lastHeardFromOn\":" + value
+                    + "}],\"pageInfo\":{\"hasNextPage\":false}}";
+            assertThrows(IOException.class, () -> decode(new AppliancePageDecoder(FILTER), page, 64), value);
+        }
+    }
+
+    @Test
+    void testEmptyPage() throws IOException {
+        AppliancePageDecoder decoder = new AppliancePageDecoder(FILTER);
+        assertEquals(List.of(), decode(decoder, "{\"pageInfo\":{\"hasNextPage\":false,\"endCursor\":null},\"data\":[]}", 4));
+        assertEquals(0, decoder.getScanned());
+        assertFalse(decoder.getPageInfo().isHasNextPage());
+        assertNull(decoder.getPageInfo().getEndCursor());
+    }
+
+    @Test
+    void testRejectsTruncatedPageOrMissingPageInfo() {
+        String truncated = PAGE.substring(0, PAGE.length() / 2);
+        assertThrows(UncheckedIOException.class, () -> decode(new AppliancePageDecoder(FILTER), truncated, 64));
+        assertThrows(UncheckedIOException.class, () -> decode(new AppliancePageDecoder(FILTER), "{\"data\":[]}", 64));
+    }
+}
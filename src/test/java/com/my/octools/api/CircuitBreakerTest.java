@@ -0,0 +1,158 @@
+package com.my.octools.api;
+
+import com.my.octools.config.ApiClientProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicInteger calls = new AtomicInteger();
+    private ApiClientProperties.CircuitBreaker config;
+
+    @BeforeEach
+    void setup() {
+        config = new ApiClientProperties.CircuitBreaker();
+        config.setWindowSize(10);
+        config.setMinimumCalls(4);
+        config.setFailureRateThreshold(0.5);
+        config.setOpenDuration(Duration.ofSeconds(30));
+        config.setHalfOpenCalls(2);
+    }
+
+    private CircuitBreaker breaker() {
+        return new CircuitBreaker("drain", config, now::get);
+    }
+
+    private CompletableFuture<String> succeed(CircuitBreaker breaker) {
+        return breaker.call(() -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture("ok");
+        });
+    }
+
+    private CompletableFuture<String> fail(CircuitBreaker breaker, RuntimeException ex) {
+        return breaker.call(() -> {
+            calls.incrementAndGet();
+            return CompletableFuture.failedFuture(ex);
+        });
+    }
+
+    private void openCircuit(CircuitBreaker breaker) {
+        succeed(breaker);
+        succeed(breaker);
+        fail(breaker, new ApiException(503, "unavailable"));
+        fail(breaker, new ApiException(429, "slow down"));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void testOpensAtFailureRateAndFailsFast() {
+        CircuitBreaker breaker = breaker();
+        openCircuit(breaker);
+
+        CompletionException ex = assertThrows(CompletionException.class, () -> succeed(breaker).join());
+        assertInstanceOf(CircuitBreakerOpenException.class, ex.getCause());
+        assertEquals(4, calls.get());
+        assertEquals(1, breaker.getRejectedCalls());
+    }
+
+    @Test
+    void testStaysClosedBelowMinimumCallsAndOnClientErrors() {
+        CircuitBreaker breaker = breaker();
+        fail(breaker, new ApiException(500, "boom"));
+        fail(breaker, new ApiException(500, "boom"));
+        fail(breaker, new ApiException(500, "boom"));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        CircuitBreaker other = breaker();
+        for (int i = 0; i < 10; i++) {
+            fail(other, new ApiException(409, "already draining"));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, other.getState());
+        assertEquals(0.0, other.getFailureRate());
+    }
+
+    @Test
+    void testCountsTimeoutAppliedByCaller() {
+        CircuitBreaker breaker = breaker();
+        for (int i = 0; i < 4; i++) {
+            CompletableFuture<String> pending = breaker.call(CompletableFuture::new);
+            pending.completeExceptionally(new TimeoutException());
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void testClosesAfterSuccessfulTrialCalls() {
+        CircuitBreaker breaker = breaker();
+        openCircuit(breaker);
+
+        now.addAndGet(Duration.ofSeconds(30).toNanos());
+        CompletableFuture<String> first = breaker.call(CompletableFuture::new);
+        CompletableFuture<String> second = breaker.call(CompletableFuture::new);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertThrows(CompletionException.class, () -> succeed(breaker).join());
+
+        first.complete("ok");
+        second.complete("ok");
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals("ok", succeed(breaker).join());
+    }
+
+    @Test
+    void testReopensOnFailedTrialCall() {
+        CircuitBreaker breaker = breaker();
+        openCircuit(breaker);
+
+        now.addAndGet(Duration.ofSeconds(31).toNanos());
+        fail(breaker, new ApiException(502, "bad gateway"));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        now.addAndGet(Duration.ofSeconds(29).toNanos());
+        assertThrows(CompletionException.class, () -> succeed(breaker).join());
+    }
+
+    @Test
+    void testReactiveCallsTakeAPermitPerSubscription() {
+        CircuitBreaker breaker = breaker();
+        Mono<String> failing = breaker.call(Mono.error(new ApiException(503, "unavailable")));
+        for (int i = 0; i < 4; i++) {
+            assertThrows(ApiException.class, failing::block);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertThrows(CircuitBreakerOpenException.class, failing::block);
+        assertEquals(1, breaker.getRejectedCalls());
+    }
+
+    @Test
+    void testCancelledReactiveTrialCallReopens() {
+        CircuitBreaker breaker = breaker();
+        openCircuit(breaker);
+
+        now.addAndGet(Duration.ofSeconds(30).toNanos());
+        breaker.call(Mono.never()).subscribe().dispose();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void testDisabledBreakerPassesEverythingThrough() {
+        config.setEnabled(false);
+        CircuitBreaker breaker = breaker();
+        for (int i = 0; i < 10; i++) {
+            fail(breaker, new ApiException(503, "unavailable"));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals("ok", succeed(breaker).join());
+    }
+}
@@ -0,0 +1,408 @@
+package com.my.octools.api;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Local stand-in for the appliance API, so the real {@link ApiClientImpl} can be exercised end to end.
+ * <p>
+ * Serves a fleet of {@code appliance-0} to {@code appliance-<n-1>} through the paged
+ * {@code GET /api/1.0/appliances?first=&after=} endpoint with opaque cursors, plus the single and batch
+ * drain/remediate endpoints. Appliances are generated per page instead of being held in memory, so fleets of
+ * a million appliances cost only the per-appliance latency bookkeeping. A fixed, hash-chosen share of the
+ * fleet ({@code staleRatio}) last reported an hour ago; the rest reported just now.
+ * <p>
+ * Responses are delayed by the configured {@link Latency} on a scheduler instead of a sleeping handler thread,
+ * so many slow calls can be in flight at once. A configurable share of requests is answered with 429 or 500.
+ * Page responses can take longer per appliance on the page, and pages above {@code maxPageSize} are rejected
+ * with 400, like a backend that limits {@code first}.
+ * <p>
+ * Per-appliance latency is measured from the first drain request of an appliance to the remediate response,
+ * which covers the drain call, the client's hand-off to remediation and the remediate call.
+ */
+public final class FakeApplianceBackend implements AutoCloseable {
+    private static final String APPLIANCES = "/api/1.0/appliances";
+    private static final String ID_PREFIX = "appliance-";
+
+    private final Config config;
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final ScheduledExecutorService responder;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Instant now = Instant.now();
+
+    private final AtomicLongArray drainStartedNanos;
+    private final AtomicLongArray latencyNanos;
+    private final AtomicLong fetches = new AtomicLong();
+    private final AtomicLong drains = new AtomicLong();
+    private final AtomicLong remediations = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private FakeApplianceBackend(Config config) throws IOException {
+        this.config = config;
+        this.drainStartedNanos = new AtomicLongArray(config.fleetSize);
+        this.latencyNanos = new AtomicLongArray(config.fleetSize);
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        this.handlers = Executors.newFixedThreadPool(config.handlerThreads, daemon("fake-backend"));
+        this.responder = Executors.newScheduledThreadPool(2, daemon("fake-backend-responder"));
+        server.setExecutor(handlers);
+        server.createContext(APPLIANCES, this::handle);
+    }
+
+    /**
+     * Starts a backend on a free local port.
+     */
+    public static FakeApplianceBackend start(Config config) throws IOException {
+        FakeApplianceBackend backend = new FakeApplianceBackend(config);
+        backend.server.start();
+        return backend;
+    }
+
+    /**
+     * @return base URL to configure the {@code WebClient} with
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return whether the appliance with the given index is served as live and stale
+     */
+    public boolean isStale(int index) {
+        // Fibonacci hashing spreads the stale appliances evenly over the fleet
+        long hash = (index * 0x9E3779B97F4A7C15L) >>> 11;
+        return hash < config.staleRatio * (1L << 53);
+    }
+
+    /**
+     * @return number of stale appliances in the fleet
+     */
+    public int getStaleCount() {
+        int stale = 0;
+        for (int i = 0; i < config.fleetSize; i++) {
+            if (isStale(i)) {
+                stale++;
+            }
+        }
+        return stale;
+    }
+
+    public long getFetches() {
+        return fetches.get();
+    }
+
+    /**
+     * @return number of appliances drained, single or batched
+     */
+    public long getDrains() {
+        return drains.get();
+    }
+
+    /**
+     * @return number of appliances remediated, single or batched
+     */
+    public long getRemediations() {
+        return remediations.get();
+    }
+
+    /**
+     * @return number of requests answered with an injected 429
+     */
+    public long getThrottled() {
+        return throttled.get();
+    }
+
+    /**
+     * @return number of requests answered with an injected 500
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @param percentile between 0 and 100
+     * @return the percentile of the per-appliance latencies of all remediated appliances, 0 if there are none
+     */
+    public Duration getApplianceLatency(double percentile) {
+        long[] samples = new long[latencyNanos.length()];
+        int count = 0;
+        for (int i = 0; i < samples.length; i++) {
+            long latency = latencyNanos.get(i);
+            if (latency > 0) {
+                samples[count++] = latency;
+            }
+        }
+        if (count == 0) {
+            return Duration.ZERO;
+        }
+        Arrays.sort(samples, 0, count);
+        int rank = (int) Math.ceil(percentile / 100 * count) - 1;
+        return Duration.ofNanos(samples[Math.max(0, Math.min(count - 1, rank))]);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        responder.shutdownNow();
+        handlers.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        String method = exchange.getRequestMethod();
+        boolean fetch = method.equals("GET") && path.equals(APPLIANCES);
+        boolean batch = method.equals("POST")
+                && (path.equals(APPLIANCES + "/drain") || path.equals(APPLIANCES + "/remediate"));
+        if (!fetch && !(method.equals("POST") && (path.endsWith("/drain") || path.endsWith("/remediate")))
+                || batch && !config.batchSupported) {
+            respond(exchange, 404, "{\"error\":\"Not Found\"}", 0, null);
+            return;
+        }
+        Latency latency = fetch ? config.fetchLatency : config.actionLatency;
+        // faults are decided before any work, so the counters only see calls that succeeded
+        double fault = ThreadLocalRandom.current().nextDouble();
+        if (fault < config.throttleRate) {
+            throttled.incrementAndGet();
+            respond(exchange, 429, "{\"error\":\"Too Many Requests\"}", latency.sampleNanos(), null);
+            return;
+        }
+        if (fault < config.throttleRate + config.errorRate) {
+            failed.incrementAndGet();
+            respond(exchange, 500, "{\"error\":\"Internal Server Error\"}", latency.sampleNanos(), null);
+            return;
+        }
+        try {
+            if (fetch) {
+                String query = exchange.getRequestURI().getRawQuery();
+                String after = queryParameter(query, "after");
+                String first = queryParameter(query, "first");
+                int from = after != null ? decodeCursor(after) : 0;
+                int size = first != null ? Integer.parseInt(first) : 100;
+                if (config.maxPageSize > 0 && size > config.maxPageSize) {
+                    respond(exchange, 400, "{\"error\":\"first must not exceed " + config.maxPageSize + "\"}", 0, null);
+                    return;
+                }
+                int to = Math.min(config.fleetSize, from + size);
+                fetches.incrementAndGet();
+                long delay = latency.sampleNanos() + Math.max(0, to - from) * config.fetchLatencyPerAppliance.toNanos();
+                respond(exchange, 200, page(from, to), delay, null);
+                return;
+            }
+            boolean drain = path.endsWith("/drain");
+            List<Integer> indexes = new ArrayList<>();
+            if (batch) {
+                for (JsonNode id : mapper.readTree(exchange.getRequestBody().readAllBytes()).path("ids")) {
+                    indexes.add(index(id.asText()));
+                }
+            } else {
+                String[] segments = path.split("/");
+                indexes.add(index(segments[segments.length - 2]));
+            }
+            List<String> results = new ArrayList<>(indexes.size());
+            for (int index : indexes) {
+                String result = drain ? drain(index) : remediate(index);
+                results.add(batch ? "{\"id\":\"" + ID_PREFIX + index + "\",\"status\":200,\"result\":" + result + "}"
+                        : result);
+            }
+            String body = batch ? "{\"results\":[" + String.join(",", results) + "]}" : results.get(0);
+            respond(exchange, 200, body, latency.sampleNanos(), drain ? null : indexes);
+        } catch (IllegalArgumentException ex) {
+            respond(exchange, 400, "{\"error\":\"" + ex.getMessage() + "\"}", 0, null);
+        }
+    }
+
+    /**
+     * Renders the appliances from index {@code from} up to {@code to}, exclusive.
+     */
+    private String page(int from, int to) {
+        StringBuilder json = new StringBuilder(to > from ? (to - from) * 110 : 64).append("{\"data\":[");
+        for (int i = from; i < to; i++) {
+            Instant lastHeard = isStale(i) ? now.minus(Duration.ofHours(1)) : Instant.now();
+            json.append(i == from ? "" : ",")
+                    .append("{\"id\":\"").append(ID_PREFIX).append(i)
+                    .append("\",\"sortIndex\":").append(i)
+                    .append(",\"opStatus\":\"LIVE\",\"lastHeardFromOn\":\"").append(lastHeard).append("\"}");
+        }
+        return json.append("],\"pageInfo\":{\"hasNextPage\":").append(to < config.fleetSize)
+                .append(",\"endCursor\":\"").append(encodeCursor(to))
+                .append("\",\"totalCount\":").append(config.fleetSize).append("}}")
+                .toString();
+    }
+
+    private String drain(int index) {
+        drains.incrementAndGet();
+        drainStartedNanos.compareAndSet(index, 0, System.nanoTime());
+        return "{\"drainId\":\"drain-" + index + "\",\"estimatedTimeToDrain\":\"5m\"}";
+    }
+
+    private String remediate(int index) {
+        remediations.incrementAndGet();
+        return "{\"remediationId\":\"remediation-" + index + "\",\"remediationResult\":\"success\"}";
+    }
+
+    /**
+     * Sends the response after the given delay.
+     *
+     * @param remediated appliances whose remediation this response completes, so their latency is recorded
+     *                   when it is sent (nullable)
+     */
+    private void respond(HttpExchange exchange, int status, String body, long delayNanos, List<Integer> remediated) {
+        Runnable send = () -> {
+            if (remediated != null) {
+                long sentAt = System.nanoTime();
+                for (int index : remediated) {
+                    long started = drainStartedNanos.get(index);
+                    if (started != 0) {
+                        latencyNanos.compareAndSet(index, 0, sentAt - started);
+                    }
+                }
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            try (OutputStream out = exchange.getResponseBody()) {
+                exchange.getResponseHeaders().add("Content-Type", "application/json");
+                exchange.sendResponseHeaders(status, bytes.length);
+                out.write(bytes);
+            } catch (IOException ex) {
+                // the client went away, nothing to report to
+                exchange.close();
+            }
+        };
+        if (delayNanos <= 0) {
+            send.run();
+        } else {
+            responder.schedule(send, delayNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static int index(String id) {
+        if (!id.startsWith(ID_PREFIX)) {
+            throw new IllegalArgumentException("Unknown appliance " + id);
+        }
+        return Integer.parseInt(id.substring(ID_PREFIX.length()));
+    }
+
+    private static String queryParameter(String query, String name) {
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith(name + "=")) {
+                    return parameter.substring(name.length() + 1);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String encodeCursor(int index) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(Integer.toString(index).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int decodeCursor(String cursor) {
+        return Integer.parseInt(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Fleet shape and fault injection of a {@link FakeApplianceBackend}.
+     */
+    public static final class Config {
+        private int fleetSize = 10_000;
+        private double staleRatio = 0.5;
+        private Latency fetchLatency = Latency.NONE;
+        private Duration fetchLatencyPerAppliance = Duration.ZERO;
+        private int maxPageSize;
+        private Latency actionLatency = Latency.NONE;
+        private double throttleRate;
+        private double errorRate;
+        private boolean batchSupported = true;
+        private int handlerThreads = 8;
+
+        /** Number of appliances served, at most a few million. */
+        public Config fleetSize(int fleetSize) {
+            this.fleetSize = fleetSize;
+            return this;
+        }
+
+        /** Share of the fleet that is live and last reported an hour ago. */
+        public Config staleRatio(double staleRatio) {
+            this.staleRatio = staleRatio;
+            return this;
+        }
+
+        /** Response time of the page endpoint. */
+        public Config fetchLatency(Latency fetchLatency) {
+            this.fetchLatency = fetchLatency;
+            return this;
+        }
+
+        /** Added to the page response time for every appliance on the page. */
+        public Config fetchLatencyPerAppliance(Duration fetchLatencyPerAppliance) {
+            this.fetchLatencyPerAppliance = fetchLatencyPerAppliance;
+            return this;
+        }
+
+        /** Largest {@code first} accepted; larger pages are answered with 400. Zero accepts any size. */
+        public Config maxPageSize(int maxPageSize) {
+            this.maxPageSize = maxPageSize;
+            return this;
+        }
+
+        /** Response time of the drain and remediate endpoints. */
+        public Config actionLatency(Latency actionLatency) {
+            this.actionLatency = actionLatency;
+            return this;
+        }
+
+        /** Share of requests answered with 429. */
+        public Config throttleRate(double throttleRate) {
+            this.throttleRate = throttleRate;
+            return this;
+        }
+
+        /** Share of requests answered with 500. */
+        public Config errorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        /** Whether the batch endpoints exist; without them they answer 404. */
+        public Config batchSupported(boolean batchSupported) {
+            this.batchSupported = batchSupported;
+            return this;
+        }
+
+        /** Threads parsing requests; response delays do not occupy them. */
+        public Config handlerThreads(int handlerThreads) {
+            this.handlerThreads = handlerThreads;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.my.octools.api;
+
+import com.my.octools.config.ApiClientProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HedgerTest {
+
+    private ScheduledExecutorService scheduler;
+    private ApiClientProperties.Hedge config;
+    private final List<CompletableFuture<String>> attempts = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setup() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        config = new ApiClientProperties.Hedge();
+        config.setEnabled(true);
+        config.setMinDelay(Duration.ofMillis(10));
+        config.setMaxDelay(Duration.ofMillis(50));
+        config.setMinSamples(5);
+    }
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    private CompletableFuture<String> pendingAttempt() {
+        CompletableFuture<String> attempt = new CompletableFuture<>();
+        attempts.add(attempt);
+        return attempt;
+    }
+
+    @Test
+    void testSecondAttemptWinsWhenFirstIsSlow() {
+        Hedger hedger = new Hedger(config, scheduler);
+        CompletableFuture<String> result = hedger.call(this::pendingAttempt);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (attempts.size() < 2 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(2, attempts.size());
+        attempts.get(1).complete("second");
+
+        assertEquals("second", result.join());
+        assertTrue(attempts.get(0).isCancelled());
+        assertEquals(1, hedger.getHedgesSent());
+        assertEquals(1, hedger.getHedgesWon());
+    }
+
+    @Test
+    void testNoHedgeWhenFirstAnswersInTime() throws InterruptedException {
+        Hedger hedger = new Hedger(config, scheduler);
+        assertEquals("first", hedger.call(() -> CompletableFuture.completedFuture("first")).join());
+
+        Thread.sleep(100);
+        assertEquals(0, hedger.getHedgesSent());
+    }
+
+    @Test
+    void testFailsOnlyWhenAllAttemptsFailed() {
+        Hedger hedger = new Hedger(config, scheduler);
+        CompletableFuture<String> result = hedger.call(this::pendingAttempt);
+        while (attempts.size() < 2) {
+            Thread.onSpinWait();
+        }
+
+        attempts.get(0).completeExceptionally(new ApiException(503, "unavailable"));
+        assertFalse(result.isDone());
+        attempts.get(1).completeExceptionally(new ApiException(503, "still unavailable"));
+
+        CompletionException ex = assertThrows(CompletionException.class, result::join);
+        assertEquals("still unavailable", ex.getCause().getMessage());
+    }
+
+    @Test
+    void testDelayFollowsPercentileOfRecentLatencies() {
+        Hedger hedger = new Hedger(config, scheduler);
+        assertEquals(Duration.ofMillis(50), hedger.getDelay());
+
+        for (int i = 0; i < 5; i++) {
+            hedger.call(() -> CompletableFuture.completedFuture("fast")).join();
+        }
+        assertEquals(Duration.ofMillis(10), hedger.getDelay());
+    }
+}
@@ -0,0 +1,92 @@
+package com.my.octools.api;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Response time distribution of the {@link FakeApplianceBackend}.
+ */
+@FunctionalInterface
+public interface Latency {
+
+    /** Answers immediately. */
+    Latency NONE = () -> 0;
+
+    /**
+     * @return the delay before the next response, in nanoseconds
+     */
+    long sampleNanos();
+
+    /**
+     * @return the same delay for every response
+     */
+    static Latency fixed(Duration delay) {
+        long nanos = delay.toNanos();
+        return () -> nanos;
+    }
+
+    /**
+     * @return delays spread evenly between {@code min} and {@code max}
+     */
+    static Latency uniform(Duration min, Duration max) {
+        long from = min.toNanos();
+        long to = max.toNanos();
+        return () -> from == to ? from : ThreadLocalRandom.current().nextLong(from, to);
+    }
+
+    /**
+     * Log-normal delays, the long-tailed shape of real service latencies.
+     *
+     * @param median half of the responses are faster than this
+     * @param p99    1% of the responses are slower than this
+     */
+    static Latency logNormal(Duration median, Duration p99) {
+        double mu = Math.log(median.toNanos());
+        // z-score of the 99th percentile of the standard normal distribution
+        double sigma = Math.log((double) p99.toNanos() / median.toNanos()) / 2.326;
+        return () -> (long) Math.exp(mu + sigma * ThreadLocalRandom.current().nextGaussian());
+    }
+
+    /**
+     * Parses {@code none}, {@code fixed:<d>}, {@code uniform:<min>:<max>} or {@code lognormal:<median>:<p99>},
+     * with durations such as {@code 20ms} or {@code 1s}.
+     *
+     * @throws IllegalArgumentException if the spec is malformed
+     */
+    static Latency parse(String spec) {
+        String[] parts = spec.trim().split(":");
+        switch (parts[0]) {
+            case "none":
+                return NONE;
+            case "fixed":
+                if (parts.length == 2) {
+                    return fixed(duration(parts[1]));
+                }
+                break;
+            case "uniform":
+                if (parts.length == 3) {
+                    return uniform(duration(parts[1]), duration(parts[2]));
+                }
+                break;
+            case "lognormal":
+                if (parts.length == 3) {
+                    return logNormal(duration(parts[1]), duration(parts[2]));
+                }
+                break;
+            default:
+                break;
+        }
+        throw new IllegalArgumentException("Malformed latency " + spec
+                + ", expected none, fixed:<d>, uniform:<min>:<max> or lognormal:<median>:<p99>");
+    }
+
+    private static Duration duration(String value) {
+        if (value.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        }
+        if (value.endsWith("s")) {
+            return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+        }
+        throw new IllegalArgumentException("Malformed duration " + value + ", expected e.g. 20ms or 1s");
+    }
+}
@@ -0,0 +1,126 @@
+package com.my.octools.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.my.octools.config.LogStoreProperties;
+import com.my.octools.storage.ApplianceLog;
+import com.my.octools.storage.LogVersions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogResponseCacheTest {
+    LogStoreProperties properties;
+    LogResponseCache cache;
+    AtomicInteger queries;
+    Instant now;
+
+    @BeforeEach
+    void setup() {
+        properties = new LogStoreProperties();
+        properties.getResponseCache().setMaxEntries(2);
+        cache = new LogResponseCache(new ObjectMapper().findAndRegisterModules(), new LogVersions(), properties);
+        queries = new AtomicInteger();
+        now = Instant.parse("2025-03-01T12:00:00Z");
+    }
+
+    @Test
+    void testRepeatedQueryAtSameVersionIsServedFromCache() {
+        LogResponseCache.CachedPage first = cache.get(List.of("all", 0, 10), 3, null, query("appliance1"), now);
+        LogResponseCache.CachedPage second = cache.get(List.of("all", 0, 10), 3, null, query("appliance1"), now);
+
+        assertSame(first, second);
+        assertEquals(1, queries.get());
+        assertEquals(1, cache.getHits());
+        assertEquals("next", second.getNextCursor());
+        assertTrue(new String(second.getBody()).contains("appliance1"));
+    }
+
+    @Test
+    void testNewVersionRunsQueryAgainWithNewEtag() {
+        LogResponseCache.CachedPage first = cache.get(List.of("all", 0, 10), 3, null, query("appliance1"), now);
+        LogResponseCache.CachedPage second = cache.get(List.of("all", 0, 10), 4, null, query("appliance2"), now);
+        // a reader that read the old version before the write must not replace the newer page
+        cache.get(List.of("all", 0, 10), 3, null, query("appliance1"), now);
+        LogResponseCache.CachedPage third = cache.get(List.of("all", 0, 10), 4, null, query("appliance2"), now);
+
+        assertEquals(3, queries.get());
+        assertNotEquals(first.getEtag(), second.getEtag());
+        assertSame(second, third);
+        assertTrue(second.getEtag().startsWith("\"") && second.getEtag().endsWith("\""));
+    }
+
+    @Test
+    void testWindowedPageExpiresWhenItsOldestEntryLeavesTheWindow() {
+        Duration window = Duration.ofMinutes(5);
+        LogResponseCache.CachedPage first = cache.get(List.of("recent", 5), 3, window, query("appliance1"), now);
+
+        assertSame(first, cache.get(List.of("recent", 5), 3, window, query("appliance1"), now.plusSeconds(119)));
+        LogResponseCache.CachedPage expired = cache.get(List.of("recent", 5), 3, window, query("appliance1"),
+                now.plusSeconds(120));
+
+        assertNotSame(first, expired);
+        assertEquals(2, queries.get());
+    }
+
+    @Test
+    void testCurrentTagMatchesTagsOfThisVersionUntilTheyExpire() {
+        String tag = cache.get(List.of("all", 0, 10), 3, null, query("appliance1"), now).getEtag();
+        String windowed = cache.get(List.of("recent", 5), 3, Duration.ofMinutes(5), query("appliance1"), now)
+                .getEtag();
+
+        assertEquals(tag, cache.currentTag(tag, 3, now));
+        assertEquals(tag, cache.currentTag("\"other\", W/" + tag, 3, now));
+        assertNull(cache.currentTag(tag, 4, now));
+        assertNull(cache.currentTag(null, 3, now));
+        assertEquals(windowed, cache.currentTag(windowed, 3, now.plusSeconds(119)));
+        assertNull(cache.currentTag(windowed, 3, now.plusSeconds(120)));
+        assertNull(cache.currentTag(tag.substring(0, tag.length() - 1) + "-zz!\"", 3, now));
+    }
+
+    @Test
+    void testEvictsLeastRecentlyUsedAndSkipsLargeBodies() {
+        cache.get(List.of("a"), 1, null, query("appliance1"), now);
+        cache.get(List.of("b"), 1, null, query("appliance1"), now);
+        cache.get(List.of("a"), 1, null, query("appliance1"), now);
+        cache.get(List.of("c"), 1, null, query("appliance1"), now);
+        assertEquals(2, cache.size());
+
+        cache.get(List.of("a"), 1, null, query("appliance1"), now);
+        assertEquals(3, queries.get());
+        cache.get(List.of("b"), 1, null, query("appliance1"), now);
+        assertEquals(4, queries.get());
+
+        properties.getResponseCache().setMaxEntries(0);
+        LogResponseCache disabled = new LogResponseCache(new ObjectMapper().findAndRegisterModules(),
+                new LogVersions(), properties);
+        disabled.get(List.of("a"), 1, null, query("appliance1"), now);
+        disabled.get(List.of("a"), 1, null, query("appliance1"), now);
+        assertEquals(0, disabled.size());
+        assertEquals(6, queries.get());
+    }
+
+    @Test
+    void testDisabledWhenVersionsMissWritesOfOtherInstances() {
+        assertTrue(cache.isEnabled());
+        LogResponseCache shared = new LogResponseCache(new ObjectMapper().findAndRegisterModules(),
+                new LogVersions(false), properties);
+        assertFalse(shared.isEnabled());
+    }
+
+    private Supplier<LogPage> query(String applianceId) {
+        return () -> {
+            queries.incrementAndGet();
+            // the oldest entry leaves a 5 minute window two minutes from now
+            return new LogPage(List.of(
+                    new ApplianceLog(applianceId, "DRAIN", true, "ok", now.minusSeconds(60)),
+                    new ApplianceLog(applianceId, "DRAIN", true, "ok", now.minusSeconds(180))), "next");
+        };
+    }
+}
@@ -0,0 +1,92 @@
+package com.my.octools.api;
+
+import com.my.octools.api.entities.BatchItemResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MicroBatcherTest {
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<List<String>> batches = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    private CompletableFuture<Map<String, BatchItemResult<String>>> echo(List<String> ids) {
+        batches.add(new ArrayList<>(ids));
+        Map<String, BatchItemResult<String>> results = new LinkedHashMap<>();
+        for (String id : ids) {
+            results.put(id, id.startsWith("bad")
+                    ? BatchItemResult.failure(id, 409, "Conflict for " + id)
+                    : BatchItemResult.success(id, "done-" + id));
+        }
+        return CompletableFuture.completedFuture(results);
+    }
+
+    @Test
+    void testCallsWithinWindowShareOneBatch() {
+        MicroBatcher<String> batcher = new MicroBatcher<>(this::echo, 10, Duration.ofMillis(50), scheduler);
+
+        CompletableFuture<String> first = batcher.submit("a1");
+        CompletableFuture<String> second = batcher.submit("a2");
+        CompletableFuture<String> duplicate = batcher.submit("a1");
+
+        assertEquals("done-a1", first.join());
+        assertEquals("done-a2", second.join());
+        assertEquals("done-a1", duplicate.join());
+        assertEquals(List.of(List.of("a1", "a2")), batches);
+    }
+
+    @Test
+    void testFullBatchIsSentWithoutWaitingForWindow() {
+        MicroBatcher<String> batcher = new MicroBatcher<>(this::echo, 2, Duration.ofHours(1), scheduler);
+
+        CompletableFuture<String> first = batcher.submit("a1");
+        CompletableFuture<String> second = batcher.submit("a2");
+
+        assertTrue(first.isDone());
+        assertTrue(second.isDone());
+        assertEquals(1, batches.size());
+    }
+
+    @Test
+    void testPerIdErrorsFailOnlyThatCaller() {
+        MicroBatcher<String> batcher = new MicroBatcher<>(this::echo, 2, Duration.ofHours(1), scheduler);
+
+        CompletableFuture<String> good = batcher.submit("a1");
+        CompletableFuture<String> bad = batcher.submit("bad1");
+
+        assertEquals("done-a1", good.join());
+        CompletionException ex = assertThrows(CompletionException.class, bad::join);
+        ApiException cause = assertInstanceOf(ApiException.class, ex.getCause());
+        assertEquals(409, cause.getStatusCode());
+    }
+
+    @Test
+    void testFailedBatchFailsAllCallers() {
+        MicroBatcher<String> batcher = new MicroBatcher<>(
+                ids -> CompletableFuture.failedFuture(new ApiException(503, "unavailable")),
+                10, Duration.ofHours(1), scheduler);
+
+        CompletableFuture<String> first = batcher.submit("a1");
+        CompletableFuture<String> second = batcher.submit("a2");
+        batcher.flush();
+
+        assertThrows(CompletionException.class, first::join);
+        assertThrows(CompletionException.class, second::join);
+    }
+}
@@ -0,0 +1,61 @@
+package com.my.octools.cluster;
+
+import com.my.octools.storage.ApplianceLog;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterLogFanoutTest {
+    private static final Instant NOW = Instant.parse("2025-01-01T00:00:00Z");
+
+    private static ApplianceLog log(String applianceId, int secondsAgo) {
+        return new ApplianceLog(applianceId, "DRAIN", true, "ok", NOW.minusSeconds(secondsAgo));
+    }
+
+    private static List<String> ids(List<ApplianceLog> logs) {
+        return logs.stream().map(ApplianceLog::getApplianceId).collect(Collectors.toList());
+    }
+
+    @Test
+    void testMergesSortedRunsNewestFirst() {
+        List<List<ApplianceLog>> runs = List.of(
+                List.of(log("a1", 1), log("a2", 4), log("a3", 7)),
+                List.of(log("b1", 2), log("b2", 3)),
+                List.of(),
+                List.of(log("c1", 5), log("c2", 6)));
+
+        assertEquals(List.of("a1", "b1", "b2", "a2", "c1", "c2", "a3"), ids(ClusterLogFanout.merge(runs, 0, 10)));
+    }
+
+    @Test
+    void testSkipsAndLimits() {
+        List<List<ApplianceLog>> runs = List.of(
+                List.of(log("a1", 1), log("a2", 4), log("a3", 7)),
+                List.of(log("b1", 2), log("b2", 3)));
+
+        assertEquals(List.of("b1", "b2"), ids(ClusterLogFanout.merge(runs, 1, 2)));
+        assertEquals(List.of("a3"), ids(ClusterLogFanout.merge(runs, 4, 2)));
+        assertEquals(List.of(), ClusterLogFanout.merge(runs, 5, 2));
+        assertEquals(List.of(), ClusterLogFanout.merge(runs, 0, 0));
+    }
+
+    @Test
+    void testBreaksTimestampTiesLikeTheStores() {
+        List<ApplianceLog> first = new ArrayList<>(List.of(log("x", 1), log("z", 1)));
+        List<ApplianceLog> second = List.of(log("y", 1));
+
+        assertEquals(List.of("x", "y", "z"), ids(ClusterLogFanout.merge(List.of(first, second), 0, 3)));
+    }
+
+    @Test
+    void testDropsRowsReturnedByEveryMemberOfASharedStore() {
+        List<ApplianceLog> shared = List.of(log("a1", 1), log("b1", 2), log("a2", 3));
+
+        assertEquals(List.of("b1", "a2"), ids(ClusterLogFanout.merge(List.of(shared, shared, shared), 1, 5)));
+    }
+}
@@ -0,0 +1,226 @@
+package com.my.octools.cluster;
+
+import com.my.octools.config.ClusterProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClusterMembershipTest {
+    private static final int APPLIANCES = 2_000;
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2025-01-01T00:00:00Z"));
+    private final InMemoryMemberStore store = new InMemoryMemberStore();
+    private ClusterProperties config;
+
+    @BeforeEach
+    void setup() {
+        config = new ClusterProperties();
+        config.setHeartbeatInterval(Duration.ofSeconds(5));
+        config.setLeaseDuration(Duration.ofSeconds(15));
+        config.setVirtualNodes(64);
+    }
+
+    private ClusterMembership member(String nodeId) {
+        return new ClusterMembership(store, new ClusterMember(nodeId, "http://" + nodeId + ":8080"), config, clock);
+    }
+
+    private static int owned(ClusterMembership membership) {
+        int owned = 0;
+        for (int i = 0; i < APPLIANCES; i++) {
+            if (membership.owns("appliance-" + i)) {
+                owned++;
+            }
+        }
+        return owned;
+    }
+
+    private static void assertEachOwnedOnce(ClusterMembership... members) {
+        for (int i = 0; i < APPLIANCES; i++) {
+            int owners = 0;
+            for (ClusterMembership member : members) {
+                owners += member.owns("appliance-" + i) ? 1 : 0;
+            }
+            assertEquals(1, owners, "owners of appliance-" + i);
+        }
+    }
+
+    @Test
+    void testSingleMemberOwnsEverything() {
+        ClusterMembership a = member("a");
+        a.join();
+
+        assertEquals(List.of(a.getSelf()), a.getMembers());
+        assertEquals(APPLIANCES, owned(a));
+    }
+
+    @Test
+    void testJoiningMemberTakesOverAfterHandoff() {
+        ClusterMembership a = member("a");
+        a.join();
+        clock.advance(Duration.ofSeconds(1));
+        ClusterMembership b = member("b");
+        b.join();
+
+        // b waits for a to see it; until a's next heartbeat a keeps everything
+        assertEquals(0, owned(b));
+        assertEquals(APPLIANCES, owned(a));
+
+        clock.advance(Duration.ofSeconds(2));
+        a.heartbeat();
+        int ownedByA = owned(a);
+        assertTrue(ownedByA > APPLIANCES / 4 && ownedByA < APPLIANCES * 3 / 4, "a owns " + ownedByA);
+        assertEquals(0, owned(b));
+
+        clock.advance(Duration.ofSeconds(3));
+        b.heartbeat();
+        assertEachOwnedOnce(a, b);
+        assertEquals(2, a.getMembers().size());
+        assertEquals(a.getRing().getMembers(), b.getRing().getMembers());
+    }
+
+    @Test
+    void testExpiredMemberIsDroppedAndFencesItself() {
+        ClusterMembership a = member("a");
+        ClusterMembership b = member("b");
+        a.join();
+        b.join();
+        a.heartbeat();
+        clock.advance(Duration.ofSeconds(5));
+        assertEachOwnedOnce(a, b);
+
+        // b stops renewing; once its lease has expired a takes over at once and b owns nothing
+        for (int i = 0; i < 3; i++) {
+            clock.advance(Duration.ofSeconds(5));
+            a.heartbeat();
+        }
+        assertEquals(List.of(a.getSelf()), a.getMembers());
+        assertEquals(APPLIANCES, owned(a));
+        assertEquals(0, owned(b));
+        assertEquals(List.of(), b.getMembers());
+    }
+
+    @Test
+    void testLeavingMemberHandsOverWithoutWaitingForItsLease() {
+        ClusterMembership a = member("a");
+        ClusterMembership b = member("b");
+        a.join();
+        b.join();
+        a.heartbeat();
+
+        b.leave();
+        clock.advance(Duration.ofSeconds(1));
+        a.heartbeat();
+
+        assertEquals(0, owned(b));
+        assertEquals(APPLIANCES, owned(a));
+        assertEquals(3, a.getRebalances());
+    }
+
+    @Test
+    void testKeepsShardWhileLeaseIsValidDuringStoreOutage() {
+        ClusterMembership a = member("a");
+        a.join();
+        store.failing = true;
+
+        clock.advance(Duration.ofSeconds(10));
+        a.heartbeat();
+        assertEquals(1, a.getHeartbeatFailures());
+        assertEquals(APPLIANCES, owned(a));
+
+        clock.advance(Duration.ofSeconds(5));
+        a.heartbeat();
+        assertEquals(0, owned(a));
+
+        store.failing = false;
+        a.heartbeat();
+        assertEquals(APPLIANCES, owned(a));
+    }
+
+    @Test
+    void testRejectsLeaseShorterThanHeartbeat() {
+        config.setLeaseDuration(Duration.ofSeconds(5));
+        assertThrows(IllegalArgumentException.class, () -> member("a"));
+    }
+
+    /**
+     * {@link MemberStore} shared by the members of a test, standing in for the database table.
+     */
+    private static final class InMemoryMemberStore implements MemberStore {
+        private final Map<ClusterMember, Instant> leases = new ConcurrentHashMap<>();
+        private volatile boolean failing;
+
+        private void check() {
+            if (failing) {
+                throw new IllegalStateException("member store unavailable");
+            }
+        }
+
+        @Override
+        public void renew(ClusterMember member, Instant leaseExpiresAt) {
+            check();
+            leases.keySet().removeIf(m -> m.getNodeId().equals(member.getNodeId()));
+            leases.put(member, leaseExpiresAt);
+        }
+
+        @Override
+        public List<ClusterMember> findLive(Instant now) {
+            check();
+            return leases.entrySet().stream()
+                    .filter(e -> e.getValue().isAfter(now))
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public void remove(String nodeId) {
+            check();
+            leases.keySet().removeIf(m -> m.getNodeId().equals(nodeId));
+        }
+
+        @Override
+        public int removeExpired(Instant before) {
+            check();
+            int size = leases.size();
+            leases.values().removeIf(expires -> expires.isBefore(before));
+            return size - leases.size();
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+        private volatile Instant now;
+
+        private MutableClock(Instant now) {
+            this.now = now;
+        }
+
+        private void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+    }
+}
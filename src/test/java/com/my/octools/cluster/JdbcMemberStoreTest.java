@@ -0,0 +1,79 @@
+package com.my.octools.cluster;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JdbcMemberStoreTest {
+    private static final Instant NOW = Instant.parse("2025-01-01T00:00:00Z");
+
+    private final ClusterMember a = new ClusterMember("a", "http://a:8080");
+    private final ClusterMember b = new ClusterMember("b", "http://b:8080");
+    private JdbcTemplate jdbc;
+    private JdbcMemberStore store;
+
+    @BeforeEach
+    void setup() {
+        jdbc = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:members;DB_CLOSE_DELAY=-1"));
+        store = new JdbcMemberStore(jdbc);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbc.execute("DROP TABLE " + JdbcMemberStore.TABLE);
+    }
+
+    @Test
+    void testRenewsAndFindsLiveMembers() {
+        store.renew(a, NOW.plusSeconds(15));
+        store.renew(b, NOW.plusSeconds(5));
+        assertEquals(List.of(a, b), store.findLive(NOW));
+
+        store.renew(b, NOW.plusSeconds(20));
+        assertEquals(List.of(a, b), store.findLive(NOW.plusSeconds(10)));
+        assertEquals(List.of(b), store.findLive(NOW.plusSeconds(15)));
+    }
+
+    @Test
+    void testRecognisesInMemoryDatabases() {
+        assertTrue(JdbcMemberStore.isInMemory("jdbc:h2:mem:members;DB_CLOSE_DELAY=-1"));
+        assertTrue(JdbcMemberStore.isInMemory("JDBC:H2:MEM:testdb"));
+        assertTrue(JdbcMemberStore.isInMemory("jdbc:hsqldb:mem:octools"));
+        assertFalse(JdbcMemberStore.isInMemory("jdbc:h2:file:./data/cluster;AUTO_SERVER=TRUE"));
+        assertFalse(JdbcMemberStore.isInMemory("jdbc:h2:tcp://db:9092/octools"));
+        assertFalse(JdbcMemberStore.isInMemory("jdbc:postgresql://db:5432/octools"));
+    }
+
+    @Test
+    void testRenewUpdatesUrl() {
+        store.renew(a, NOW.plusSeconds(15));
+        ClusterMember moved = new ClusterMember("a", "http://a-2:8080");
+        store.renew(moved, NOW.plusSeconds(15));
+        assertEquals(List.of(moved), store.findLive(NOW));
+    }
+
+    @Test
+    void testRemovesLeavingAndExpiredMembers() {
+        store.renew(a, NOW.plusSeconds(15));
+        store.renew(b, NOW.minusSeconds(300));
+        assertEquals(1, store.removeExpired(NOW.minusSeconds(150)));
+        assertEquals(0, store.removeExpired(NOW.minusSeconds(150)));
+
+        store.remove("a");
+        assertEquals(List.of(), store.findLive(NOW));
+    }
+
+    @Test
+    void testSchemaCreationIsIdempotent() {
+        store.renew(a, NOW.plusSeconds(15));
+        new JdbcMemberStore(jdbc);
+        assertEquals(List.of(a), store.findLive(NOW));
+    }
+}
@@ -0,0 +1,84 @@
+package com.my.octools.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardRingTest {
+    private static final int APPLIANCES = 20_000;
+
+    private static List<ClusterMember> members(int count) {
+        List<ClusterMember> members = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            members.add(new ClusterMember("node-" + i, "http://node-" + i + ":8080"));
+        }
+        return members;
+    }
+
+    @Test
+    void testEmptyRingOwnsNothing() {
+        assertNull(ShardRing.EMPTY.owner("appliance-1"));
+        assertTrue(ShardRing.of(List.of(), 128).isEmpty());
+    }
+
+    @Test
+    void testSpreadsAppliancesEvenly() {
+        List<ClusterMember> members = members(4);
+        ShardRing ring = ShardRing.of(members, 128);
+        Map<ClusterMember, Integer> owned = new HashMap<>();
+        for (int i = 0; i < APPLIANCES; i++) {
+            owned.merge(ring.owner("appliance-" + i), 1, Integer::sum);
+        }
+        double shares = 0;
+        for (ClusterMember member : members) {
+            int count = owned.getOrDefault(member, 0);
+            assertTrue(count > APPLIANCES / 4 * 0.7 && count < APPLIANCES / 4 * 1.3, member + " owns " + count);
+            double share = ring.share(member);
+            assertEquals((double) count / APPLIANCES, share, 0.03);
+            shares += share;
+        }
+        assertEquals(1.0, shares, 1e-9);
+    }
+
+    @Test
+    void testSameOwnersRegardlessOfMemberOrder() {
+        List<ClusterMember> members = members(3);
+        ShardRing ring = ShardRing.of(members, 64);
+        ShardRing reversed = ShardRing.of(List.of(members.get(2), members.get(1), members.get(0)), 64);
+        for (int i = 0; i < 1_000; i++) {
+            assertEquals(ring.owner("appliance-" + i), reversed.owner("appliance-" + i));
+        }
+        assertEquals(members, reversed.getMembers());
+    }
+
+    @Test
+    void testJoiningMemberOnlyTakesAppliancesFromOthers() {
+        List<ClusterMember> members = members(4);
+        ShardRing before = ShardRing.of(members.subList(0, 3), 128);
+        ShardRing after = ShardRing.of(members, 128);
+        int moved = 0;
+        for (int i = 0; i < APPLIANCES; i++) {
+            String id = "appliance-" + i;
+            ClusterMember owner = after.owner(id);
+            if (!owner.equals(before.owner(id))) {
+                // an appliance only ever moves to the new member
+                assertEquals(members.get(3), owner);
+                moved++;
+            }
+        }
+        assertTrue(moved > APPLIANCES / 4 * 0.7 && moved < APPLIANCES / 4 * 1.3, "moved " + moved);
+    }
+
+    @Test
+    void testSingleMemberOwnsEverything() {
+        ClusterMember member = members(1).get(0);
+        ShardRing ring = ShardRing.of(List.of(member), 16);
+        assertEquals(member, ring.owner("appliance-1"));
+        assertEquals(1.0, ring.share(member));
+    }
+}
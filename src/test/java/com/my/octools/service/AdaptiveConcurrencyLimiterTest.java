@@ -0,0 +1,139 @@
+package com.my.octools.service;
+
+import com.my.octools.api.ApiException;
+import com.my.octools.config.ProcessorProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+    private final AtomicLong clock = new AtomicLong();
+    private ProcessorProperties.Limiter config;
+
+    @BeforeEach
+    void setup() {
+        config = new ProcessorProperties.Limiter();
+        config.setInitialLimit(2);
+        config.setMinLimit(1);
+        config.setMaxLimit(10);
+        config.setMaxQueue(2);
+    }
+
+    @Test
+    void testQueuesCallsBeyondLimitAndRejectsWhenQueueFull() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(config, clock::get);
+        List<CompletableFuture<String>> calls = new ArrayList<>();
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            CompletableFuture<String> call = new CompletableFuture<>();
+            calls.add(call);
+            results.add(limiter.submit(() -> call));
+        }
+
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(2, limiter.getQueueDepth());
+        assertEquals(1, limiter.getRejections());
+        CompletionException rejected = assertThrows(CompletionException.class, () -> results.get(4).join());
+        assertInstanceOf(RejectedExecutionException.class, rejected.getCause());
+
+        calls.get(0).complete("first");
+        assertEquals("first", results.get(0).join());
+        assertEquals(2, limiter.getInFlight());
+        assertEquals(1, limiter.getQueueDepth());
+    }
+
+    @Test
+    void testQueuedCallsThatCompleteImmediatelyDoNotNest() {
+        config.setInitialLimit(1);
+        config.setMaxLimit(1);
+        config.setMaxQueue(100_000);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(config, clock::get);
+        CompletableFuture<String> first = new CompletableFuture<>();
+        limiter.submit(() -> first);
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            results.add(limiter.submit(() -> CompletableFuture.failedFuture(new ApiException(404, "not found"))));
+        }
+        assertEquals(100_000, limiter.getQueueDepth());
+
+        // every queued call completes while it is started, which used to recurse once per call
+        first.complete("first");
+
+        assertTrue(results.stream().allMatch(CompletableFuture::isCompletedExceptionally));
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(0, limiter.getQueueDepth());
+    }
+
+    @Test
+    void testReactivePermitIsHeldUntilTheCallEndsOrIsCancelled() {
+        config.setInitialLimit(1);
+        config.setMaxLimit(1);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(config, clock::get);
+        AtomicInteger started = new AtomicInteger();
+        Disposable running = limiter.acquire(() -> Mono.fromFuture(new CompletableFuture<String>())).subscribe();
+        CompletableFuture<String> second = limiter.acquire(() -> {
+            started.incrementAndGet();
+            return Mono.just("second");
+        }).toFuture();
+        Disposable queued = limiter.acquire(() -> {
+            started.incrementAndGet();
+            return Mono.just("third");
+        }).subscribe();
+        assertEquals(1, limiter.getInFlight());
+        assertEquals(2, limiter.getQueueDepth());
+
+        // the cancelled queued call is never started, the cancelled running one frees its slot for the second
+        queued.dispose();
+        running.dispose();
+        assertEquals("second", second.join());
+        assertEquals(1, started.get());
+        assertEquals(0, limiter.getInFlight());
+        assertEquals(0, limiter.getQueueDepth());
+    }
+
+    @Test
+    void testOverloadShrinksLimitButOtherErrorsDoNot() {
+        config.setInitialLimit(10);
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(config, clock::get);
+
+        limiter.submit(() -> CompletableFuture.failedFuture(new ApiException(404, "not found")));
+        assertEquals(10, limiter.getLimit());
+
+        limiter.submit(() -> CompletableFuture.failedFuture(new ApiException(503, "unavailable")));
+        assertEquals(9, limiter.getLimit());
+
+        clock.addAndGet(1_000);
+        limiter.submit(() -> CompletableFuture.failedFuture(new TimeoutException()));
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    void testStableLatencyGrowsLimitWhileSaturated() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(config, clock::get);
+        for (int round = 0; round < 50; round++) {
+            List<CompletableFuture<String>> calls = new ArrayList<>();
+            int limit = limiter.getLimit();
+            for (int i = 0; i < limit; i++) {
+                CompletableFuture<String> call = new CompletableFuture<>();
+                calls.add(call);
+                limiter.submit(() -> call);
+            }
+            clock.addAndGet(1_000_000);
+            calls.forEach(call -> call.complete("ok"));
+        }
+        assertEquals(10, limiter.getLimit());
+        assertEquals(0, limiter.getInFlight());
+    }
+}
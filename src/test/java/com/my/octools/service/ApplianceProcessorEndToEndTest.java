@@ -0,0 +1,181 @@
+package com.my.octools.service;
+
+import com.my.octools.api.ApiClientImpl;
+import com.my.octools.api.FakeApplianceBackend;
+import com.my.octools.api.Latency;
+import com.my.octools.cluster.ClusterMember;
+import com.my.octools.cluster.ShardRing;
+import com.my.octools.config.ApiClientProperties;
+import com.my.octools.config.PipelineMode;
+import com.my.octools.config.ProcessorProperties;
+import com.my.octools.storage.InMemoryApplianceLogStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the processor with the real {@link ApiClientImpl} against a {@link FakeApplianceBackend}.
+ */
+class ApplianceProcessorEndToEndTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    private final List<ApplianceProcessor> processors = new ArrayList<>();
+    private FakeApplianceBackend backend;
+    private PageSizeController pageSize;
+
+    @AfterEach
+    void tearDown() {
+        processors.forEach(ApplianceProcessor::shutdown);
+        if (backend != null) {
+            backend.close();
+        }
+        executor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    private JobRun run(FakeApplianceBackend.Config config, boolean batching) throws IOException {
+        return run(config, batching, PipelineMode.QUEUE);
+    }
+
+    private JobRun run(FakeApplianceBackend.Config config, boolean batching, PipelineMode pipeline)
+            throws IOException {
+        backend = FakeApplianceBackend.start(config);
+        JobRun run = new JobRun(1, "test", Instant.now());
+        newProcessor(batching, ApplianceOwnership.ALL, pipeline).fetchAndProcessAllAppliances(run).join();
+        return run;
+    }
+
+    private ApplianceProcessor newProcessor(boolean batching, ApplianceOwnership ownership) {
+        return newProcessor(batching, ownership, PipelineMode.QUEUE);
+    }
+
+    private ApplianceProcessor newProcessor(boolean batching, ApplianceOwnership ownership, PipelineMode pipeline) {
+        ApiClientProperties apiProperties = new ApiClientProperties();
+        apiProperties.getBatch().setEnabled(batching);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        ApiClientImpl client = new ApiClientImpl(WebClient.create(backend.getBaseUrl()), apiProperties, scheduler,
+                registry);
+        ProcessorProperties properties = new ProcessorProperties();
+        properties.setPipeline(pipeline);
+        pageSize = new PageSizeController(properties.getPaging());
+        ApplianceProcessor processor = new ApplianceProcessor(client, new InMemoryApplianceLogStore()::save, executor,
+                scheduler, properties, new AdaptiveConcurrencyLimiter(properties.getLimiter()),
+                new ApplianceStateTable(properties.getState()), pageSize, ownership, registry);
+        processors.add(processor);
+        return processor;
+    }
+
+    @Test
+    void testProcessesEveryStaleApplianceOnceThroughBatchCalls() throws IOException {
+        JobRun run = run(new FakeApplianceBackend.Config()
+                .fleetSize(1_000)
+                .staleRatio(0.3)
+                .actionLatency(Latency.uniform(Duration.ofMillis(1), Duration.ofMillis(5))), true);
+
+        int stale = backend.getStaleCount();
+        assertTrue(stale > 250 && stale < 350, "stale appliances: " + stale);
+        // fast pages double the page size: 100, 200, 400 and the last 300 appliances in a page of 800
+        assertEquals(4, run.getPagesFetched());
+        assertEquals(100, run.getInitialPageSize());
+        assertEquals(800, run.getMaxPageSize());
+        assertEquals(1_000, run.getAppliancesFetched());
+        assertEquals(stale, run.getAppliancesFiltered());
+        assertEquals(stale, run.getAppliancesProcessed());
+        assertEquals(0, run.getFailures());
+        assertEquals(stale, backend.getDrains());
+        assertEquals(stale, backend.getRemediations());
+        assertTrue(backend.getApplianceLatency(50).compareTo(Duration.ofMillis(2)) >= 0);
+    }
+
+    @Test
+    void testProcessesEveryStaleApplianceThroughSingleCalls() throws IOException {
+        JobRun run = run(new FakeApplianceBackend.Config()
+                .fleetSize(300)
+                .staleRatio(0.5)
+                .batchSupported(false), true);
+
+        int stale = backend.getStaleCount();
+        assertEquals(stale, run.getAppliancesProcessed());
+        assertEquals(stale, backend.getDrains());
+        assertEquals(stale, backend.getRemediations());
+    }
+
+    @Test
+    void testLearnsPageSizeLimitOfBackend() throws IOException {
+        JobRun run = run(new FakeApplianceBackend.Config()
+                .fleetSize(2_000)
+                .staleRatio(0.1)
+                .maxPageSize(250), true);
+
+        // 100, 200, then 400 is rejected and the same cursor is fetched again with 200
+        assertNull(run.getError());
+        assertEquals(2_000, run.getAppliancesFetched());
+        assertEquals(400, run.getMaxPageSize());
+        assertEquals(200, run.getPageSize());
+        assertEquals(200, pageSize.getCeiling());
+        assertEquals(backend.getStaleCount(), run.getAppliancesProcessed());
+    }
+
+    @Test
+    void testReactivePipelineProcessesEveryStaleApplianceAndLearnsPageSizeLimit() throws IOException {
+        JobRun run = run(new FakeApplianceBackend.Config()
+                .fleetSize(2_000)
+                .staleRatio(0.3)
+                .maxPageSize(250)
+                .actionLatency(Latency.uniform(Duration.ofMillis(1), Duration.ofMillis(5))),
+                true, PipelineMode.REACTIVE);
+
+        // the same walk as the queue pipeline: 400 is rejected and the cursor is fetched again with 200
+        int stale = backend.getStaleCount();
+        assertNull(run.getError());
+        assertEquals(2_000, run.getAppliancesFetched());
+        assertEquals(400, run.getMaxPageSize());
+        assertEquals(200, pageSize.getCeiling());
+        assertEquals(stale, run.getAppliancesFiltered());
+        assertEquals(stale, run.getAppliancesProcessed());
+        assertEquals(0, run.getFailures());
+        assertEquals(stale, backend.getDrains());
+        assertEquals(stale, backend.getRemediations());
+    }
+
+    @Test
+    void testClusterMembersProcessDisjointShards() throws IOException {
+        backend = FakeApplianceBackend.start(new FakeApplianceBackend.Config()
+                .fleetSize(2_000)
+                .staleRatio(0.5));
+        ClusterMember a = new ClusterMember("node-a", "http://node-a:8080");
+        ClusterMember b = new ClusterMember("node-b", "http://node-b:8080");
+        ShardRing ring = ShardRing.of(List.of(a, b), 128);
+        JobRun runA = new JobRun(1, "test", Instant.now());
+        JobRun runB = new JobRun(1, "test", Instant.now());
+
+        CompletableFuture.allOf(
+                newProcessor(true, id -> a.equals(ring.owner(id))).fetchAndProcessAllAppliances(runA),
+                newProcessor(true, id -> b.equals(ring.owner(id))).fetchAndProcessAllAppliances(runB)).join();
+
+        // both walk the whole fleet, each drains its own shard and every stale appliance is drained once
+        int stale = backend.getStaleCount();
+        assertEquals(2_000, runA.getAppliancesFetched());
+        assertEquals(2_000, runB.getAppliancesFetched());
+        assertEquals(stale, runA.getAppliancesProcessed() + runB.getAppliancesProcessed());
+        assertEquals(runB.getAppliancesProcessed(), runA.getAppliancesNotOwned());
+        assertEquals(runA.getAppliancesProcessed(), runB.getAppliancesNotOwned());
+        assertTrue(runA.getAppliancesProcessed() > stale / 4, "node-a processed " + runA.getAppliancesProcessed());
+        assertTrue(runB.getAppliancesProcessed() > stale / 4, "node-b processed " + runB.getAppliancesProcessed());
+        assertEquals(stale, backend.getDrains());
+        assertEquals(stale, backend.getRemediations());
+    }
+}
@@ -1,9 +1,13 @@
 package com.my.octools.service;
 
 import com.my.octools.api.ApiClient;
+import com.my.octools.api.ApplianceFilter;
 import com.my.octools.api.entities.*;
+import com.my.octools.config.PipelineMode;
+import com.my.octools.config.ProcessorProperties;
 import com.my.octools.storage.ApplianceLog;
 import com.my.octools.storage.ApplianceLogRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -11,7 +15,6 @@ import org.mockito.ArgumentCaptor;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
@@ -24,29 +27,81 @@ class ApplianceProcessorTest {
     ApiClient client;
     ApplianceLogRepository logRepo;
     ScheduledExecutorService executor;
+    ApplianceStateTable stateTable;
+    SimpleMeterRegistry registry;
+    PageSizeController pageSize;
     ApplianceProcessor processor;
 
     @BeforeEach
     void setup() {
         client = mock(ApiClient.class);
+        // Filtered fetches go through the default method, which filters the page from fetchAppliances(after, first)
+        when(client.fetchAppliances(any(), anyInt(), any())).thenCallRealMethod();
         logRepo = mock(ApplianceLogRepository.class);
         executor = Executors.newSingleThreadScheduledExecutor();
-        processor = new ApplianceProcessor(client, logRepo, executor);
+        ProcessorProperties properties = new ProcessorProperties();
+        stateTable = new ApplianceStateTable(properties.getState());
+        registry = new SimpleMeterRegistry();
+        pageSize = new PageSizeController(properties.getPaging());
+        processor = new ApplianceProcessor(client, logRepo::save, executor, executor, properties,
+                new AdaptiveConcurrencyLimiter(properties.getLimiter()), stateTable, pageSize,
+                ApplianceOwnership.ALL, registry);
     }
 
-    @Test
-    void testFetchAndProcessAllAppliances() {
-        // Setup
+    private ApplianceProcessor reactiveProcessor() {
+        // Single attempts go through the default methods, which wrap the future methods the tests stub
+        when(client.fetchAppliancesOnce(any(), anyInt(), any(), any())).thenCallRealMethod();
+        when(client.drainOnce(any(), any())).thenCallRealMethod();
+        when(client.remediateOnce(any(), any())).thenCallRealMethod();
+        when(client.retrySpec(any())).thenCallRealMethod();
+        ProcessorProperties properties = new ProcessorProperties();
+        properties.setPipeline(PipelineMode.REACTIVE);
+        return new ApplianceProcessor(client, logRepo::save, executor, executor, properties,
+                new AdaptiveConcurrencyLimiter(properties.getLimiter()), stateTable, pageSize,
+                ApplianceOwnership.ALL, registry);
+    }
+
+    private static JobRun newRun() {
+        return new JobRun(1, "test", Instant.now());
+    }
+
+    private static Appliance live(String id) {
         Appliance appliance = new Appliance();
-        appliance.setId("appliance1");
+        appliance.setId(id);
         appliance.setOpStatus("LIVE");
-        appliance.setLastHeardFromOn(null);
+        return appliance;
+    }
 
+    private static AppliancePage page(String endCursor, boolean hasNextPage, Appliance... appliances) {
         PageInfo pageInfo = new PageInfo();
-        pageInfo.setHasNextPage(false);
+        pageInfo.setHasNextPage(hasNextPage);
+        pageInfo.setEndCursor(endCursor);
         AppliancePage page = new AppliancePage();
         page.setPageInfo(pageInfo);
-        page.setData(Collections.singletonList(appliance));
+        page.setData(Arrays.asList(appliances));
+        return page;
+    }
+
+    /**
+     * Two pages of one appliance each, where the drain of the first one stays pending until the returned future is
+     * completed.
+     */
+    private CompletableFuture<DrainResult> twoPagesWithPendingDrain() {
+        CompletableFuture<DrainResult> pendingDrain = new CompletableFuture<>();
+        when(client.fetchAppliances(isNull(), anyInt()))
+                .thenReturn(CompletableFuture.completedFuture(page("cursor1", true, live("appliance1"))));
+        when(client.fetchAppliances(eq("cursor1"), anyInt()))
+                .thenReturn(CompletableFuture.completedFuture(page(null, false, live("appliance2"))));
+        when(client.drain("appliance1")).thenReturn(pendingDrain);
+        when(client.drain("appliance2")).thenReturn(CompletableFuture.completedFuture(new DrainResult()));
+        when(client.remediate(anyString())).thenReturn(CompletableFuture.completedFuture(new RemediationResult()));
+        return pendingDrain;
+    }
+
+    @Test
+    void testFetchAndProcessAllAppliances() {
+        // Setup
+        AppliancePage page = page(null, false, live("appliance1"));
 
         DrainResult drainResult = new DrainResult();
         drainResult.setDrainId("drain1");
@@ -57,7 +112,7 @@ class ApplianceProcessorTest {
         remediationResult.setRemediationResult("success");
 
         // mocks
-        when(client.fetchAppliances(null))
+        when(client.fetchAppliances(isNull(), anyInt()))
                 .thenReturn(CompletableFuture.completedFuture(page));
         when(client.drain("appliance1"))
                 .thenReturn(CompletableFuture.completedFuture(drainResult));
@@ -65,13 +120,98 @@ class ApplianceProcessorTest {
                 .thenReturn(CompletableFuture.completedFuture(remediationResult));
 
         // Run the job synchronously
-        processor.fetchAndProcessAllAppliances().join();
+        processor.fetchAndProcessAllAppliances(newRun()).join();
 
         // Verify drain and remediate called
         verify(client).drain("appliance1");
         verify(client).remediate("appliance1");
     }
 
+    @Test
+    void testNextPageFetchedWhileDrainPending() {
+        CompletableFuture<DrainResult> pendingDrain = twoPagesWithPendingDrain();
+
+        CompletableFuture<Void> run = processor.fetchAndProcessAllAppliances(newRun());
+
+        // The second page is fetched and processed while the first drain is still outstanding
+        verify(client, timeout(5000)).remediate("appliance2");
+        verify(client).fetchAppliances(eq("cursor1"), anyInt());
+        assertFalse(run.isDone());
+
+        pendingDrain.complete(new DrainResult());
+        run.join();
+        verify(client).remediate("appliance1");
+    }
+
+    @Test
+    void testReactivePipelineFetchesNextPageWhileDrainPending() {
+        CompletableFuture<DrainResult> pendingDrain = twoPagesWithPendingDrain();
+
+        JobRun run = newRun();
+        CompletableFuture<Void> result = reactiveProcessor().fetchAndProcessAllAppliances(run);
+
+        verify(client, timeout(5000)).remediate("appliance2");
+        verify(client).fetchAppliances(eq("cursor1"), anyInt());
+        assertFalse(result.isDone());
+
+        pendingDrain.complete(new DrainResult());
+        result.join();
+        verify(client).remediate("appliance1");
+        assertEquals(2, run.getPagesFetched());
+        assertEquals(2, run.getAppliancesProcessed());
+        assertEquals(ApplianceStateTable.State.COOLDOWN, stateTable.getState("appliance1"));
+    }
+
+    @Test
+    void testReactivePipelineRecordsFailuresAndAbortsOnFailedPage() {
+        when(client.fetchAppliances(isNull(), anyInt()))
+                .thenReturn(CompletableFuture.completedFuture(page("cursor1", true, live("appliance1"))));
+        when(client.fetchAppliances(eq("cursor1"), anyInt()))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("Fetch failed")));
+        when(client.drain("appliance1"))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("Drain failed")));
+
+        JobRun run = newRun();
+        reactiveProcessor().fetchAndProcessAllAppliances(run).join();
+
+        // the failed page ends the walk, the appliance of the first page is still processed and fails on its own
+        verify(client, never()).remediate(anyString());
+        assertTrue(run.getError().contains("cursor1"));
+        assertEquals(1, run.getPagesFetched());
+        assertEquals(1, run.getFailures());
+        assertEquals(ApplianceStateTable.State.IDLE, stateTable.getState("appliance1"));
+        ArgumentCaptor<ApplianceLog> logCaptor = ArgumentCaptor.forClass(ApplianceLog.class);
+        verify(logRepo).save(logCaptor.capture());
+        assertEquals("PROCESS", logCaptor.getValue().getAction());
+        assertTrue(logCaptor.getValue().getMessage().contains("Drain failed"));
+    }
+
+    @Test
+    void testSkipsAppliancesInFlightOrCoolingDown() {
+        CompletableFuture<DrainResult> pendingDrain = new CompletableFuture<>();
+        when(client.fetchAppliances(isNull(), anyInt()))
+                .thenReturn(CompletableFuture.completedFuture(page(null, false, live("appliance1"))));
+        when(client.drain("appliance1")).thenReturn(pendingDrain);
+        when(client.remediate("appliance1")).thenReturn(CompletableFuture.completedFuture(new RemediationResult()));
+
+        CompletableFuture<Void> firstRun = processor.fetchAndProcessAllAppliances(newRun());
+        verify(client, timeout(5000)).drain("appliance1");
+
+        // still draining: the next run must not drain it again
+        processor.fetchAndProcessAllAppliances(newRun()).join();
+        assertEquals(ApplianceStateTable.State.DRAINING, stateTable.getState("appliance1"));
+
+        pendingDrain.complete(new DrainResult());
+        firstRun.join();
+        assertEquals(ApplianceStateTable.State.COOLDOWN, stateTable.getState("appliance1"));
+
+        // just remediated: skipped until the cooldown expires
+        processor.fetchAndProcessAllAppliances(newRun()).join();
+        verify(client, times(1)).drain("appliance1");
+        verify(client, times(1)).remediate("appliance1");
+        assertEquals(2, stateTable.getSuppressedCount());
+    }
+
     @Test
     void testDrainAndRemidiateSingleAppliance_handlesDrainFailure() {
         String applianceId = "appliance2";
@@ -82,7 +222,8 @@ class ApplianceProcessorTest {
         // mocks
         when(client.drain(applianceId)).thenReturn(failedFuture);
 
-        CompletableFuture<Void> result = processor.drainAndRemediateSingleAppliance(applianceId);
+        JobRun run = newRun();
+        CompletableFuture<Void> result = processor.drainAndRemediateSingleAppliance(applianceId, run);
 
         result.join();
 
@@ -97,6 +238,36 @@ class ApplianceProcessorTest {
         assertEquals("PROCESS", savedLog.getAction());
         assertFalse(savedLog.isSuccess());
         assertTrue(savedLog.getMessage().contains("Drain failed"));
+        assertEquals(1, run.getFailures());
+    }
+
+    @Test
+    void testEmptyRemediationFailsTheApplianceInBothPipelines() {
+        when(client.fetchAppliances(isNull(), anyInt()))
+                .thenReturn(CompletableFuture.completedFuture(page(null, false, live("appliance1"))));
+        when(client.drain("appliance1")).thenReturn(CompletableFuture.completedFuture(new DrainResult()));
+        // the call succeeds without a result, which the reactive pipeline sees as an empty Mono
+        when(client.remediate("appliance1")).thenReturn(CompletableFuture.completedFuture(null));
+
+        JobRun queued = newRun();
+        processor.fetchAndProcessAllAppliances(queued).join();
+        JobRun reactive = newRun();
+        reactiveProcessor().fetchAndProcessAllAppliances(reactive).join();
+
+        for (JobRun run : List.of(queued, reactive)) {
+            assertEquals(0, run.getAppliancesProcessed());
+            assertEquals(1, run.getFailures());
+        }
+        ArgumentCaptor<ApplianceLog> logCaptor = ArgumentCaptor.forClass(ApplianceLog.class);
+        verify(logRepo, times(4)).save(logCaptor.capture());
+        List<ApplianceLog> logs = logCaptor.getAllValues();
+        for (int i = 0; i < 4; i += 2) {
+            assertEquals("DRAIN", logs.get(i).getAction());
+            assertEquals("PROCESS", logs.get(i + 1).getAction());
+            assertFalse(logs.get(i + 1).isSuccess());
+            assertTrue(logs.get(i + 1).getMessage().contains("remediate call for appliance1 returned no result"));
+        }
+        assertEquals(ApplianceStateTable.State.IDLE, stateTable.getState("appliance1"));
     }
 
     @Test
@@ -122,16 +293,33 @@ class ApplianceProcessorTest {
         applianceNonLive.setOpStatus("OFFLINE");
         applianceNonLive.setLastHeardFromOn(null);
 
-        List<Appliance> applianceList = Arrays.asList(
-                applianceLiveNullLastHeard,
-                applianceLiveOldLastHeard,
-                applianceLiveRecentLastHeard,
-                applianceNonLive
-        );
+        AppliancePage page = page(null, false, applianceLiveNullLastHeard, applianceLiveOldLastHeard,
+                applianceLiveRecentLastHeard, applianceNonLive);
+        when(client.fetchAppliances(isNull(), anyInt())).thenReturn(CompletableFuture.completedFuture(page));
+        when(client.drain(anyString())).thenReturn(CompletableFuture.completedFuture(new DrainResult()));
+        when(client.remediate(anyString())).thenReturn(CompletableFuture.completedFuture(new RemediationResult()));
 
-        List<Appliance> filtered = processor.getFilteredAppliances(applianceList);
+        JobRun run = newRun();
+        processor.fetchAndProcessAllAppliances(run).join();
 
         // Assert only appliances with opStatus LIVE and lastHeardFromOn == null or older than 10 minutes are included
-        assertEquals(2, filtered.size());
+        verify(client).drain("appliance1");
+        verify(client).drain("appliance2");
+        verify(client, times(2)).drain(anyString());
+        assertEquals(4, run.getAppliancesFetched());
+        assertEquals(2, run.getAppliancesFiltered());
+        assertEquals(2, registry.get("octools.processor.filter").tag("result", "pass").counter().count());
+        assertEquals(2, registry.get("octools.processor.filter").tag("result", "reject").counter().count());
+    }
+
+    @Test
+    void testStaleFilterUsesOneCutoff() {
+        Instant now = Instant.parse("2025-01-01T12:00:00Z");
+        ApplianceFilter filter = ApplianceProcessor.staleFilter(now);
+
+        assertEquals(Instant.parse("2025-01-01T11:50:00Z"), filter.getCutoff());
+        assertTrue(filter.isSilent(null));
+        assertTrue(filter.isSilent(Instant.parse("2025-01-01T11:49:59Z")));
+        assertFalse(filter.isSilent(Instant.parse("2025-01-01T11:50:00Z")));
     }
 }
@@ -0,0 +1,81 @@
+package com.my.octools.service;
+
+import com.my.octools.config.ProcessorProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.my.octools.service.ApplianceStateTable.State.*;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ApplianceStateTableTest {
+    private final AtomicLong clock = new AtomicLong();
+    private ApplianceStateTable table;
+
+    @BeforeEach
+    void setup() {
+        ProcessorProperties.State config = new ProcessorProperties.State();
+        config.setInFlightTtl(Duration.ofMinutes(10));
+        config.setCooldown(Duration.ofMinutes(15));
+        config.setFailureCooldown(Duration.ZERO);
+        table = new ApplianceStateTable(config, clock::get);
+    }
+
+    private void advance(Duration duration) {
+        clock.addAndGet(duration.toNanos());
+    }
+
+    @Test
+    void testFullCycleSuppressesUntilCooldownExpires() {
+        assertTrue(table.tryStart("a1"));
+        assertEquals(DRAINING, table.getState("a1"));
+        assertFalse(table.tryStart("a1"));
+
+        table.remediating("a1");
+        assertFalse(table.tryStart("a1"));
+
+        table.completed("a1");
+        assertEquals(COOLDOWN, table.getState("a1"));
+        advance(Duration.ofMinutes(14));
+        assertFalse(table.tryStart("a1"));
+
+        advance(Duration.ofMinutes(1));
+        assertEquals(IDLE, table.getState("a1"));
+        assertTrue(table.tryStart("a1"));
+
+        assertEquals(1, table.getSuppressedCount(DRAINING));
+        assertEquals(1, table.getSuppressedCount(REMEDIATING));
+        assertEquals(1, table.getSuppressedCount(COOLDOWN));
+        assertEquals(3, table.getSuppressedCount());
+    }
+
+    @Test
+    void testFailureWithoutCooldownIsRetriedImmediately() {
+        assertTrue(table.tryStart("a1"));
+        table.failed("a1");
+        assertEquals(IDLE, table.getState("a1"));
+        assertTrue(table.tryStart("a1"));
+    }
+
+    @Test
+    void testStuckInFlightStateExpires() {
+        assertTrue(table.tryStart("a1"));
+        advance(Duration.ofMinutes(10));
+        assertEquals(IDLE, table.getState("a1"));
+        assertTrue(table.tryStart("a1"));
+    }
+
+    @Test
+    void testEvictExpiredOnlyDropsExpiredEntries() {
+        table.tryStart("a1");
+        advance(Duration.ofMinutes(5));
+        table.tryStart("a2");
+        advance(Duration.ofMinutes(5));
+
+        assertEquals(1, table.evictExpired());
+        assertEquals(1, table.count(DRAINING));
+        assertEquals(DRAINING, table.getState("a2"));
+    }
+}
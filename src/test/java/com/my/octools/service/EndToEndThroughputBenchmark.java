@@ -0,0 +1,133 @@
+package com.my.octools.service;
+
+import com.my.octools.api.ApiClientImpl;
+import com.my.octools.api.FakeApplianceBackend;
+import com.my.octools.api.Latency;
+import com.my.octools.config.ApiClientProperties;
+import com.my.octools.config.ExecutionMode;
+import com.my.octools.config.PipelineMode;
+import com.my.octools.config.ProcessorProperties;
+import com.my.octools.storage.InMemoryApplianceLogStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs a full {@code fetchAndProcessAllAppliances} through the real {@link ApiClientImpl} and WebClient against
+ * a {@link FakeApplianceBackend}, and reports appliances per second, p50/p99 per-appliance latency and peak heap.
+ * <p>
+ * Run with {@code ./gradlew benchmark --tests '*EndToEndThroughputBenchmark'}. Defaults: 100k appliances, half of
+ * them stale, 20ms/200ms (p50/p99) log-normal drain/remediate latency, 50ms page latency, no injected faults.
+ * Override with {@code -Dbench.fleet=}, {@code -Dbench.staleRatio=}, {@code -Dbench.actionLatency=},
+ * {@code -Dbench.fetchLatency=} (see {@link Latency#parse(String)}), {@code -Dbench.throttleRate=},
+ * {@code -Dbench.errorRate=}, {@code -Dbench.batch=false}, {@code -Dbench.mode=virtual} and
+ * {@code -Dbench.pipeline=reactive}. Injected faults are retried with the client's backoff of several seconds, so
+ * keep their rates low. {@code queueVersusReactivePipeline} walks the fleet with both pipelines and prints their
+ * ratio ({@code --tests '*EndToEndThroughputBenchmark.queueVersusReactivePipeline'}).
+ * <p>
+ * The backend runs in the same JVM, so the peak heap includes its per-appliance bookkeeping (16 bytes per
+ * appliance).
+ */
+@Tag("benchmark")
+class EndToEndThroughputBenchmark {
+
+    @Test
+    void fullFleetWalk() throws IOException, InterruptedException {
+        walk(PipelineMode.valueOf(System.getProperty("bench.pipeline", "queue").toUpperCase()));
+    }
+
+    /**
+     * Walks the fleet with the queue and then with the reactive pipeline, each against a fresh backend, and
+     * prints the reactive figures relative to the queue ones (below 1 means faster, lower latency or less heap).
+     */
+    @Test
+    void queueVersusReactivePipeline() throws IOException, InterruptedException {
+        Result queue = walk(PipelineMode.QUEUE);
+        Result reactive = walk(PipelineMode.REACTIVE);
+        System.out.printf("reactive/queue time=%.2f p50=%.2f p99=%.2f peakHeap=%.2f%n",
+                reactive.seconds / queue.seconds, (double) reactive.p50Millis / Math.max(1, queue.p50Millis),
+                (double) reactive.p99Millis / Math.max(1, queue.p99Millis), reactive.peakHeapMb / queue.peakHeapMb);
+    }
+
+    private Result walk(PipelineMode pipeline) throws IOException, InterruptedException {
+        FakeApplianceBackend.Config config = new FakeApplianceBackend.Config()
+                .fleetSize(Integer.getInteger("bench.fleet", 100_000))
+                .staleRatio(Double.parseDouble(System.getProperty("bench.staleRatio", "0.5")))
+                .actionLatency(Latency.parse(System.getProperty("bench.actionLatency", "lognormal:20ms:200ms")))
+                .fetchLatency(Latency.parse(System.getProperty("bench.fetchLatency", "fixed:50ms")))
+                .throttleRate(Double.parseDouble(System.getProperty("bench.throttleRate", "0")))
+                .errorRate(Double.parseDouble(System.getProperty("bench.errorRate", "0")));
+        boolean batching = Boolean.parseBoolean(System.getProperty("bench.batch", "true"));
+        ProcessorProperties properties = new ProcessorProperties();
+        properties.setExecutionMode(ExecutionMode.valueOf(System.getProperty("bench.mode", "platform").toUpperCase()));
+        properties.setPipeline(pipeline);
+        ApiClientProperties apiProperties = new ApiClientProperties();
+        apiProperties.getBatch().setEnabled(batching);
+
+        ExecutorService executor = properties.getExecutionMode().newExecutor(properties.getPlatformThreads());
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(properties.getTimeoutSchedulerThreads());
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        try (FakeApplianceBackend backend = FakeApplianceBackend.start(config)) {
+            ApiClientImpl client = new ApiClientImpl(WebClient.builder()
+                    .baseUrl(backend.getBaseUrl())
+                    .build(), apiProperties, scheduler, registry);
+            ApplianceProcessor processor = new ApplianceProcessor(client, new InMemoryApplianceLogStore()::save,
+                    executor, scheduler, properties, new AdaptiveConcurrencyLimiter(properties.getLimiter()),
+                    new ApplianceStateTable(properties.getState()), new PageSizeController(properties.getPaging()),
+                    ApplianceOwnership.ALL, registry);
+
+            System.gc();
+            HeapSampler heap = new HeapSampler();
+            heap.start();
+            JobRun run = new JobRun(1, "benchmark", Instant.now());
+            long start = System.nanoTime();
+            try {
+                processor.fetchAndProcessAllAppliances(run).join();
+            } finally {
+                heap.interrupt();
+                heap.join();
+                processor.shutdown();
+            }
+            Result result = new Result((System.nanoTime() - start) / 1e9, backend.getApplianceLatency(50).toMillis(),
+                    backend.getApplianceLatency(99).toMillis(), heap.getPeakMb());
+
+            System.out.printf("fleet=%d stale=%d batch=%s mode=%s pipeline=%s time=%.2fs fleet=%.0f appliances/s "
+                            + "processed=%.0f appliances/s p50=%dms p99=%dms peakHeap=%.1fMB%n",
+                    run.getAppliancesFetched(), run.getAppliancesFiltered(), batching, properties.getExecutionMode(),
+                    properties.getPipeline(), result.seconds, run.getAppliancesFetched() / result.seconds,
+                    run.getAppliancesProcessed() / result.seconds, result.p50Millis, result.p99Millis,
+                    result.peakHeapMb);
+            System.out.printf("processed=%d failures=%d fetches=%d throttled=%d errors=%d%n",
+                    run.getAppliancesProcessed(), run.getFailures(), backend.getFetches(), backend.getThrottled(),
+                    backend.getFailed());
+            assertEquals(backend.getStaleCount(), run.getAppliancesProcessed() + run.getFailures());
+            return result;
+        } finally {
+            executor.shutdown();
+            scheduler.shutdown();
+        }
+    }
+
+    private static final class Result {
+        private final double seconds;
+        private final long p50Millis;
+        private final long p99Millis;
+        private final double peakHeapMb;
+
+        private Result(double seconds, long p50Millis, long p99Millis, double peakHeapMb) {
+            this.seconds = seconds;
+            this.p50Millis = p50Millis;
+            this.p99Millis = p99Millis;
+            this.peakHeapMb = peakHeapMb;
+        }
+    }
+}
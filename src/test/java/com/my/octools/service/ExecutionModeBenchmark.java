@@ -0,0 +1,168 @@
+package com.my.octools.service;
+
+import com.my.octools.api.ApiClient;
+import com.my.octools.api.entities.Appliance;
+import com.my.octools.api.entities.AppliancePage;
+import com.my.octools.api.entities.DrainResult;
+import com.my.octools.api.entities.PageInfo;
+import com.my.octools.api.entities.RemediationResult;
+import com.my.octools.config.ExecutionMode;
+import com.my.octools.config.PipelineMode;
+import com.my.octools.config.ProcessorProperties;
+import com.my.octools.storage.InMemoryApplianceLogStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Processes a fleet where every appliance is stale in both execution modes, and with the reactive pipeline,
+ * and reports throughput, peak thread count and peak heap.
+ * <p>
+ * Run with {@code ./gradlew benchmark --tests '*ExecutionModeBenchmark'}, adding {@code -PjavaVersion=21}
+ * for the virtual thread mode (skipped on older runtimes). The fleet size defaults to 10k and the simulated
+ * per-call backend latency to 50ms; override with {@code -Dbench.appliances=} and {@code -Dbench.latencyMs=}.
+ */
+@Tag("benchmark")
+class ExecutionModeBenchmark {
+    private static final int PAGE_SIZE = 100;
+
+    @Test
+    void platformThreads() throws InterruptedException {
+        run(ExecutionMode.PLATFORM, PipelineMode.QUEUE);
+    }
+
+    @Test
+    void virtualThreads() throws InterruptedException {
+        assumeTrue(ExecutionMode.VIRTUAL.isSupported(), "virtual threads need Java 21, run with -PjavaVersion=21");
+        run(ExecutionMode.VIRTUAL, PipelineMode.QUEUE);
+    }
+
+    @Test
+    void reactivePipeline() throws InterruptedException {
+        run(ExecutionMode.PLATFORM, PipelineMode.REACTIVE);
+    }
+
+    private static void run(ExecutionMode mode, PipelineMode pipeline) throws InterruptedException {
+        int appliances = Integer.getInteger("bench.appliances", 10_000);
+        long latencyMs = Long.getLong("bench.latencyMs", 50);
+
+        ProcessorProperties properties = new ProcessorProperties();
+        properties.setExecutionMode(mode);
+        properties.setPipeline(pipeline);
+        properties.setMaxInFlightAppliances(appliances);
+        // measure the executors, not the limiter or the page size controller
+        properties.getLimiter().setInitialLimit(appliances);
+        properties.getLimiter().setMaxLimit(appliances);
+        properties.getPaging().setMinSize(PAGE_SIZE);
+        properties.getPaging().setMaxSize(PAGE_SIZE);
+
+        ExecutorService executor = mode.newExecutor(properties.getPlatformThreads());
+        ScheduledExecutorService timeoutScheduler = Executors.newScheduledThreadPool(properties.getTimeoutSchedulerThreads());
+        InMemoryApplianceLogStore logStore = new InMemoryApplianceLogStore();
+        ApplianceProcessor processor = new ApplianceProcessor(new BlockingBackend(appliances, latencyMs, executor),
+                logStore::save, executor, timeoutScheduler, properties,
+                new AdaptiveConcurrencyLimiter(properties.getLimiter()), new ApplianceStateTable(properties.getState()),
+                new PageSizeController(properties.getPaging()), ApplianceOwnership.ALL, new SimpleMeterRegistry());
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        System.gc();
+        threads.resetPeakThreadCount();
+        HeapSampler heap = new HeapSampler();
+        heap.start();
+        long start = System.nanoTime();
+        try {
+            processor.fetchAndProcessAllAppliances(new JobRun(1, "benchmark", Instant.now())).join();
+        } finally {
+            heap.interrupt();
+            heap.join();
+            processor.shutdown();
+            executor.shutdown();
+            timeoutScheduler.shutdown();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%-8s pipeline=%-8s appliances=%d latency=%dms time=%.2fs throughput=%.0f appliances/s "
+                        + "peakThreads=%d peakHeap=%.1fMB%n",
+                mode, pipeline, appliances, latencyMs, seconds, appliances / seconds,
+                threads.getPeakThreadCount(), heap.getPeakMb());
+        // one DRAIN and one REMEDIATE row per appliance
+        assertEquals(2L * appliances, logStore.size());
+    }
+
+    /**
+     * Backend that serves one page of stale appliances per call and simulates drain/remediate as blocking calls,
+     * so every in-flight call occupies a worker thread of the execution mode under test.
+     */
+    private static final class BlockingBackend implements ApiClient {
+        private final int appliances;
+        private final long latencyMs;
+        private final ExecutorService executor;
+
+        private BlockingBackend(int appliances, long latencyMs, ExecutorService executor) {
+            this.appliances = appliances;
+            this.latencyMs = latencyMs;
+            this.executor = executor;
+        }
+
+        @Override
+        public CompletableFuture<AppliancePage> fetchAppliances(String after, int first) {
+            int from = after == null ? 0 : Integer.parseInt(after);
+            int to = Math.min(appliances, from + first);
+            List<Appliance> data = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                Appliance appliance = new Appliance();
+                appliance.setId("appliance-" + i);
+                appliance.setOpStatus("LIVE");
+                data.add(appliance);
+            }
+            PageInfo pageInfo = new PageInfo();
+            pageInfo.setHasNextPage(to < appliances);
+            pageInfo.setEndCursor(Integer.toString(to));
+            AppliancePage page = new AppliancePage();
+            page.setPageInfo(pageInfo);
+            page.setData(data);
+            return CompletableFuture.completedFuture(page);
+        }
+
+        @Override
+        public CompletableFuture<DrainResult> drain(String id) {
+            return CompletableFuture.supplyAsync(() -> {
+                pause();
+                DrainResult result = new DrainResult();
+                result.setDrainId("drain-" + id);
+                return result;
+            }, executor);
+        }
+
+        @Override
+        public CompletableFuture<RemediationResult> remediate(String id) {
+            return CompletableFuture.supplyAsync(() -> {
+                pause();
+                RemediationResult result = new RemediationResult();
+                result.setRemediationId("remediation-" + id);
+                return result;
+            }, executor);
+        }
+
+        private void pause() {
+            try {
+                Thread.sleep(latencyMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
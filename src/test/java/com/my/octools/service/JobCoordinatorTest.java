@@ -0,0 +1,118 @@
+package com.my.octools.service;
+
+import com.my.octools.config.OverlapPolicy;
+import com.my.octools.config.ProcessorProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class JobCoordinatorTest {
+    private static final Clock CLOCK = Clock.fixed(Instant.parse("2025-01-01T00:00:00Z"), ZoneOffset.UTC);
+
+    ApplianceProcessor processor;
+    ProcessorProperties.Job config;
+
+    @BeforeEach
+    void setup() {
+        processor = mock(ApplianceProcessor.class);
+        config = new ProcessorProperties.Job();
+    }
+
+    private JobCoordinator coordinator() {
+        return new JobCoordinator(processor, config, CLOCK);
+    }
+
+    @Test
+    void testSkipsTickWhileRunInProgress() {
+        CompletableFuture<Void> firstRun = new CompletableFuture<>();
+        when(processor.fetchAndProcessAllAppliances(any()))
+                .thenReturn(firstRun, CompletableFuture.completedFuture(null));
+        JobCoordinator coordinator = coordinator();
+
+        JobRun run = coordinator.trigger(JobCoordinator.TRIGGER_STARTUP).orElseThrow();
+        assertEquals(Optional.empty(), coordinator.trigger(JobCoordinator.TRIGGER_SCHEDULE));
+        assertEquals(1, coordinator.getSkippedTicks());
+        assertEquals(JobRun.Status.RUNNING, run.getStatus());
+
+        firstRun.complete(null);
+        assertEquals(JobRun.Status.SUCCEEDED, run.getStatus());
+        assertEquals(Optional.empty(), coordinator.getCurrentRun());
+
+        JobRun next = coordinator.trigger(JobCoordinator.TRIGGER_SCHEDULE).orElseThrow();
+        assertEquals(2, next.getId());
+        verify(processor, times(2)).fetchAndProcessAllAppliances(any());
+    }
+
+    @Test
+    void testCoalescesMissedTicksIntoOneRun() {
+        config.setOverlapPolicy(OverlapPolicy.COALESCE);
+        CompletableFuture<Void> firstRun = new CompletableFuture<>();
+        CompletableFuture<Void> secondRun = new CompletableFuture<>();
+        when(processor.fetchAndProcessAllAppliances(any())).thenReturn(firstRun, secondRun);
+        JobCoordinator coordinator = coordinator();
+
+        coordinator.trigger(JobCoordinator.TRIGGER_STARTUP);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(Optional.empty(), coordinator.trigger(JobCoordinator.TRIGGER_SCHEDULE));
+        }
+        assertEquals(2, coordinator.getCoalescedTicks());
+        verify(processor, times(1)).fetchAndProcessAllAppliances(any());
+
+        firstRun.complete(null);
+
+        JobRun current = coordinator.getCurrentRun().orElseThrow();
+        assertEquals(2, current.getId());
+        assertEquals(JobCoordinator.TRIGGER_COALESCED, current.getTrigger());
+        secondRun.complete(null);
+        assertEquals(Optional.empty(), coordinator.getCurrentRun());
+        verify(processor, times(2)).fetchAndProcessAllAppliances(any());
+    }
+
+    @Test
+    void testRecordsFailedRun() {
+        when(processor.fetchAndProcessAllAppliances(any()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("boom")));
+        JobCoordinator coordinator = coordinator();
+
+        JobRun run = coordinator.trigger(JobCoordinator.TRIGGER_SCHEDULE).orElseThrow();
+
+        assertEquals(JobRun.Status.FAILED, run.getStatus());
+        assertEquals("boom", run.getError());
+        assertEquals(Optional.of(run), coordinator.getRun(1));
+    }
+
+    @Test
+    void testKeepsBoundedHistoryNewestFirst() {
+        config.setHistorySize(2);
+        when(processor.fetchAndProcessAllAppliances(any())).thenReturn(CompletableFuture.completedFuture(null));
+        JobCoordinator coordinator = coordinator();
+
+        for (int i = 0; i < 3; i++) {
+            coordinator.trigger(JobCoordinator.TRIGGER_SCHEDULE);
+        }
+
+        List<Long> ids = coordinator.getRecentRuns(10).stream().map(JobRun::getId).collect(Collectors.toList());
+        assertEquals(List.of(3L, 2L), ids);
+        assertEquals(1, coordinator.getRecentRuns(1).size());
+        assertEquals(Optional.empty(), coordinator.getRun(1));
+    }
+
+    @Test
+    void testSchedulePeriodFromCron() {
+        ZonedDateTime from = ZonedDateTime.now(CLOCK);
+        assertEquals(Duration.ofMinutes(5), JobCoordinator.schedulePeriod("0 */5 * * * *", from));
+        assertEquals(Duration.ofHours(1), JobCoordinator.schedulePeriod("0 0 * * * *", from));
+    }
+}
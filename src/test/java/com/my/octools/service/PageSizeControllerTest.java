@@ -0,0 +1,138 @@
+package com.my.octools.service;
+
+import com.my.octools.api.ApiException;
+import com.my.octools.config.ProcessorProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageSizeControllerTest {
+    private static final long MS = 1_000_000;
+
+    private ProcessorProperties.Paging config;
+
+    @BeforeEach
+    void setup() {
+        config = new ProcessorProperties.Paging();
+        config.setInitialSize(100);
+        config.setMinSize(10);
+        config.setMaxSize(1000);
+        config.setTargetLatency(Duration.ofSeconds(1));
+        config.setMaxPayload(DataSize.ofMegabytes(1));
+    }
+
+    @Test
+    void testGrowsWhileFastUpToMaxSize() {
+        PageSizeController controller = new PageSizeController(config);
+        for (int i = 0; i < 10; i++) {
+            int size = controller.getPageSize();
+            controller.onPage(size, size, true, 50 * MS, 0);
+        }
+        assertEquals(1000, controller.getPageSize());
+    }
+
+    @Test
+    void testSettlesNearTargetLatency() {
+        PageSizeController controller = new PageSizeController(config);
+        // latency grows linearly with the page: 50ms fixed plus 2ms per appliance, 1s is reached at 475
+        for (int i = 0; i < 20; i++) {
+            int size = controller.getPageSize();
+            controller.onPage(size, size, true, (50 + 2L * size) * MS, 0);
+        }
+        int settled = controller.getPageSize();
+        assertTrue(settled >= 380 && settled <= 600, "settled at " + settled);
+    }
+
+    @Test
+    void testShrinksForLargePayloads() {
+        PageSizeController controller = new PageSizeController(config);
+        controller.onPage(100, 100, true, 10 * MS, DataSize.ofMegabytes(4).toBytes());
+        assertEquals(50, controller.getPageSize());
+    }
+
+    @Test
+    void testLastPageIsIgnored() {
+        PageSizeController controller = new PageSizeController(config);
+        controller.onPage(100, 7, false, 5_000 * MS, 0);
+        assertEquals(100, controller.getPageSize());
+        assertEquals(1000, controller.getCeiling());
+    }
+
+    @Test
+    void testLearnsCeilingFromShortPagesAndRejections() {
+        PageSizeController controller = new PageSizeController(config);
+        controller.onPage(100, 100, true, 10 * MS, 0);
+        controller.onPage(200, 150, true, 10 * MS, 0);
+        assertEquals(150, controller.getCeiling());
+        assertEquals(150, controller.getPageSize());
+
+        assertTrue(controller.onError(150, new CompletionException(new ApiException(413, "too large"))));
+        assertEquals(75, controller.getCeiling());
+        assertEquals(75, controller.getPageSize());
+    }
+
+    @Test
+    void testBadRequestCapsOnlyOnceASmallerPageSucceeds() {
+        PageSizeController controller = new PageSizeController(config);
+        assertTrue(controller.onError(100, new ApiException(400, "bad cursor")));
+        assertEquals(50, controller.getPageSize());
+        assertEquals(1000, controller.getCeiling());
+        assertTrue(controller.onError(50, new ApiException(400, "bad cursor")));
+        assertEquals(1000, controller.getCeiling());
+
+        controller.startRun();
+        controller.onPage(25, 25, true, 10 * MS, 0);
+        assertEquals(1000, controller.getCeiling());
+
+        assertTrue(controller.onError(50, new ApiException(400, "first too large")));
+        controller.onPage(25, 25, true, 10 * MS, 0);
+        assertEquals(25, controller.getCeiling());
+    }
+
+    @Test
+    void testCeilingIsForgottenAfterTtl() {
+        config.setCeilingTtl(Duration.ofMinutes(10));
+        AtomicLong now = new AtomicLong();
+        PageSizeController controller = new PageSizeController(config, now::get);
+        controller.onError(100, new ApiException(413, "too large"));
+        assertEquals(50, controller.getCeiling());
+
+        now.addAndGet(Duration.ofMinutes(9).toNanos());
+        controller.startRun();
+        assertEquals(50, controller.getCeiling());
+
+        now.addAndGet(Duration.ofMinutes(1).toNanos());
+        controller.startRun();
+        assertEquals(1000, controller.getCeiling());
+        assertEquals(50, controller.getPageSize());
+        controller.onPage(50, 50, true, 10 * MS, 0);
+        assertEquals(100, controller.getPageSize());
+    }
+
+    @Test
+    void testHalvesOnOverloadButNotOnOtherErrors() {
+        PageSizeController controller = new PageSizeController(config);
+        assertTrue(controller.onError(100, new TimeoutException()));
+        assertEquals(50, controller.getPageSize());
+        assertTrue(controller.onError(50, new ApiException(503, "unavailable")));
+        assertEquals(25, controller.getPageSize());
+        assertFalse(controller.onError(25, new ApiException(404, "not found")));
+        assertEquals(25, controller.getPageSize());
+        assertEquals(1000, controller.getCeiling());
+    }
+
+    @Test
+    void testGivesUpAtMinSize() {
+        config.setInitialSize(10);
+        PageSizeController controller = new PageSizeController(config);
+        assertFalse(controller.onError(10, new TimeoutException()));
+        assertEquals(10, controller.getPageSize());
+    }
+}
@@ -0,0 +1,82 @@
+package com.my.octools.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedRingBufferTest {
+
+    @Test
+    void testRoundsCapacityUpAndRejectsWhenFull() {
+        BoundedRingBuffer<Integer> ring = new BoundedRingBuffer<>(3);
+
+        assertEquals(4, ring.capacity());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(i));
+        }
+        assertFalse(ring.offer(4));
+        assertEquals(4, ring.size());
+        assertEquals(Integer.valueOf(0), ring.poll());
+        assertTrue(ring.offer(4));
+    }
+
+    @Test
+    void testDrainsInOfferOrderAcrossLaps() {
+        BoundedRingBuffer<Integer> ring = new BoundedRingBuffer<>(4);
+        List<Integer> drained = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            assertTrue(ring.offer(i));
+            if (i % 3 == 2) {
+                assertEquals(3, ring.drainTo(drained, 3));
+            }
+        }
+        ring.drainTo(drained, Integer.MAX_VALUE);
+
+        assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), drained);
+        assertNull(ring.poll());
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    void testConcurrentProducersHandOverEveryElementOnce() throws InterruptedException {
+        BoundedRingBuffer<Integer> ring = new BoundedRingBuffer<>(64);
+        int producers = 8;
+        int perProducer = 20_000;
+        ExecutorService pool = Executors.newFixedThreadPool(producers);
+        for (int p = 0; p < producers; p++) {
+            int first = p * perProducer;
+            pool.submit(() -> {
+                for (int i = first; i < first + perProducer; i++) {
+                    while (!ring.offer(i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+        }
+
+        BitSet seen = new BitSet();
+        int received = 0;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (received < producers * perProducer && System.nanoTime() < deadline) {
+            Integer value = ring.poll();
+            if (value == null) {
+                Thread.yield();
+            } else {
+                assertFalse(seen.get(value), "received twice: " + value);
+                seen.set(value);
+                received++;
+            }
+        }
+        pool.shutdown();
+
+        assertEquals(producers * perProducer, received);
+        assertTrue(ring.isEmpty());
+    }
+}
@@ -0,0 +1,134 @@
+package com.my.octools.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarApplianceLogStoreTest {
+    ColumnarApplianceLogStore store;
+    InMemoryApplianceLogStore reference;
+    Instant now;
+
+    @BeforeEach
+    void setup() {
+        // tiny chunks so queries cross chunk boundaries
+        store = new ColumnarApplianceLogStore(LogRetentionPolicy.unbounded(), 3);
+        reference = new InMemoryApplianceLogStore();
+        now = Instant.now();
+    }
+
+    @Test
+    void testRoundTripsEveryColumn() {
+        store.save(new ApplianceLog("appliance1", "DRAIN", true, "DrainResult{drainId='d1'}", now));
+        store.save(new ApplianceLog("appliance2", "PROCESS", false, null, now.plusNanos(1)));
+
+        List<ApplianceLog> result = store.findAll();
+
+        assertEquals(2, result.size());
+        ApplianceLog failure = result.get(0);
+        assertEquals("appliance2", failure.getApplianceId());
+        assertEquals("PROCESS", failure.getAction());
+        assertFalse(failure.isSuccess());
+        assertNull(failure.getMessage());
+        assertEquals(now.plusNanos(1), failure.getTimestamp());
+        ApplianceLog drain = result.get(1);
+        assertEquals("DrainResult{drainId='d1'}", drain.getMessage());
+        assertTrue(drain.isSuccess());
+        assertEquals(1, drain.getSequence());
+    }
+
+    @Test
+    void testQueriesMatchSkipListStoreWithOutOfOrderWrites() {
+        Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            // timestamps jitter backwards like concurrent writers would
+            Instant timestamp = now.plusMillis(i).minusMillis(random.nextInt(20));
+            boolean success = random.nextInt(5) != 0;
+            String message = success ? "ok " + i : "Drain failed";
+            saveBoth(new ApplianceLog("appliance" + random.nextInt(7), success ? "DRAIN" : "PROCESS",
+                    success, message, timestamp));
+        }
+
+        assertEquals(messages(reference.findAll()), messages(walk(store, 17)));
+        assertEquals(messages(reference.findBySuccessFalse()), messages(store.findBySuccessFalse()));
+        assertEquals(messages(reference.findByApplianceId("appliance3")), messages(store.findByApplianceId("appliance3")));
+        Instant cutoff = now.plusMillis(250);
+        assertEquals(messages(reference.findByTimestampAfter(cutoff)), messages(store.findByTimestampAfter(cutoff)));
+        assertEquals(messages(reference.findBySuccessFalse(null, 5)), messages(store.findBySuccessFalse(null, 5)));
+        Instant from = now.plusMillis(100);
+        Instant to = now.plusMillis(300);
+        List<ApplianceLog> range = reference.findByTimestampBetween(from, to, null, 1000);
+        assertEquals(messages(range), messages(store.findByTimestampBetween(from, to, null, 1000)));
+        LogCursor middle = LogCursor.of(range.get(range.size() / 2));
+        assertEquals(messages(reference.findByTimestampBetween(from, to, middle, 20)),
+                messages(store.findByTimestampBetween(from, to, middle, 20)));
+    }
+
+    @Test
+    void testEvictExpiredDropsWholeChunks() {
+        store = new ColumnarApplianceLogStore(new LogRetentionPolicy(10, Duration.ofHours(1), 0), 3);
+        for (int i = 0; i < 8; i++) {
+            store.save(new ApplianceLog("appliance1", "PROCESS", false, "old " + i, now.minus(2, ChronoUnit.HOURS)));
+        }
+        for (int i = 0; i < 20; i++) {
+            store.save(new ApplianceLog("appliance" + (i % 2), "DRAIN", i % 4 != 0, "new " + i, now.plusMillis(i)));
+        }
+
+        assertEquals(16, store.evictExpired(now));
+
+        assertEquals(12, store.size());
+        assertEquals(8, store.getEvictedCount(EvictionReason.AGE));
+        assertEquals(8, store.getEvictedCount(EvictionReason.MAX_ROWS));
+        assertEquals("new 19", store.findAll(null, 1).get(0).getMessage());
+        assertEquals(12, store.findAll().size());
+        assertEquals(3, store.findBySuccessFalse().size());
+        assertEquals(6, store.findByApplianceId("appliance0").size());
+        assertEquals(28, store.findAll().get(0).getSequence());
+    }
+
+    @Test
+    void testRejectsActionsBeyondTheDictionaryWithoutWritingThem() {
+        for (int i = 0; i < 256; i++) {
+            store.save(new ApplianceLog("appliance1", "ACTION" + i, true, "ok", now.plusNanos(i)));
+        }
+
+        assertThrows(IllegalStateException.class,
+                () -> store.save(new ApplianceLog("appliance1", "ACTION256", true, "ok", now.plusSeconds(1))));
+        assertThrows(IllegalStateException.class,
+                () -> store.save(new ApplianceLog("appliance1", "ACTION257", true, "ok", now.plusSeconds(1))));
+
+        store.save(new ApplianceLog("appliance1", "ACTION255", false, "known", now.plusSeconds(2)));
+        assertEquals(257, store.size());
+        assertEquals("ACTION255", store.findAll(null, 1).get(0).getAction());
+    }
+
+    private void saveBoth(ApplianceLog log) {
+        store.save(log);
+        reference.save(new ApplianceLog(log.getApplianceId(), log.getAction(), log.isSuccess(), log.getMessage(),
+                log.getTimestamp()));
+    }
+
+    private static List<ApplianceLog> walk(ApplianceLogRepository repository, int pageSize) {
+        List<ApplianceLog> all = new ArrayList<>();
+        LogCursor cursor = null;
+        List<ApplianceLog> page;
+        do {
+            page = repository.findAll(cursor, pageSize);
+            all.addAll(page);
+            cursor = page.isEmpty() ? null : LogCursor.of(page.get(page.size() - 1));
+        } while (page.size() == pageSize);
+        return all;
+    }
+
+    private static List<String> messages(List<ApplianceLog> logs) {
+        return logs.stream().map(log -> log.getTimestamp() + " " + log.getMessage()).toList();
+    }
+}
@@ -0,0 +1,173 @@
+package com.my.octools.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InMemoryApplianceLogStoreTest {
+    InMemoryApplianceLogStore store;
+    Instant now;
+
+    @BeforeEach
+    void setup() {
+        store = new InMemoryApplianceLogStore();
+        now = Instant.now();
+    }
+
+    @Test
+    void testFindByApplianceIdUsesIndexInNewestFirstOrder() {
+        store.save(new ApplianceLog("appliance1", "DRAIN", true, "ok", now.minus(2, ChronoUnit.MINUTES)));
+        store.save(new ApplianceLog("appliance2", "DRAIN", true, "ok", now.minus(1, ChronoUnit.MINUTES)));
+        store.save(new ApplianceLog("appliance1", "REMEDIATE", true, "ok", now));
+
+        List<ApplianceLog> result = store.findByApplianceId("appliance1");
+
+        assertEquals(2, result.size());
+        assertEquals("REMEDIATE", result.get(0).getAction());
+        assertEquals("DRAIN", result.get(1).getAction());
+        assertTrue(store.findByApplianceId("unknown").isEmpty());
+    }
+
+    @Test
+    void testFindBySuccessFalseOnlyReturnsFailures() {
+        store.save(new ApplianceLog("appliance1", "DRAIN", true, "ok", now.minus(1, ChronoUnit.MINUTES)));
+        store.save(new ApplianceLog("appliance2", "PROCESS", false, "Drain failed", now));
+
+        List<ApplianceLog> result = store.findBySuccessFalse();
+
+        assertEquals(1, result.size());
+        assertEquals("appliance2", result.get(0).getApplianceId());
+    }
+
+    @Test
+    void testIndexesStayConsistentUnderConcurrentWrites() throws InterruptedException {
+        ExecutorService writers = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 4000; i++) {
+            int n = i;
+            writers.submit(() -> store.save(new ApplianceLog("appliance" + (n % 10), "DRAIN", n % 4 != 0,
+                    "msg" + n, now.plusNanos(n))));
+        }
+        writers.shutdown();
+        assertTrue(writers.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(4000, store.findAll().size());
+        assertEquals(1000, store.findBySuccessFalse().size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(400, store.findByApplianceId("appliance" + i).size());
+        }
+    }
+
+    @Test
+    void testCursorPagingWalksEveryEntryOnce() {
+        for (int i = 0; i < 25; i++) {
+            // pairs of entries share a timestamp so the tie-breakers are exercised
+            store.save(new ApplianceLog("appliance" + (i % 3), "DRAIN", true, "msg" + i, now.plusSeconds(i / 2)));
+        }
+
+        List<ApplianceLog> seen = new ArrayList<>();
+        LogCursor cursor = null;
+        List<ApplianceLog> page;
+        do {
+            page = store.findAll(cursor, 10);
+            seen.addAll(page);
+            cursor = page.isEmpty() ? null : LogCursor.decode(LogCursor.of(page.get(page.size() - 1)).encode());
+        } while (page.size() == 10);
+
+        assertEquals(25, seen.size());
+        assertEquals(25, new HashSet<>(seen).size());
+        assertEquals(store.findAll(), seen);
+    }
+
+    @Test
+    void testFindByTimestampAfterExcludesCutoff() {
+        store.save(new ApplianceLog("appliance1", "DRAIN", true, "old", now.minus(10, ChronoUnit.MINUTES)));
+        store.save(new ApplianceLog("appliance1", "DRAIN", true, "at cutoff", now));
+        store.save(new ApplianceLog("appliance1", "REMEDIATE", true, "new", now.plusSeconds(1)));
+
+        assertEquals(1, store.findByTimestampAfter(now).size());
+        List<ApplianceLog> page = store.findByTimestampAfter(now.minus(1, ChronoUnit.HOURS), null, 2);
+        assertEquals(2, page.size());
+        List<ApplianceLog> rest = store.findByTimestampAfter(now.minus(1, ChronoUnit.HOURS), LogCursor.of(page.get(1)), 2);
+        assertEquals(1, rest.size());
+        assertEquals("old", rest.get(0).getMessage());
+    }
+
+    @Test
+    void testFindByTimestampBetweenIncludesFromAndExcludesTo() {
+        store.save(new ApplianceLog("appliance1", "DRAIN", true, "before", now.minusNanos(1)));
+        store.save(new ApplianceLog("appliance2", "DRAIN", true, "at from", now));
+        store.save(new ApplianceLog("appliance1", "DRAIN", true, "inside", now.plusSeconds(30)));
+        store.save(new ApplianceLog("", "DRAIN", true, "at to", now.plusSeconds(60)));
+
+        List<ApplianceLog> range = store.findByTimestampBetween(now, now.plusSeconds(60), null, 10);
+        assertEquals(List.of("inside", "at from"), range.stream().map(ApplianceLog::getMessage).toList());
+        List<ApplianceLog> rest = store.findByTimestampBetween(now, now.plusSeconds(60),
+                LogCursor.of(range.get(0)), 10);
+        assertEquals(List.of("at from"), rest.stream().map(ApplianceLog::getMessage).toList());
+        assertTrue(store.findByTimestampBetween(now, now.plusSeconds(60), LogCursor.of(rest.get(0)), 10).isEmpty());
+        assertTrue(store.findByTimestampBetween(now, now, null, 10).isEmpty());
+    }
+
+    @Test
+    void testEvictExpiredDropsOldestByAgeAndRowCount() {
+        store = new InMemoryApplianceLogStore(new LogRetentionPolicy(2, Duration.ofHours(1), 0));
+        store.save(new ApplianceLog("appliance1", "PROCESS", false, "too old", now.minus(2, ChronoUnit.HOURS)));
+        store.save(new ApplianceLog("appliance1", "DRAIN", true, "oldest kept", now.minus(3, ChronoUnit.MINUTES)));
+        store.save(new ApplianceLog("appliance2", "DRAIN", true, "ok", now.minus(2, ChronoUnit.MINUTES)));
+        store.save(new ApplianceLog("appliance2", "REMEDIATE", true, "ok", now.minus(1, ChronoUnit.MINUTES)));
+
+        assertEquals(2, store.evictExpired(now));
+
+        assertEquals(2, store.size());
+        assertEquals(1, store.getEvictedCount(EvictionReason.AGE));
+        assertEquals(1, store.getEvictedCount(EvictionReason.MAX_ROWS));
+        assertTrue(store.findByApplianceId("appliance1").isEmpty());
+        assertTrue(store.findBySuccessFalse().isEmpty());
+        assertEquals(2, store.findByApplianceId("appliance2").size());
+        assertEquals(1, store.getIndexedApplianceCount());
+    }
+
+    @Test
+    void testEvictingEveryEntryOfAnApplianceDropsItsIndex() {
+        store = new InMemoryApplianceLogStore(new LogRetentionPolicy(0, Duration.ofHours(1), 1));
+        for (int i = 0; i < 100; i++) {
+            store.save(new ApplianceLog("appliance" + i, "DRAIN", true, "ok", now.minus(2, ChronoUnit.HOURS)));
+            store.save(new ApplianceLog("appliance" + i, "DRAIN", true, "ok", now.minus(90, ChronoUnit.MINUTES)));
+        }
+        store.save(new ApplianceLog("appliance0", "DRAIN", true, "ok", now));
+        assertEquals(100, store.getIndexedApplianceCount());
+
+        assertEquals(99, store.evictExpired(now));
+
+        assertEquals(1, store.getIndexedApplianceCount());
+        assertEquals(1, store.findByApplianceId("appliance0").size());
+        assertTrue(store.findByApplianceId("appliance1").isEmpty());
+        assertEquals(101, store.getEvictedCount(EvictionReason.APPLIANCE_CAP));
+    }
+
+    @Test
+    void testPerApplianceCapEvictsOnSave() {
+        store = new InMemoryApplianceLogStore(new LogRetentionPolicy(0, null, 2));
+        store.save(new ApplianceLog("appliance1", "PROCESS", false, "first", now.minus(3, ChronoUnit.MINUTES)));
+        store.save(new ApplianceLog("appliance1", "DRAIN", true, "second", now.minus(2, ChronoUnit.MINUTES)));
+        store.save(new ApplianceLog("appliance1", "REMEDIATE", true, "third", now.minus(1, ChronoUnit.MINUTES)));
+        store.save(new ApplianceLog("appliance2", "DRAIN", true, "other", now));
+
+        assertEquals(3, store.size());
+        assertEquals(List.of("third", "second"),
+                store.findByApplianceId("appliance1").stream().map(ApplianceLog::getMessage).toList());
+        assertTrue(store.findBySuccessFalse().isEmpty());
+        assertEquals(1, store.getEvictedCount(EvictionReason.APPLIANCE_CAP));
+    }
+}
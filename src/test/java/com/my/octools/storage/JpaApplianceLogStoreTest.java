@@ -0,0 +1,198 @@
+package com.my.octools.storage;
+
+import com.my.octools.api.ApplianceLogService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// the writer thread commits its own transactions, so the test must not hold one open
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class JpaApplianceLogStoreTest {
+    @Autowired
+    ApplianceLogEntityRepository repository;
+
+    JpaApplianceLogStore store;
+    InMemoryApplianceLogStore reference;
+    Instant now;
+
+    @BeforeEach
+    void setup() {
+        store = new JpaApplianceLogStore(repository, LogRetentionPolicy.unbounded(), 50, 100);
+        reference = new InMemoryApplianceLogStore();
+        now = Instant.now();
+    }
+
+    @AfterEach
+    void cleanup() {
+        store.close();
+        repository.deleteAllInBatch();
+    }
+
+    @Test
+    void testRoundTripsEveryColumnAndAssignsSequence() {
+        List<ApplianceLog> notified = new ArrayList<>();
+        store.addListener(notified::add);
+        ApplianceLog drain = new ApplianceLog("appliance1", "DRAIN", true, "DrainResult{drainId='d1'}", now);
+        store.save(drain);
+        store.save(new ApplianceLog("appliance2", "PROCESS", false, null, now.minusNanos(1)));
+        store.flush();
+
+        List<ApplianceLog> logs = store.findAll();
+        assertEquals(2, logs.size());
+        ApplianceLog read = logs.get(0);
+        assertEquals("appliance1", read.getApplianceId());
+        assertEquals("DRAIN", read.getAction());
+        assertTrue(read.isSuccess());
+        assertEquals("DrainResult{drainId='d1'}", read.getMessage());
+        assertEquals(now, read.getTimestamp());
+        assertEquals(drain.getSequence(), read.getSequence());
+        assertTrue(drain.getSequence() > 0);
+        assertNull(logs.get(1).getMessage());
+        assertEquals(List.of(drain), notified.subList(0, 1));
+        assertEquals(2, store.size());
+    }
+
+    @Test
+    void testReadsBackItsOwnWritesRightAfterWriting() {
+        ApplianceLogService service = new ApplianceLogService(store, store, new LogRollup(Duration.ofHours(1), 5),
+                new LogVersions(false));
+        for (int i = 0; i < 200; i++) {
+            store.write(new ApplianceLog("appliance" + (i % 3), "DRAIN", true, "msg" + i, now.plusNanos(i)));
+        }
+
+        List<ApplianceLog> newest = service.getAllLogs(0, 1);
+
+        assertEquals("msg199", newest.get(0).getMessage());
+        assertEquals(200, store.findAll().size());
+    }
+
+    @Test
+    void testRejectsTimestampsNoRowCanHoldAndClampsQueryBounds() {
+        Instant far = Instant.parse("2300-01-01T00:00:00Z");
+        assertThrows(IllegalArgumentException.class,
+                () -> store.save(new ApplianceLog("appliance1", "DRAIN", true, null, far)));
+        assertThrows(IllegalArgumentException.class,
+                () -> store.save(new ApplianceLog("appliance1", "DRAIN", true, null, Instant.EPOCH.minus(
+                        Duration.ofDays(300 * 365)))));
+        store.save(new ApplianceLog("appliance1", "DRAIN", true, "kept", now));
+        store.flush();
+
+        assertEquals(List.of("kept"), messages(store.findByTimestampBetween(Instant.MIN, far, null, 10)));
+        assertEquals(List.of("kept"), messages(store.findByTimestampAfter(Instant.MIN, null, 10)));
+        assertEquals(List.of("kept"), messages(new LogQueryPlanner(store, null)
+                .find(new LogQuery(null, null, null, Instant.MIN, Instant.MAX), null, 10)));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    void testQueriesMatchSkipListStoreWithOutOfOrderWrites() {
+        Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            // timestamps jitter backwards like concurrent writers would
+            Instant timestamp = now.plusMillis(i).minusMillis(random.nextInt(20));
+            boolean success = random.nextInt(5) != 0;
+            String message = success ? "ok " + i : "Drain failed " + i;
+            ApplianceLog log = new ApplianceLog("appliance" + random.nextInt(7), success ? "DRAIN" : "PROCESS",
+                    success, message, timestamp);
+            reference.save(log);
+            store.save(new ApplianceLog(log.getApplianceId(), log.getAction(), success, message, timestamp));
+        }
+        store.flush();
+
+        assertEquals(messages(reference.findAll()), messages(walk(17)));
+        assertEquals(messages(reference.findBySuccessFalse()), messages(store.findBySuccessFalse()));
+        assertEquals(messages(reference.findByApplianceId("appliance3")),
+                messages(store.findByApplianceId("appliance3")));
+        Instant cutoff = now.plusMillis(250);
+        assertEquals(messages(reference.findByTimestampAfter(cutoff)), messages(store.findByTimestampAfter(cutoff)));
+        assertEquals(messages(reference.findBySuccessFalse(null, 5)), messages(store.findBySuccessFalse(null, 5)));
+        Instant from = now.plusMillis(100);
+        Instant to = now.plusMillis(300);
+        List<ApplianceLog> range = reference.findByTimestampBetween(from, to, null, 1000);
+        assertEquals(messages(range), messages(store.findByTimestampBetween(from, to, null, 1000)));
+        LogCursor middle = LogCursor.of(range.get(range.size() / 2));
+        assertEquals(messages(reference.findByTimestampBetween(from, to, middle, 20)),
+                messages(store.findByTimestampBetween(from, to, middle, 20)));
+        assertTrue(store.findAll(null, 0).isEmpty());
+        assertTrue(store.getBatchesWritten() >= 500 / 50);
+    }
+
+    @Test
+    void testEvictExpiredDeletesByAgeAndRowCount() {
+        store.close();
+        store = new JpaApplianceLogStore(repository, new LogRetentionPolicy(5, Duration.ofHours(1), 0), 50, 100);
+        for (int i = 0; i < 3; i++) {
+            store.save(new ApplianceLog("appliance1", "DRAIN", true, "old" + i, now.minus(2, ChronoUnit.HOURS)));
+        }
+        for (int i = 0; i < 8; i++) {
+            store.save(new ApplianceLog("appliance1", "DRAIN", true, "new" + i, now.plusSeconds(i)));
+        }
+        store.flush();
+
+        assertEquals(6, store.evictExpired(now));
+
+        assertEquals(List.of("new7", "new6", "new5", "new4", "new3"), messages(store.findAll()));
+        assertEquals(5, store.size());
+        assertEquals(3, store.getEvictedCount(EvictionReason.AGE));
+        assertEquals(3, store.getEvictedCount(EvictionReason.MAX_ROWS));
+    }
+
+    @Test
+    void testPerApplianceCapDeletesOldestAfterWrite() {
+        store.close();
+        store = new JpaApplianceLogStore(repository, new LogRetentionPolicy(0, null, 2), 50, 100);
+        for (int i = 0; i < 4; i++) {
+            store.save(new ApplianceLog("appliance1", "DRAIN", true, "msg" + i, now.plusSeconds(i)));
+        }
+        store.save(new ApplianceLog("appliance2", "DRAIN", true, "other", now));
+        store.flush();
+
+        assertEquals(List.of("msg3", "msg2"), messages(store.findByApplianceId("appliance1")));
+        assertEquals(1, store.findByApplianceId("appliance2").size());
+        assertEquals(2, store.getEvictedCount(EvictionReason.APPLIANCE_CAP));
+        assertEquals(3, store.size());
+    }
+
+    @Test
+    void testCloseWritesBufferedEntriesAndRejectsLaterSaves() {
+        for (int i = 0; i < 80; i++) {
+            store.save(new ApplianceLog("appliance" + (i % 3), "DRAIN", true, "msg" + i, now.plusMillis(i)));
+        }
+        store.close();
+
+        assertEquals(80, repository.count());
+        assertThrows(IllegalStateException.class,
+                () -> store.save(new ApplianceLog("appliance1", "DRAIN", true, "late", now)));
+    }
+
+    private List<ApplianceLog> walk(int pageSize) {
+        List<ApplianceLog> seen = new ArrayList<>();
+        LogCursor cursor = null;
+        List<ApplianceLog> page;
+        do {
+            page = store.findAll(cursor, pageSize);
+            seen.addAll(page);
+            cursor = page.isEmpty() ? null : LogCursor.decode(LogCursor.of(page.get(page.size() - 1)).encode());
+        } while (page.size() == pageSize);
+        return seen;
+    }
+
+    private static List<String> messages(List<ApplianceLog> logs) {
+        return logs.stream().map(ApplianceLog::getMessage).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,134 @@
+package com.my.octools.storage;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Compares the write throughput and page latency of the skip-list store with the JPA store on an H2 file database,
+ * configured like the {@code jpa} profile.
+ * <p>
+ * Run with {@code ./gradlew benchmark --tests '*JpaLogStoreThroughputBenchmark'}. Rows per run default to 200000
+ * and can be overridden with {@code -Dbench.rows=1000000}, batch sizes with {@code -Dbench.batchSizes=1,100,500}.
+ * Save throughput of the JPA store counts until the rows are committed, not until {@code save} returns.
+ */
+@Tag("benchmark")
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:file:./build/benchmark/octools-logs",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.jdbc.batch_size=500",
+        "spring.jpa.properties.hibernate.order_inserts=true"})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class JpaLogStoreThroughputBenchmark {
+    private static final String[] ACTIONS = {"DRAIN", "REMEDIATE", "PROCESS"};
+    private static final int APPLIANCES = 50_000;
+    private static final Instant START = Instant.parse("2025-01-01T00:00:00Z");
+    private static final int PAGE_SIZE = 100;
+    private static final int PAGES = 200;
+
+    @Autowired
+    ApplianceLogEntityRepository repository;
+
+    @Test
+    void compareWithSkipListStore() throws InterruptedException {
+        int rows = Integer.getInteger("bench.rows", 200_000);
+        List<Integer> batchSizes = Arrays.stream(System.getProperty("bench.batchSizes", "1,100,500").split(","))
+                .map(String::trim)
+                .map(Integer::parseInt)
+                .toList();
+        System.out.printf("%-12s %8s %14s %14s %14s%n", "store", "writers", "saves/s", "page p50 us", "page p99 us");
+        for (int writers : new int[]{1, 8}) {
+            report("skiplist", writers, rows, InMemoryApplianceLogStore::new);
+            for (int batchSize : batchSizes) {
+                report("jpa/" + batchSize, writers, rows, () -> {
+                    repository.deleteAllInBatch();
+                    return new JpaApplianceLogStore(repository, LogRetentionPolicy.unbounded(), batchSize, 10_000);
+                });
+            }
+        }
+    }
+
+    private static void report(String name, int writers, int rows, Supplier<ApplianceLogRepository> factory)
+            throws InterruptedException {
+        ApplianceLogRepository store = factory.get();
+        AtomicLong row = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(writers);
+        long start = System.nanoTime();
+        for (int w = 0; w < writers; w++) {
+            Thread writer = new Thread(() -> {
+                long i;
+                while ((i = row.getAndIncrement()) < rows) {
+                    store.save(row(i));
+                }
+                done.countDown();
+            });
+            writer.start();
+        }
+        done.await();
+        if (store instanceof JpaApplianceLogStore) {
+            ((JpaApplianceLogStore) store).flush();
+        }
+        double savesPerSecond = rows / ((System.nanoTime() - start) / 1e9);
+
+        long[] latencies = pageLatencies(store);
+        System.out.printf("%-12s %8d %14.0f %14.1f %14.1f%n", name, writers, savesPerSecond,
+                latencies[latencies.length / 2] / 1e3, latencies[latencies.length * 99 / 100] / 1e3);
+        if (store instanceof JpaApplianceLogStore) {
+            ((JpaApplianceLogStore) store).close();
+        }
+    }
+
+    /**
+     * Walks the newest pages by cursor, then reads the failures and one appliance's entries, like the log API.
+     */
+    private static long[] pageLatencies(ApplianceLogRepository store) {
+        List<Long> latencies = new ArrayList<>();
+        LogCursor cursor = null;
+        for (int i = 0; i < PAGES; i++) {
+            long start = System.nanoTime();
+            List<ApplianceLog> page = store.findAll(cursor, PAGE_SIZE);
+            latencies.add(System.nanoTime() - start);
+            if (page.isEmpty()) {
+                break;
+            }
+            cursor = LogCursor.of(page.get(page.size() - 1));
+        }
+        for (int i = 0; i < PAGES; i++) {
+            long start = System.nanoTime();
+            store.findBySuccessFalse(null, PAGE_SIZE);
+            store.findByApplianceId(applianceId(i), null, PAGE_SIZE);
+            store.findByTimestampAfter(START.plusMillis(i), null, PAGE_SIZE);
+            latencies.add((System.nanoTime() - start) / 3);
+        }
+        return latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    private static String applianceId(long i) {
+        return "appliance-" + (i * 31L) % APPLIANCES;
+    }
+
+    /**
+     * @return row {@code i} shaped like the processor's output, one millisecond after row {@code i - 1}
+     */
+    private static ApplianceLog row(long i) {
+        boolean success = i % 10 != 0;
+        String action = success ? ACTIONS[(int) (i % 2)] : ACTIONS[2];
+        String message = success
+                ? "DrainResult{drainId='" + Long.toHexString(i * 0x9E3779B97F4A7C15L) + "', estimatedTimeToDrain='5m'}"
+                : "Drain API error: HTTP 50" + (i % 4);
+        return new ApplianceLog(applianceId(i), action, success, message, START.plusMillis(i));
+    }
+}
@@ -0,0 +1,203 @@
+package com.my.octools.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogQueryPlannerTest {
+    CountingStore store;
+    LogRollup rollup;
+    LogQueryPlanner planner;
+    Instant now;
+
+    @BeforeEach
+    void setup() {
+        store = new CountingStore();
+        rollup = new LogRollup(Duration.ofHours(1), 10);
+        store.addListener(rollup);
+        planner = new LogQueryPlanner(store, rollup);
+        now = Instant.now();
+        Random random = new Random(7);
+        for (int i = 0; i < 3000; i++) {
+            boolean success = random.nextInt(10) != 0;
+            String action = random.nextBoolean() ? "DRAIN" : "REMEDIATE";
+            store.save(new ApplianceLog("appliance" + random.nextInt(50), action, success,
+                    success ? "ok" : "Drain failed", now.minusMillis(3000 - i)));
+        }
+        store.reads.set(0);
+    }
+
+    @Test
+    void testResultsMatchFilteringEveryEntry() {
+        Random random = new Random(11);
+        for (int i = 0; i < 200; i++) {
+            Instant from = random.nextBoolean() ? now.minusMillis(random.nextInt(3000)) : null;
+            Instant to = random.nextBoolean() && from == null ? now.minusMillis(random.nextInt(3000)) : null;
+            if (from != null && random.nextBoolean()) {
+                to = from.plusMillis(1 + random.nextInt(2000));
+            }
+            LogQuery query = new LogQuery(
+                    random.nextBoolean() ? "appliance" + random.nextInt(50) : null,
+                    random.nextBoolean() ? "DRAIN" : null,
+                    random.nextInt(3) == 0 ? null : random.nextBoolean(),
+                    from, to);
+            int count = 1 + random.nextInt(40);
+
+            List<ApplianceLog> expected = store.findAll().stream().filter(query::matches).collect(Collectors.toList());
+            assertEquals(sequences(expected.subList(0, Math.min(count, expected.size()))),
+                    sequences(planner.find(query, null, count)), query.toString());
+            assertEquals(sequences(expected), sequences(walk(query, count)), query.toString());
+        }
+    }
+
+    @Test
+    void testPicksMostSelectivePath() {
+        Instant from = now.minusSeconds(60);
+        assertEquals(LogQueryPlanner.AccessPath.APPLIANCE,
+                planner.plan(new LogQuery("appliance1", null, null, null, null), now).getPath());
+        assertEquals(LogQueryPlanner.AccessPath.FAILURES,
+                planner.plan(new LogQuery(null, "DRAIN", false, null, null), now).getPath());
+        assertEquals(LogQueryPlanner.AccessPath.TIME_RANGE,
+                planner.plan(new LogQuery(null, "DRAIN", true, from, null), now).getPath());
+        assertEquals(LogQueryPlanner.AccessPath.FULL_SCAN,
+                planner.plan(new LogQuery(null, "DRAIN", true, null, null), now).getPath());
+
+        // about 300 failures in the range against about 60 entries per appliance
+        LogQueryPlanner.Plan plan = planner.plan(new LogQuery("appliance1", null, false, from, null), now);
+        assertEquals(LogQueryPlanner.AccessPath.APPLIANCE, plan.getPath());
+        assertTrue(plan.getEstimatedRows() > 0 && plan.getEstimatedRows() < 300, plan.toString());
+        assertEquals(LogQueryPlanner.AccessPath.FAILURES,
+                planner.plan(new LogQuery(null, null, false, from, now), now).getPath());
+    }
+
+    @Test
+    void testStopsReadingOnceCountMatches() {
+        List<ApplianceLog> logs = planner.find(new LogQuery(null, "DRAIN", null, null, null), null, 5);
+
+        assertEquals(5, logs.size());
+        assertTrue(store.reads.get() <= 64, "read " + store.reads.get());
+    }
+
+    @Test
+    void testLowerBoundEndsIndexScan() {
+        Instant from = now.minusMillis(500);
+        // about 50 failures are newer than from, so one batch reaches past it
+        List<ApplianceLog> logs = planner.find(new LogQuery(null, null, false, from, null), null, 60);
+
+        assertFalse(logs.isEmpty());
+        assertTrue(logs.size() < 60);
+        assertTrue(logs.stream().allMatch(log -> !log.isSuccess() && !log.getTimestamp().isBefore(from)));
+        assertTrue(store.reads.get() <= 64, "read " + store.reads.get());
+    }
+
+    @Test
+    void testRejectsEmptyRange() {
+        assertThrows(IllegalArgumentException.class, () -> new LogQuery(null, null, null, now, now));
+    }
+
+    @Test
+    void testClampsExtremeBoundsForEveryEngine() throws IOException {
+        Path directory = Files.createTempDirectory("planner-bounds");
+        SegmentLogStore segment = new SegmentLogStore(directory, 1024, Duration.ofMillis(10),
+                LogRetentionPolicy.unbounded());
+        try {
+            for (ApplianceLogRepository engine : List.of(new InMemoryApplianceLogStore(),
+                    new ColumnarApplianceLogStore(), segment)) {
+                for (int i = 0; i < 3; i++) {
+                    engine.save(new ApplianceLog("appliance" + (i % 2), "DRAIN", i != 1, "ok", now.minusSeconds(i)));
+                }
+                LogQueryPlanner unplanned = new LogQueryPlanner(engine, null);
+                String name = engine.getClass().getSimpleName();
+
+                assertEquals(3, unplanned.find(new LogQuery(null, null, null, Instant.MIN, Instant.MAX), null, 10)
+                        .size(), name);
+                assertEquals(3, unplanned.find(new LogQuery(null, null, null, Instant.MIN, null), null, 10)
+                        .size(), name);
+                assertEquals(3, unplanned.find(new LogQuery(null, null, null, null, Instant.MAX), null, 10)
+                        .size(), name);
+                assertEquals(2, unplanned.find(new LogQuery("appliance0", null, null, Instant.MIN, Instant.MAX),
+                        null, 10).size(), name);
+                assertEquals(1, unplanned.find(new LogQuery(null, null, false, Instant.MIN, Instant.MAX), null, 10)
+                        .size(), name);
+                assertTrue(unplanned.find(new LogQuery(null, null, null, Instant.MIN, now.minusSeconds(60)), null, 10)
+                        .isEmpty(), name);
+            }
+        } finally {
+            segment.close();
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+        assertEquals(LogQuery.EARLIEST, new LogQuery(null, null, null, Instant.MIN, null).getFrom());
+        assertEquals(LogQuery.LATEST, new LogQuery(null, null, null, null, Instant.MAX).getTo());
+        assertThrows(IllegalArgumentException.class,
+                () -> new LogQuery(null, null, null, Instant.MAX.minusSeconds(1), Instant.MAX));
+    }
+
+    private List<ApplianceLog> walk(LogQuery query, int pageSize) {
+        List<ApplianceLog> all = new ArrayList<>();
+        LogCursor cursor = null;
+        List<ApplianceLog> page;
+        do {
+            page = planner.find(query, cursor, pageSize);
+            all.addAll(page);
+            cursor = page.isEmpty() ? null : LogCursor.of(page.get(page.size() - 1));
+        } while (page.size() == pageSize);
+        return all;
+    }
+
+    private static List<Long> sequences(List<ApplianceLog> logs) {
+        return logs.stream().map(ApplianceLog::getSequence).collect(Collectors.toList());
+    }
+
+    /**
+     * Counts the entries the planner reads from the store.
+     */
+    static class CountingStore extends InMemoryApplianceLogStore {
+        final AtomicInteger reads = new AtomicInteger();
+
+        @Override
+        public List<ApplianceLog> findAll(LogCursor after, int limit) {
+            return counted(super.findAll(after, limit));
+        }
+
+        @Override
+        public List<ApplianceLog> findByApplianceId(String applianceId, LogCursor after, int limit) {
+            return counted(super.findByApplianceId(applianceId, after, limit));
+        }
+
+        @Override
+        public List<ApplianceLog> findByTimestampAfter(Instant cutoff, LogCursor after, int limit) {
+            return counted(super.findByTimestampAfter(cutoff, after, limit));
+        }
+
+        @Override
+        public List<ApplianceLog> findByTimestampBetween(Instant from, Instant to, LogCursor after, int limit) {
+            return counted(super.findByTimestampBetween(from, to, after, limit));
+        }
+
+        @Override
+        public List<ApplianceLog> findBySuccessFalse(LogCursor after, int limit) {
+            return counted(super.findBySuccessFalse(after, limit));
+        }
+
+        private List<ApplianceLog> counted(List<ApplianceLog> logs) {
+            reads.addAndGet(logs.size());
+            return logs;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.my.octools.storage;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogRollupTest {
+    LogRollup rollup;
+    Instant now;
+
+    @BeforeEach
+    void setup() {
+        rollup = new LogRollup(Duration.ofMinutes(60), 2);
+        now = Instant.parse("2025-03-01T12:00:30Z");
+    }
+
+    @Test
+    void testGroupsByAction() {
+        rollup.onSaved(new ApplianceLog("appliance1", "DRAIN", true, "ok", now));
+        rollup.onSaved(new ApplianceLog("appliance2", "DRAIN", false, "Drain failed", now));
+        rollup.onSaved(new ApplianceLog("appliance1", "REMEDIATE", true, "ok", now.minusSeconds(90)));
+        rollup.onSaved(new ApplianceLog("appliance3", null, true, "ok", now));
+
+        LogStats stats = rollup.stats(Duration.ofMinutes(5), LogRollup.GroupBy.ACTION, now);
+
+        assertEquals(4, stats.getTotal().getTotal());
+        assertEquals(1, stats.getTotal().getFailed());
+        assertEquals(List.of("DRAIN", "REMEDIATE", "UNKNOWN"), List.copyOf(stats.getGroups().keySet()));
+        assertEquals(1, stats.getGroups().get("DRAIN").getSucceeded());
+        assertEquals(1, stats.getGroups().get("DRAIN").getFailed());
+        assertEquals(3, stats.getDistinctAppliances());
+        assertEquals(Instant.parse("2025-03-01T11:56:00Z"), stats.getFrom());
+        assertEquals(Instant.parse("2025-03-01T12:01:00Z"), stats.getTo());
+    }
+
+    @Test
+    void testGroupsByMinute() {
+        rollup.onSaved(new ApplianceLog("appliance1", "DRAIN", true, "ok", now));
+        rollup.onSaved(new ApplianceLog("appliance1", "DRAIN", true, "ok", now.minusSeconds(60)));
+        rollup.onSaved(new ApplianceLog("appliance2", "DRAIN", true, "ok", now.minusSeconds(60)));
+
+        LogStats stats = rollup.stats(Duration.ofMinutes(2), LogRollup.GroupBy.MINUTE, now);
+
+        assertEquals(2, stats.getGroups().get("2025-03-01T11:59:00Z").getTotal());
+        assertEquals(1, stats.getGroups().get("2025-03-01T12:00:00Z").getTotal());
+    }
+
+    @Test
+    void testWindowExcludesOlderMinutes() {
+        rollup.onSaved(new ApplianceLog("appliance1", "DRAIN", true, "ok", now.minus(10, ChronoUnit.MINUTES)));
+        rollup.onSaved(new ApplianceLog("appliance2", "DRAIN", true, "ok", now));
+
+        assertEquals(1, rollup.stats(Duration.ofMinutes(5), LogRollup.GroupBy.NONE, now).getTotal().getTotal());
+        assertEquals(2, rollup.stats(Duration.ofMinutes(15), LogRollup.GroupBy.NONE, now).getTotal().getTotal());
+        assertTrue(rollup.stats(Duration.ofMinutes(15), LogRollup.GroupBy.NONE, now).getGroups().isEmpty());
+    }
+
+    @Test
+    void testBucketIsReusedOnceItsMinuteExpires() {
+        rollup.onSaved(new ApplianceLog("appliance1", "DRAIN", true, "ok", now.minus(60, ChronoUnit.MINUTES)));
+        rollup.onSaved(new ApplianceLog("appliance2", "DRAIN", false, "Drain failed", now));
+        // the same slot as the entry above, but older than the minute it now holds
+        rollup.onSaved(new ApplianceLog("appliance3", "DRAIN", true, "ok", now.minus(120, ChronoUnit.MINUTES)));
+
+        LogStats stats = rollup.stats(Duration.ofDays(1), LogRollup.GroupBy.NONE, now);
+
+        assertEquals(60, rollup.getBucketCount());
+        assertEquals(1, stats.getTotal().getTotal());
+        assertEquals(1, stats.getTotal().getFailed());
+        assertEquals(1, stats.getDistinctAppliances());
+    }
+
+    @Test
+    void testSuccessEndsFailureStreak() {
+        for (int i = 0; i < 3; i++) {
+            rollup.onSaved(new ApplianceLog("appliance1", "DRAIN", false, "Drain failed", now.plusSeconds(i)));
+        }
+        rollup.onSaved(new ApplianceLog("appliance2", "DRAIN", false, "Drain failed", now));
+        rollup.onSaved(new ApplianceLog("appliance3", "DRAIN", false, "Drain failed", now));
+        rollup.onSaved(new ApplianceLog("appliance3", "DRAIN", false, "Drain failed", now.plusSeconds(1)));
+        rollup.onSaved(new ApplianceLog("appliance4", "DRAIN", false, "Drain failed", now));
+        rollup.onSaved(new ApplianceLog("appliance4", "DRAIN", true, "ok", now.plusSeconds(1)));
+
+        LogStats stats = rollup.stats(Duration.ofMinutes(1), LogRollup.GroupBy.NONE, now);
+
+        assertEquals(3, stats.getAppliancesFailing());
+        List<LogStats.FailureStreak> streaks = stats.getLongestFailureStreaks();
+        assertEquals(List.of("appliance1", "appliance3"),
+                streaks.stream().map(LogStats.FailureStreak::getApplianceId).collect(Collectors.toList()));
+        assertEquals(3, streaks.get(0).getFailures());
+        assertEquals(now, streaks.get(0).getSince());
+    }
+
+    @Test
+    void testStreakExpiresWithTheRetention() {
+        rollup.onSaved(new ApplianceLog("appliance1", "DRAIN", false, "Drain failed", now));
+        rollup.onSaved(new ApplianceLog("appliance2", "DRAIN", false, "Drain failed", now));
+        Instant later = now.plus(30, ChronoUnit.MINUTES);
+        rollup.onSaved(new ApplianceLog("appliance2", "DRAIN", false, "Drain failed", later));
+
+        assertEquals(2, rollup.stats(Duration.ofMinutes(1), LogRollup.GroupBy.NONE,
+                now.plus(59, ChronoUnit.MINUTES)).getAppliancesFailing());
+
+        // appliance1 last failed in a minute the ring no longer covers
+        LogStats stats = rollup.stats(Duration.ofMinutes(1), LogRollup.GroupBy.NONE, now.plus(60, ChronoUnit.MINUTES));
+
+        assertEquals(1, stats.getAppliancesFailing());
+        assertEquals("appliance2", stats.getLongestFailureStreaks().get(0).getApplianceId());
+        assertEquals(2, stats.getLongestFailureStreaks().get(0).getFailures());
+        assertEquals(0, rollup.stats(Duration.ofMinutes(1), LogRollup.GroupBy.NONE,
+                now.plus(90, ChronoUnit.MINUTES)).getAppliancesFailing());
+    }
+
+    @Test
+    void testEstimatesDistinctAppliances() {
+        for (int i = 0; i < 20_000; i++) {
+            rollup.onSaved(new ApplianceLog("appliance" + (i % 10_000), "DRAIN", true, "ok",
+                    now.minusSeconds(i % 600)));
+        }
+
+        long distinct = rollup.stats(Duration.ofMinutes(15), LogRollup.GroupBy.NONE, now).getDistinctAppliances();
+
+        assertEquals(10_000, distinct, 500);
+    }
+
+    @Test
+    void testBackfillMatchesIncrementalUpdates() {
+        InMemoryApplianceLogStore store = new InMemoryApplianceLogStore();
+        LogRollup live = new LogRollup(Duration.ofMinutes(60), 2);
+        for (int i = 0; i < 2500; i++) {
+            ApplianceLog log = new ApplianceLog("appliance" + (i % 7), i % 3 == 0 ? "DRAIN" : "REMEDIATE",
+                    i % 5 != 0 && i < 2400, "", now.minus(2500 - i, ChronoUnit.SECONDS));
+            store.save(log);
+            live.onSaved(log);
+        }
+
+        rollup.backfill(store, now);
+
+        LogStats expected = live.stats(Duration.ofHours(1), LogRollup.GroupBy.ACTION, now);
+        LogStats actual = rollup.stats(Duration.ofHours(1), LogRollup.GroupBy.ACTION, now);
+        assertEquals(expected.getTotal().getTotal(), actual.getTotal().getTotal());
+        assertEquals(expected.getGroups().get("DRAIN").getFailed(), actual.getGroups().get("DRAIN").getFailed());
+        assertEquals(expected.getDistinctAppliances(), actual.getDistinctAppliances());
+        assertEquals(expected.getAppliancesFailing(), actual.getAppliancesFailing());
+        assertEquals(expected.getLongestFailureStreaks().get(0).getFailures(),
+                actual.getLongestFailureStreaks().get(0).getFailures());
+        assertEquals(expected.getLongestFailureStreaks().get(0).getSince(),
+                actual.getLongestFailureStreaks().get(0).getSince());
+    }
+
+    @Test
+    void testRejectsInvalidQueries() {
+        assertThrows(IllegalArgumentException.class,
+                () -> rollup.stats(Duration.ZERO, LogRollup.GroupBy.NONE, now));
+        assertThrows(IllegalArgumentException.class, () -> LogRollup.GroupBy.parse("appliance"));
+        assertEquals(LogRollup.GroupBy.ACTION, LogRollup.GroupBy.parse("Action"));
+    }
+}
@@ -0,0 +1,80 @@
+package com.my.octools.storage;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Compares the retained heap of the skip-list store and the columnar store.
+ * <p>
+ * Run with {@code ./gradlew benchmark --tests '*LogStoreFootprintBenchmark'}. Row counts default to
+ * 1M and 10M and can be overridden with {@code -Dbench.rows=100000,1000000}.
+ */
+@Tag("benchmark")
+class LogStoreFootprintBenchmark {
+    private static final String[] ACTIONS = {"DRAIN", "REMEDIATE", "PROCESS"};
+    private static final int APPLIANCES = 50_000;
+
+    @Test
+    void compareRetainedHeap() {
+        List<Integer> rowCounts = Arrays.stream(System.getProperty("bench.rows", "1000000,10000000").split(","))
+                .map(String::trim)
+                .map(Integer::parseInt)
+                .toList();
+        System.out.printf("%-10s %12s %14s %12s%n", "store", "rows", "retained MB", "bytes/row");
+        for (int rows : rowCounts) {
+            report("skiplist", rows, InMemoryApplianceLogStore::new);
+            report("columnar", rows, ColumnarApplianceLogStore::new);
+        }
+    }
+
+    private static void report(String name, int rows, Supplier<ApplianceLogRepository> factory) {
+        long before = usedHeap();
+        ApplianceLogRepository store = factory.get();
+        fill(store, rows);
+        long retained = usedHeap() - before;
+        System.out.printf("%-10s %12d %14.1f %12.1f%n", name, rows, retained / 1048576.0, (double) retained / rows);
+        // keep the store reachable until it has been measured
+        if (store.findAll(null, 1).isEmpty()) {
+            throw new IllegalStateException("store is empty");
+        }
+    }
+
+    /**
+     * Writes rows shaped like the processor's output: one action per row, unique drain/remediation
+     * messages on success and a handful of repeated error messages on failure.
+     */
+    private static void fill(ApplianceLogRepository store, int rows) {
+        Instant start = Instant.now();
+        String[] applianceIds = new String[APPLIANCES];
+        for (int i = 0; i < APPLIANCES; i++) {
+            applianceIds[i] = "appliance-" + i;
+        }
+        for (int i = 0; i < rows; i++) {
+            boolean success = i % 10 != 0;
+            String action = success ? ACTIONS[i % 2] : ACTIONS[2];
+            String message = success
+                    ? "DrainResult{drainId='" + Long.toHexString(i * 0x9E3779B97F4A7C15L) + "', estimatedTimeToDrain='5m'}"
+                    : "Drain API error: HTTP 50" + (i % 4);
+            store.save(new ApplianceLog(applianceIds[(int) ((i * 31L) % APPLIANCES)], action, success, message,
+                    start.plusMillis(i)));
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,78 @@
+package com.my.octools.storage;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogVersionsTest {
+
+    @Test
+    void testSavesBumpGlobalAndApplianceVersions() {
+        InMemoryApplianceLogStore store = new InMemoryApplianceLogStore();
+        LogVersions versions = new LogVersions();
+        store.addListener(versions);
+
+        store.save(new ApplianceLog("appliance1", "DRAIN", true, "ok", Instant.now()));
+        store.save(new ApplianceLog("appliance2", "DRAIN", true, "ok", Instant.now()));
+
+        assertEquals(2, versions.getVersion());
+        assertEquals(1, versions.getVersion("appliance1"));
+        assertEquals(2, versions.getVersion("appliance2"));
+        assertEquals(0, versions.getVersion("appliance3"));
+    }
+
+    @Test
+    void testEvictionMovesEveryApplianceVersion() {
+        LogVersions versions = new LogVersions();
+        versions.onSaved(new ApplianceLog("appliance1", "DRAIN", true, "ok", Instant.now()));
+        versions.onSaved(new ApplianceLog("appliance2", "DRAIN", true, "ok", Instant.now()));
+
+        versions.onEvicted();
+
+        assertEquals(3, versions.getVersion());
+        assertEquals(3, versions.getVersion("appliance1"));
+        assertEquals(3, versions.getVersion("appliance3"));
+
+        versions.onSaved(new ApplianceLog("appliance1", "DRAIN", true, "ok", Instant.now()));
+        assertEquals(4, versions.getVersion("appliance1"));
+        assertEquals(3, versions.getVersion("appliance2"));
+    }
+
+    @Test
+    void testEvictionDropsVersionsOfAppliancesNotSavedSince() {
+        LogVersions versions = new LogVersions();
+        for (int i = 0; i < 1000; i++) {
+            versions.onSaved(new ApplianceLog("appliance" + i, "DRAIN", true, "ok", Instant.now()));
+        }
+        assertEquals(1000, versions.getTrackedApplianceCount());
+
+        versions.onEvicted();
+        versions.onSaved(new ApplianceLog("appliance7", "DRAIN", true, "ok", Instant.now()));
+
+        assertEquals(1, versions.getTrackedApplianceCount());
+        assertEquals(1002, versions.getVersion("appliance7"));
+        assertEquals(1001, versions.getVersion("appliance8"));
+        assertEquals(1001, versions.getVersion("appliance999"));
+    }
+
+    @Test
+    void testSweeperBumpsVersionOnlyWhenItEvicts() {
+        InMemoryApplianceLogStore store = new InMemoryApplianceLogStore(
+                new LogRetentionPolicy(1, Duration.ZERO, 0));
+        LogVersions versions = new LogVersions();
+        store.addListener(versions);
+        LogRetentionSweeper sweeper = new LogRetentionSweeper(store, versions);
+
+        store.save(new ApplianceLog("appliance1", "DRAIN", true, "ok", Instant.now()));
+        sweeper.sweep();
+        assertEquals(1, versions.getVersion());
+
+        store.save(new ApplianceLog("appliance2", "DRAIN", true, "ok", Instant.now()));
+        sweeper.sweep();
+        assertEquals(3, versions.getVersion());
+        assertEquals(3, versions.getVersion("appliance1"));
+    }
+}
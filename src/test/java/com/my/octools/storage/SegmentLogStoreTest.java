@@ -0,0 +1,125 @@
+package com.my.octools.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentLogStoreTest {
+    Path directory;
+    Instant now;
+
+    @BeforeEach
+    void setup() throws IOException {
+        directory = Files.createTempDirectory("segment-log");
+        now = Instant.now();
+    }
+
+    @AfterEach
+    void cleanup() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Test
+    void testRecordsSurviveRestartAcrossSegments() {
+        SegmentLogStore store = open(LogRetentionPolicy.unbounded());
+        for (int i = 0; i < 100; i++) {
+            store.save(new ApplianceLog("appliance" + (i % 5), "DRAIN", i % 10 != 0, "message " + i, now.plusMillis(i)));
+        }
+        assertTrue(store.segmentCount() > 1);
+        store.close();
+
+        SegmentLogStore reopened = open(LogRetentionPolicy.unbounded());
+
+        assertEquals(100, reopened.size());
+        assertEquals("message 99", reopened.findAll(null, 1).get(0).getMessage());
+        assertEquals(10, reopened.findBySuccessFalse().size());
+        assertEquals(20, reopened.findByApplianceId("appliance3").size());
+        reopened.close();
+    }
+
+    @Test
+    void testTornTailIsTruncatedOnRecovery() throws IOException {
+        SegmentLogStore store = open(LogRetentionPolicy.unbounded());
+        store.save(new ApplianceLog("appliance1", "DRAIN", true, "kept", now));
+        store.save(new ApplianceLog("appliance1", "REMEDIATE", true, "torn", now.plusSeconds(1)));
+        store.close();
+
+        // corrupt the payload of the last record as if the process died mid-write
+        Path segment = newestSegment();
+        int secondRecord = SegmentLogStore.encode(new ApplianceLog("appliance1", "DRAIN", true, "kept", now)).length;
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{42, 42, 42}), secondRecord + 20);
+        }
+
+        SegmentLogStore reopened = open(LogRetentionPolicy.unbounded());
+        List<ApplianceLog> logs = reopened.findAll();
+        assertEquals(1, logs.size());
+        assertEquals("kept", logs.get(0).getMessage());
+
+        reopened.save(new ApplianceLog("appliance1", "REMEDIATE", true, "after recovery", now.plusSeconds(2)));
+        reopened.close();
+        SegmentLogStore recovered = open(LogRetentionPolicy.unbounded());
+        assertEquals(2, recovered.size());
+        recovered.close();
+    }
+
+    @Test
+    void testReplaySkipsRecordsOutsideRetention() {
+        SegmentLogStore store = open(LogRetentionPolicy.unbounded());
+        for (int i = 0; i < 50; i++) {
+            store.save(new ApplianceLog("appliance1", "DRAIN", true, "old " + i, now.minus(2, ChronoUnit.DAYS)));
+        }
+        for (int i = 0; i < 50; i++) {
+            store.save(new ApplianceLog("appliance1", "DRAIN", true, "new " + i, now.plusMillis(i)));
+        }
+        store.close();
+
+        SegmentLogStore reopened = open(new LogRetentionPolicy(0, Duration.ofDays(1), 0));
+        assertEquals(50, reopened.size());
+
+        int before = reopened.segmentCount();
+        reopened.deleteExpiredSegments(now);
+        assertTrue(reopened.segmentCount() < before);
+        reopened.close();
+    }
+
+    @Test
+    void testDecodeRejectsCorruptRecord() {
+        byte[] record = SegmentLogStore.encode(new ApplianceLog("appliance1", "DRAIN", true, null, now));
+        ApplianceLog decoded = SegmentLogStore.decode(ByteBuffer.wrap(record), 0);
+        assertEquals("appliance1", decoded.getApplianceId());
+        assertNull(decoded.getMessage());
+        assertEquals(now, decoded.getTimestamp());
+
+        record[record.length - 1] ^= 1;
+        assertNull(SegmentLogStore.decode(ByteBuffer.wrap(record), 0));
+    }
+
+    private SegmentLogStore open(LogRetentionPolicy policy) {
+        // small segments so a handful of records already rolls
+        return new SegmentLogStore(directory, 1024, Duration.ofMillis(10), policy);
+    }
+
+    private Path newestSegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.toString().endsWith(".log")).max(Comparator.naturalOrder()).orElseThrow();
+        }
+    }
+}
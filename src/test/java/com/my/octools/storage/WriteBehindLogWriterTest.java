@@ -0,0 +1,233 @@
+package com.my.octools.storage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindLogWriterTest {
+    Path directory;
+    GatedStore store;
+    WriteBehindLogWriter writer;
+    Instant now;
+
+    @BeforeEach
+    void setup() throws IOException {
+        directory = Files.createTempDirectory("write-behind");
+        store = new GatedStore();
+        now = Instant.now();
+    }
+
+    @AfterEach
+    void cleanup() throws IOException {
+        store.release();
+        if (writer != null) {
+            writer.close();
+        }
+        Files.deleteIfExists(directory.resolve("spill"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Test
+    void testReadsSeeEarlierWrites() {
+        writer = open(OverflowPolicy.BLOCK, 16);
+        for (int i = 0; i < 100; i++) {
+            writer.write(log(i));
+        }
+
+        assertTrue(writer.awaitVisible());
+        assertEquals(100, store.size());
+        assertEquals(0, writer.getPending());
+        assertEquals(Duration.ZERO, writer.getLag());
+    }
+
+    @Test
+    void testAwaitVisibleGivesUpAfterMaxReadDelay() throws InterruptedException {
+        writer = open(OverflowPolicy.BLOCK, 16);
+        store.hold();
+        writer.write(log(0));
+        store.awaitHeld();
+
+        long start = System.nanoTime();
+        assertFalse(writer.awaitVisible());
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(1, writer.getPending());
+    }
+
+    @Test
+    void testDropOldestDiscardsBufferedEntries() throws InterruptedException {
+        writer = open(OverflowPolicy.DROP_OLDEST, 2);
+        store.hold();
+        writer.write(log(0));
+        store.awaitHeld();
+        for (int i = 1; i <= 3; i++) {
+            writer.write(log(i));
+        }
+        store.release();
+        writer.close();
+
+        assertEquals(List.of("msg3", "msg2", "msg0"), messages(store.findAll()));
+        assertEquals(1, writer.getDropped());
+    }
+
+    @Test
+    void testSpillKeepsOverflowOnDiskUntilTheBufferDrains() throws InterruptedException {
+        writer = open(OverflowPolicy.SPILL, 2);
+        store.hold();
+        writer.write(log(0));
+        store.awaitHeld();
+        for (int i = 1; i <= 4; i++) {
+            writer.write(log(i));
+        }
+        assertEquals(2, writer.getSpilled());
+        store.release();
+
+        assertTrue(writer.awaitVisible());
+        assertEquals(List.of("msg4", "msg3", "msg2", "msg1", "msg0"), messages(store.findAll()));
+        assertEquals(0, writer.getDropped());
+    }
+
+    @Test
+    void testSpillLeftByACrashIsReplayedOnStartup() throws IOException {
+        Files.write(directory.resolve("spill"), SegmentLogStore.encode(log(7)));
+
+        writer = open(OverflowPolicy.SPILL, 2);
+        writer.close();
+
+        assertEquals(List.of("msg7"), messages(store.findAll()));
+        assertEquals(0, Files.size(directory.resolve("spill")));
+    }
+
+    @Test
+    void testStartupReplayCountsAsPendingUntilSaved() throws IOException, InterruptedException {
+        Files.write(directory.resolve("spill"), SegmentLogStore.encode(log(7)));
+        Files.write(directory.resolve("spill"), SegmentLogStore.encode(log(8)), StandardOpenOption.APPEND);
+        store.hold();
+
+        writer = open(OverflowPolicy.SPILL, 2);
+        store.awaitHeld();
+        assertEquals(2, writer.getPending());
+        assertFalse(writer.awaitVisible());
+
+        store.release();
+        assertTrue(writer.awaitVisible());
+        assertEquals(0, writer.getPending());
+        assertEquals(List.of("msg8", "msg7"), messages(store.findAll()));
+    }
+
+    @Test
+    void testWritesRacingWithCloseAreNotLost() throws InterruptedException {
+        writer = open(OverflowPolicy.BLOCK, 64);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int offset = t * 10_000;
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < 5_000; i++) {
+                    writer.write(log(offset + i));
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        Thread.sleep(5);
+        writer.close();
+        for (Thread thread : writers) {
+            thread.join();
+        }
+
+        assertEquals(20_000, store.size());
+        assertEquals(0, writer.getPending());
+    }
+
+    @Test
+    void testBlockMakesTheWriterWaitForRoom() throws InterruptedException {
+        writer = open(OverflowPolicy.BLOCK, 2);
+        store.hold();
+        writer.write(log(0));
+        store.awaitHeld();
+        writer.write(log(1));
+        writer.write(log(2));
+        Thread blockedWriter = new Thread(() -> writer.write(log(3)));
+        blockedWriter.start();
+        blockedWriter.join(100);
+        assertTrue(blockedWriter.isAlive());
+
+        store.release();
+        blockedWriter.join(5000);
+
+        assertFalse(blockedWriter.isAlive());
+        assertTrue(writer.awaitVisible());
+        assertEquals(4, store.size());
+        assertEquals(1, writer.getBlocked());
+    }
+
+    @Test
+    void testCloseFlushesAndLaterWritesAreSavedInline() {
+        writer = open(OverflowPolicy.BLOCK, 1024);
+        for (int i = 0; i < 1000; i++) {
+            writer.write(log(i));
+        }
+        writer.close();
+        assertEquals(1000, store.size());
+
+        writer.write(log(1000));
+        assertEquals(1001, store.size());
+    }
+
+    private WriteBehindLogWriter open(OverflowPolicy policy, int capacity) {
+        return new WriteBehindLogWriter(store, capacity, 8, policy, directory.resolve("spill"), Duration.ofMillis(50));
+    }
+
+    private ApplianceLog log(int i) {
+        return new ApplianceLog("appliance" + (i % 3), "DRAIN", true, "msg" + i, now.plusMillis(i));
+    }
+
+    private static List<String> messages(List<ApplianceLog> logs) {
+        return logs.stream().map(ApplianceLog::getMessage).collect(Collectors.toList());
+    }
+
+    /**
+     * Store whose saves can be held up, so the consumer stops draining the ring.
+     */
+    private static class GatedStore extends InMemoryApplianceLogStore {
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+        private final CountDownLatch held = new CountDownLatch(1);
+
+        void hold() {
+            gate = new CountDownLatch(1);
+        }
+
+        void awaitHeld() throws InterruptedException {
+            assertTrue(held.await(5, TimeUnit.SECONDS));
+        }
+
+        void release() {
+            gate.countDown();
+        }
+
+        @Override
+        public void save(ApplianceLog log) {
+            if (gate.getCount() > 0) {
+                held.countDown();
+                try {
+                    gate.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            super.save(log);
+        }
+    }
+}
@@ -12,12 +12,7 @@ until curl -s 'http://localhost:8080/actuator/health' | grep -q '"status":"UP"';
   sleep 5
 done
 
-echo "App is up! Starting to query logs every 5 seconds."
+echo "App is up! Streaming appliance logs, starting with the latest 5."
 
-# Step 3: Query logs every 5 seconds
-while true; do
-  echo "Querying latest 5 appliance logs..."
-  curl -s 'http://localhost:8080/api/logs?start=0&count=5' | jq .
-  echo "Sleeping 5 seconds before querying again..."
-  sleep 5
-done
\ No newline at end of file
+# Step 3: Tail logs, new entries are pushed as they are saved
+curl -sN -H 'Accept: application/x-ndjson' 'http://localhost:8080/api/logs/stream?count=5' | jq .